@@ -75,6 +75,7 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -85,6 +86,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 
 @SuppressWarnings("unchecked")
@@ -168,6 +171,8 @@ public class BeanContext extends DeploymentContext {
     //private final Map<Method, TransactionType> methodTransactionType = new HashMap<Method, TransactionType>();
     private final Map<Method, Method> methodMap = new HashMap<Method, Method>();
     private final Map<Method, MethodContext> methodContextMap = new HashMap<Method, MethodContext>();
+    private final Map<InterfaceType, ConcurrentMap<Method, InvocationPlan>> invocationPlans = new EnumMap<InterfaceType, ConcurrentMap<Method, InvocationPlan>>(InterfaceType.class);
+    private final ConcurrentMap<Method, InvocationPlan> untypedInvocationPlans = new ConcurrentHashMap<Method, InvocationPlan>();
     private final Map<String, ViewContext> viewContextMap = new HashMap<String, ViewContext>();
 
     private TransactionPolicyFactory transactionPolicyFactory;
@@ -275,6 +280,10 @@ public class BeanContext extends DeploymentContext {
         this.componentType = componentType;
         this.beanClass = beanClass;
 
+        for (final InterfaceType interfaceType : InterfaceType.values()) {
+            invocationPlans.put(interfaceType, new ConcurrentHashMap<Method, InvocationPlan>());
+        }
+
         final String interceptors = SystemInstance.get().getProperties().getProperty(USER_INTERCEPTOR_KEY);
         if (interceptors != null) {
             final String[] interceptorArray = interceptors.split(USER_INTERCEPTOR_SEPARATOR);
@@ -847,6 +856,51 @@ public class BeanContext extends DeploymentContext {
         return (method == null) ? interfaceMethod : method;
     }
 
+    /**
+     * The containers resolve everything they need for a call with this
+     * single lookup.  Plans are built the first time a method is called,
+     * so they reflect the configuration of the deployment at that point.
+     */
+    public InvocationPlan getInvocationPlan(final Method callMethod, final InterfaceType interfaceType) {
+        final ConcurrentMap<Method, InvocationPlan> plans = (interfaceType == null) ? untypedInvocationPlans : invocationPlans.get(interfaceType);
+
+        InvocationPlan plan = plans.get(callMethod);
+        if (plan == null) {
+            plan = createInvocationPlan(callMethod, interfaceType);
+            final InvocationPlan existing = plans.putIfAbsent(callMethod, plan);
+            if (existing != null) plan = existing;
+        }
+        return plan;
+    }
+
+    /**
+     * The plan of a call that runs the given bean method instead of the
+     * one matching the call method.  Such plans are not cached.
+     */
+    public InvocationPlan getInvocationPlan(final Method callMethod, final Method beanMethod, final InterfaceType interfaceType) {
+        final InvocationPlan plan = getInvocationPlan(callMethod, interfaceType);
+        if (plan.getBeanMethod().equals(beanMethod)) return plan;
+        return createInvocationPlan(callMethod, beanMethod, interfaceType);
+    }
+
+    private InvocationPlan createInvocationPlan(final Method callMethod, final InterfaceType interfaceType) {
+        return createInvocationPlan(callMethod, getMatchingBeanMethod(callMethod), interfaceType);
+    }
+
+    private InvocationPlan createInvocationPlan(final Method callMethod, final Method beanMethod, final InterfaceType interfaceType) {
+        MethodContext methodContext = methodContextMap.get(beanMethod);
+        if (methodContext == null) {
+            // don't register it, the map is not meant to be modified once deployed
+            methodContext = new MethodContext(this, beanMethod);
+        }
+
+        final Duration methodTimeout = methodContext.getAccessTimeout();
+        final Duration accessTimeout = (methodTimeout != null) ? methodTimeout : getAccessTimeout();
+
+        return new InvocationPlan(callMethod, beanMethod, getTransactionType(callMethod, interfaceType),
+                methodContext.getLockType(), accessTimeout, methodContext.getInterceptors());
+    }
+
     public MethodContext getMethodContext(final Method method) {
         MethodContext methodContext = methodContextMap.get(method);
         if (methodContext == null) {
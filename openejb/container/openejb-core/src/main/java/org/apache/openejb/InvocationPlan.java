@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb;
+
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.core.interceptor.InterceptorChain;
+import org.apache.openejb.core.interceptor.InterceptorData;
+import org.apache.openejb.core.transaction.TransactionType;
+import org.apache.openejb.util.Duration;
+
+import javax.ejb.LockType;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Everything a container needs to know to invoke a method of a given
+ * view, resolved once from the BeanContext and MethodContext the first
+ * time the method is called.
+ *
+ * @see BeanContext#getInvocationPlan(java.lang.reflect.Method, InterfaceType)
+ * @version $Rev$ $Date$
+ */
+public class InvocationPlan {
+    private final Method interfaceMethod;
+    private final Method beanMethod;
+    private final TransactionType transactionType;
+    private final LockType lockType;
+    private final Duration accessTimeout;
+    private final List<InterceptorData> interceptors;
+    private final ConcurrentMap<Operation, InterceptorChain> interceptorChains = new ConcurrentHashMap<Operation, InterceptorChain>(2);
+
+    public InvocationPlan(Method interfaceMethod, Method beanMethod, TransactionType transactionType, LockType lockType, Duration accessTimeout, List<InterceptorData> interceptors) {
+        this.interfaceMethod = interfaceMethod;
+        this.beanMethod = beanMethod;
+        this.transactionType = transactionType;
+        this.lockType = lockType;
+        this.accessTimeout = accessTimeout;
+        this.interceptors = Collections.unmodifiableList(interceptors);
+    }
+
+    public Method getInterfaceMethod() {
+        return interfaceMethod;
+    }
+
+    public Method getBeanMethod() {
+        return beanMethod;
+    }
+
+    public TransactionType getTransactionType() {
+        return transactionType;
+    }
+
+    public LockType getLockType() {
+        return lockType;
+    }
+
+    /**
+     * The method level access timeout, else the bean level one.
+     * Null if neither is set and the container default applies.
+     */
+    public Duration getAccessTimeout() {
+        return accessTimeout;
+    }
+
+    public List<InterceptorData> getInterceptors() {
+        return interceptors;
+    }
+
+    /**
+     * The interceptors of the bean method for the operation, BUSINESS or
+     * TIMEOUT usually, built the first time they are asked for.
+     */
+    public InterceptorChain getInterceptorChain(Operation operation) {
+        InterceptorChain chain = interceptorChains.get(operation);
+        if (chain == null) {
+            chain = new InterceptorChain(beanMethod, operation, interceptors);
+            final InterceptorChain existing = interceptorChains.putIfAbsent(operation, chain);
+            if (existing != null) chain = existing;
+        }
+        return chain;
+    }
+}
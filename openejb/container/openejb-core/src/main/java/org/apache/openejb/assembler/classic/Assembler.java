@@ -65,6 +65,7 @@ import org.apache.openejb.core.ParentClassLoaderFinder;
 import org.apache.openejb.core.SimpleTransactionSynchronizationRegistry;
 import org.apache.openejb.core.TransactionSynchronizationRegistryWrapper;
 import org.apache.openejb.core.WebContext;
+import org.apache.openejb.core.ivm.ObjectCopier;
 import org.apache.openejb.core.ivm.naming.IvmContext;
 import org.apache.openejb.core.ivm.naming.IvmJndiFactory;
 import org.apache.openejb.core.security.SecurityContextHandler;
@@ -91,6 +92,7 @@ import org.apache.openejb.monitoring.remote.RemoteResourceMonitor;
 import org.apache.openejb.observer.Observes;
 import org.apache.openejb.persistence.JtaEntityManagerRegistry;
 import org.apache.openejb.persistence.PersistenceClassLoaderHandler;
+import org.apache.openejb.persistence.PersistenceUnitInfoImpl;
 import org.apache.openejb.resource.GeronimoConnectionManagerFactory;
 import org.apache.openejb.resource.jdbc.DataSourceFactory;
 import org.apache.openejb.resource.jdbc.managed.local.ManagedDataSource;
@@ -180,6 +182,7 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -586,6 +589,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
         //Construct the global and app jndi contexts for this app
         final InjectionBuilder injectionBuilder = new InjectionBuilder(classLoader);
+        final ParallelBuilder parallelBuilder = new ParallelBuilder();
 
         final Set<Injection> injections = new HashSet<Injection>();
         injections.addAll(injectionBuilder.buildInjections(appInfo.globalJndiEnc));
@@ -616,6 +620,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             containerSystem.addAppContext(appContext);
 
             appContext.set(AsynchronousPool.class, AsynchronousPool.create(appContext));
+            appContext.set(ObjectCopier.class, ObjectCopier.Strategy.create(appContext.getOptions()));
 
             final Context containerSystemContext = containerSystem.getJNDIContext();
 
@@ -637,16 +642,27 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                     vfs.add(webAppInfo);
                 }
 
-                final Map<String, ValidatorFactory> validatorFactories = new HashMap<String, ValidatorFactory>();
+                final List<Callable<ValidatorFactory>> validatorTasks = new ArrayList<Callable<ValidatorFactory>>(vfs.size());
                 for (final CommonInfoObject info : vfs) {
-                    ValidatorFactory factory = null;
-                    try {
-                        factory = ValidatorBuilder.buildFactory(classLoader, info.validationInfo);
-                    } catch (ValidationException ve) {
-                        logger.warning("can't build the validation factory for module " + info.uniqueId, ve);
-                    }
-                    if (factory != null) {
-                        validatorFactories.put(info.uniqueId, factory);
+                    final ClassLoader moduleClassLoader = classLoader;
+                    validatorTasks.add(new Callable<ValidatorFactory>() {
+                        @Override
+                        public ValidatorFactory call() {
+                            try {
+                                return ValidatorBuilder.buildFactory(moduleClassLoader, info.validationInfo);
+                            } catch (ValidationException ve) {
+                                logger.warning("can't build the validation factory for module " + info.uniqueId, ve);
+                                return null;
+                            }
+                        }
+                    });
+                }
+
+                final List<ValidatorFactory> factories = parallelBuilder.build(validatorTasks);
+                final Map<String, ValidatorFactory> validatorFactories = new HashMap<String, ValidatorFactory>();
+                for (int i = 0; i < factories.size(); i++) {
+                    if (factories.get(i) != null) {
+                        validatorFactories.put(vfs.get(i).uniqueId, factories.get(i));
                     }
                 }
                 moduleIds.addAll(validatorFactories.keySet());
@@ -678,19 +694,58 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             // to the class loader which must be added before any classes are loaded
             final Map<String, String> units = new HashMap<String, String>();
             final PersistenceBuilder persistenceBuilder = new PersistenceBuilder(persistenceClassLoaderHandler);
+            final List<Callable<ReloadableEntityManagerFactory>> unitTasks = new ArrayList<Callable<ReloadableEntityManagerFactory>>(appInfo.persistenceUnits.size());
             for (final PersistenceUnitInfo info : appInfo.persistenceUnits) {
-                final ReloadableEntityManagerFactory factory;
-                try {
-                    factory = persistenceBuilder.createEntityManagerFactory(info, classLoader);
-                    containerSystem.getJNDIContext().bind(PERSISTENCE_UNIT_NAMING_CONTEXT + info.id, factory);
-                    units.put(info.name, PERSISTENCE_UNIT_NAMING_CONTEXT + info.id);
-                } catch (NameAlreadyBoundException e) {
-                    throw new OpenEJBException("PersistenceUnit already deployed: " + info.persistenceUnitRootUrl);
-                } catch (Exception e) {
-                    throw new OpenEJBException(e);
+                final ClassLoader unitClassLoader = classLoader;
+                unitTasks.add(new Callable<ReloadableEntityManagerFactory>() {
+                    @Override
+                    public ReloadableEntityManagerFactory call() throws Exception {
+                        return persistenceBuilder.createEntityManagerFactory(info, unitClassLoader);
+                    }
+                });
+            }
+
+            final ParallelBuilder.Discard<ReloadableEntityManagerFactory> closeUnit = new ParallelBuilder.Discard<ReloadableEntityManagerFactory>() {
+                @Override
+                public void discard(final ReloadableEntityManagerFactory factory) {
+                    final String unitId = ((PersistenceUnitInfoImpl) factory.info()).getId();
+                    try {
+                        factory.close();
+                    } catch (Throwable t) {
+                        logger.debug("Cannot close the EntityManagerFactory of persistence-unit " + unitId, t);
+                    }
+                    persistenceClassLoaderHandler.destroy(unitId);
                 }
+            };
+
+            final List<ReloadableEntityManagerFactory> unitFactories;
+            try {
+                unitFactories = parallelBuilder.build(unitTasks, closeUnit);
+            } catch (Exception e) {
+                throw new OpenEJBException(e);
+            }
 
-                factory.register();
+            int bound = 0;
+            try {
+                for (final ReloadableEntityManagerFactory factory : unitFactories) {
+                    final PersistenceUnitInfo info = appInfo.persistenceUnits.get(bound);
+                    try {
+                        containerSystem.getJNDIContext().bind(PERSISTENCE_UNIT_NAMING_CONTEXT + info.id, factory);
+                        units.put(info.name, PERSISTENCE_UNIT_NAMING_CONTEXT + info.id);
+                    } catch (NameAlreadyBoundException e) {
+                        throw new OpenEJBException("PersistenceUnit already deployed: " + info.persistenceUnitRootUrl);
+                    } catch (Exception e) {
+                        throw new OpenEJBException(e);
+                    }
+                    bound++;
+
+                    factory.register();
+                }
+            } finally {
+                // destroyApplication only finds the bound ones
+                for (final ReloadableEntityManagerFactory factory : unitFactories.subList(bound, unitFactories.size())) {
+                    closeUnit.discard(factory);
+                }
             }
 
             logger.debug("Loaded peristence units: " + units);
@@ -729,6 +784,11 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
             startEjbs(start, allDeployments);
 
+            // the beans deployed with a lazy jndi context
+            if (start) {
+                LazyJndiContext.warmUp(appInfo.appId, allDeployments);
+            }
+
             // App Client
             for (final ClientInfo clientInfo : appInfo.clients) {
                 // determine the injections
@@ -2232,7 +2292,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         private final Map<String, List<ClassFileTransformer>> transformers = new TreeMap<String, List<ClassFileTransformer>>();
 
         @Override
-        public void addTransformer(final String unitId, final ClassLoader classLoader, final ClassFileTransformer classFileTransformer) {
+        public synchronized void addTransformer(final String unitId, final ClassLoader classLoader, final ClassFileTransformer classFileTransformer) {
             final Instrumentation instrumentation = Agent.getInstrumentation();
             if (instrumentation != null) {
                 instrumentation.addTransformer(classFileTransformer);
@@ -2252,7 +2312,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         }
 
         @Override
-        public void destroy(final String unitId) {
+        public synchronized void destroy(final String unitId) {
             final List<ClassFileTransformer> transformers = this.transformers.remove(unitId);
             if (transformers != null) {
                 final Instrumentation instrumentation = Agent.getInstrumentation();
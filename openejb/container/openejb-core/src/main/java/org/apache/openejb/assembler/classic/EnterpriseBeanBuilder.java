@@ -22,6 +22,7 @@ import org.apache.openejb.Injection;
 import org.apache.openejb.ModuleContext;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.core.cmp.CmpUtil;
+import org.apache.openejb.loader.Options;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.util.Duration;
@@ -42,6 +43,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 class EnterpriseBeanBuilder {
@@ -138,12 +140,21 @@ class EnterpriseBeanBuilder {
             }
         }
 
-        // build the enc
-        JndiEncBuilder jndiEncBuilder = new JndiEncBuilder(bean.jndiEnc, injections, transactionType, moduleContext.getId(), null, moduleContext.getUniqueId(), moduleContext.getClassLoader());
-        Context compJndiContext = jndiEncBuilder.build(JndiEncBuilder.JndiScope.comp);
-        bind(compJndiContext, "module", moduleContext.getModuleJndiContext());
-        bind(compJndiContext, "app", moduleContext.getAppContext().getAppJndiContext());
-        bind(compJndiContext, "global", moduleContext.getAppContext().getGlobalJndiContext());
+        // build the enc, on first use if lazy
+        final Context compJndiContext;
+        LazyJndiContext lazyJndiContext = null;
+        if (isLazyJndi()) {
+            final List<Injection> encInjections = injections;
+            lazyJndiContext = new LazyJndiContext(new Callable<Context>() {
+                @Override
+                public Context call() throws Exception {
+                    return buildJndiContext(encInjections, transactionType);
+                }
+            }, moduleContext.getClassLoader());
+            compJndiContext = lazyJndiContext;
+        } else {
+            compJndiContext = buildJndiContext(injections, transactionType);
+        }
 
         BeanContext deployment;
         if (BeanType.MESSAGE_DRIVEN != ejbType) {
@@ -158,6 +169,10 @@ class EnterpriseBeanBuilder {
             deployment.setDestinationId(messageDrivenBeanInfo.destinationId);
         }
 
+        if (lazyJndiContext != null) {
+            deployment.set(LazyJndiContext.class, lazyJndiContext);
+        }
+
         deployment.getProperties().putAll(bean.properties);
 
         deployment.setEjbName(bean.ejbName);
@@ -309,6 +324,29 @@ class EnterpriseBeanBuilder {
         return deployment;
     }
 
+    private Context buildJndiContext(final List<Injection> injections, final String transactionType) throws OpenEJBException {
+        JndiEncBuilder jndiEncBuilder = new JndiEncBuilder(bean.jndiEnc, injections, transactionType, moduleContext.getId(), null, moduleContext.getUniqueId(), moduleContext.getClassLoader());
+        Context compJndiContext = jndiEncBuilder.build(JndiEncBuilder.JndiScope.comp);
+        bind(compJndiContext, "module", moduleContext.getModuleJndiContext());
+        bind(compJndiContext, "app", moduleContext.getAppContext().getAppJndiContext());
+        bind(compJndiContext, "global", moduleContext.getAppContext().getGlobalJndiContext());
+        return compJndiContext;
+    }
+
+    /**
+     * Message driven beans, entities and startup singletons are used as
+     * soon as they are deployed, their context is always built eagerly.
+     */
+    private boolean isLazyJndi() {
+        if (ejbType == BeanType.SINGLETON && bean.loadOnStartup) {
+            return false;
+        }
+        if (ejbType != BeanType.STATELESS && ejbType != BeanType.STATEFUL && ejbType != BeanType.MANAGED && ejbType != BeanType.SINGLETON) {
+            return false;
+        }
+        return new Options(bean.properties, moduleContext.getOptions()).get(LazyJndiContext.LAZY_JNDI, false);
+    }
+
     private void bind(Context compJndiContext, String s, Context moduleJndiContext) throws OpenEJBException {
         Context c;
         try {
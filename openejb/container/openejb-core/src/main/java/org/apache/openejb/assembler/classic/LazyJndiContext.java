@@ -0,0 +1,250 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The comp context of a bean, built the first time it is used rather than
+ * when the application is assembled.
+ * <p/>
+ * Used for the beans of the modules where {@link #LAZY_JNDI} is true, a
+ * failure to build the context is then reported by the first lookup
+ * instead of the deployment.  {@link #warmUp} builds the contexts left in
+ * the background once the application is started.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LazyJndiContext implements Context {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP, LazyJndiContext.class);
+
+    public static final String LAZY_JNDI = "openejb.jndi.lazy";
+    public static final String WARM_UP = "openejb.jndi.lazy.warmup";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Callable<Context> builder;
+    private final ClassLoader classLoader;
+    private volatile Context context;
+
+    public LazyJndiContext(final Callable<Context> builder, final ClassLoader classLoader) {
+        this.builder = builder;
+        this.classLoader = classLoader;
+    }
+
+    public boolean isBuilt() {
+        return context != null;
+    }
+
+    public Context getContext() throws NamingException {
+        Context built = context;
+        if (built != null) {
+            return built;
+        }
+
+        final ReentrantLock l = lock;
+        l.lock();
+        try {
+            if (context == null) {
+                final Thread thread = Thread.currentThread();
+                final ClassLoader old = thread.getContextClassLoader();
+                thread.setContextClassLoader(classLoader);
+                try {
+                    context = builder.call();
+                } catch (NamingException e) {
+                    throw e;
+                } catch (Exception e) {
+                    final NamingException ne = new NamingException("Can't build the jndi context: " + e.getMessage());
+                    ne.setRootCause(e);
+                    throw ne;
+                } finally {
+                    thread.setContextClassLoader(old);
+                }
+            }
+            return context;
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Builds the comp contexts of the beans not used yet on a daemon thread.
+     */
+    public static void warmUp(final String name, final Collection<BeanContext> beanContexts) {
+        final List<LazyJndiContext> contexts = new ArrayList<LazyJndiContext>();
+        for (final BeanContext beanContext : beanContexts) {
+            final LazyJndiContext lazy = beanContext.get(LazyJndiContext.class);
+            if (lazy != null && !lazy.isBuilt() && beanContext.getOptions().get(WARM_UP, true)) {
+                contexts.add(lazy);
+            }
+        }
+        if (contexts.isEmpty()) {
+            return;
+        }
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (final LazyJndiContext lazy : contexts) {
+                    try {
+                        lazy.getContext();
+                    } catch (NamingException e) {
+                        // the first lookup will fail the same way
+                        logger.warning("Can't build a jndi context of " + name + ": " + e.getMessage());
+                    }
+                }
+                logger.debug("Built the " + contexts.size() + " lazy jndi contexts of " + name);
+            }
+        }, "OpenEJB-jndi-warmup-" + name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    public Object addToEnvironment(String propName, Object propVal) throws NamingException {
+        return getContext().addToEnvironment(propName, propVal);
+    }
+
+    public void bind(Name name, Object obj) throws NamingException {
+        getContext().bind(name, obj);
+    }
+
+    public void bind(String name, Object obj) throws NamingException {
+        getContext().bind(name, obj);
+    }
+
+    public void close() throws NamingException {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    public Name composeName(Name name, Name prefix) throws NamingException {
+        return getContext().composeName(name, prefix);
+    }
+
+    public String composeName(String name, String prefix) throws NamingException {
+        return getContext().composeName(name, prefix);
+    }
+
+    public Context createSubcontext(Name name) throws NamingException {
+        return getContext().createSubcontext(name);
+    }
+
+    public Context createSubcontext(String name) throws NamingException {
+        return getContext().createSubcontext(name);
+    }
+
+    public void destroySubcontext(Name name) throws NamingException {
+        getContext().destroySubcontext(name);
+    }
+
+    public void destroySubcontext(String name) throws NamingException {
+        getContext().destroySubcontext(name);
+    }
+
+    public Hashtable<?, ?> getEnvironment() throws NamingException {
+        return getContext().getEnvironment();
+    }
+
+    public String getNameInNamespace() throws NamingException {
+        return getContext().getNameInNamespace();
+    }
+
+    public NameParser getNameParser(Name name) throws NamingException {
+        return getContext().getNameParser(name);
+    }
+
+    public NameParser getNameParser(String name) throws NamingException {
+        return getContext().getNameParser(name);
+    }
+
+    public NamingEnumeration<NameClassPair> list(Name name) throws NamingException {
+        return getContext().list(name);
+    }
+
+    public NamingEnumeration<NameClassPair> list(String name) throws NamingException {
+        return getContext().list(name);
+    }
+
+    public NamingEnumeration<Binding> listBindings(Name name) throws NamingException {
+        return getContext().listBindings(name);
+    }
+
+    public NamingEnumeration<Binding> listBindings(String name) throws NamingException {
+        return getContext().listBindings(name);
+    }
+
+    public Object lookup(Name name) throws NamingException {
+        return getContext().lookup(name);
+    }
+
+    public Object lookup(String name) throws NamingException {
+        return getContext().lookup(name);
+    }
+
+    public Object lookupLink(Name name) throws NamingException {
+        return getContext().lookupLink(name);
+    }
+
+    public Object lookupLink(String name) throws NamingException {
+        return getContext().lookupLink(name);
+    }
+
+    public void rebind(Name name, Object obj) throws NamingException {
+        getContext().rebind(name, obj);
+    }
+
+    public void rebind(String name, Object obj) throws NamingException {
+        getContext().rebind(name, obj);
+    }
+
+    public Object removeFromEnvironment(String propName) throws NamingException {
+        return getContext().removeFromEnvironment(propName);
+    }
+
+    public void rename(Name oldName, Name newName) throws NamingException {
+        getContext().rename(oldName, newName);
+    }
+
+    public void rename(String oldName, String newName) throws NamingException {
+        getContext().rename(oldName, newName);
+    }
+
+    public void unbind(Name name) throws NamingException {
+        getContext().unbind(name);
+    }
+
+    public void unbind(String name) throws NamingException {
+        getContext().unbind(name);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.loader.SystemInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the independent parts of an application, the validator factories
+ * of its modules or its entity manager factories, on a bounded pool.
+ * <p/>
+ * Results are returned in the order of the tasks and a failure is reported
+ * for the first failing task in that order, so the caller binds and logs
+ * exactly as it would have done building them one after the other.  When
+ * a task fails the results of all the others are given to the optional
+ * {@link Discard} once they are built, nothing is left half deployed.
+ * <p/>
+ * Serial unless {@link #PARALLELISM} is more than one.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ParallelBuilder {
+    public static final String PARALLELISM = "openejb.assembler.parallelism";
+
+    private final int parallelism;
+
+    public ParallelBuilder() {
+        this(SystemInstance.get().getOptions().get(PARALLELISM, 1));
+    }
+
+    public ParallelBuilder(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public <T> List<T> build(final List<Callable<T>> tasks) throws Exception {
+        return build(tasks, null);
+    }
+
+    public <T> List<T> build(final List<Callable<T>> tasks, final Discard<T> discard) throws Exception {
+        final List<T> results = new ArrayList<T>(tasks.size());
+        if (parallelism <= 1 || tasks.size() <= 1) {
+            try {
+                for (final Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } catch (Exception e) {
+                discard(discard, results);
+                throw e;
+            } catch (Error e) {
+                discard(discard, results);
+                throw e;
+            }
+            return results;
+        }
+
+        final int threads = Math.min(parallelism, tasks.size());
+        final ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new BuilderThreadFactory());
+        try {
+            final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            for (final Callable<T> task : tasks) {
+                futures.add(executor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        final Thread thread = Thread.currentThread();
+                        final ClassLoader old = thread.getContextClassLoader();
+                        thread.setContextClassLoader(loader);
+                        try {
+                            return task.call();
+                        } finally {
+                            thread.setContextClassLoader(old);
+                        }
+                    }
+                }));
+            }
+
+            // wait for all of them, the results built after a failure are discarded too
+            ExecutionException failure = null;
+            for (final Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+
+            if (failure == null) {
+                return results;
+            }
+
+            discard(discard, results);
+
+            final Throwable cause = failure.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw failure;
+        } finally {
+            // let the other tasks complete, a provider shouldn't be interrupted while it initializes
+            executor.shutdown();
+        }
+    }
+
+    private static <T> void discard(final Discard<T> discard, final List<T> results) {
+        if (discard == null) {
+            return;
+        }
+        for (final T result : results) {
+            try {
+                discard.discard(result);
+            } catch (Throwable t) {
+                // the build failure is the one to report
+            }
+        }
+    }
+
+    /**
+     * Releases what a task built when the build as a whole fails
+     */
+    public static interface Discard<T> {
+        void discard(T result);
+    }
+
+    private static class BuilderThreadFactory implements ThreadFactory {
+        private static final AtomicInteger ids = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "OpenEJB-assembler-" + ids.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
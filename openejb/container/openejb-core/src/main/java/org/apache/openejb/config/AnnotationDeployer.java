@@ -410,6 +410,8 @@ public class AnnotationDeployer implements DynamicDeployer {
 
     public static class DiscoverAnnotatedBeans implements DynamicDeployer {
         public AppModule deploy(AppModule appModule) throws OpenEJBException {
+            FinderFactory.createFinders(appModule.getEjbModules());
+
             for (EjbModule ejbModule : appModule.getEjbModules()) {
                 ejbModule.initAppModule(appModule);
                 setModule(ejbModule);
@@ -0,0 +1,499 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.URLs;
+import org.apache.xbean.asm.AnnotationVisitor;
+import org.apache.xbean.asm.ClassReader;
+import org.apache.xbean.asm.commons.EmptyVisitor;
+import org.apache.xbean.finder.archive.Archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The classes of a jar the AnnotationFinder needs to read, so the
+ * bytecode of all the others is never parsed at startup.
+ * <p/>
+ * A class is indexed if it, one of its members or parameters carries an
+ * annotation, or if it extends one of the types the deployers look up
+ * by hierarchy.  The index is stamped with a digest of the name, crc and
+ * size of every class of the archive, it is ignored as soon as one of
+ * them changes.
+ * <p/>
+ * Indexes are read from {@link #INDEX_NAME} in the jar, as generated at
+ * build time by the openejb-embedded:index goal, or from the directory
+ * configured with {@link #INDEX_DIRECTORY_PROPERTY} where they are
+ * written the first time a jar is deployed.
+ *
+ * @version $Rev$ $Date$
+ */
+public class AnnotationIndex {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, AnnotationIndex.class);
+
+    public static final String INDEX_NAME = "META-INF/org.apache.openejb.annotation.index";
+    public static final String INDEX_PROPERTY = "openejb.scan.index";
+    public static final String INDEX_DIRECTORY_PROPERTY = "openejb.scan.index.directory";
+
+    private static final int MAGIC = 0x4f454149;
+    private static final int VERSION = 1;
+    private static final String CLASS_EXTENSION = ".class";
+
+    /**
+     * Looked up with findSubclasses even when subclasses aren't enabled,
+     * see AnnotationDeployer.  Subclasses are only followed within a jar.
+     */
+    private static final Set<String> SUPER_TYPES = Collections.singleton("javax/ws/rs/core/Application");
+
+    private final long stamp;
+    private final Set<String> classes;
+
+    public AnnotationIndex(final long stamp, final Set<String> classes) {
+        this.stamp = stamp;
+        this.classes = classes;
+    }
+
+    public long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * @return the names of the indexed classes, as used by {@link Archive.Entry#getName()}
+     */
+    public Set<String> getClasses() {
+        return classes;
+    }
+
+    /**
+     * @return the archive of the given location limited to the indexed
+     * classes, or the archive itself if there is no up to date index
+     */
+    public static Archive archive(final Archive archive, final URL location) {
+        if (!SystemInstance.get().getOptions().get(INDEX_PROPERTY, true) || FinderFactory.enableFindSubclasses()) {
+            return archive;
+        }
+
+        final AnnotationIndex index = load(location);
+        if (index == null) {
+            return archive;
+        }
+        return new IndexedArchive(archive, index.classes);
+    }
+
+    public static AnnotationIndex load(final URL location) {
+        final File file;
+        try {
+            file = URLs.toFile(location);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (!file.isFile()) {
+            return null;
+        }
+
+        ZipFile jar = null;
+        try {
+            jar = new ZipFile(file);
+            final long stamp = stamp(jar);
+
+            final ZipEntry entry = jar.getEntry(INDEX_NAME);
+            if (entry != null) {
+                final AnnotationIndex index = read(jar.getInputStream(entry));
+                if (index.stamp == stamp) {
+                    return index;
+                }
+                logger.warning("Annotation index of " + file.getName() + " doesn't match its classes, scanning it");
+            }
+
+            final File directory = directory();
+            if (directory == null) {
+                return null;
+            }
+
+            final File cached = new File(directory, name(stamp));
+            if (cached.isFile()) {
+                final AnnotationIndex index = read(IO.read(cached));
+                if (index.stamp == stamp) {
+                    return index;
+                }
+            }
+
+            final AnnotationIndex index = build(jar, stamp);
+            write(index, cached);
+            logger.debug("Indexed " + index.classes.size() + " classes of " + file.getName() + " in " + cached.getName());
+            return index;
+        } catch (IOException e) {
+            logger.warning("Can't use the annotation index of " + file.getName() + ", scanning it: " + e.getMessage());
+            return null;
+        } finally {
+            if (jar != null) {
+                try {
+                    jar.close();
+                } catch (IOException e) {
+                    // no-op
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name of the index of the jar or directory with the given stamp
+     */
+    public static String name(final long stamp) {
+        return Long.toHexString(stamp) + ".index";
+    }
+
+    private static File directory() throws IOException {
+        final String path = SystemInstance.get().getProperty(INDEX_DIRECTORY_PROPERTY);
+        if (path == null) {
+            return null;
+        }
+
+        final File directory = new File(path);
+        if (!directory.isAbsolute()) {
+            return SystemInstance.get().getBase().getDirectory(path, true);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory.getAbsolutePath());
+        }
+        return directory;
+    }
+
+    /**
+     * @param archive a jar or a directory of classes
+     */
+    public static AnnotationIndex build(final File archive) throws IOException {
+        if (archive.isDirectory()) {
+            final Map<String, long[]> checksums = new TreeMap<String, long[]>();
+            final Map<String, ClassData> data = new HashMap<String, ClassData>();
+            collect(archive, "", checksums, data);
+            return new AnnotationIndex(stamp(checksums), index(data));
+        }
+
+        final ZipFile jar = new ZipFile(archive);
+        try {
+            return build(jar, stamp(jar));
+        } finally {
+            jar.close();
+        }
+    }
+
+    private static AnnotationIndex build(final ZipFile jar, final long stamp) throws IOException {
+        final Map<String, ClassData> data = new HashMap<String, ClassData>();
+        final Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory() || !entry.getName().endsWith(CLASS_EXTENSION)) {
+                continue;
+            }
+
+            final InputStream in = jar.getInputStream(entry);
+            try {
+                data.put(entry.getName(), read(bytes(in)));
+            } finally {
+                in.close();
+            }
+        }
+        return new AnnotationIndex(stamp, index(data));
+    }
+
+    private static Set<String> index(final Map<String, ClassData> data) {
+        final Map<String, ClassData> byInternalName = new HashMap<String, ClassData>();
+        for (ClassData classData : data.values()) {
+            byInternalName.put(classData.name, classData);
+        }
+
+        final Set<String> classes = new TreeSet<String>();
+        for (ClassData classData : data.values()) {
+            if (classData.annotated || extendsSuperType(classData, byInternalName)) {
+                classes.add(classData.name.replace('/', '.'));
+            }
+        }
+        return classes;
+    }
+
+    private static boolean extendsSuperType(ClassData classData, final Map<String, ClassData> classes) {
+        for (int depth = 0; classData != null && depth < classes.size(); depth++) {
+            if (SUPER_TYPES.contains(classData.superName)) {
+                return true;
+            }
+            for (String name : classData.interfaces) {
+                if (SUPER_TYPES.contains(name)) {
+                    return true;
+                }
+            }
+            classData = classes.get(classData.superName);
+        }
+        return false;
+    }
+
+    private static long stamp(final ZipFile jar) {
+        final Map<String, long[]> checksums = new TreeMap<String, long[]>();
+        final Enumeration<? extends ZipEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(CLASS_EXTENSION)) {
+                checksums.put(entry.getName(), new long[]{entry.getCrc(), entry.getSize()});
+            }
+        }
+        return stamp(checksums);
+    }
+
+    private static long stamp(final Map<String, long[]> checksums) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final byte[] buffer = new byte[16];
+        for (Map.Entry<String, long[]> entry : checksums.entrySet()) {
+            try {
+                digest.update(entry.getKey().getBytes("UTF-8"));
+            } catch (java.io.UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            for (int i = 0; i < 8; i++) {
+                buffer[i] = (byte) (entry.getValue()[0] >>> (56 - 8 * i));
+                buffer[8 + i] = (byte) (entry.getValue()[1] >>> (56 - 8 * i));
+            }
+            digest.update(buffer);
+        }
+
+        final byte[] hash = digest.digest();
+        long stamp = 0;
+        for (int i = 0; i < 8; i++) {
+            stamp = (stamp << 8) | (hash[i] & 0xff);
+        }
+        return stamp;
+    }
+
+    private static void collect(final File directory, final String path, final Map<String, long[]> checksums, final Map<String, ClassData> data) throws IOException {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            final String name = path + file.getName();
+            if (file.isDirectory()) {
+                collect(file, name + "/", checksums, data);
+            } else if (name.endsWith(CLASS_EXTENSION)) {
+                final byte[] bytecode;
+                final InputStream in = IO.read(file);
+                try {
+                    bytecode = bytes(in);
+                } finally {
+                    in.close();
+                }
+
+                // the same checksums a jar of these classes has
+                final CRC32 crc = new CRC32();
+                crc.update(bytecode);
+                checksums.put(name, new long[]{crc.getValue(), bytecode.length});
+                data.put(name, read(bytecode));
+            }
+        }
+    }
+
+    private static byte[] bytes(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        IO.copy(in, out);
+        return out.toByteArray();
+    }
+
+    private static ClassData read(final byte[] bytecode) {
+        final ClassData data = new ClassData();
+        new ClassReader(bytecode).accept(data, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return data;
+    }
+
+    public static void write(final AnnotationIndex index, final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        final OutputStream out = IO.write(tmp);
+        try {
+            write(index, out);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            IO.copy(tmp, file);
+            IO.delete(tmp);
+        }
+    }
+
+    /**
+     * Names are sorted and only written from the first character they
+     * don't share with the previous one.
+     */
+    public static void write(final AnnotationIndex index, final OutputStream stream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(index.stamp);
+        out.writeInt(index.classes.size());
+
+        String previous = "";
+        for (String name : new TreeSet<String>(index.classes)) {
+            int shared = 0;
+            final int max = Math.min(previous.length(), name.length());
+            while (shared < max && previous.charAt(shared) == name.charAt(shared)) {
+                shared++;
+            }
+            out.writeShort(shared);
+            out.writeUTF(name.substring(shared));
+            previous = name;
+        }
+        out.flush();
+    }
+
+    public static AnnotationIndex read(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an annotation index");
+            }
+            final long stamp = in.readLong();
+            final int size = in.readInt();
+
+            final Set<String> classes = new TreeSet<String>();
+            String previous = "";
+            for (int i = 0; i < size; i++) {
+                final int shared = in.readUnsignedShort();
+                if (shared > previous.length()) {
+                    throw new IOException("Corrupted annotation index");
+                }
+                previous = previous.substring(0, shared) + in.readUTF();
+                classes.add(previous);
+            }
+            return new AnnotationIndex(stamp, classes);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class ClassData extends EmptyVisitor {
+        private String name;
+        private String superName;
+        private String[] interfaces;
+        private boolean annotated;
+
+        @Override
+        public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = (interfaces == null) ? new String[0] : interfaces;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+            annotated = true;
+            return super.visitAnnotation(desc, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(final int parameter, final String desc, final boolean visible) {
+            annotated = true;
+            return super.visitParameterAnnotation(parameter, desc, visible);
+        }
+    }
+
+    /**
+     * Iterates over the indexed classes only, any class can still be
+     * read or loaded when the finder resolves a parent or an annotation.
+     */
+    public static class IndexedArchive implements Archive {
+        private final Archive archive;
+        private final Set<String> classes;
+
+        public IndexedArchive(final Archive archive, final Set<String> classes) {
+            this.archive = archive;
+            this.classes = classes;
+        }
+
+        @Override
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            return archive.getBytecode(className);
+        }
+
+        @Override
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            return archive.loadClass(className);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            final Iterator<Entry> entries = archive.iterator();
+            return new Iterator<Entry>() {
+                private Entry next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && entries.hasNext()) {
+                        final Entry entry = entries.next();
+                        if (classes.contains(entry.getName())) {
+                            next = entry;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Entry next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    final Entry entry = next;
+                    next = null;
+                    return entry;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.ContainerInfo;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.OpenEjbVersion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The AppInfo of the applications deployed at startup kept on disk, so an
+ * unchanged application goes to the Assembler without being loaded and
+ * run through the deployers again.
+ * <p/>
+ * An entry is keyed by a digest of the archive, of the conf directory, of
+ * the system properties and of the ids of the containers and resources
+ * configured before the application.  As soon as one of them changes the
+ * application is configured again and its entry replaced.  The containers
+ * and resources the deployers created for the application and the urls
+ * its server extensions are looked up in are kept with its AppInfo.
+ * <p/>
+ * Disabled unless {@link #DIRECTORY_PROPERTY} is set.
+ *
+ * @version $Rev$ $Date$
+ */
+public class AppInfoCache {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, AppInfoCache.class);
+
+    public static final String DIRECTORY_PROPERTY = "openejb.app-info.cache.directory";
+
+    private static final int VERSION = 1;
+
+    private final File directory;
+
+    public AppInfoCache(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the cache configured with {@link #DIRECTORY_PROPERTY} or null
+     */
+    public static AppInfoCache create() {
+        final String path = SystemInstance.get().getProperty(DIRECTORY_PROPERTY);
+        if (path == null) {
+            return null;
+        }
+
+        try {
+            File directory = new File(path);
+            if (!directory.isAbsolute()) {
+                directory = SystemInstance.get().getBase().getDirectory(path, true);
+            } else if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can't create " + directory.getAbsolutePath());
+            }
+            return new AppInfoCache(directory.getCanonicalFile());
+        } catch (IOException e) {
+            logger.warning("Can't use the AppInfo cache in " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param configured the ids of the containers and resources already configured
+     */
+    public String key(final File archive, final Collection<String> configured) throws IOException {
+        final MessageDigest digest = digest();
+
+        update(digest, String.valueOf(OpenEjbVersion.get().getVersion()));
+        update(digest, archive.getAbsolutePath());
+        stamp(digest, archive, "");
+
+        final File conf = SystemInstance.get().getBase().getDirectory("conf");
+        if (conf.isDirectory()) {
+            stamp(digest, conf, "");
+        }
+
+        final Properties properties = SystemInstance.get().getProperties();
+        for (String name : new TreeSet<String>(properties.stringPropertyNames())) {
+            update(digest, name);
+            update(digest, properties.getProperty(name));
+        }
+
+        for (String id : new TreeSet<String>(configured)) {
+            update(digest, id);
+        }
+
+        return hex(digest.digest());
+    }
+
+    /**
+     * @return the entry of the archive if it was stored with this key and
+     * the files the application was deployed from are still there
+     */
+    public Entry get(final File archive, final String key) {
+        final File file = file(archive);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            final ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != VERSION || !key.equals(in.readUTF())) {
+                    return null;
+                }
+
+                final Entry entry = (Entry) in.readObject();
+                if (!exists(entry.appInfo)) {
+                    return null;
+                }
+                return entry;
+            } finally {
+                IO.close(in);
+            }
+        } catch (Exception e) {
+            logger.warning("Can't read the cached AppInfo of " + archive.getName() + ", configuring it: " + e.getMessage());
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            return null;
+        }
+    }
+
+    public void put(final File archive, final String key, final Entry entry) {
+        final File file = file(archive);
+        final File tmp = new File(file.getPath() + ".tmp");
+        try {
+            final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                out.writeObject(entry);
+            } finally {
+                IO.close(out);
+            }
+
+            // an interrupted write never leaves a partial entry
+            if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+                throw new IOException("Can't rename " + tmp.getName() + " to " + file.getName());
+            }
+            logger.debug("Cached the AppInfo of " + archive.getName() + " in " + file.getName());
+        } catch (IOException e) {
+            logger.warning("Can't cache the AppInfo of " + archive.getName() + ": " + e.getMessage());
+            if (!tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    private File file(final File archive) {
+        final MessageDigest digest = digest();
+        update(digest, archive.getAbsolutePath());
+        return new File(directory, hex(digest.digest()) + ".appinfo");
+    }
+
+    private static boolean exists(final AppInfo appInfo) {
+        final List<String> files = new ArrayList<String>(appInfo.paths);
+        files.addAll(appInfo.libs);
+        if (appInfo.path != null) {
+            files.add(appInfo.path);
+        }
+        for (String path : files) {
+            if (!new File(path).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Name, crc and size of the entries of a jar, name, size and last
+     * modification of the files of a directory.
+     */
+    private void stamp(final MessageDigest digest, final File file, final String path) throws IOException {
+        if (file.equals(directory)) {
+            // the entries themselves
+            return;
+        }
+
+        if (file.isDirectory()) {
+            final File[] files = file.listFiles();
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files);
+            for (File child : files) {
+                stamp(digest, child, path + "/" + child.getName());
+            }
+            return;
+        }
+
+        update(digest, path);
+        update(digest, file.length());
+        update(digest, file.lastModified());
+
+        if (path.length() == 0 && file.isFile()) {
+            ZipFile jar = null;
+            try {
+                jar = new ZipFile(file);
+                final Enumeration<? extends ZipEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    update(digest, entry.getName());
+                    update(digest, entry.getCrc());
+                    update(digest, entry.getSize());
+                }
+            } catch (IOException e) {
+                // not a jar, its size and last modification are enough
+            } finally {
+                if (jar != null) {
+                    jar.close();
+                }
+            }
+        }
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        try {
+            digest.update((value == null ? "" : value).getBytes("UTF-8"));
+            digest.update((byte) 0);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(final MessageDigest digest, final long value) {
+        for (int i = 0; i < 8; i++) {
+            digest.update((byte) (value >>> (56 - 8 * i)));
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final AppInfo appInfo;
+        public final List<ContainerInfo> containers;
+        public final List<ResourceInfo> resources;
+        public final List<URL[]> extensions;
+
+        public Entry(final AppInfo appInfo, final List<ContainerInfo> containers, final List<ResourceInfo> resources, final List<URL[]> extensions) {
+            this.appInfo = appInfo;
+            this.containers = new ArrayList<ContainerInfo>(containers);
+            this.resources = new ArrayList<ResourceInfo>(resources);
+            this.extensions = new ArrayList<URL[]>(extensions);
+        }
+    }
+}
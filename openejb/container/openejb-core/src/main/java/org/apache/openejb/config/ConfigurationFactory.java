@@ -92,6 +92,7 @@ import org.apache.xbean.finder.ResourceFinder;
 
 import javax.ejb.embeddable.EJBContainer;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
@@ -128,6 +129,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
 
     private String configLocation;
     private OpenEjbConfiguration sys;
+    private AppInfoCache appInfoCache;
     private Openejb openejb;
     private DynamicDeployer deployer;
     private final DeploymentLoader deploymentLoader;
@@ -438,6 +440,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
         loadPropertiesDeclaredConfiguration(openejb);
 
         sys = new OpenEjbConfiguration();
+        appInfoCache = AppInfoCache.create();
         sys.containerSystem = new ContainerSystemInfo();
         sys.facilities = new FacilitiesInfo();
 
@@ -542,6 +545,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
         final OpenEjbConfiguration finished = sys;
         sys = null;
         openejb = null;
+        appInfoCache = null;
 
         return finished;
     }
@@ -721,13 +725,52 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     public AppInfo configureApplication(final File jarFile) throws OpenEJBException {
         logger.debug("Beginning load: " + jarFile.getAbsolutePath());
 
+        // only at startup, where what the deployers install goes to sys
+        final AppInfoCache cache = sys != null ? appInfoCache : null;
+        String key = null;
+        if (cache != null) {
+            try {
+                key = cache.key(jarFile, configuredIds());
+            } catch (IOException e) {
+                logger.warning("Can't compute the AppInfo cache key of " + jarFile.getAbsolutePath() + ": " + e.getMessage());
+            }
+
+            final AppInfoCache.Entry entry = key != null ? cache.get(jarFile, key) : null;
+            if (entry != null) {
+                logger.info("Using the cached configuration of " + jarFile.getAbsolutePath());
+                for (final URL[] urls : entry.extensions) {
+                    EventHelper.installExtensions(new ResourceFinder("META-INF", urls));
+                }
+                for (final ContainerInfo containerInfo : entry.containers) {
+                    install(containerInfo);
+                }
+                for (final ResourceInfo resourceInfo : entry.resources) {
+                    install(resourceInfo);
+                }
+                return entry.appInfo;
+            }
+        }
+
         try {
+            final int containers = sys != null ? sys.containerSystem.containers.size() : 0;
+            final int resources = sys != null ? sys.facilities.resources.size() : 0;
+
             final AppModule appModule = deploymentLoader.load(jarFile);
             final AppInfo appInfo = configureApplication(appModule);
 
             // TODO This is temporary -- we need to do this in AppInfoBuilder
             appInfo.paths.add(appInfo.path);
             appInfo.paths.add(jarFile.getAbsolutePath());
+
+            if (key != null) {
+                // the containers and resources auto-created for this application
+                final List<ContainerInfo> installedContainers = sys.containerSystem.containers;
+                final List<ResourceInfo> installedResources = sys.facilities.resources;
+                cache.put(jarFile, key, new AppInfoCache.Entry(appInfo,
+                        installedContainers.subList(containers, installedContainers.size()),
+                        installedResources.subList(resources, installedResources.size()),
+                        extensionUrls(appModule)));
+            }
             return appInfo;
         } catch (ValidationFailedException e) {
             logger.warning("configureApplication.loadFailed", jarFile.getAbsolutePath(), e.getMessage()); // DO not include the stacktrace in the message
@@ -851,9 +894,27 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     public AppInfo configureApplication(final AppModule appModule) throws OpenEJBException {
+        for (final URL[] urls : extensionUrls(appModule)) {
+            EventHelper.installExtensions(new ResourceFinder("META-INF", urls));
+        }
+
+        final String location = appModule.getJarLocation();
+        logger.info("config.configApp", null != location ? location : appModule.getModuleId());
+        deployer.deploy(appModule);
+        final AppInfoBuilder appInfoBuilder = new AppInfoBuilder(this);
+
+        return appInfoBuilder.build(appModule);
+    }
+
+    /**
+     * @return the groups of urls server extensions of the application are looked up in
+     */
+    private List<URL[]> extensionUrls(final AppModule appModule) {
+        final List<URL[]> extensions = new ArrayList<URL[]>();
+
         final List<URL> libs = appModule.getAdditionalLibraries();
         if (libs != null && libs.size() > 0) {
-            EventHelper.installExtensions(new ResourceFinder("META-INF", libs.toArray(new URL[libs.size()])));
+            extensions.add(libs.toArray(new URL[libs.size()]));
         }
         for (final EjbModule ejb : appModule.getEjbModules()) {
             try {
@@ -861,7 +922,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
                 if (uri.isAbsolute()) {
                     final URL url = uri.toURL();
                     if (libs != null && !libs.contains(url)) {
-                        EventHelper.installExtensions(new ResourceFinder("META-INF", url));
+                        extensions.add(new URL[]{url});
                     }
                 }
             } catch (IllegalArgumentException iae) {
@@ -875,16 +936,21 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
         for (final WebModule web : appModule.getWebModules()) {
             final List<URL> webLibs = web.getScannableUrls();
             if (webLibs != null && webLibs.size() > 0) {
-                EventHelper.installExtensions(new ResourceFinder("META-INF", webLibs.toArray(new URL[webLibs.size()])));
+                extensions.add(webLibs.toArray(new URL[webLibs.size()]));
             }
         }
+        return extensions;
+    }
 
-        final String location = appModule.getJarLocation();
-        logger.info("config.configApp", null != location ? location : appModule.getModuleId());
-        deployer.deploy(appModule);
-        final AppInfoBuilder appInfoBuilder = new AppInfoBuilder(this);
-
-        return appInfoBuilder.build(appModule);
+    private List<String> configuredIds() {
+        final List<String> ids = new ArrayList<String>();
+        for (final ContainerInfo containerInfo : sys.containerSystem.containers) {
+            ids.add(containerInfo.id);
+        }
+        for (final ResourceInfo resourceInfo : sys.facilities.resources) {
+            ids.add(resourceInfo.id);
+        }
+        return ids;
     }
 
     private static class DefaultService {
@@ -37,6 +37,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class FinderFactory {
 
@@ -56,6 +60,54 @@ public class FinderFactory {
         return new AnnotationFinder(ClasspathArchive.archive(classLoader, url));
     }
 
+    /**
+     * Creates the finders the deployer would create one after the other
+     * on a pool of {@link ParallelArchive#PARALLELISM} threads.  A module
+     * whose finder can't be created is left without one so the deployer
+     * reports the failure as usual.
+     */
+    public static void createFinders(final Collection<EjbModule> ejbModules) {
+        final int parallelism = ParallelArchive.parallelism();
+        if (parallelism <= 1) {
+            return;
+        }
+
+        final List<EjbModule> modules = new ArrayList<EjbModule>();
+        for (EjbModule ejbModule : ejbModules) {
+            if (ejbModule.getFinder() == null && (ejbModule.getEjbJar() == null || !ejbModule.getEjbJar().isMetadataComplete())) {
+                modules.add(ejbModule);
+            }
+        }
+        if (modules.size() <= 1) {
+            return;
+        }
+
+        final ExecutorService executor = ParallelArchive.executor(Math.min(parallelism, modules.size()));
+        try {
+            final List<Future<IAnnotationFinder>> finders = new ArrayList<Future<IAnnotationFinder>>(modules.size());
+            for (final EjbModule module : modules) {
+                finders.add(executor.submit(new Callable<IAnnotationFinder>() {
+                    @Override
+                    public IAnnotationFinder call() throws Exception {
+                        return createFinder(module);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < modules.size(); i++) {
+                try {
+                    modules.get(i).setFinder(finders.get(i).get());
+                } catch (ExecutionException e) {
+                    // no-op
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     public IAnnotationFinder create(DeploymentModule module) throws Exception {
         IAnnotationFinder finder;
         if (module instanceof WebModule) {
@@ -83,11 +135,11 @@ public class FinderFactory {
             }
 
             if (module instanceof Module) {
-                final AnnotationFinder annotationFinder = new AnnotationFinder(new DebugArchive(new ConfigurableClasspathArchive((Module) module, url)));
+                final AnnotationFinder annotationFinder = new AnnotationFinder(new DebugArchive(indexed(new ConfigurableClasspathArchive((Module) module, url), url)));
                 enableFinderOptions(annotationFinder);
                 finder = annotationFinder.link();
             } else {
-                final AnnotationFinder annotationFinder = new AnnotationFinder(new DebugArchive(new ConfigurableClasspathArchive(module.getClassLoader(), url)));
+                final AnnotationFinder annotationFinder = new AnnotationFinder(new DebugArchive(indexed(new ConfigurableClasspathArchive(module.getClassLoader(), url), url)));
                 enableFinderOptions(annotationFinder);
                 finder = annotationFinder.link();
             }
@@ -98,6 +150,17 @@ public class FinderFactory {
         return new ModuleLimitedFinder(finder);
     }
 
+    /**
+     * The CDI beans of a jar are all the classes the finder read, all of
+     * them must be scanned if it has a beans.xml.
+     */
+    private static Archive indexed(final Archive archive, final URL url) {
+        if (AnnotationDeployer.DiscoverAnnotatedBeans.hasBeansXml(url)) {
+            return archive;
+        }
+        return AnnotationIndex.archive(archive, url);
+    }
+
     public static class DebugArchive implements Archive {
         private final Archive archive;
 
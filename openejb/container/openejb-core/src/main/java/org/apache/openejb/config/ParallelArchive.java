@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A composite archive reading the classes of its archives on several
+ * threads.
+ * <p/>
+ * The AnnotationFinder builds its model while iterating over the entries
+ * so the parsing itself stays on the deploying thread, but the jars are
+ * opened, inflated and read ahead by a bounded pool.  Entries are still
+ * returned archive after archive in declaration order, only a few
+ * archives are buffered ahead of the one being iterated.
+ * <p/>
+ * Enabled when {@link #PARALLELISM} is more than one.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ParallelArchive implements Archive {
+    public static final String PARALLELISM = "openejb.scan.parallelism";
+
+    private final List<Archive> archives;
+    private final Archive composite;
+    private final int parallelism;
+
+    public ParallelArchive(final List<Archive> archives, final int parallelism) {
+        this.archives = archives;
+        this.composite = new CompositeArchive(archives);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return a parallel archive if the scan is parallel and there is
+     * more than one archive, a plain composite archive otherwise
+     */
+    public static Archive archive(final List<Archive> archives) {
+        final int parallelism = parallelism();
+        if (parallelism <= 1 || archives.size() <= 1) {
+            return new CompositeArchive(archives);
+        }
+        return new ParallelArchive(archives, parallelism);
+    }
+
+    public static int parallelism() {
+        return SystemInstance.get().getOptions().get(PARALLELISM, 1);
+    }
+
+    /**
+     * Threads die when idle so an iteration stopped early leaks nothing.
+     */
+    public static ExecutorService executor(final int parallelism) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ScannerThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+        return composite.getBytecode(className);
+    }
+
+    @Override
+    public Class<?> loadClass(final String className) throws ClassNotFoundException {
+        return composite.loadClass(className);
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return new ReadAheadIterator();
+    }
+
+    private class ReadAheadIterator implements Iterator<Entry> {
+        private final ExecutorService executor = executor(parallelism);
+        private final List<Future<List<Entry>>> read = new ArrayList<Future<List<Entry>>>(archives.size());
+        private Iterator<Entry> current = Collections.<Entry>emptyList().iterator();
+        private int next;
+
+        private ReadAheadIterator() {
+            for (int i = 0; i < Math.min(parallelism * 2, archives.size()); i++) {
+                submit(i);
+            }
+        }
+
+        private void submit(final int index) {
+            final Archive archive = archives.get(index);
+            read.add(executor.submit(new Callable<List<Entry>>() {
+                @Override
+                public List<Entry> call() throws Exception {
+                    final List<Entry> entries = new ArrayList<Entry>();
+                    for (Entry entry : archive) {
+                        entries.add(new ReadEntry(entry));
+                    }
+                    return entries;
+                }
+            }));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (next == archives.size()) {
+                    executor.shutdown();
+                    return false;
+                }
+
+                final Future<List<Entry>> future = read.set(next, null);
+                next++;
+                if (read.size() < archives.size()) {
+                    submit(read.size());
+                }
+
+                try {
+                    current = future.get().iterator();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    executor.shutdownNow();
+                    throw new IllegalStateException("Interrupted while scanning", e);
+                } catch (ExecutionException e) {
+                    executor.shutdownNow();
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The bytecode of an entry, a failure to read it is reported when
+     * the finder asks for it as it would have been without read ahead.
+     */
+    private static class ReadEntry implements Entry {
+        private final String name;
+        private final byte[] bytecode;
+        private final IOException failure;
+
+        private ReadEntry(final Entry entry) {
+            this.name = entry.getName();
+
+            byte[] bytecode = null;
+            IOException failure = null;
+            try {
+                final InputStream in = entry.getBytecode();
+                try {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+                    IO.copy(in, out);
+                    bytecode = out.toByteArray();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            this.bytecode = bytecode;
+            this.failure = failure;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public InputStream getBytecode() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            return new ByteArrayInputStream(bytecode);
+        }
+    }
+
+    private static class ScannerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger ids = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "OpenEJB-scanner-" + ids.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
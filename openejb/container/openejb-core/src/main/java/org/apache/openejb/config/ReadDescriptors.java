@@ -38,6 +38,7 @@ import org.apache.openejb.sxc.ApplicationClientXml;
 import org.apache.openejb.sxc.EjbJarXml;
 import org.apache.openejb.sxc.FacesConfigXml;
 import org.apache.openejb.sxc.HandlerChainsXml;
+import org.apache.openejb.sxc.JavaWsdlMappingXml;
 import org.apache.openejb.sxc.TldTaglibXml;
 import org.apache.openejb.sxc.WebXml;
 import org.apache.openejb.sxc.WebservicesXml;
@@ -647,7 +648,7 @@ public class ReadDescriptors implements DynamicDeployer {
     public static JavaWsdlMapping readJaxrpcMapping(final URL url) throws OpenEJBException {
         final JavaWsdlMapping wsdlMapping;
         try {
-            wsdlMapping = (JavaWsdlMapping) JaxbJavaee.unmarshalJavaee(JavaWsdlMapping.class, IO.read(url));
+            wsdlMapping = JavaWsdlMappingXml.unmarshal(url);
         } catch (SAXException e) {
             throw new OpenEJBException("Cannot parse the JaxRPC mapping file: " + url.toExternalForm(), e);
         } catch (JAXBException e) {
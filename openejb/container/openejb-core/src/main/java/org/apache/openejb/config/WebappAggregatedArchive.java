@@ -17,7 +17,6 @@
 package org.apache.openejb.config;
 
 import org.apache.xbean.finder.archive.Archive;
-import org.apache.xbean.finder.archive.CompositeArchive;
 import org.apache.xbean.finder.archive.FilteredArchive;
 import org.apache.xbean.finder.filter.Filter;
 
@@ -54,10 +53,11 @@ public class WebappAggregatedArchive implements Archive, ScanConstants {
             final List<String> classes = new ArrayList<String>();
             final Archive archive = new FilteredArchive(new ConfigurableClasspathArchive(module.getClassLoader(), Arrays.asList(url)), new ScanXmlSaverFilter(scanXmlExists, handler, classes));
             map.put(url, classes);
-            archives.add(archive);
+            // the filter still sees every class so the CDI classes of the url are complete
+            archives.add(AnnotationIndex.archive(archive, url));
         }
 
-        archive = new CompositeArchive(archives);
+        archive = ParallelArchive.archive(archives);
     }
 
     public WebappAggregatedArchive(final ClassLoader classLoader, final Map<String, Object> altDDs, ArrayList<URL> xmls) {
@@ -51,6 +51,8 @@ public class StatelessContainerBuilder extends Container {
     private org.apache.openejb.util.Duration idleTimeout = org.apache.openejb.util.Duration.parse("0 minutes");
     @XmlAttribute
     private boolean garbageCollection = false;
+    @XmlAttribute
+    private boolean threadAffinity = false;
     @XmlJavaTypeAdapter(DurationAdapter.class)
     @XmlAttribute
     private org.apache.openejb.util.Duration sweepInterval = org.apache.openejb.util.Duration.parse("5 minutes");
@@ -228,6 +230,19 @@ public class StatelessContainerBuilder extends Container {
         return garbageCollection;
     }
 
+    public StatelessContainerBuilder withThreadAffinity(boolean threadAffinity) {
+        this.threadAffinity = threadAffinity;
+        return this;
+    }
+
+    public void setThreadAffinity(boolean threadAffinity) {
+        this.threadAffinity = threadAffinity;
+    }
+
+    public boolean getThreadAffinity() {
+        return threadAffinity;
+    }
+
     public StatelessContainerBuilder withSweepInterval(org.apache.openejb.util.Duration sweepInterval) {
         this.sweepInterval = sweepInterval;
         return this;
@@ -25,12 +25,25 @@ import java.lang.reflect.Method;
 public class Interceptor {
     private final Object instance;
     private final Method method;
+    private final boolean aroundInvoke;
 
     public Interceptor(Object instance, Method method) {
         if (instance == null) throw new NullPointerException("instance is null");
         if (method == null) throw new NullPointerException("method is null");
+        this.instance = instance;
+        this.method = ReflectionInvocationContext.accessible(method);
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        this.aroundInvoke = parameterTypes.length == 1 && parameterTypes[0] == InvocationContext.class;
+    }
+
+    /**
+     * Binds a method already resolved by an {@link InterceptorChain}
+     */
+    Interceptor(Object instance, Method method, boolean aroundInvoke) {
         this.instance = instance;
         this.method = method;
+        this.aroundInvoke = aroundInvoke;
     }
 
     public Object getInstance() {
@@ -40,4 +53,12 @@ public class Interceptor {
     public Method getMethod() {
         return method;
     }
+
+    /**
+     * @return true if the method takes the InvocationContext, false for
+     * callbacks declared on the bean class itself
+     */
+    public boolean isAroundInvoke() {
+        return aroundInvoke;
+    }
 }
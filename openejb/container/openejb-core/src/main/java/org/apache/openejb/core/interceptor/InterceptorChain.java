@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.util.proxy.DynamicProxyImplFactory;
+
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The interceptor methods of a target method for one operation, resolved
+ * once so a call only has to bind the interceptor instances of its bean
+ * instance.
+ *
+ * @version $Rev$ $Date$
+ */
+public class InterceptorChain {
+    private final Method targetMethod;
+    private final Operation operation;
+    private final String[] interceptorClasses;
+    private final Method[] methods;
+    private final boolean[] aroundInvokes;
+
+    public InterceptorChain(Method targetMethod, Operation operation, List<InterceptorData> interceptorDatas) {
+        if (interceptorDatas == null) throw new NullPointerException("interceptorDatas is null");
+        this.targetMethod = targetMethod;
+        this.operation = operation;
+
+        List<String> classes = new ArrayList<String>(interceptorDatas.size());
+        List<Method> methods = new ArrayList<Method>(interceptorDatas.size());
+
+        for (InterceptorData interceptorData : interceptorDatas) {
+            String interceptorClass = interceptorData.getInterceptorClass().getName();
+            for (Method method : interceptorData.getMethods(operation)) {
+                classes.add(interceptorClass);
+                methods.add(ReflectionInvocationContext.accessible(method));
+            }
+        }
+
+        this.interceptorClasses = classes.toArray(new String[classes.size()]);
+        this.methods = methods.toArray(new Method[methods.size()]);
+        this.aroundInvokes = new boolean[this.methods.length];
+        for (int i = 0; i < this.methods.length; i++) {
+            Class<?>[] parameterTypes = this.methods[i].getParameterTypes();
+            aroundInvokes[i] = parameterTypes.length == 1 && parameterTypes[0] == InvocationContext.class;
+        }
+    }
+
+    public Method getTargetMethod() {
+        return targetMethod;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @param interceptorInstances the interceptor instances of a bean instance by class name
+     */
+    public Interceptor[] bind(Map<String, Object> interceptorInstances) {
+        Interceptor[] interceptors = new Interceptor[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            Object interceptorInstance = interceptorInstances.get(interceptorClasses[i]);
+            if (interceptorInstance == null) {
+                throw new IllegalArgumentException("No interceptor of type " + interceptorClasses[i]);
+            }
+
+            Object handler = DynamicProxyImplFactory.realHandler(interceptorInstance);
+            if (handler != null && methods[i].getDeclaringClass().equals(handler.getClass())) { // dynamic impl
+                interceptorInstance = handler;
+            }
+            interceptors[i] = new Interceptor(interceptorInstance, methods[i], aroundInvokes[i]);
+        }
+        return interceptors;
+    }
+}
@@ -20,10 +20,9 @@ import static org.apache.openejb.util.Join.join;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Stack;
 
 import javax.interceptor.InvocationContext;
@@ -33,7 +32,6 @@ import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.util.Classes;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
-import org.apache.openejb.util.proxy.DynamicProxyImplFactory;
 
 /**
  * @version $Rev$ $Date$
@@ -41,43 +39,23 @@ import org.apache.openejb.util.proxy.DynamicProxyImplFactory;
 public class InterceptorStack {
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
     private final Object beanInstance;
-    private final List<Interceptor> interceptors;
+    private final Interceptor[] interceptors;
     private final Method targetMethod;
     private final Operation operation;
 
     public InterceptorStack(Object beanInstance, Method targetMethod, Operation operation, List<InterceptorData> interceptorDatas, Map<String, Object> interceptorInstances) {
-        if (interceptorDatas == null) throw new NullPointerException("interceptorDatas is null");
+        this(beanInstance, new InterceptorChain(targetMethod, operation, interceptorDatas), interceptorInstances);
+    }
+
+    /**
+     * Only binds the interceptor instances of this call to the chain
+     */
+    public InterceptorStack(Object beanInstance, InterceptorChain chain, Map<String, Object> interceptorInstances) {
         if (interceptorInstances == null) throw new NullPointerException("interceptorInstances is null");
         this.beanInstance = beanInstance;
-        this.targetMethod = targetMethod;
-        this.operation = operation;
-
-        interceptors = new ArrayList<Interceptor>(interceptorDatas.size());
-//        try {
-//            interceptors.add(new Interceptor(new Debug(), Debug.class.getMethod("invoke", InvocationContext.class)));
-//        } catch (Throwable e) {
-//        }
-
-        for (InterceptorData interceptorData : interceptorDatas) {
-            Class interceptorClass = interceptorData.getInterceptorClass();
-            Object interceptorInstance = interceptorInstances.get(interceptorClass.getName());
-            if (interceptorInstance == null) {
-                throw new IllegalArgumentException("No interceptor of type " + interceptorClass.getName());
-            }
-
-            Set<Method> methods = interceptorData.getMethods(operation);
-            for (Method method : methods) {
-                final Interceptor interceptor;
-                Object handler = DynamicProxyImplFactory.realHandler(interceptorInstance);
-                if (handler != null && method.getDeclaringClass().equals(handler.getClass())) { // dynamic impl
-                    interceptor = new Interceptor(handler, method);
-                } else {
-                    interceptor = new Interceptor(interceptorInstance, method);
-                }
-                interceptors.add(interceptor);
-            }
-        }
-
+        this.targetMethod = chain.getTargetMethod();
+        this.operation = chain.getOperation();
+        this.interceptors = chain.bind(interceptorInstances);
     }
 
     private static final ThreadLocal<Stack> stack = new ThreadLocal<Stack>();
@@ -146,7 +124,7 @@ public class InterceptorStack {
 
     public Object invoke(javax.xml.ws.handler.MessageContext messageContext, Object... parameters) throws Exception {
         try {
-            InvocationContext invocationContext = new JaxWsInvocationContext(operation, interceptors, beanInstance, targetMethod, messageContext, parameters);
+            InvocationContext invocationContext = new JaxWsInvocationContext(operation, Arrays.asList(interceptors), beanInstance, targetMethod, messageContext, parameters);
             ThreadContext.getThreadContext().set(InvocationContext.class, invocationContext);
             Object value = invocationContext.proceed();
             return value;
@@ -157,7 +135,7 @@ public class InterceptorStack {
 
     public Object invoke(javax.xml.rpc.handler.MessageContext messageContext, Object... parameters) throws Exception {
         try {
-            InvocationContext invocationContext = new JaxRpcInvocationContext(operation, interceptors, beanInstance, targetMethod, messageContext, parameters);
+            InvocationContext invocationContext = new JaxRpcInvocationContext(operation, Arrays.asList(interceptors), beanInstance, targetMethod, messageContext, parameters);
             ThreadContext.getThreadContext().set(InvocationContext.class, invocationContext);
             Object value = invocationContext.proceed();
             return value;
@@ -18,9 +18,9 @@ package org.apache.openejb.core.interceptor;
 
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.util.Classes;
+import org.apache.openejb.util.SetAccessible;
 
 import javax.interceptor.InvocationContext;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.List;
 import java.util.TreeMap;
@@ -28,34 +28,75 @@ import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
 
 /**
+ * Walks the interceptor chain by index.  The context data map and the
+ * parameter types of the target method are only created when asked for.
+ *
  * @version $Rev$ $Date$
  */
 public class ReflectionInvocationContext implements InvocationContext {
-    private final Iterator<Interceptor> interceptors;
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
+    /**
+     * Cleared the first time a security manager refuses setAccessible,
+     * from then on methods are invoked with the regular access checks
+     */
+    private static volatile boolean suppressAccessChecks = true;
+
+    private final Interceptor[] interceptors;
+    private int next;
     private final Object target;
     private final Method method;
     private final Object[] parameters;
-    private final Map<String, Object> contextData = new TreeMap<String, Object>();
-    private final Class<?>[] parameterTypes;
+    private Map<String, Object> contextData;
+    private Class<?>[] parameterTypes;
+
+    /**
+     * The argument array of around invoke methods, the same for all of them
+     */
+    private final Object[] self = new Object[]{this};
 
     private final Operation operation;
 
     public ReflectionInvocationContext(Operation operation, List<Interceptor> interceptors, Object target, Method method, Object... parameters) {
+        this(operation, toArray(interceptors), target, method, parameters);
+    }
+
+    public ReflectionInvocationContext(Operation operation, Interceptor[] interceptors, Object target, Method method, Object... parameters) {
         if (operation == null) throw new NullPointerException("operation is null");
         if (interceptors == null) throw new NullPointerException("interceptors is null");
         if (target == null) throw new NullPointerException("target is null");
 
         this.operation = operation;
-        this.interceptors = interceptors.iterator();
+        this.interceptors = interceptors;
         this.target = target;
-        this.method = method;
+        this.method = (method == null) ? null : accessible(method);
         this.parameters = parameters;
+    }
 
-        if (method == null) {
-            parameterTypes = new Class[0];
-        } else {
-            parameterTypes = method.getParameterTypes();
+    private static Interceptor[] toArray(List<Interceptor> interceptors) {
+        return (interceptors == null) ? null : interceptors.toArray(new Interceptor[interceptors.size()]);
+    }
+
+    /**
+     * Turns off the access checks Method.invoke would otherwise do on
+     * every call, unless a security manager doesn't allow it.
+     */
+    static Method accessible(Method method) {
+        if (suppressAccessChecks && !method.isAccessible()) {
+            try {
+                SetAccessible.on(method);
+            } catch (SecurityException e) {
+                suppressAccessChecks = false;
+            }
+        }
+        return method;
+    }
+
+    private Class<?>[] getParameterTypes() {
+        if (parameterTypes == null) {
+            parameterTypes = (method == null) ? new Class[0] : method.getParameterTypes();
         }
+        return parameterTypes;
     }
 
     public Object getTimer() {
@@ -101,6 +142,7 @@ public class ReflectionInvocationContext implements InvocationContext {
         if (parameters.length != this.parameters.length) {
             throw new IllegalArgumentException("Expected " + this.parameters.length + " parameters, but only got " + parameters.length + " parameters");
         }
+        Class<?>[] parameterTypes = getParameterTypes();
         for (int i = 0; i < parameters.length; i++) {
             Object parameter = parameters[i];
             Class<?> parameterType = parameterTypes[i];
@@ -125,109 +167,47 @@ public class ReflectionInvocationContext implements InvocationContext {
     }
 
     public Map<String, Object> getContextData() {
+        if (contextData == null) {
+            contextData = new TreeMap<String, Object>();
+        }
         return contextData;
     }
 
-    private Invocation next() {
-        if (interceptors.hasNext()) {
-            Interceptor interceptor = interceptors.next();
-            Object nextInstance = interceptor.getInstance();
-            Method nextMethod = interceptor.getMethod();
+    public Object proceed() throws Exception {
+        // The bulk of the logic of this method has intentionally been kept
+        // flat so stepping through a large stack in a debugger can be done quickly.
+        // Simply put one break point on the 'invoke' calls.
+        try {
+            if (next < interceptors.length) {
+                Interceptor interceptor = interceptors[next++];
 
-            if (nextMethod.getParameterTypes().length == 1 && nextMethod.getParameterTypes()[0] == InvocationContext.class) {
-                return new InterceptorInvocation(nextInstance, nextMethod, this);
-            } else {
-                return new LifecycleInvocation(nextInstance, nextMethod, this, parameters);
-            }
-        } else if (method != null) {
-            //EJB 3.1, it is allowed that timeout method does not have parameter Timer.class,
-            //However, while invoking the timeout method, the timer value is passed, as it is also required by InnvocationContext.getTimer() method
-            Object[] methodParameters;
-            if (operation.equals(Operation.TIMEOUT) && method.getParameterTypes().length == 0) {
-                methodParameters = new Object[0];
+                if (interceptor.isAroundInvoke()) {
+                    return interceptor.getMethod().invoke(interceptor.getInstance(), self);
+                }
+
+                // invoke the callback
+                interceptor.getMethod().invoke(interceptor.getInstance(), parameters);
+
+                // we need to call proceed so callbacks in subclasses get invoked
+                return proceed();
+            } else if (method != null) {
+                //EJB 3.1, it is allowed that timeout method does not have parameter Timer.class,
+                //However, while invoking the timeout method, the timer value is passed, as it is also required by InnvocationContext.getTimer() method
+                Object[] methodParameters;
+                if (operation.equals(Operation.TIMEOUT) && getParameterTypes().length == 0) {
+                    methodParameters = NO_PARAMETERS;
+                } else {
+                    methodParameters = parameters;
+                }
+                return method.invoke(target, methodParameters);
             } else {
-                methodParameters = parameters;
+                return null;
             }
-            return new BeanInvocation(target, method, methodParameters);
-        } else {
-            return new NoOpInvocation();
-        }
-    }
-
-    public Object proceed() throws Exception {
-        // The bulk of the logic of this method has intentionally been moved
-        // out so stepping through a large stack in a debugger can be done quickly.
-        // Simply put one break point on 'next.invoke()' or one inside that method.
-        try {
-            Invocation next = next();
-            return next.invoke();
         } catch (InvocationTargetException e) {
             throw unwrapInvocationTargetException(e);
         }
     }
 
-    private abstract static class Invocation {
-        private final Method method;
-        private final Object[] args;
-        private final Object target;
-
-        public Invocation(Object target, Method method, Object[] args) {
-            this.target = target;
-            this.method = method;
-            this.args = args;
-        }
-        public Object invoke() throws Exception {
-            
-            Object value = method.invoke(target, args);
-            return value;
-        }
-
-
-        public String toString() {
-            return method.getDeclaringClass().getName() + "." + method.getName();
-        }
-    }
-
-    private static class BeanInvocation extends Invocation {
-        public BeanInvocation(Object target, Method method, Object[] args) {
-            super(target, method, args);
-        }
-    }
-
-    private static class InterceptorInvocation extends Invocation {
-        public InterceptorInvocation(Object target, Method method, InvocationContext invocationContext) {
-            super(target, method, new Object[] {invocationContext});
-        }
-    }
-
-    private static class LifecycleInvocation extends Invocation {
-        private final InvocationContext invocationContext;
-
-        public LifecycleInvocation(Object target, Method method, InvocationContext invocationContext, Object[] args) {
-            super(target, method, args);
-            this.invocationContext = invocationContext;
-        }
-
-        public Object invoke() throws Exception {
-            // invoke the callback
-            super.invoke();
-
-            // we need to call proceed so callbacks in subclasses get invoked
-            Object value = invocationContext.proceed();
-            return value;
-        }
-    }
-
-    private static class NoOpInvocation extends Invocation {
-        public NoOpInvocation() {
-            super(null, null, null);
-        }
-
-        public Object invoke() throws IllegalAccessException, InvocationTargetException {
-            return null;
-        }
-    }
-
     // todo verify excpetion types
 
     /**
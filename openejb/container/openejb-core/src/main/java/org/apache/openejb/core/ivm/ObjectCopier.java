@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.ivm;
+
+import org.apache.openejb.loader.Options;
+
+import java.io.IOException;
+
+/**
+ * Copies the arguments and return values of remote interface calls made
+ * inside the VM so they have pass-by-value semantics.
+ *
+ * The copier used for {@link IntraVmCopyMonitor.State#COPY} is selected
+ * per application with the <code>openejb.localcopy.strategy</code> option.
+ * Copies across classloaders always use serialization.
+ *
+ * @version $Rev$ $Date$
+ */
+public interface ObjectCopier {
+
+    public static final String OPENEJB_LOCALCOPY_STRATEGY = "openejb.localcopy.strategy";
+
+    <T> T copy(T object) throws IOException, ClassNotFoundException;
+
+    public static enum Strategy {
+        /**
+         * Reflective deep copy, see {@link ReflectionCopier}
+         */
+        REFLECTION,
+
+        /**
+         * Serialization round trip, see {@link SerializationCopier}
+         */
+        SERIALIZATION;
+
+        public static ObjectCopier create(Options options) {
+            switch (options.get(OPENEJB_LOCALCOPY_STRATEGY, REFLECTION)) {
+                case SERIALIZATION:
+                    return SerializationCopier.INSTANCE;
+                default:
+                    return new ReflectionCopier();
+            }
+        }
+    }
+}
@@ -0,0 +1,481 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.ivm;
+
+import org.apache.openejb.util.proxy.BytecodeProxy;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copies serializable object graphs field by field, without going through
+ * object streams.  The result is the graph serialization would produce:
+ * transient fields are reset, the no-arg constructor of the first
+ * non-serializable superclass is run and shared references and cycles
+ * are preserved.
+ *
+ * How to copy each class is worked out once and cached:
+ *
+ * <ul>
+ * <li>immutable classes (strings, boxed primitives, enums and serializable
+ * classes whose fields are all final and immutable) are not copied at all</li>
+ * <li>arrays, dates and the common java.util collections are copied directly</li>
+ * <li>other serializable classes are instantiated the way serialization
+ * does it and have their fields copied</li>
+ * <li>classes which customize their serialization (writeObject, readObject,
+ * writeReplace, readResolve, Externalizable, ...), proxies and classes
+ * which are not serializable go through the fallback copier</li>
+ * </ul>
+ *
+ * Objects copied by the fallback do not share references with the rest of
+ * the graph.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ReflectionCopier implements ObjectCopier {
+
+    private static final Set<Class<?>> IMMUTABLE = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Byte.class, Character.class, Short.class, Integer.class,
+            Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class, Class.class));
+
+    private static final Set<Class<?>> COLLECTIONS = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class));
+
+    private static final Object REFLECTION_FACTORY;
+    private static final Method NEW_CONSTRUCTOR_FOR_SERIALIZATION;
+
+    static {
+        Object factory = null;
+        Method method = null;
+        try {
+            final Class<?> type = Class.forName("sun.reflect.ReflectionFactory");
+            factory = type.getMethod("getReflectionFactory").invoke(null);
+            method = type.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+        } catch (Throwable e) {
+            // not available on this vm, every class will use the fallback
+            factory = null;
+            method = null;
+        }
+        REFLECTION_FACTORY = factory;
+        NEW_CONSTRUCTOR_FOR_SERIALIZATION = method;
+    }
+
+    private final ObjectCopier fallback;
+    private final ConcurrentMap<Class<?>, Plan> plans = new ConcurrentHashMap<Class<?>, Plan>();
+
+    public ReflectionCopier() {
+        this(SerializationCopier.INSTANCE);
+    }
+
+    public ReflectionCopier(ObjectCopier fallback) {
+        this.fallback = fallback;
+    }
+
+    public <T> T copy(T object) throws IOException, ClassNotFoundException {
+        if (object == null) return null;
+
+        final Plan plan = plan(object.getClass());
+        if (plan == Immutable.INSTANCE) return object;
+
+        return (T) plan.copy(object, new Graph());
+    }
+
+    private Plan plan(Class<?> type) {
+        Plan plan = plans.get(type);
+        if (plan == null) {
+            plan = analyze(type);
+            final Plan existing = plans.putIfAbsent(type, plan);
+            if (existing != null) plan = existing;
+        }
+        return plan;
+    }
+
+    private Plan analyze(Class<?> type) {
+        if (IMMUTABLE.contains(type) || Enum.class.isAssignableFrom(type)) {
+            return Immutable.INSTANCE;
+        }
+
+        if (type.isArray()) {
+            return type.getComponentType().isPrimitive() ? PrimitiveArray.INSTANCE : ObjectArray.INSTANCE;
+        }
+
+        if (type == Date.class) {
+            return DateCopy.INSTANCE;
+        }
+
+        // these have a writeObject of their own, but just hold their elements
+        try {
+            if (COLLECTIONS.contains(type)) {
+                return new CollectionCopy(type.getConstructor());
+            }
+
+            if (type == HashMap.class) {
+                return new MapCopy(type.getConstructor());
+            }
+        } catch (NoSuchMethodException e) {
+            return new Fallback(fallback);
+        }
+
+        if (!Serializable.class.isAssignableFrom(type)
+                || Externalizable.class.isAssignableFrom(type)
+                || Proxy.isProxyClass(type)
+                || BytecodeProxy.isProxyClass(type)
+                || hasSerializationMethods(type)) {
+            return new Fallback(fallback);
+        }
+
+        final Constructor<?> constructor = serializationConstructor(type);
+        if (constructor == null) {
+            return new Fallback(fallback);
+        }
+
+        if (isImmutable(type, new HashSet<Class<?>>())) {
+            return Immutable.INSTANCE;
+        }
+
+        final List<FieldCopy> fields = new ArrayList<FieldCopy>();
+        for (Class<?> c = type; Serializable.class.isAssignableFrom(c); c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                final int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+
+                field.setAccessible(true);
+                fields.add(new FieldCopy(field));
+            }
+        }
+
+        return new FieldsCopy(constructor, fields.toArray(new FieldCopy[fields.size()]));
+    }
+
+    /**
+     * Anything that changes how serialization reads or writes the class
+     * means we can't reproduce the result by copying fields.
+     */
+    private static boolean hasSerializationMethods(Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            if (declares(c, "writeReplace") || declares(c, "readResolve")) return true;
+
+            if (!Serializable.class.isAssignableFrom(c)) continue;
+
+            if (declares(c, "writeObject", ObjectOutputStream.class)
+                    || declares(c, "readObject", ObjectInputStream.class)
+                    || declares(c, "readObjectNoData")) {
+                return true;
+            }
+
+            try {
+                c.getDeclaredField("serialPersistentFields");
+                return true;
+            } catch (NoSuchFieldException e) {
+                // default field layout
+            }
+        }
+        return false;
+    }
+
+    private static boolean declares(Class<?> type, String name, Class<?>... parameters) {
+        try {
+            type.getDeclaredMethod(name, parameters);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The constructor serialization would use: the no-arg constructor of
+     * the first non-serializable superclass, creating an instance of type.
+     */
+    private static Constructor<?> serializationConstructor(Class<?> type) {
+        if (NEW_CONSTRUCTOR_FOR_SERIALIZATION == null) return null;
+
+        Class<?> base = type;
+        while (Serializable.class.isAssignableFrom(base)) {
+            base = base.getSuperclass();
+        }
+
+        try {
+            final Constructor<?> constructor = base.getDeclaredConstructor();
+            final int modifiers = constructor.getModifiers();
+            if (Modifier.isPrivate(modifiers)) return null;
+            if (!Modifier.isPublic(modifiers) && !Modifier.isProtected(modifiers) && !samePackage(base, type)) return null;
+
+            final Constructor<?> serialization = (Constructor<?>) NEW_CONSTRUCTOR_FOR_SERIALIZATION.invoke(REFLECTION_FACTORY, type, constructor);
+            serialization.setAccessible(true);
+            return serialization;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean samePackage(Class<?> a, Class<?> b) {
+        return a.getClassLoader() == b.getClassLoader() && packageName(a).equals(packageName(b));
+    }
+
+    private static String packageName(Class<?> type) {
+        final String name = type.getName();
+        final int dot = name.lastIndexOf('.');
+        return dot == -1 ? "" : name.substring(0, dot);
+    }
+
+    /**
+     * Instances can be shared if every field up to Object is final, not
+     * transient and holds an immutable value.
+     */
+    private static boolean isImmutable(Class<?> type, Set<Class<?>> visiting) {
+        if (type.isPrimitive() || IMMUTABLE.contains(type) || Enum.class.isAssignableFrom(type)) return true;
+        if (!visiting.add(type)) return false;
+
+        if (type.isArray() || type.isInterface() || !Serializable.class.isAssignableFrom(type)) return false;
+        if (type == Date.class || COLLECTIONS.contains(type) || type == HashMap.class) return false;
+        if (Externalizable.class.isAssignableFrom(type) || hasSerializationMethods(type)) return false;
+
+        for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+            if (!Serializable.class.isAssignableFrom(c)) return false;
+
+            for (Field field : c.getDeclaredFields()) {
+                final int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers)) continue;
+                if (!Modifier.isFinal(modifiers) || Modifier.isTransient(modifiers)) return false;
+
+                // the value may be a mutable subclass of a non-final type
+                final Class<?> fieldType = field.getType();
+                if (!fieldType.isPrimitive() && !Modifier.isFinal(fieldType.getModifiers()) && !Enum.class.isAssignableFrom(fieldType)) {
+                    return false;
+                }
+                if (!isImmutable(fieldType, visiting)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * State of a single copy operation
+     */
+    private class Graph {
+        private final Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+
+        public Object copy(Object object) throws IOException, ClassNotFoundException {
+            if (object == null) return null;
+
+            final Plan plan = plan(object.getClass());
+            if (plan == Immutable.INSTANCE) return object;
+
+            final Object copy = copies.get(object);
+            if (copy != null) return copy;
+
+            return plan.copy(object, this);
+        }
+
+        public void copied(Object object, Object copy) {
+            copies.put(object, copy);
+        }
+    }
+
+    private static interface Plan {
+        /**
+         * Creates the copy and registers it with the graph before
+         * copying anything it references.
+         */
+        Object copy(Object object, Graph graph) throws IOException, ClassNotFoundException;
+    }
+
+    private static class Immutable implements Plan {
+        private static final Immutable INSTANCE = new Immutable();
+
+        public Object copy(Object object, Graph graph) {
+            return object;
+        }
+    }
+
+    private static class Fallback implements Plan {
+        private final ObjectCopier copier;
+
+        private Fallback(ObjectCopier copier) {
+            this.copier = copier;
+        }
+
+        public Object copy(Object object, Graph graph) throws IOException, ClassNotFoundException {
+            final Object copy = copier.copy(object);
+            graph.copied(object, copy);
+            return copy;
+        }
+    }
+
+    private static class DateCopy implements Plan {
+        private static final DateCopy INSTANCE = new DateCopy();
+
+        public Object copy(Object object, Graph graph) {
+            final Date copy = new Date(((Date) object).getTime());
+            graph.copied(object, copy);
+            return copy;
+        }
+    }
+
+    private static class PrimitiveArray implements Plan {
+        private static final PrimitiveArray INSTANCE = new PrimitiveArray();
+
+        public Object copy(Object object, Graph graph) {
+            final int length = Array.getLength(object);
+            final Object copy = Array.newInstance(object.getClass().getComponentType(), length);
+            System.arraycopy(object, 0, copy, 0, length);
+            graph.copied(object, copy);
+            return copy;
+        }
+    }
+
+    private static class ObjectArray implements Plan {
+        private static final ObjectArray INSTANCE = new ObjectArray();
+
+        public Object copy(Object object, Graph graph) throws IOException, ClassNotFoundException {
+            final Object[] array = (Object[]) object;
+            final Object[] copy = (Object[]) Array.newInstance(array.getClass().getComponentType(), array.length);
+            graph.copied(object, copy);
+
+            for (int i = 0; i < array.length; i++) {
+                copy[i] = graph.copy(array[i]);
+            }
+            return copy;
+        }
+    }
+
+    private static class CollectionCopy implements Plan {
+        private final Constructor<?> constructor;
+
+        private CollectionCopy(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+
+        public Object copy(Object object, Graph graph) throws IOException, ClassNotFoundException {
+            final Collection<Object> copy = (Collection<Object>) newInstance(constructor);
+            graph.copied(object, copy);
+
+            for (Object element : (Collection<?>) object) {
+                copy.add(graph.copy(element));
+            }
+            return copy;
+        }
+    }
+
+    private static class MapCopy implements Plan {
+        private final Constructor<?> constructor;
+
+        private MapCopy(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+
+        public Object copy(Object object, Graph graph) throws IOException, ClassNotFoundException {
+            final Map<Object, Object> copy = (Map<Object, Object>) newInstance(constructor);
+            graph.copied(object, copy);
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                copy.put(graph.copy(entry.getKey()), graph.copy(entry.getValue()));
+            }
+            return copy;
+        }
+    }
+
+    private static class FieldsCopy implements Plan {
+        private final Constructor<?> constructor;
+        private final FieldCopy[] fields;
+
+        private FieldsCopy(Constructor<?> constructor, FieldCopy[] fields) {
+            this.constructor = constructor;
+            this.fields = fields;
+        }
+
+        public Object copy(Object object, Graph graph) throws IOException, ClassNotFoundException {
+            final Object copy = newInstance(constructor);
+            graph.copied(object, copy);
+
+            try {
+                for (FieldCopy field : fields) {
+                    field.copy(object, copy, graph);
+                }
+            } catch (IllegalAccessException e) {
+                throw (IOException) new IOException("Cannot copy " + object.getClass().getName()).initCause(e);
+            }
+            return copy;
+        }
+    }
+
+    private static class FieldCopy {
+        private final Field field;
+        private final Class<?> type;
+
+        private FieldCopy(Field field) {
+            this.field = field;
+            this.type = field.getType();
+        }
+
+        public void copy(Object source, Object target, Graph graph) throws IllegalAccessException, IOException, ClassNotFoundException {
+            if (!type.isPrimitive()) {
+                field.set(target, graph.copy(field.get(source)));
+            } else if (type == int.class) {
+                field.setInt(target, field.getInt(source));
+            } else if (type == long.class) {
+                field.setLong(target, field.getLong(source));
+            } else if (type == boolean.class) {
+                field.setBoolean(target, field.getBoolean(source));
+            } else if (type == double.class) {
+                field.setDouble(target, field.getDouble(source));
+            } else if (type == float.class) {
+                field.setFloat(target, field.getFloat(source));
+            } else if (type == short.class) {
+                field.setShort(target, field.getShort(source));
+            } else if (type == byte.class) {
+                field.setByte(target, field.getByte(source));
+            } else if (type == char.class) {
+                field.setChar(target, field.getChar(source));
+            }
+        }
+    }
+
+    private static Object newInstance(Constructor<?> constructor) throws IOException {
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            throw (IOException) new IOException("Cannot instantiate " + constructor.getDeclaringClass().getName()).initCause(e);
+        }
+    }
+}
@@ -79,11 +79,11 @@ public class IvmContext implements Context, Serializable {
     }
 
     public IvmContext() {
-        this(new NameNode(null, new ParsedName(""), null, null));
+        this(new NameNode(new ParsedName(""), null));
     }
 
     public IvmContext(String nodeName) {
-        this(new NameNode(null, new ParsedName(nodeName), null, null));
+        this(new NameNode(new ParsedName(nodeName), null));
     }
 
     public IvmContext(NameNode node) {
@@ -105,7 +105,6 @@ public class IvmContext implements Context, Serializable {
             return this;
         }
 
-        String compoundName;
         int index = compositName.indexOf(":");
         if (index > -1) {
 
@@ -129,31 +128,24 @@ public class IvmContext implements Context, Serializable {
                 // we don't know what the prefix means, throw an exception
                 throw new NamingException("Unknown JNDI name prefix '"+prefix +":'");
             }
-        } else {
-            /*
-              the resolve method always starts with the comparison assuming that the first
-              component of the name is a context of a peer node or the same node, so we have
-              to prepend the current context name to the relative lookup path.
-            */
-            compoundName = mynode.getAtomicName() + '/' + compositName;
         }
 
         /*
            If the object has been resolved in the past from this context and the specified path (name)
-           it will be in the fastCache which is significantly faster then peruse the Node graph.
-           80 ms compared to 300 ms for a full node path search.
+           it will be in the fastCache and not even the components of the name have to be hashed.
+           Otherwise the node walks the name relative to itself, which doesn't allocate anything.
         */
-        Object obj = fastCache.get(compoundName);
+        Object obj = fastCache.get(compositName);
         if (obj == null) {
             try {
-                obj = mynode.resolve(new ParsedName(compoundName));
+                obj = mynode.resolve(compositName);
             } catch (NameNotFoundException nnfe) {
                 obj = federate(compositName);
             }
 
             // don't cache proxies
             if (!(obj instanceof IntraVmProxy)) {
-            	fastCache.put(compoundName, obj);
+            	fastCache.put(compositName, obj);
             }
         }
 
@@ -293,12 +285,8 @@ public class IvmContext implements Context, Serializable {
             */
             name = name.substring(indx + 1);
         }
-        if (fastCache.containsKey(name))
-            throw new javax.naming.NameAlreadyBoundException();
-        else {
-            ParsedName parsedName = new ParsedName(name);
-            mynode.bind(parsedName, obj);
-        }
+        ParsedName parsedName = new ParsedName(name);
+        mynode.bind(parsedName, obj);
     }
 
     public void bind(Name name, Object obj) throws NamingException {
@@ -398,10 +386,7 @@ public class IvmContext implements Context, Serializable {
             */
             name = name.substring(indx + 1);
         }
-        if (fastCache.containsKey(name))
-            throw new javax.naming.NameAlreadyBoundException();
-        else
-            return mynode.createSubcontext(new ParsedName(name));
+        return mynode.createSubcontext(new ParsedName(name));
     }
 
     public Context createSubcontext(Name name) throws NamingException {
@@ -508,34 +493,18 @@ public class IvmContext implements Context, Serializable {
         Enumeration myEnum;
 
         public MyNamingEnumeration(NameNode parentNode) {
-            Vector vect = new Vector();
-
-            NameNode node = parentNode.getSubTree();
+            Vector vect = new Vector(parentNode.getChildren());
 
-            if (node == null) {
-                node = parentNode;
-            } else {
-                vect.addElement(node);
+            // the root of a tree holds its names as peers
+            if (vect.isEmpty() && parentNode.getAtomicName().length() == 0) {
+                vect.addAll(parentNode.getPeers());
             }
 
-            gatherNodes(node, vect);
-
             buildEnumeration(vect);
         }
 
         abstract protected void buildEnumeration(Vector<NameNode> vect);
 
-        protected void gatherNodes(NameNode node, Vector vect) {
-            if (node.getLessTree() != null) {
-                vect.addElement(node.getLessTree());
-                gatherNodes(node.getLessTree(), vect);
-            }
-            if (node.getGrtrTree() != null) {
-                vect.addElement(node.getGrtrTree());
-                gatherNodes(node.getGrtrTree(), vect);
-            }
-        }
-
         public void close() {
             myEnum = null;
         }
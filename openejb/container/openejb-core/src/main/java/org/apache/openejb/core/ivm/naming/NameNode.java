@@ -18,31 +18,53 @@ package org.apache.openejb.core.ivm.naming;
 
 import org.apache.openejb.OpenEJBRuntimeException;
 
-import javax.naming.*;
+import javax.naming.Context;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/*
+  The name space is a hashed trie: the children of a node are held in a
+  NameTable keyed by the hash of their atomic name, computed once when the
+  node is created.  Lookups walk the path string without locking nor
+  creating a ParsedName, binds and unbinds are serialized on the lock
+  shared by all the tables of the tree.
+
+  A node is resolved relative to the peers it was bound with, a node with
+  an empty name (the root of a context tree) lists and resolves its peers.
+*/
 public class NameNode implements java.io.Serializable {
     private final String atomicName;
     private final int atomicHash;
-    private NameNode lessTree;
-    private NameNode grtrTree;
-    private NameNode subTree;
-    private NameNode parentTree;
     private final NameNode parent;
-    private Object myObject;
+    private final NameTable level;
+    private volatile NameTable children;
+    private volatile Object myObject;
     private transient IvmContext myContext;
-    private boolean unbound;
-    public NameNode(NameNode parent, ParsedName name, Object obj, NameNode parentTree) {
+    private volatile boolean unbound;
+
+    public NameNode(ParsedName name, Object obj) {
+        this(null, name, obj, new NameTable(null));
+        level.add(this);
+    }
+
+    NameNode(NameNode parent, ParsedName name, Object obj, NameTable level) {
         atomicName = name.getComponent();
         atomicHash = name.getComponentHashCode();
         this.parent = parent;
-        this.parentTree = parentTree;
-        if (name.next())
-            subTree = new NameNode(this, name, obj, this);
-        else if (obj instanceof Context) {
-            myObject = new Federation();
-            ((Federation)myObject).add((Context) obj);
+        this.level = level;
+        if (name.next()) {
+            children = new NameTable(level.lock);
+            children.add(new NameNode(this, name, obj, children));
+        } else if (obj instanceof Context) {
+            Federation federation = new Federation();
+            federation.add((Context) obj);
+            myObject = federation;
         } else {
             myObject = obj;
         }
@@ -53,8 +75,9 @@ public class NameNode implements java.io.Serializable {
     }
 
     public Object getBinding() {
-        if (myObject != null && !(myObject instanceof Federation))
-            return myObject;// if NameNode has an object it must be a binding
+        Object obj = myObject;
+        if (obj != null && !(obj instanceof Federation))
+            return obj;// if NameNode has an object it must be a binding
         else {
             if (myContext == null)
                 myContext = new IvmContext(this);
@@ -62,278 +85,254 @@ public class NameNode implements java.io.Serializable {
         }
     }
 
-    public Object resolve(ParsedName name) throws javax.naming.NameNotFoundException {
-        int compareResult = name.compareTo(atomicHash);
-        javax.naming.NameNotFoundException n = null;
-        int pos = name.getPos();
-        if (compareResult == ParsedName.IS_EQUAL && name.getComponent().equals(atomicName)) {
-            // hashcodes and String valuse are equal
-            if (name.next()) {
-                if (subTree != null) {
-                    try {
-                        return subTree.resolve(name);
-                    } catch (NameNotFoundException e) {
-                        n = e;
-                    }
-                }
-            } else if (!unbound){
-                return getBinding();
-            }
-        } else if (compareResult == ParsedName.IS_LESS) {
-            // parsed hash is less than
-            if (lessTree != null) {
-                return lessTree.resolve(name);
-            }
+    /**
+     * Resolves a name relative to the context of this node, the same as
+     * resolving the name prefixed with the atomic name of this node.
+     */
+    Object resolve(String name) throws NameNotFoundException {
+        if (atomicName.length() == 0) {
+            return resolve(level, parent, name);
+        }
+        return resolve(children, this, name);
+    }
 
-        } else {
-            //ParsedName.IS_GREATER
-            if (grtrTree != null) {
-                return grtrTree.resolve(name);
-            }
+    public Object resolve(ParsedName name) throws NameNotFoundException {
+        StringBuilder path = new StringBuilder();
+        for (int i = name.getPos(); i < name.components.length; i++) {
+            if (path.length() > 0) path.append('/');
+            path.append(name.components[i]);
         }
-        if (myObject instanceof Federation) {
-            name.reset(pos);
-            String nameInContext = name.remaining().path();
-            Federation f = null;
-            for (Context c: (Federation)myObject) {
-                try {
-                    Object o = c.lookup(nameInContext);
-                    if (o instanceof Context) {
-                        if (f == null) {
-                            f = new Federation();
-                        }
-                        f.add((Context) o);
-                    } else {
-                        return o;
-                    }
-                } catch (javax.naming.NamingException e) {
-                    //ignore
-                }
+        return resolve(level, parent, path.toString());
+    }
+
+    private Object resolve(NameTable table, NameNode stop, String path) throws NameNotFoundException {
+        final int length = path.length();
+        NameNode node = null;
+        int depth = 0;
+        int start = 0;
+        while (true) {
+            while (start < length && path.charAt(start) == '/') start++;
+            if (start == length) break;
+
+            int end = start;
+            int hash = 0;
+            while (end < length) {
+                char c = path.charAt(end);
+                if (c == '/') break;
+                hash = 31 * hash + c;
+                end++;
             }
-            if (f != null) {
-                NameNode node = new NameNode(null, new ParsedName(""), f, null);
-                return new IvmContext(node);
+
+            NameNode child = (table == null) ? null : table.get(path, start, end, hash);
+            if (child == null) {
+                return federate(node, depth, stop, path);
             }
+            node = child;
+            table = child.children;
+            depth++;
+            start = end;
         }
-        if (n != null) throw n;
-        throw new javax.naming.NameNotFoundException("Cannot resolve " + name);
-    }
 
-    public void bind(ParsedName name, Object obj) throws javax.naming.NameAlreadyBoundException {
-        int compareResult = name.compareTo(atomicHash);
-        if (compareResult == ParsedName.IS_EQUAL && name.getComponent().equals(atomicName)) {
-            if (name.next()) {
-                if (myObject != null && !(myObject instanceof Federation)) {
-                    throw new javax.naming.NameAlreadyBoundException();
-                }
-                if (subTree == null)
-                    subTree = new NameNode(this, name, obj, this);
-                else
-                    subTree.bind(name, obj);
-            } else {
-                if (obj instanceof Context) {
-                    if (myObject != null) {
-                        if (!(myObject instanceof Federation)) {
-                            throw new javax.naming.NameAlreadyBoundException(name.toString());
-                        }
-                    } else {
-                        myObject = new Federation();
-                    }
-                    ((Federation)myObject).add((Context) obj);
-                } else {
-                    if (subTree != null) {
-                        throw new javax.naming.NameAlreadyBoundException(name.toString());
-                    }
-                    if (myObject != null) {
-                        throw new javax.naming.NameAlreadyBoundException(name.toString());
-                    }
-                    unbound = false;
-                    myObject = obj;// bind the object to this node
-                }
-            }
-        } else if (compareResult == ParsedName.IS_LESS) {
-            if (lessTree == null)
-                lessTree = new NameNode(this.parent, name, obj, this);
-            else
-                lessTree.bind(name, obj);
-        } else {
-            //ParsedName.IS_GREATER ...
-            if (grtrTree == null)
-                grtrTree = new NameNode(this.parent, name, obj, this);
-            else
-                grtrTree.bind(name, obj);
+        if (node == null) node = this;
+        if (node.unbound) {
+            throw new NameNotFoundException("Cannot resolve " + path);
         }
+        return node.getBinding();
     }
 
-    public void tree(String indent, PrintStream out){
-        out.println(atomicName + " @ " + atomicHash + (myObject != null ? " [" + myObject + "]" : ""));
-
-        if (grtrTree != null) {
-            out.print(indent +" + ");
-            grtrTree.tree(indent + "    ", out);
+    /*
+      A name not found in the tree may still be found in the contexts
+      federated by one of the nodes it goes through, the deepest first.
+    */
+    private Object federate(NameNode deepest, int depth, NameNode stop, String path) throws NameNotFoundException {
+        for (NameNode node = deepest; node != null && node != stop; node = node.parent) {
+            Object obj = node.federate(path.substring(offset(path, depth)));
+            if (obj != null) return obj;
+            depth--;
         }
-        if (lessTree != null) {
-            out.print(indent +" - ");
-            lessTree.tree(indent + "    ", out);
-        }
-        if (subTree != null) {
-            out.print(indent +" - ");
-            subTree.tree(indent + "    ", out);
+        if (stop == this || atomicName.length() == 0) {
+            Object obj = federate(path);
+            if (obj != null) return obj;
         }
+        throw new NameNotFoundException("Cannot resolve " + path);
     }
 
+    private Object federate(String nameInContext) {
+        Object obj = myObject;
+        if (!(obj instanceof Federation)) {
+            return null;
+        }
 
-    public int compareTo(int otherHash) {
-        if (atomicHash == otherHash)
-            return 0;
-        else if (atomicHash > otherHash)
-            return 1;
-        else
-            return -1;
+        nameInContext = new ParsedName(nameInContext).path();
+        Federation f = null;
+        for (Context c: (Federation) obj) {
+            try {
+                Object o = c.lookup(nameInContext);
+                if (o instanceof Context) {
+                    if (f == null) {
+                        f = new Federation();
+                    }
+                    f.add((Context) o);
+                } else {
+                    return o;
+                }
+            } catch (NamingException e) {
+                //ignore
+            }
+        }
+        if (f != null) {
+            NameNode node = new NameNode(new ParsedName(""), f);
+            return new IvmContext(node);
+        }
+        return null;
     }
 
-    private void bind(NameNode node) {
-        int compareResult = node.compareTo(atomicHash);
-
-        // This seems to be needed because of an inbalanced way
-        // in which we use bind/unbind/lookup.  Bind/unbind require
-        // the prefix of the node to be appended because lookup
-        // will add the prefix when doing a lookup.  Seems if
-        // we got rid of the prefix usage in lookup, we could
-        // kill this if block and would have more balanced
-        // btrees
-        if (node.parent == this){
-            compareResult = ParsedName.IS_EQUAL;
+    private static int offset(String path, int components) {
+        int i = 0;
+        for (int n = 0; n < components; n++) {
+            while (path.charAt(i) == '/') i++;
+            while (i < path.length() && path.charAt(i) != '/') i++;
         }
+        return i;
+    }
 
-        if (compareResult == ParsedName.IS_EQUAL) {
-            if (subTree == null){
-                subTree = node;
-                subTree.parentTree = this;
-            } else {
-                subTree.bind(node);
-            }
-        } else if (compareResult == ParsedName.IS_LESS) {
-            if (lessTree == null) {
-                lessTree = node;
-                lessTree.parentTree = this;
-            }
-            else{
-                lessTree.bind(node);
-            }
-        } else {//ParsedName.IS_GREATER ...
+    public void bind(ParsedName name, Object obj) throws NameAlreadyBoundException {
+        synchronized (level.lock) {
+            NameTable table = level;
+            NameNode parent = this.parent;
+            while (true) {
+                NameNode node = table.get(name.getComponent());
+                if (node == null) {
+                    table.add(new NameNode(parent, name, obj, table));
+                    return;
+                }
 
-            if (grtrTree == null) {
-                grtrTree = node;
-                grtrTree.parentTree = this;
-            } else {
-                grtrTree.bind(node);
+                if (!name.next()) {
+                    node.bindObject(name, obj);
+                    return;
+                }
+
+                if (node.myObject != null && !(node.myObject instanceof Federation)) {
+                    throw new NameAlreadyBoundException();
+                }
+                if (node.children == null) {
+                    node.children = new NameTable(table.lock);
+                }
+                table = node.children;
+                parent = node;
             }
         }
     }
 
-    public void unbind(ParsedName name) throws javax.naming.NameAlreadyBoundException {
-        int compareResult = name.compareTo(atomicHash);
-        if (compareResult == ParsedName.IS_EQUAL && name.getComponent().equals(atomicName)) {
-            if (name.next()) {
-                if (subTree != null) {
-                    subTree.unbind(name);
+    private void bindObject(ParsedName name, Object obj) throws NameAlreadyBoundException {
+        if (obj instanceof Context) {
+            if (myObject != null) {
+                if (!(myObject instanceof Federation)) {
+                    throw new NameAlreadyBoundException(name.toString());
                 }
+                ((Federation) myObject).add((Context) obj);
             } else {
-                unbound = true;
-                myObject = null;
-                parentTree.unbind(this);
+                Federation federation = new Federation();
+                federation.add((Context) obj);
+                myObject = federation;
             }
-        } else if (compareResult == ParsedName.IS_LESS) {
-            if (lessTree != null) {
-                lessTree.unbind(name);
+        } else {
+            if (hasChildren()) {
+                throw new NameAlreadyBoundException(name.toString());
             }
-        } else {//ParsedName.IS_GREATER ...
-
-            if (grtrTree != null)
-                grtrTree.unbind(name);
+            if (myObject != null) {
+                throw new NameAlreadyBoundException(name.toString());
+            }
+            unbound = false;
+            myObject = obj;// bind the object to this node
         }
     }
 
-    private void unbind(NameNode node) {
-        if (subTree == node) {
-            subTree = null;
-        } else if (grtrTree == node){
-            grtrTree = null;
-        } else if (lessTree == node){
-            lessTree = null;
-        }
-        rebalance(this, node);
-    }
+    public void tree(String indent, PrintStream out){
+        out.println(atomicName + " @ " + atomicHash + (myObject != null ? " [" + myObject + "]" : ""));
 
-    private void rebalance(NameNode tree, NameNode node) {
-        if (node.subTree != null) {
-            tree.bind(node.subTree);
-        }
-        if (node.lessTree != null) {
-            this.bind(node.lessTree);
+        if (atomicName.length() == 0) {
+            for (NameNode node : getPeers()) {
+                out.print(indent +" + ");
+                node.tree(indent + "    ", out);
+            }
         }
-        if (node.grtrTree != null) {
-            this.bind(node.grtrTree);
+        for (NameNode node : getChildren()) {
+            out.print(indent +" - ");
+            node.tree(indent + "    ", out);
         }
     }
 
-    protected void prune() {
-        prune(this);
+    public void unbind(ParsedName name) throws NameAlreadyBoundException {
+        synchronized (level.lock) {
+            NameTable table = level;
+            while (table != null) {
+                NameNode node = table.get(name.getComponent());
+                if (node == null) {
+                    return;
+                }
+                if (name.next()) {
+                    table = node.children;
+                } else {
+                    node.unbound = true;
+                    node.myObject = null;
+                    table.remove(node);
+                    return;
+                }
+            }
+        }
     }
 
-    private void prune(NameNode until) {
-        if (subTree != null) {
-            subTree.prune(until);
-        }
-        if (lessTree != null) {
-            lessTree.prune(until);
-        }
-        if (grtrTree != null) {
-            grtrTree.prune(until);
+    protected void prune() {
+        synchronized (level.lock) {
+            if (children != null) {
+                prune(children, null);
+            }
+            if (atomicName.length() == 0) {
+                prune(level, this);
+            }
         }
+    }
 
-        if (this == until) return;
+    private static void prune(NameTable table, NameNode keep) {
+        for (NameNode node : table.nodes()) {
+            if (node == keep) continue;
 
-        if (!hasChildren() && myObject == null){
-            parentTree.unbind(this);
+            if (node.children != null) {
+                prune(node.children, null);
+            }
+            if (!node.hasChildren() && node.myObject == null) {
+                table.remove(node);
+            }
         }
     }
 
     private boolean hasChildren() {
-        return hasChildren(this);
-    }
-
-    private boolean hasChildren(NameNode node) {
-        if (subTree != null && subTree.hasChildren(node)) return true;
-        if (grtrTree != null && grtrTree.hasChildren(node)) return true;
-        if (lessTree != null && lessTree.hasChildren(node)) return true;
-
-        return (parent == node);
+        NameTable table = children;
+        return table != null && table.size() > 0;
     }
 
     protected void clearCache() {
+        if (atomicName.length() == 0) {
+            for (NameNode node : getPeers()) {
+                node.clearCache();
+            }
+        }
         if (myContext != null) {
             myContext.fastCache.clear();
         }
-        if (grtrTree != null) {
-            grtrTree.clearCache();
-        }
-        if (lessTree != null){
-            lessTree.clearCache();
-        }
-        if (subTree != null){
-            subTree.clearCache();
+        for (NameNode node : getChildren()) {
+            node.clearCache();
         }
     }
 
-    public IvmContext createSubcontext(ParsedName name) throws javax.naming.NameAlreadyBoundException {
+    public IvmContext createSubcontext(ParsedName name) throws NameAlreadyBoundException {
         try {
             bind(name, null);
             name.reset();
             return (IvmContext) resolve(name);
         }
-        catch (javax.naming.NameNotFoundException exception) {
+        catch (NameNotFoundException exception) {
             exception.printStackTrace();
             throw new OpenEJBRuntimeException(exception);
         }
@@ -343,16 +342,28 @@ public class NameNode implements java.io.Serializable {
         return atomicName;
     }
 
-    public NameNode getLessTree() {
-        return lessTree;
+    int getAtomicHash() {
+        return atomicHash;
     }
 
-    public NameNode getGrtrTree() {
-        return grtrTree;
+    /**
+     * @return a snapshot of the nodes bound under this one
+     */
+    public List<NameNode> getChildren() {
+        NameTable table = children;
+        if (table == null) {
+            return Collections.emptyList();
+        }
+        return table.nodes();
     }
 
-    public NameNode getSubTree() {
-        return subTree;
+    /**
+     * @return a snapshot of the nodes bound next to this one
+     */
+    public List<NameNode> getPeers() {
+        List<NameNode> peers = new ArrayList<NameNode>(level.nodes());
+        peers.remove(this);
+        return peers;
     }
 
     public NameNode getParent() {
@@ -365,10 +376,7 @@ public class NameNode implements java.io.Serializable {
         return "NameNode{" +
                 "atomicName='" + atomicName + '\'' +
                 ", atomicHash=" + atomicHash +
-                ", lessTree=" + (lessTree != null ? lessTree.atomicName : "null") +
-                ", grtrTree=" + (grtrTree != null ? grtrTree.atomicName : "null") +
-                ", subTree=" + (subTree != null ? subTree.atomicName : "null") +
-                ", parentTree=" + (parentTree != null ? parentTree.atomicName : "null") +
+                ", children=" + (children != null ? children.size() : 0) +
                 ", parent=" + (parent != null ? parent.atomicName : "null") +
                 ", myObject=" + myObject +
                 ", myContext=" + myContext +
@@ -376,5 +384,5 @@ public class NameNode implements java.io.Serializable {
                 '}';
     }
 
-    private static class Federation extends ArrayList<Context> {};
+    private static class Federation extends CopyOnWriteArrayList<Context> {};
 }
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.ivm.naming;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The nodes sharing a parent, in an open addressing hash table keyed by
+ * the precomputed hash of their atomic name.
+ *
+ * Reads never lock and can be given a region of a path so no component
+ * string is created.  Writes must hold the lock shared by every table of
+ * the tree; a node is published with a volatile write of its slot and a
+ * removed one leaves a marker behind until the table is rebuilt, so
+ * readers probing concurrently always see a consistent chain.
+ *
+ * @version $Rev$ $Date$
+ */
+final class NameTable implements java.io.Serializable {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final NameNode REMOVED = new NameNode(null, new ParsedName(""), null, null);
+
+    final Object lock;
+
+    private transient volatile AtomicReferenceArray<NameNode> slots;
+    // guarded by lock
+    private transient int size;
+    private transient int used;
+
+    NameTable(Object lock) {
+        this.lock = (lock == null) ? this : lock;
+        this.slots = new AtomicReferenceArray<NameNode>(INITIAL_CAPACITY);
+    }
+
+    NameNode get(String name) {
+        return get(name, 0, name.length(), name.hashCode());
+    }
+
+    /**
+     * @param hash the {@link String#hashCode()} of the region
+     */
+    NameNode get(String path, int start, int end, int hash) {
+        final AtomicReferenceArray<NameNode> slots = this.slots;
+        final int mask = slots.length() - 1;
+        final int length = end - start;
+
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            final NameNode node = slots.get(i);
+            if (node == null) {
+                return null;
+            }
+            if (node != REMOVED && node.getAtomicHash() == hash) {
+                final String name = node.getAtomicName();
+                if (name.length() == length && path.regionMatches(start, name, 0, length)) {
+                    return node;
+                }
+            }
+        }
+    }
+
+    void add(NameNode node) {
+        if ((used + 1) * 4 > slots.length() * 3) {
+            int capacity = INITIAL_CAPACITY;
+            while ((size + 1) * 2 > capacity) {
+                capacity <<= 1;
+            }
+            rehash(capacity);
+        }
+        insert(slots, node);
+        size++;
+        used++;
+    }
+
+    boolean remove(NameNode node) {
+        final AtomicReferenceArray<NameNode> slots = this.slots;
+        final int mask = slots.length() - 1;
+        for (int i = spread(node.getAtomicHash()) & mask; ; i = (i + 1) & mask) {
+            final NameNode current = slots.get(i);
+            if (current == null) {
+                return false;
+            }
+            if (current == node) {
+                slots.set(i, REMOVED);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    List<NameNode> nodes() {
+        final AtomicReferenceArray<NameNode> slots = this.slots;
+        final List<NameNode> nodes = new ArrayList<NameNode>();
+        for (int i = 0; i < slots.length(); i++) {
+            final NameNode node = slots.get(i);
+            if (node != null && node != REMOVED) {
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    private void rehash(int capacity) {
+        final AtomicReferenceArray<NameNode> newSlots = new AtomicReferenceArray<NameNode>(capacity);
+        for (NameNode node : nodes()) {
+            insert(newSlots, node);
+        }
+        used = size;
+        slots = newSlots;
+    }
+
+    private static void insert(AtomicReferenceArray<NameNode> slots, NameNode node) {
+        final int mask = slots.length() - 1;
+        int i = spread(node.getAtomicHash()) & mask;
+        while (slots.get(i) != null) {
+            i = (i + 1) & mask;
+        }
+        slots.set(i, node);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(nodes());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        slots = new AtomicReferenceArray<NameNode>(INITIAL_CAPACITY);
+        for (NameNode node : (List<NameNode>) in.readObject()) {
+            add(node);
+        }
+    }
+}
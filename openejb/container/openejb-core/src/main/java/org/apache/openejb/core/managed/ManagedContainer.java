@@ -21,6 +21,7 @@ import org.apache.openejb.BeanContext;
 import org.apache.openejb.ContainerType;
 import org.apache.openejb.InterfaceType;
 import org.apache.openejb.InvalidateReferenceException;
+import org.apache.openejb.InvocationPlan;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.OpenEJBRuntimeException;
 import org.apache.openejb.ProxyInfo;
@@ -577,8 +578,10 @@ public class ManagedContainer implements RpcContainer {
             // Security check
             checkAuthorization(callMethod, interfaceType);
 
+            final InvocationPlan plan = beanContext.getInvocationPlan(callMethod, interfaceType);
+
             // Start transaction
-            final TransactionPolicy txPolicy = createTransactionPolicy(callContext.getBeanContext().getTransactionType(callMethod, interfaceType), callContext);
+            final TransactionPolicy txPolicy = createTransactionPolicy(plan.getTransactionType(), callContext);
 
             Object returnValue = null;
             Instance instance = null;
@@ -605,12 +608,11 @@ public class ManagedContainer implements RpcContainer {
                 callContext.setCurrentOperation(Operation.BUSINESS);
                 callContext.setCurrentAllowedStates(null);
                 callContext.setInvokedInterface(callInterface);
-                final Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
+                final Method runMethod = plan.getBeanMethod();
                 callContext.set(Method.class, runMethod);
 
                 // Initialize interceptor stack
-                final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.BUSINESS, interceptors, instance.interceptors);
+                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, plan.getInterceptorChain(Operation.BUSINESS), instance.interceptors);
 
                 // Invoke
                 returnValue = interceptorStack.invoke(args);
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.monitoring.Managed;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Settings and statistics of the batched delivery of a message driven bean.
+ * <p/>
+ * Batching is opted in with the DeliveryBatchSize activation property, the
+ * messages an adapter delivers without calling beforeDelivery are then
+ * grouped in a single transaction until DeliveryBatchSize messages have been
+ * delivered or DeliveryBatchTimeout milliseconds have elapsed since the first
+ * one, a timer completes the batches the adapter stops feeding.  Both
+ * properties are consumed by the container and never reach the activation
+ * spec.
+ * <p/>
+ * The adapter must accept that the transaction of a batch, and so the
+ * XAResource it passed to createEndpoint, is completed by a thread other than
+ * the one that delivered the messages: the next delivery of the endpoint,
+ * the timer or the thread releasing the endpoint.  An adapter whose sessions
+ * may only be used by one thread at a time must not enable batching.
+ *
+ * @version $Rev$ $Date$
+ */
+public class BatchDelivery {
+    public static final String BATCH_SIZE = "DeliveryBatchSize";
+    public static final String BATCH_TIMEOUT = "DeliveryBatchTimeout";
+
+    private final int size;
+    private final long timeout;
+    private final long started = System.currentTimeMillis();
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedMessages = new AtomicLong();
+    private final AtomicLong rolledBackBatches = new AtomicLong();
+    private final AtomicLong isolatedMessages = new AtomicLong();
+
+    private final AtomicReference<ScheduledExecutorService> scheduler = new AtomicReference<ScheduledExecutorService>();
+    private volatile boolean stopped;
+
+    public BatchDelivery(int size, long timeout) {
+        this.size = size;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param activationProperties the activation properties of the bean
+     * @return the batch settings, or null if the messages are delivered one by one
+     */
+    public static BatchDelivery create(Map<String, String> activationProperties) {
+        Properties properties = new Properties();
+        for (Map.Entry<String, String> entry : activationProperties.entrySet()) {
+            if (BATCH_SIZE.equals(entry.getKey()) || BATCH_TIMEOUT.equals(entry.getKey())) {
+                properties.setProperty(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Options options = new Options(properties);
+        int size = options.get(BATCH_SIZE, 1);
+        long timeout = options.get(BATCH_TIMEOUT, 1000L);
+        if (size <= 1) {
+            return null;
+        }
+        return new BatchDelivery(size, timeout);
+    }
+
+    /**
+     * @param messages the number of messages delivered in the batch
+     * @param start    the time the first message of the batch was delivered
+     * @param now      the current time
+     * @return true if the batch can't take any more message
+     */
+    public boolean isComplete(int messages, long start, long now) {
+        return messages >= size || now - start >= timeout;
+    }
+
+    /**
+     * Runs the task once the delay has elapsed, nothing is run once the
+     * bean is undeployed
+     */
+    public void schedule(Runnable task, long delay) {
+        if (stopped) {
+            return;
+        }
+
+        ScheduledExecutorService executor = scheduler.get();
+        if (executor == null) {
+            executor = Executors.newScheduledThreadPool(1, new BatchThreadFactory());
+            if (!scheduler.compareAndSet(null, executor)) {
+                executor.shutdown();
+                executor = scheduler.get();
+            } else if (stopped) {
+                stop();
+            }
+        }
+
+        if (executor == null) {
+            return;
+        }
+
+        try {
+            executor.schedule(task, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        ScheduledExecutorService executor = scheduler.getAndSet(null);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public void committed(int messages) {
+        batches.incrementAndGet();
+        batchedMessages.addAndGet(messages);
+    }
+
+    public void rolledBack(int messages) {
+        batches.incrementAndGet();
+        rolledBackBatches.incrementAndGet();
+        batchedMessages.addAndGet(messages);
+    }
+
+    public void isolated() {
+        isolatedMessages.incrementAndGet();
+    }
+
+    @Managed
+    public int getBatchSize() {
+        return size;
+    }
+
+    @Managed
+    public long getBatchTimeout() {
+        return timeout;
+    }
+
+    @Managed
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    @Managed
+    public long getRolledBackBatchCount() {
+        return rolledBackBatches.get();
+    }
+
+    @Managed
+    public long getBatchedMessageCount() {
+        return batchedMessages.get();
+    }
+
+    /**
+     * Messages redelivered one by one after their batch rolled back, so a
+     * poison message only fails its own transaction
+     */
+    @Managed
+    public long getIsolatedMessageCount() {
+        return isolatedMessages.get();
+    }
+
+    @Managed
+    public double getAverageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) batchedMessages.get() / count;
+    }
+
+    /**
+     * @return the messages delivered per second since the bean was deployed
+     */
+    @Managed
+    public double getThroughput() {
+        long elapsed = System.currentTimeMillis() - started;
+        return elapsed <= 0 ? 0 : (batchedMessages.get() + isolatedMessages.get()) * 1000d / elapsed;
+    }
+
+    private static class BatchThreadFactory implements ThreadFactory {
+        private static final AtomicInteger count = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "org.apache.openejb.mdb.batch." + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -39,9 +39,14 @@ public class EndpointFactory implements MessageEndpointFactory {
     private final ClassLoader classLoader;
     private final Class[] interfaces;
     private final XAResourceWrapper xaResourceWrapper;
+    private final BatchDelivery batchDelivery;
     protected final List<ObjectName> jmxNames = new ArrayList<ObjectName>();
 
     public EndpointFactory(ActivationSpec activationSpec, MdbContainer container, BeanContext beanContext, MdbInstanceFactory instanceFactory, XAResourceWrapper xaResourceWrapper) {
+        this(activationSpec, container, beanContext, instanceFactory, xaResourceWrapper, null);
+    }
+
+    public EndpointFactory(ActivationSpec activationSpec, MdbContainer container, BeanContext beanContext, MdbInstanceFactory instanceFactory, XAResourceWrapper xaResourceWrapper, BatchDelivery batchDelivery) {
         this.activationSpec = activationSpec;
         this.container = container;
         this.beanContext = beanContext;
@@ -49,6 +54,7 @@ public class EndpointFactory implements MessageEndpointFactory {
         classLoader = container.getMessageListenerInterface().getClassLoader();
         interfaces = new Class[]{container.getMessageListenerInterface(), MessageEndpoint.class};
         this.xaResourceWrapper = xaResourceWrapper;
+        this.batchDelivery = batchDelivery;
     }
 
     public ActivationSpec getActivationSpec() {
@@ -59,11 +65,15 @@ public class EndpointFactory implements MessageEndpointFactory {
         return instanceFactory;
     }
 
+    public BatchDelivery getBatchDelivery() {
+        return batchDelivery;
+    }
+
     public MessageEndpoint createEndpoint(XAResource xaResource) throws UnavailableException {
         if (xaResource != null && xaResourceWrapper != null) {
             xaResource = xaResourceWrapper.wrap(xaResource, container.getContainerID().toString());
         }
-        EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource);
+        EndpointHandler endpointHandler = new EndpointHandler(container, beanContext, instanceFactory, xaResource, batchDelivery);
         try {
             return (MessageEndpoint) LocalBeanProxyFactory.newProxyInstance(classLoader, endpointHandler, beanContext.getBeanClass(), interfaces);
         } catch (InternalError e) {
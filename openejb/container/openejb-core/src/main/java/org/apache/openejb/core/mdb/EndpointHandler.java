@@ -19,6 +19,8 @@ package org.apache.openejb.core.mdb;
 import org.apache.openejb.ApplicationException;
 import org.apache.openejb.SystemException;
 import org.apache.openejb.BeanContext;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
 
 import javax.ejb.EJBException;
 import javax.resource.spi.ApplicationServerInternalException;
@@ -30,6 +32,10 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 
 public class EndpointHandler implements InvocationHandler, MessageEndpoint {
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
+    private static final boolean JMS = isJmsAvailable();
+
     private static enum State {
         /**
          * The handler has been initialized and is ready for invoation
@@ -55,6 +61,20 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
          */
         SYSTEM_EXCEPTION,
 
+        /**
+         * A message delivered without beforeDelivery has been added to the open batch, the transaction and call
+         * context are suspended until the batch is complete.  The next method called may be another message
+         * delivery method, which joins the batch, beforeDelivery or release, which complete the batch first.
+         * The batch timer may complete the batch in the meantime.
+         */
+        BATCHING,
+
+        /**
+         * The batch timer is completing the open batch without holding the handler, any call waits for it to be
+         * done and then finds the handler in the NONE state.
+         */
+        COMPLETING,
+
         /**
          * This message endpoint handler has been released and can no longer be used.
          */
@@ -65,15 +85,35 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
     private final BeanContext deployment;
     private final MdbInstanceFactory instanceFactory;
     private final XAResource xaResource;
+    private final BatchDelivery batchDelivery;
 
     private State state = State.NONE;
     private Object instance;
 
+    // the open batch, batchMethod is null when there is none
+    private Method batchMethod;
+    private long batchStart;
+    private int batchMessages;
+    private int batchId;
+
+    // the delivery of the open batch, suspended while the adapter has the thread back
+    private Object suspendedDelivery;
+
+    // messages left to deliver one by one after a batch rolled back, only used for the
+    // messages which don't tell whether they are redelivered, assumes the adapter
+    // redelivers them to this endpoint
+    private int isolated;
+
     public EndpointHandler(MdbContainer container, BeanContext deployment, MdbInstanceFactory instanceFactory, XAResource xaResource) throws UnavailableException {
+        this(container, deployment, instanceFactory, xaResource, null);
+    }
+
+    public EndpointHandler(MdbContainer container, BeanContext deployment, MdbInstanceFactory instanceFactory, XAResource xaResource, BatchDelivery batchDelivery) throws UnavailableException {
         this.container = container;
         this.deployment = deployment;
         this.instanceFactory = instanceFactory;
         this.xaResource = xaResource;
+        this.batchDelivery = batchDelivery;
         instance = instanceFactory.createInstance(false);
     }
 
@@ -171,7 +211,18 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
 //        } finally { logTx(); }
     }
 
-    public void beforeDelivery(Method method) throws ApplicationServerInternalException {
+    public synchronized void beforeDelivery(Method method) throws ApplicationServerInternalException {
+        awaitCompletion();
+
+        // the adapter takes over the transaction demarcation
+        if (state == State.BATCHING) {
+            try {
+                completeBatch();
+            } catch (UnavailableException e) {
+                throw new ApplicationServerInternalException(e);
+            }
+        }
+
         // verify current state
         switch (state) {
             case RELEASED:
@@ -195,9 +246,26 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         state = State.BEFORE_CALLED;
     }
 
-    public Object deliverMessage(Method method, Object[] args) throws Throwable {
+    public synchronized Object deliverMessage(Method method, Object[] args) throws Throwable {
+
+        awaitCompletion();
 
         boolean callBeforeAfter = false;
+        Boolean redelivered = isRedelivered(args);
+
+        // join the open batch, a batch only spans deliveries of the method it was opened for
+        // and a redelivered message never joins one
+        if (state == State.BATCHING) {
+            try {
+                if (!method.equals(batchMethod) || Boolean.TRUE.equals(redelivered)) {
+                    completeBatch();
+                } else if (resumeBatch()) {
+                    callBeforeAfter = true;
+                }
+            } catch (ApplicationServerInternalException e) {
+                throw (EJBException) new EJBException().initCause(e.getCause());
+            }
+        }
 
         // verify current state
         switch (state) {
@@ -209,6 +277,7 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
                 }
                 callBeforeAfter = true;
                 state = State.METHOD_CALLED;
+                openBatch(method, redelivered);
                 break;
             case BEFORE_CALLED:
                 state = State.METHOD_CALLED;
@@ -216,6 +285,11 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             case RELEASED:
                 throw new IllegalStateException("Message endpoint factory has been released");
             case METHOD_CALLED:
+                // the open batch was resumed
+                if (callBeforeAfter) {
+                    break;
+                }
+                throw new IllegalStateException("The last message delivery must be completed with an afterDeliver before another message can be delivered");
             case SYSTEM_EXCEPTION:
                 throw new IllegalStateException("The last message delivery must be completed with an afterDeliver before another message can be delivered");
         }
@@ -232,9 +306,20 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             throwable = (ae.getRootCause() != null) ? ae.getRootCause() : ae;
         } finally {
             // if the adapter is not using before/after, we must call afterDelivery to clean up
+            // unless the message joined a batch that can take more messages
             if (callBeforeAfter) {
                 try {
-                    afterDelivery();
+                    if (batchMethod == null) {
+                        afterDelivery();
+                    } else {
+                        batchMessages++;
+                        if (throwable == null && !container.isDeliveryRollbackOnly()
+                                && !batchDelivery.isComplete(batchMessages, batchStart, System.currentTimeMillis())) {
+                            suspendBatch();
+                        } else {
+                            closeBatch();
+                        }
+                    }
                 } catch (ApplicationServerInternalException e) {
                     throwable = throwable == null ? e.getCause() : throwable;
                 } catch (UnavailableException e) {
@@ -254,7 +339,9 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         return value;
     }
 
-    public void afterDelivery() throws ApplicationServerInternalException, UnavailableException {
+    public synchronized void afterDelivery() throws ApplicationServerInternalException, UnavailableException {
+        awaitCompletion();
+
         // verify current state
         switch (state) {
             case RELEASED:
@@ -262,6 +349,7 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
             case BEFORE_CALLED:
                 throw new IllegalStateException("Exactally one message must be delivered between beforeDelivery and afterDelivery");
             case NONE:
+            case BATCHING:
                 throw new IllegalStateException("afterDelivery may only be called if message delivery began with a beforeDelivery call");
         }
 
@@ -285,6 +373,185 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         }
     }
 
+    /**
+     * A message redelivered after its batch rolled back is delivered in its
+     * own transaction so a poison message only fails itself.  JMS messages
+     * tell whether they are redelivered, whatever endpoint they were first
+     * delivered to.  For the other messages the handler counts the messages
+     * of its own batch that rolled back and delivers as many one by one.
+     */
+    private void openBatch(Method method, Boolean redelivered) {
+        if (batchDelivery == null) {
+            return;
+        }
+
+        boolean alone;
+        if (redelivered != null) {
+            alone = redelivered;
+        } else {
+            alone = isolated > 0;
+            if (alone) {
+                isolated--;
+            }
+        }
+
+        if (alone) {
+            batchDelivery.isolated();
+        } else if (container.isDeliveryBatchable()) {
+            batchMethod = method;
+            batchStart = System.currentTimeMillis();
+            batchMessages = 0;
+            batchId++;
+        }
+    }
+
+    /**
+     * Gives the thread back to the adapter with the batch still open, the
+     * first message of the batch starts the timer that completes it.
+     */
+    private void suspendBatch() throws ApplicationServerInternalException, UnavailableException {
+        try {
+            suspendedDelivery = container.suspendDelivery();
+        } catch (SystemException e) {
+            // the delivery is still bound to this thread
+            logger.error("Unable to suspend the batch, it is completed", e);
+            closeBatch();
+            return;
+        }
+
+        state = State.BATCHING;
+
+        if (batchMessages == 1) {
+            final int id = batchId;
+            long delay = batchStart + batchDelivery.getBatchTimeout() - System.currentTimeMillis();
+            batchDelivery.schedule(new Runnable() {
+                public void run() {
+                    timeout(id);
+                }
+            }, delay);
+        }
+    }
+
+    /**
+     * Binds the suspended batch to the current thread.
+     *
+     * @return false if the batch could not be resumed, it was rolled back
+     */
+    private boolean resumeBatch() {
+        Object delivery = suspendedDelivery;
+        suspendedDelivery = null;
+        state = State.METHOD_CALLED;
+
+        try {
+            container.resumeDelivery(delivery);
+            return true;
+        } catch (SystemException e) {
+            logger.error("Unable to resume the batch of " + batchMessages + " messages, it is rolled back", e);
+
+            batchCompleted(batchMessages, true);
+            batchMethod = null;
+            batchMessages = 0;
+            state = State.NONE;
+            return false;
+        }
+    }
+
+    private void completeBatch() throws ApplicationServerInternalException, UnavailableException {
+        if (resumeBatch()) {
+            closeBatch();
+        }
+    }
+
+    /**
+     * Completes a batch the adapter stopped feeding.  This runs on the batch
+     * timer thread, so the XAResource of the adapter enlisted in the batch is
+     * committed from there while the adapter may be busy with other messages
+     * on its own threads; see {@link BatchDelivery} for what this requires
+     * from the adapter.  The handler is not locked meanwhile, a delivery to
+     * this endpoint waits for the completion, the other endpoints of the
+     * adapter are never held up by it.
+     */
+    private void timeout(int id) {
+        final Object delivery;
+        final Object bean;
+        final int messages;
+        synchronized (this) {
+            if (state != State.BATCHING || batchId != id) {
+                return;
+            }
+
+            delivery = suspendedDelivery;
+            bean = instance;
+            messages = batchMessages;
+            suspendedDelivery = null;
+            batchMethod = null;
+            batchMessages = 0;
+            state = State.COMPLETING;
+        }
+
+        boolean rolledBack = true;
+        try {
+            container.resumeDelivery(delivery);
+            rolledBack = container.isDeliveryRollbackOnly();
+            container.afterDelivery(bean);
+        } catch (Exception e) {
+            rolledBack = true;
+            logger.error("Unable to complete a batch that timed out", e);
+        } finally {
+            synchronized (this) {
+                batchCompleted(messages, rolledBack);
+                state = State.NONE;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for the batch timer to be done with the open batch
+     */
+    private void awaitCompletion() {
+        boolean interrupted = false;
+        while (state == State.COMPLETING) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Completes the open batch, the messages delivered so far are committed
+     * unless one of them marked the transaction for rollback.
+     */
+    private void closeBatch() throws ApplicationServerInternalException, UnavailableException {
+        int messages = batchMessages;
+        batchMethod = null;
+        batchMessages = 0;
+
+        boolean rolledBack = container.isDeliveryRollbackOnly();
+        try {
+            afterDelivery();
+        } catch (ApplicationServerInternalException e) {
+            rolledBack = true;
+            throw e;
+        } finally {
+            batchCompleted(messages, rolledBack);
+        }
+    }
+
+    private void batchCompleted(int messages, boolean rolledBack) {
+        if (rolledBack) {
+            isolated = messages;
+            batchDelivery.rolledBack(messages);
+        } else {
+            batchDelivery.committed(messages);
+        }
+    }
+
     private void recreateInstance(boolean exceptionAlreadyThrown) throws UnavailableException {
         try {
             instance = instanceFactory.recreateInstance(instance);
@@ -300,8 +567,18 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         }
     }
 
-    public void release() {
+    public synchronized void release() {
+        awaitCompletion();
+
         if (state == State.RELEASED) return;
+
+        if (state == State.BATCHING) {
+            try {
+                completeBatch();
+            } catch (Exception e) {
+                logger.error("Unable to complete the open batch while releasing the endpoint", e);
+            }
+        }
         state = State.RELEASED;
 
         // notify the container
@@ -313,6 +590,40 @@ public class EndpointHandler implements InvocationHandler, MessageEndpoint {
         }
     }
 
+    /**
+     * @return whether the delivered message is a redelivery, null when it doesn't tell
+     */
+    private static Boolean isRedelivered(Object[] args) {
+        if (!JMS || args == null || args.length != 1) {
+            return null;
+        }
+        return Jms.isRedelivered(args[0]);
+    }
+
+    private static boolean isJmsAvailable() {
+        try {
+            EndpointHandler.class.getClassLoader().loadClass("javax.jms.Message");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    // javax.jms is optional, only loaded when it is there
+    private static class Jms {
+        private static Boolean isRedelivered(Object message) {
+            if (!(message instanceof javax.jms.Message)) {
+                return null;
+            }
+
+            try {
+                return ((javax.jms.Message) message).getJMSRedelivered();
+            } catch (javax.jms.JMSException e) {
+                return null;
+            }
+        }
+    }
+
     private boolean isValidException(Method method, Throwable throwable) {
         if (throwable instanceof RuntimeException || throwable instanceof Error) return true;
 
@@ -23,6 +23,7 @@ import org.apache.openejb.ApplicationException;
 import org.apache.openejb.ContainerType;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.InterfaceType;
+import org.apache.openejb.InvocationPlan;
 import org.apache.openejb.monitoring.LocalMBeanServer;
 import org.apache.openejb.monitoring.StatsInterceptor;
 import org.apache.openejb.monitoring.ObjectNameBuilder;
@@ -34,7 +35,7 @@ import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.timer.EjbTimerService;
-import org.apache.openejb.core.interceptor.InterceptorData;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import static org.apache.openejb.core.transaction.EjbTransactionUtil.handleApplicationException;
@@ -48,6 +49,8 @@ import org.apache.openejb.util.Logger;
 import org.apache.xbean.recipe.ObjectRecipe;
 import org.apache.xbean.recipe.Option;
 
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 import javax.resource.spi.ResourceAdapter;
 import javax.resource.spi.ActivationSpec;
@@ -62,7 +65,6 @@ import javax.validation.Validator;
 import java.lang.reflect.Method;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.management.ManagementFactory;
-import java.util.List;
 import java.util.Map;
 import java.util.Arrays;
 import java.util.TreeSet;
@@ -143,7 +145,8 @@ public class MdbContainer implements RpcContainer {
         int instanceLimit = options.get("InstanceLimit", this.instanceLimit);
         // create the message endpoint
         MdbInstanceFactory instanceFactory = new MdbInstanceFactory(beanContext, securityService, instanceLimit);
-        EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper);
+        BatchDelivery batchDelivery = BatchDelivery.create(beanContext.getActivationProperties());
+        EndpointFactory endpointFactory = new EndpointFactory(activationSpec, this, beanContext, instanceFactory, xaResourceWrapper, batchDelivery);
 
         // update the data structures
         // this must be done before activating the endpoint since the ra may immedately begin delivering messages
@@ -179,6 +182,30 @@ public class MdbContainer implements RpcContainer {
             }
         }
 
+        // register the batch delivery statistics
+        if (batchDelivery != null) {
+            MBeanServer server = LocalMBeanServer.get();
+
+            ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+            jmxName.set("J2EEServer", "openejb");
+            jmxName.set("J2EEApplication", null);
+            jmxName.set("EJBModule", beanContext.getModuleID());
+            jmxName.set("MessageDrivenBean", beanContext.getEjbName());
+            jmxName.set("j2eeType", "BatchDelivery");
+            jmxName.set("name", beanContext.getEjbName());
+
+            try {
+                ObjectName objectName = jmxName.build();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(new ManagedMBean(batchDelivery), objectName);
+                endpointFactory.jmxNames.add(objectName);
+            } catch (Exception e) {
+                logger.error("Unable to register MBean ", e);
+            }
+        }
+
         // activate the endpoint
         try {
             resourceAdapter.endpointActivation(endpointFactory, activationSpec);
@@ -207,6 +234,10 @@ public class MdbContainer implements RpcContainer {
 
             Map<String, String> activationProperties = beanContext.getActivationProperties();
             for (Map.Entry<String, String> entry : activationProperties.entrySet()) {
+                // consumed by the container
+                if (BatchDelivery.BATCH_SIZE.equals(entry.getKey()) || BatchDelivery.BATCH_TIMEOUT.equals(entry.getKey())) {
+                    continue;
+                }
                 objectRecipe.setMethodProperty(entry.getKey(), entry.getValue());
             }
             objectRecipe.setMethodProperty("beanClass", beanContext.getBeanClass());
@@ -219,6 +250,8 @@ public class MdbContainer implements RpcContainer {
             unusedProperties.remove("destination");
             unusedProperties.remove("destinationType");
             unusedProperties.remove("beanClass");
+            unusedProperties.remove(BatchDelivery.BATCH_SIZE);
+            unusedProperties.remove(BatchDelivery.BATCH_TIMEOUT);
             if (!unusedProperties.isEmpty()) {
                 throw new IllegalArgumentException("No setter found for the activation spec properties: " + unusedProperties);
             }
@@ -269,6 +302,10 @@ public class MdbContainer implements RpcContainer {
             if (endpointFactory != null) {
                 resourceAdapter.endpointDeactivation(endpointFactory, endpointFactory.getActivationSpec());
 
+                if (endpointFactory.getBatchDelivery() != null) {
+                    endpointFactory.getBatchDelivery().stop();
+                }
+
                 MBeanServer server = LocalMBeanServer.get();
                 for (ObjectName objectName : endpointFactory.jmxNames) {
                     try {
@@ -336,6 +373,7 @@ public class MdbContainer implements RpcContainer {
             // if we have an xaResource and a transaction was not imported from the adapter, enlist the xaResource
             if (xaResource != null && mdbCallContext.txPolicy.isNewTransaction()) {
                 mdbCallContext.txPolicy.enlistResource(xaResource);
+                mdbCallContext.xaResourceEnlisted = true;
             }
         } catch (ApplicationException e) {
             ThreadContext.exit(oldContext);
@@ -380,11 +418,11 @@ public class MdbContainer implements RpcContainer {
             }
 
             // determine the target method on the bean instance class
-            final Method targetMethod = deployInfo.getMatchingBeanMethod(method);
-            callContext.set(Method.class, targetMethod);
+            final InvocationPlan plan = deployInfo.getInvocationPlan(method, type);
+            callContext.set(Method.class, plan.getBeanMethod());
 
             // invoke the target method
-            returnValue = _invoke(instance, targetMethod, args, deployInfo, type, mdbCallContext);
+            returnValue = _invoke(instance, plan, args, deployInfo, type, mdbCallContext);
             return returnValue;
         } catch (ApplicationException e) {
             openEjbException = e;
@@ -406,13 +444,12 @@ public class MdbContainer implements RpcContainer {
         }
     }
 
-    private Object _invoke(Object instance, Method runMethod, Object[] args, BeanContext beanContext, InterfaceType interfaceType, MdbCallContext mdbCallContext) throws SystemException,
+    private Object _invoke(Object instance, InvocationPlan plan, Object[] args, BeanContext beanContext, InterfaceType interfaceType, MdbCallContext mdbCallContext) throws SystemException,
             ApplicationException {
         Object returnValue;
         try {
-            List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-            InterceptorStack interceptorStack = new InterceptorStack(((Instance) instance).bean, runMethod, interfaceType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS,
-                    interceptors, ((Instance) instance).interceptors);
+            InterceptorChain chain = plan.getInterceptorChain(interfaceType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS);
+            InterceptorStack interceptorStack = new InterceptorStack(((Instance) instance).bean, chain, ((Instance) instance).interceptors);
             returnValue = interceptorStack.invoke(args);
             return returnValue;
         } catch (Throwable e) {
@@ -456,6 +493,81 @@ public class MdbContainer implements RpcContainer {
         }
     }
 
+    /**
+     * Detaches the delivery in progress from the current thread so the
+     * thread can go back to the adapter while the batch stays open.  The
+     * transaction is suspended and the call context exited, both are bound
+     * again by {@link #resumeDelivery(Object)}, on any thread.
+     *
+     * @return the suspended delivery
+     */
+    public Object suspendDelivery() throws SystemException {
+        ThreadContext callContext = ThreadContext.getThreadContext();
+        MdbCallContext mdbCallContext = callContext.get(MdbCallContext.class);
+
+        try {
+            mdbCallContext.suspendedTransaction = getTransactionManager().suspend();
+        } catch (javax.transaction.SystemException e) {
+            throw new SystemException("Unable to suspend the transaction of the delivery", e);
+        }
+
+        ThreadContext.exit(mdbCallContext.oldCallContext);
+        mdbCallContext.oldCallContext = null;
+        return callContext;
+    }
+
+    /**
+     * Binds a delivery suspended by {@link #suspendDelivery()} to the
+     * current thread.  When the transaction can't be resumed it is rolled
+     * back and the delivery is over.
+     */
+    public void resumeDelivery(Object delivery) throws SystemException {
+        ThreadContext callContext = (ThreadContext) delivery;
+        MdbCallContext mdbCallContext = callContext.get(MdbCallContext.class);
+
+        mdbCallContext.oldCallContext = ThreadContext.enter(callContext);
+
+        Transaction transaction = mdbCallContext.suspendedTransaction;
+        mdbCallContext.suspendedTransaction = null;
+        try {
+            getTransactionManager().resume(transaction);
+        } catch (Exception e) {
+            ThreadContext.exit(mdbCallContext.oldCallContext);
+            try {
+                transaction.rollback();
+            } catch (Exception re) {
+                logger.error("Unable to roll back the transaction of a batch that could not be resumed", re);
+            }
+            throw new SystemException("Unable to resume the transaction of the delivery", e);
+        }
+    }
+
+    private TransactionManager getTransactionManager() {
+        return SystemInstance.get().getComponent(TransactionManager.class);
+    }
+
+    /**
+     * A delivery can only be part of a batch when it began a transaction the
+     * xa resource of the adapter is enlisted in, the acknowledgements of the
+     * messages are then committed or rolled back along with the batch.
+     *
+     * @return true if the delivery in progress on this thread can be batched
+     */
+    public boolean isDeliveryBatchable() {
+        ThreadContext callContext = ThreadContext.getThreadContext();
+        MdbCallContext mdbCallContext = callContext == null ? null : callContext.get(MdbCallContext.class);
+        return mdbCallContext != null && mdbCallContext.xaResourceEnlisted && mdbCallContext.txPolicy.isTransactionActive();
+    }
+
+    /**
+     * @return true if the transaction of the delivery in progress on this thread can only roll back
+     */
+    public boolean isDeliveryRollbackOnly() {
+        ThreadContext callContext = ThreadContext.getThreadContext();
+        MdbCallContext mdbCallContext = callContext == null ? null : callContext.get(MdbCallContext.class);
+        return mdbCallContext != null && mdbCallContext.txPolicy.isRollbackOnly();
+    }
+
     public void release(BeanContext deployInfo, Object instance) {
         // get the mdb call context
         ThreadContext callContext = ThreadContext.getThreadContext();
@@ -490,5 +602,7 @@ public class MdbContainer implements RpcContainer {
         private Method deliveryMethod;
         private TransactionPolicy txPolicy;
         private ThreadContext oldCallContext;
+        private boolean xaResourceEnlisted;
+        private Transaction suspendedTransaction;
     }
 }
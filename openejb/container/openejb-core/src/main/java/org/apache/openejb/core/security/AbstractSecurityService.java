@@ -40,6 +40,7 @@ import java.security.Principal;
 import java.security.AccessControlException;
 import java.security.Permission;
 import java.security.Policy;
+import java.util.BitSet;
 import java.util.UUID;
 import java.util.List;
 import java.util.ArrayList;
@@ -66,6 +67,14 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
     protected Subject defaultSubject;
     protected SecurityContext defaultContext;
 
+    /**
+     * Set to false to check every method permission through the installed JACC policy
+     */
+    public static final String CACHED_PERMISSIONS = "openejb.security.cached-permissions";
+
+    private final boolean cachedPermissions;
+    private final boolean cachedRoles;
+
     public AbstractSecurityService() {
         this(BasicJaccProvider.class.getName());
     }
@@ -81,6 +90,17 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
         updateSecurityContext();
 
         SystemInstance.get().setComponent(BasicPolicyConfiguration.RoleResolver.class, this);
+
+        cachedPermissions = SystemInstance.get().getOptions().get(CACHED_PERMISSIONS, true);
+        cachedRoles = !overrides(getClass(), "getLogicalRoles", Principal[].class, Set.class);
+    }
+
+    private static boolean overrides(final Class<?> clazz, final String name, final Class<?>... parameterTypes) {
+        try {
+            return clazz.getMethod(name, parameterTypes).getDeclaringClass() != AbstractSecurityService.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
     }
 
 
@@ -153,7 +173,7 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
 
             final Identity identity = clientIdentity.get();
             if (identity != null){
-                securityContext = new SecurityContext(identity.subject);
+                securityContext = identity.getSecurityContext();
             } else {
                 securityContext = defaultContext;
             }
@@ -277,6 +297,11 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
                 name = null;
             }
 
+            final BasicPolicyConfiguration configuration = getBasicPolicyConfiguration();
+            if (configuration != null) {
+                return isCallerAuthorized(configuration, securityContext, ejbName, name, method);
+            }
+
             final Permission permission = new EJBMethodPermission(ejbName, name, method);
 
             if (permission != null) securityContext.acc.checkPermission(permission);
@@ -287,6 +312,39 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
         return true;
     }
 
+    /**
+     * The decisions of the basic policy can be cached as long as nothing
+     * replaced the policy, the provider or the way the configuration implies
+     * a permission. Anything else goes through the JACC policy.
+     */
+    private BasicPolicyConfiguration getBasicPolicyConfiguration() {
+        if (!cachedPermissions) return null;
+
+        final String contextID = PolicyContext.getContextID();
+        if (contextID == null) return null;
+
+        if (Policy.getPolicy().getClass() != JaccProvider.Policy.class) return null;
+
+        final JaccProvider provider = JaccProvider.get();
+        if (provider == null || provider.getClass() != BasicJaccProvider.class) return null;
+
+        final BasicPolicyConfiguration configuration = ((BasicJaccProvider) provider).getInServiceConfiguration(contextID);
+        if (configuration == null || configuration.getClass() != BasicPolicyConfiguration.class) return null;
+
+        return configuration;
+    }
+
+    private boolean isCallerAuthorized(final BasicPolicyConfiguration configuration, final SecurityContext securityContext, final String ejbName, final String interfaceName, final Method method) {
+        final MethodPermissionKey key = new MethodPermissionKey(ejbName, interfaceName, method);
+
+        BasicPolicyConfiguration.Decision decision = configuration.getDecision(key);
+        if (decision == null) {
+            decision = configuration.decide(key, new EJBMethodPermission(ejbName, interfaceName, method));
+        }
+
+        return decision.implies(securityContext.getRoles(configuration, cachedRoles));
+    }
+
     protected static void installJacc() {
         final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
 
@@ -340,6 +398,8 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
         public final Subject subject;
         public final AccessControlContext acc;
 
+        private final Map<BasicPolicyConfiguration, CallerRoles> roles = new ConcurrentHashMap<BasicPolicyConfiguration, CallerRoles>();
+
         public SecurityContext(final Subject subject) {
             this.subject = subject;
             this.acc = (AccessControlContext) Subject.doAsPrivileged(subject, new PrivilegedAction() {
@@ -349,11 +409,78 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
                 }
             }, null);
         }
+
+        private BitSet getRoles(final BasicPolicyConfiguration configuration, final boolean cache) {
+            final int version = configuration.getVersion();
+
+            // the principals of a writable subject may change between two calls
+            final boolean cacheable = cache && subject.isReadOnly();
+            if (cacheable) {
+                final CallerRoles callerRoles = roles.get(configuration);
+                if (callerRoles != null && callerRoles.version == version) {
+                    return callerRoles.roles;
+                }
+            }
+
+            final Set<Principal> principals = subject.getPrincipals();
+            final BitSet bits = configuration.getRoles(principals.toArray(new Principal[principals.size()]));
+
+            if (cacheable) {
+                roles.put(configuration, new CallerRoles(version, bits));
+            }
+            return bits;
+        }
+    }
+
+    private static final class CallerRoles {
+        private final int version;
+        private final BitSet roles;
+
+        private CallerRoles(final int version, final BitSet roles) {
+            this.version = version;
+            this.roles = roles;
+        }
+    }
+
+    private static final class MethodPermissionKey {
+        private final String ejbName;
+        private final String interfaceName;
+        private final Method method;
+        private final int hashCode;
+
+        private MethodPermissionKey(final String ejbName, final String interfaceName, final Method method) {
+            this.ejbName = ejbName;
+            this.interfaceName = interfaceName;
+            this.method = method;
+
+            int result = ejbName != null ? ejbName.hashCode() : 0;
+            result = 31 * result + (interfaceName != null ? interfaceName.hashCode() : 0);
+            result = 31 * result + (method != null ? method.hashCode() : 0);
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MethodPermissionKey)) return false;
+
+            final MethodPermissionKey that = (MethodPermissionKey) o;
+            return hashCode == that.hashCode
+                    && (ejbName != null ? ejbName.equals(that.ejbName) : that.ejbName == null)
+                    && (interfaceName != null ? interfaceName.equals(that.interfaceName) : that.interfaceName == null)
+                    && (method != null ? method.equals(that.method) : that.method == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
     }
 
     protected static class Identity implements Serializable {
         private final Subject subject;
         private final UUID token;
+        private transient volatile SecurityContext securityContext;
 
         public Identity(final Subject subject) {
             this.subject = subject;
@@ -372,6 +499,18 @@ public abstract class AbstractSecurityService implements SecurityService<UUID>,
         public UUID getToken() {
             return token;
         }
+
+        /**
+         * @return the security context of the subject, created once per identity
+         */
+        public SecurityContext getSecurityContext() {
+            SecurityContext context = securityContext;
+            if (context == null) {
+                context = new SecurityContext(subject);
+                securityContext = context;
+            }
+            return context;
+        }
     }
 
     public static class Group implements java.security.acl.Group {
@@ -25,15 +25,15 @@ import java.security.CodeSource;
 import java.security.Permission;
 import java.security.PermissionCollection;
 import java.security.ProtectionDomain;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @version $Rev$ $Date$
  */
 public class BasicJaccProvider extends JaccProvider {
 
-    private Map<String, BasicPolicyConfiguration> configurations = new HashMap<String, BasicPolicyConfiguration>();
+    private Map<String, BasicPolicyConfiguration> configurations = new ConcurrentHashMap<String, BasicPolicyConfiguration>();
 
     private final java.security.Policy systemPolicy;
 
@@ -63,6 +63,19 @@ public class BasicJaccProvider extends JaccProvider {
         return configuration.inService();
     }
 
+    /**
+     * @return the configuration of the policy context if it is in service, null otherwise
+     */
+    public BasicPolicyConfiguration getInServiceConfiguration(String contextID) {
+        BasicPolicyConfiguration configuration = configurations.get(contextID);
+        try {
+            if (configuration == null || !configuration.inService()) return null;
+        } catch (PolicyContextException e) {
+            return null;
+        }
+        return configuration;
+    }
+
     public PermissionCollection getPermissions(CodeSource codesource) {
         return systemPolicy == null ? null: systemPolicy.getPermissions(codesource);
     }
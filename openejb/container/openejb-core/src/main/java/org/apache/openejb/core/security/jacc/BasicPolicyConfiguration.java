@@ -25,10 +25,13 @@ import java.security.Permission;
 import java.security.PermissionCollection;
 import java.security.Principal;
 import java.security.ProtectionDomain;
+import java.util.BitSet;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @version $Rev$ $Date$
@@ -44,6 +47,10 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
     protected PermissionCollection unchecked = null;
     protected PermissionCollection excluded = null;
 
+    private final ConcurrentMap<Object, Decision> decisions = new ConcurrentHashMap<Object, Decision>();
+    private volatile String[] roles;
+    private volatile int version;
+
     protected BasicPolicyConfiguration(String contextID) {
         this.contextID = contextID;
         this.state = OPEN;
@@ -86,6 +93,8 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
     public void addToRole(String roleName, Permission permission) throws PolicyContextException {
         if (state != OPEN) throw new UnsupportedOperationException("Not in an open state");
 
+        changed();
+
         PermissionCollection permissions = rolePermissionsMap.get(roleName);
         if (permissions == null) {
             permissions = new DelegatePermissionCollection();
@@ -108,6 +117,8 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
             throw new UnsupportedOperationException("Not in an open state");
         }
 
+        changed();
+
         if (unchecked == null) {
             unchecked = new DelegatePermissionCollection();
         }
@@ -129,6 +140,8 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
             throw new UnsupportedOperationException("Not in an open state");
         }
 
+        changed();
+
         if (excluded == null) {
             excluded = new DelegatePermissionCollection();
         }
@@ -139,18 +152,24 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
     public void removeRole(String roleName) throws PolicyContextException {
         if (state != OPEN) throw new UnsupportedOperationException("Not in an open state");
 
+        changed();
+
         rolePermissionsMap.remove(roleName);
     }
 
     public void removeUncheckedPolicy() throws PolicyContextException {
         if (state != OPEN) throw new UnsupportedOperationException("Not in an open state");
 
+        changed();
+
         unchecked = null;
     }
 
     public void removeExcludedPolicy() throws PolicyContextException {
         if (state != OPEN) throw new UnsupportedOperationException("Not in an open state");
 
+        changed();
+
         excluded = null;
     }
 
@@ -160,10 +179,12 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
 
     public void delete() throws PolicyContextException {
         state = DELETED;
+        changed();
     }
 
     public void commit() throws PolicyContextException {
         if (state != OPEN) throw new UnsupportedOperationException("Not in an open state");
+        changed();
         state = IN_SERVICE;
     }
 
@@ -182,6 +203,7 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
             unchecked = null;
             excluded = null;
         }
+        changed();
         state = OPEN;
     }
 
@@ -189,6 +211,120 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
         return state;
     }
 
+    private void changed() {
+        decisions.clear();
+        roles = null;
+        version++;
+    }
+
+    /**
+     * Incremented each time the policy changes, the role indexes of a
+     * previous version don't apply to the decisions of this one.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the decision taken for the given key, null if the permission
+     * it stands for wasn't checked since the policy last changed
+     */
+    public Decision getDecision(final Object key) {
+        return decisions.get(key);
+    }
+
+    /**
+     * Resolves the excluded, unchecked and role permissions once for the
+     * permission, the next checks of the same key only look up the roles
+     * of the caller in the decision.
+     */
+    public Decision decide(final Object key, final Permission permission) {
+        final int current = version;
+        final String[] names = roles();
+
+        final Decision decision;
+        if (excluded != null && excluded.implies(permission)) {
+            decision = new Decision(Decision.EXCLUDED, null);
+        } else if (unchecked != null && unchecked.implies(permission)) {
+            decision = new Decision(Decision.UNCHECKED, null);
+        } else {
+            final BitSet granted = new BitSet(names.length);
+            for (int i = 0; i < names.length; i++) {
+                final PermissionCollection permissions = rolePermissionsMap.get(names[i]);
+                if (permissions != null && permissions.implies(permission)) {
+                    granted.set(i);
+                }
+            }
+            decision = new Decision(Decision.ROLES, granted);
+        }
+
+        if (current == version) {
+            decisions.put(key, decision);
+        }
+        return decision;
+    }
+
+    /**
+     * @return the indexes, as used by the decisions, of the roles the
+     * resolver gives to the principals
+     */
+    public BitSet getRoles(final Principal[] principals) {
+        final String[] names = roles();
+        final BitSet bits = new BitSet(names.length);
+        if (principals.length == 0) {
+            return bits;
+        }
+
+        final RoleResolver roleResolver = SystemInstance.get().getComponent(RoleResolver.class);
+        final Set<String> callerRoles = roleResolver.getLogicalRoles(principals, rolePermissionsMap.keySet());
+        for (int i = 0; i < names.length; i++) {
+            if (callerRoles.contains(names[i])) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private String[] roles() {
+        String[] names = roles;
+        if (names == null) {
+            names = rolePermissionsMap.keySet().toArray(new String[rolePermissionsMap.size()]);
+            roles = names;
+        }
+        return names;
+    }
+
+    /**
+     * What a permission requires, computed once per policy version.
+     */
+    public static final class Decision {
+        static final int EXCLUDED = 0;
+        static final int UNCHECKED = 1;
+        static final int ROLES = 2;
+
+        private final int type;
+        private final BitSet roles;
+
+        private Decision(final int type, final BitSet roles) {
+            this.type = type;
+            this.roles = roles;
+        }
+
+        /**
+         * @param callerRoles the roles of the caller, see {@link #getRoles}
+         */
+        public boolean implies(final BitSet callerRoles) {
+            switch (type) {
+                case EXCLUDED:
+                    return false;
+                case UNCHECKED:
+                    return true;
+                default:
+                    return roles.intersects(callerRoles);
+            }
+        }
+    }
+
     public interface RoleResolver {
         public Set<String> getLogicalRoles(Principal[] principals, Set<String> logicalRoles);
     }
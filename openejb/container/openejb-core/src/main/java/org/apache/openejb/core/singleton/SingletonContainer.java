@@ -19,12 +19,14 @@ package org.apache.openejb.core.singleton;
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.ContainerType;
 import org.apache.openejb.InterfaceType;
+import org.apache.openejb.InvocationPlan;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.RpcContainer;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
@@ -182,7 +184,8 @@ public class SingletonContainer implements RpcContainer {
         // Use the backup way to determine call type if null was supplied.
         if (type == null) type = beanContext.getInterfaceType(callInterface);
 
-        Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
+        InvocationPlan plan = beanContext.getInvocationPlan(callMethod, type);
+        Method runMethod = plan.getBeanMethod();
 
         ThreadContext callContext = new ThreadContext(beanContext, primKey);
         ThreadContext oldCallContext = ThreadContext.enter(callContext);
@@ -208,7 +211,7 @@ public class SingletonContainer implements RpcContainer {
             callContext.set(Method.class, runMethod);
             callContext.setInvokedInterface(callInterface);
 
-            return _invoke(callMethod, runMethod, args, instance, callContext, type);
+            return _invoke(plan, args, instance, callContext, type);
 
         } finally {
             ThreadContext.exit(oldCallContext);
@@ -220,27 +223,31 @@ public class SingletonContainer implements RpcContainer {
     }
 
     protected Object _invoke(Method callMethod, Method runMethod, Object[] args, Instance instance, ThreadContext callContext, InterfaceType callType) throws OpenEJBException {
+        return _invoke(callContext.getBeanContext().getInvocationPlan(callMethod, runMethod, callType), args, instance, callContext, callType);
+    }
+
+    protected Object _invoke(InvocationPlan plan, Object[] args, Instance instance, ThreadContext callContext, InterfaceType callType) throws OpenEJBException {
         BeanContext beanContext = callContext.getBeanContext();
+        Method runMethod = plan.getBeanMethod();
 
-        Duration accessTimeout = getAccessTimeout(beanContext, runMethod);
-        boolean read = javax.ejb.LockType.READ.equals(beanContext.getConcurrencyAttribute(runMethod));
+        Duration accessTimeout = getAccessTimeout(plan);
+        boolean read = javax.ejb.LockType.READ.equals(plan.getLockType());
 
         final Lock lock = aquireLock(read, accessTimeout, instance, runMethod);
 
         Object returnValue;
         try {
 
-            TransactionPolicy txPolicy = createTransactionPolicy(beanContext.getTransactionType(callMethod, callType), callContext);
+            TransactionPolicy txPolicy = createTransactionPolicy(plan.getTransactionType(), callContext);
 
             returnValue = null;
             try {
                 if (callType == InterfaceType.SERVICE_ENDPOINT) {
                     callContext.setCurrentOperation(Operation.BUSINESS_WS);
-                    returnValue = invokeWebService(args, beanContext, runMethod, instance);
+                    returnValue = invokeWebService(args, plan, instance);
                 } else {
-                    List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                    InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, callType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS, interceptors,
-                            instance.interceptors);
+                    InterceptorChain chain = plan.getInterceptorChain(callType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS);
+                    InterceptorStack interceptorStack = new InterceptorStack(instance.bean, chain, instance.interceptors);
                     returnValue = interceptorStack.invoke(args);
                 }
             } catch (Throwable e) {// handle reflection exception
@@ -268,13 +275,10 @@ public class SingletonContainer implements RpcContainer {
         return returnValue;
     }
 
-    private Duration getAccessTimeout(BeanContext beanContext, Method callMethod) {
-        Duration accessTimeout = beanContext.getAccessTimeout(callMethod);
+    private Duration getAccessTimeout(InvocationPlan plan) {
+        Duration accessTimeout = plan.getAccessTimeout();
         if (accessTimeout == null) {
-            accessTimeout = beanContext.getAccessTimeout();
-            if (accessTimeout == null) {
-                accessTimeout = this.accessTimeout;
-            }
+            accessTimeout = this.accessTimeout;
         }
         return accessTimeout;
     }
@@ -312,7 +316,9 @@ public class SingletonContainer implements RpcContainer {
         return lock;
     }
 
-    private Object invokeWebService(Object[] args, BeanContext beanContext, Method runMethod, Instance instance) throws Exception {
+    private Object invokeWebService(Object[] args, InvocationPlan plan, Instance instance) throws Exception {
+        Method runMethod = plan.getBeanMethod();
+
         if (args.length < 2) {
             throw new IllegalArgumentException("WebService calls must follow format {messageContext, interceptor, [arg...]}.");
         }
@@ -358,7 +364,7 @@ public class SingletonContainer implements RpcContainer {
 
             providerData.getAroundInvoke().addAll(aroundInvokes);
             interceptorDatas.add(0, providerData);
-            interceptorDatas.addAll(beanContext.getMethodInterceptors(runMethod));
+            interceptorDatas.addAll(plan.getInterceptors());
         }
 
         InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.BUSINESS_WS, interceptorDatas, interceptors);
@@ -0,0 +1,757 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.OpenEJBRuntimeException;
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stateful cache for large numbers of sessions.
+ *
+ * Keys are spread over segments, each segment keeps its idle values in a
+ * CLOCK queue: a check-in only flags the entry as recently used and the
+ * passivation hand gives flagged entries a second chance, so checking an
+ * entry out or in never has to find it in a list.  Entries checked out,
+ * removed or passivated are dropped from the queue lazily when the hand
+ * or the timeout sweep reaches them.
+ *
+ * Capacity and bulk passivation are divided among the segments.  When a
+ * check-in fills a segment the segment is passivated on the cache thread,
+ * the timeout sweep runs every Frequency as with the SimpleCache.  Sweeps
+ * skip any entry locked by a caller and any segment already being swept,
+ * so they never make a caller wait.  A Frequency of 0 processes the cache
+ * on each check-in, in the calling thread.
+ *
+ * Configuration is the one of the SimpleCache plus Segments, the number of
+ * segments, 16 by default.  Segments are reduced so that each holds at
+ * least 16 values.
+ */
+public class SegmentedCache<K, V> implements Cache<K, V> {
+    public static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    /**
+     * Map of all known values by key
+     */
+    private final ConcurrentHashMap<K, Entry> cache = new ConcurrentHashMap<K, Entry>();
+
+    private volatile Segment<Entry>[] segments;
+
+    private int segmentCount = 16;
+
+    private volatile CacheListener<V> listener;
+
+    private volatile PassivationStrategy passivator;
+
+    /**
+     * Maximum number of idle values, across all segments
+     */
+    private int capacity;
+
+    /**
+     * Number of values passivated at once, across all segments
+     */
+    private int bulkPassivate;
+
+    /**
+     * A bean may be destroyed if it isn't used in this length of time (in
+     * milliseconds).
+     * A time out of value -1 means a bean will never be destroyed due to time out.
+     * A time out of value 0 means a bean can be immediately destroyed.
+     */
+    private long timeOut = -1;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Specifies how often the cache is checked for timed out beans.
+     */
+    private long frequency = 60 * 1000;
+
+    private ScheduledFuture future;
+
+    public SegmentedCache() {
+    }
+
+    public SegmentedCache(CacheListener<V> listener, PassivationStrategy passivator, int capacity, int bulkPassivate, Duration timeOut) {
+        this.listener = listener;
+        this.passivator = passivator;
+        this.capacity = capacity;
+        this.bulkPassivate = bulkPassivate;
+        this.timeOut = timeOut.getTime(TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void init() {
+        segments();
+
+        if (frequency > 0 && future == null) {
+            initScheduledExecutorService();
+
+            future = executor.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    processLRU();
+                }
+            }, frequency, frequency, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void destroy() {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private synchronized void initScheduledExecutorService() {
+        if (executor == null) {
+            executor = Executors.newScheduledThreadPool(1, new ThreadFactory() {
+                public Thread newThread(Runnable runable) {
+                    Thread t = new Thread(runable, "Stateful cache");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    private Segment<Entry>[] segments() {
+        Segment<Entry>[] segments = this.segments;
+        if (segments == null) {
+            synchronized (this) {
+                segments = this.segments;
+                if (segments == null) {
+                    int count = Integer.highestOneBit(Math.max(1, segmentCount));
+                    while (count > 1 && capacity / count < MIN_SEGMENT_CAPACITY) {
+                        count >>= 1;
+                    }
+
+                    segments = new Segment[count];
+                    for (int i = 0; i < count; i++) {
+                        segments[i] = new Segment<Entry>();
+                    }
+                    this.segments = segments;
+                }
+            }
+        }
+        return segments;
+    }
+
+    private Segment<Entry> segment(K key) {
+        final Segment<Entry>[] segments = segments();
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & (segments.length - 1)];
+    }
+
+    public CacheListener<V> getListener() {
+        return listener;
+    }
+
+    public void setListener(CacheListener<V> listener) {
+        this.listener = listener;
+    }
+
+    public PassivationStrategy getPassivator() {
+        return passivator;
+    }
+
+    public void setPassivator(PassivationStrategy passivator) {
+        this.passivator = passivator;
+    }
+
+    public void setPassivator(Class<? extends PassivationStrategy> passivatorClass) throws Exception {
+        this.passivator = passivatorClass.newInstance();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    // Old configurations use "PoolSize" to configure max cache size
+    public void setPoolSize(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBulkPassivate() {
+        return bulkPassivate;
+    }
+
+    public void setBulkPassivate(int bulkPassivate) {
+        this.bulkPassivate = bulkPassivate;
+    }
+
+    public int getSegments() {
+        final Segment[] segments = this.segments;
+        return segments != null ? segments.length : segmentCount;
+    }
+
+    public void setSegments(int segments) {
+        this.segmentCount = segments;
+    }
+
+    public long getTimeOut() {
+        return timeOut;
+    }
+
+    private static long ms(final String durationValue, final TimeUnit defaultTU) {
+        final Duration duration = new Duration(durationValue.trim());
+        // as with the SimpleCache a value without unit uses the old default unit
+        if (duration.getUnit() == null) {
+            duration.setUnit(defaultTU);
+        }
+        return duration.getUnit().toMillis(duration.getTime());
+    }
+
+    public void setTimeOut(final String timeOut) {
+        this.timeOut = ms(timeOut, TimeUnit.MINUTES);
+    }
+
+    public void setScheduledExecutorService(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public ScheduledExecutorService getScheduledExecutorService() {
+        return executor;
+    }
+
+    public void setFrequency(final String frequency) {
+        this.frequency = ms(frequency, TimeUnit.SECONDS);
+    }
+
+    public long getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @return the number of values in memory, checked-out or not
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    public void add(K key, V value) {
+        // find the existing entry
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            entry.lock.lock();
+            try {
+                if (entry.getState() != EntryState.REMOVED) {
+                    throw new IllegalStateException("An entry for the key " + key + " already exists");
+                }
+                // Entry has been removed between get and lock, simply remove the garbage entry
+                cache.remove(key, entry);
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        entry = new Entry(key, value, EntryState.CHECKED_OUT);
+        cache.put(key, entry);
+    }
+
+    public V checkOut(K key, boolean loadEntryIfNotFound) throws Exception {
+        // attempt (up to 10 times) to obtain the entry from the cache
+        for (int i = 0; i < 10; i++) {
+            // find the entry
+            Entry entry = cache.get(key);
+            if (!loadEntryIfNotFound && entry == null) {
+                return null;
+            }
+            if (entry == null) {
+                entry = loadEntry(key);
+                if (entry == null) {
+                    return null;
+                }
+            }
+
+            entry.lock.lock();
+            try {
+                // verfiy state
+                switch (entry.getState()) {
+                    case AVAILABLE:
+                        break;
+                    case CHECKED_OUT:
+                        throw new IllegalStateException("The entry " + key + " is already checked-out");
+                    case PASSIVATED:
+                        // Entry was passivated between get and lock, we need to load the Entry again
+                        cache.remove(key, entry);
+                        continue;
+                    case REMOVED:
+                        // Entry has been removed between get and lock (most likely by undeploying the EJB), simply drop the instance
+                        return null;
+                }
+
+                // mark entry as in-use, the clock drops it lazily
+                entry.setState(EntryState.CHECKED_OUT);
+                entry.segment.idle.decrementAndGet();
+
+                return entry.getValue();
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        // something is really messed up with this entry, try to cleanup before throwing an exception
+        cache.remove(key);
+        throw new OpenEJBRuntimeException("Cache is corrupted: the entry " + key + " in the Map 'cache' is in state PASSIVATED");
+    }
+
+    public void checkIn(K key) {
+        // find the entry
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return;
+        }
+
+        entry.lock.lock();
+        try {
+            // verfiy state
+            switch (entry.getState()) {
+                case AVAILABLE:
+                    entry.referenced = true;
+                    entry.resetTimeOut();
+                    return;
+                case PASSIVATED:
+                    // An entry in-use should not be passivated so we can only assume
+                    // that the caller never checked out the bean in the first place
+                    throw new IllegalStateException("The entry " + key + " is not checked-out");
+                case REMOVED:
+                    // Entry has been removed between get and lock (most likely by undeploying the EJB), simply drop the instance
+                    return;
+            }
+
+            // mark entry as available
+            entry.setState(EntryState.AVAILABLE);
+            entry.makeIdle();
+            entry.resetTimeOut();
+        } finally {
+            entry.lock.unlock();
+        }
+
+        if (frequency == 0) {
+            processLRU();
+        } else if (isFull(entry.segment)) {
+            passivateLater(entry.segment);
+        }
+    }
+
+    public V remove(K key) {
+        // find the entry
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        entry.lock.lock();
+        try {
+            cache.remove(key, entry);
+
+            // There is no need to check the state because users of the cache
+            // are responsible for maintaining references to beans in use
+            entry.remove();
+
+            return entry.getValue();
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    public void removeAll(CacheFilter<V> filter) {
+        for (Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+
+            entry.lock.lock();
+            try {
+                if (filter.matches(entry.getValue())) {
+                    iterator.remove();
+                    entry.remove();
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the timed out entries and passivates the full segments.
+     * Segments being processed by another thread are skipped.
+     */
+    public void processLRU() {
+        for (Segment<Entry> segment : segments()) {
+            if (segment.sweeping.compareAndSet(false, true)) {
+                try {
+                    sweep(segment);
+                    if (isFull(segment)) {
+                        passivate(segment);
+                    }
+                } finally {
+                    segment.sweeping.set(false);
+                }
+            }
+        }
+    }
+
+    private void passivateLater(final Segment<Entry> segment) {
+        // without a cache thread, as with a negative Frequency, only processLRU passivates
+        final ScheduledExecutorService executor = this.executor;
+        if (executor == null || !segment.sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Runnable passivation = new Runnable() {
+            public void run() {
+                try {
+                    passivate(segment);
+                } finally {
+                    segment.sweeping.set(false);
+                }
+            }
+        };
+
+        try {
+            executor.execute(passivation);
+        } catch (RejectedExecutionException e) {
+            segment.sweeping.set(false);
+        }
+    }
+
+    /**
+     * Goes through all the idle entries of the segment since even though
+     * they are roughly in least recently used order they might have
+     * different timeouts.
+     */
+    private void sweep(Segment<Entry> segment) {
+        final CacheListener<V> listener = getListener();
+
+        for (Iterator<Entry> iterator = segment.clock.iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+            if (!entry.lock.tryLock()) {
+                // in use, it will be looked at next time
+                continue;
+            }
+            try {
+                if (entry.getState() != EntryState.AVAILABLE) {
+                    entry.queued = false;
+                    iterator.remove();
+                    continue;
+                }
+
+                if (entry.isTimedOut()) {
+                    entry.queued = false;
+                    iterator.remove();
+                    cache.remove(entry.getKey(), entry);
+                    entry.remove();
+                    timedOut(listener, entry);
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves the clock hand over the segment until a bulk of idle entries
+     * not used since the hand last passed was removed, then stores them.
+     */
+    private void passivate(Segment<Entry> segment) {
+        final CacheListener<V> listener = getListener();
+
+        final Map<K, V> valuesToStore = new LinkedHashMap<K, V>();
+        final List<Entry> entries = new ArrayList<Entry>();
+
+        final int bulk = Math.max(1, getBulkPassivate() / segments().length);
+        // every entry gets a second chance so two turns are enough
+        int steps = 2 * segment.idle.get() + bulk;
+        int passivated = 0;
+
+        while (passivated < bulk && steps-- > 0) {
+            final Entry entry = segment.clock.poll();
+            if (entry == null) {
+                break;
+            }
+
+            if (!entry.lock.tryLock()) {
+                // If two threads are running in this method, you could get a deadlock
+                // due to lock acquisition order since this section gathers a group of
+                // locks. Simply skip beans we can not obtain a lock on
+                segment.clock.offer(entry);
+                continue;
+            }
+            try {
+                if (entry.getState() != EntryState.AVAILABLE) {
+                    entry.queued = false;
+                    continue;
+                }
+
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    segment.clock.offer(entry);
+                    continue;
+                }
+
+                entry.queued = false;
+                cache.remove(entry.getKey(), entry);
+                passivated++;
+
+                // if the entry is actually timed out we just destroy it; otherwise it is written to disk
+                if (entry.isTimedOut()) {
+                    entry.remove();
+                    timedOut(listener, entry);
+                } else {
+                    // entry will be passivated, so we need to obtain an additional lock until the passivation is complete
+                    entry.lock.lock();
+                    entries.add(entry);
+
+                    entry.setState(EntryState.PASSIVATED);
+                    segment.idle.decrementAndGet();
+                    valuesToStore.put(entry.getKey(), entry.getValue());
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+
+        if (!valuesToStore.isEmpty()) {
+            try {
+                storeEntries(valuesToStore);
+            } finally {
+                for (Entry entry : entries) {
+                    // release the extra passivation lock
+                    entry.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void timedOut(CacheListener<V> listener, Entry entry) {
+        if (listener != null) {
+            try {
+                listener.timedOut(entry.getValue());
+            } catch (Exception e) {
+                logger.error("An unexpected exception occured from timedOut callback", e);
+            }
+        }
+    }
+
+    private Entry loadEntry(K key) throws Exception {
+        PassivationStrategy passivator = getPassivator();
+        if (passivator == null) {
+            return null;
+        }
+
+        V value = null;
+        try {
+            value = (V) passivator.activate(key);
+        } catch (Exception e) {
+            logger.error("An unexpected exception occured while reading entries from disk", e);
+        }
+
+        if (value == null) {
+            return null;
+        }
+
+        CacheListener<V> listener = this.getListener();
+        if (listener != null) {
+            listener.afterLoad(value);
+        }
+        Entry entry = new Entry(key, value, EntryState.AVAILABLE);
+        entry.lock.lock();
+        try {
+            entry.makeIdle();
+        } finally {
+            entry.lock.unlock();
+        }
+        cache.put(key, entry);
+        return entry;
+    }
+
+    private void storeEntries(Map<K, V> entriesToStore) {
+        CacheListener<V> listener = this.getListener();
+        for (Iterator<Map.Entry<K, V>> iterator = entriesToStore.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<K, V> entry = iterator.next();
+
+            if (listener != null) {
+                try {
+                    listener.beforeStore(entry.getValue());
+                } catch (Exception e) {
+                    iterator.remove();
+                    logger.error("An unexpected exception occured from beforeStore callback", e);
+                }
+            }
+        }
+
+        PassivationStrategy passivator = getPassivator();
+        if (passivator == null) {
+            return;
+        }
+
+        try {
+            passivator.passivate(entriesToStore);
+        } catch (Exception e) {
+            logger.error("An unexpected exception occured while writting the entries to disk", e);
+        }
+    }
+
+    private enum EntryState {
+        AVAILABLE, CHECKED_OUT, PASSIVATED, REMOVED
+    }
+
+    private boolean isFull(Segment<Entry> segment) {
+        final int segments = segments().length;
+        final int segmentCapacity = (getCapacity() + segments - 1) / segments;
+        return segment.idle.get() >= segmentCapacity;
+    }
+
+    private static final class Segment<E> {
+        /**
+         * Idle entries in roughly least recently used order, may also
+         * contain entries checked-out or removed since they were queued
+         */
+        private final Queue<E> clock = new ConcurrentLinkedQueue<E>();
+
+        /**
+         * Number of AVAILABLE entries
+         */
+        private final AtomicInteger idle = new AtomicInteger();
+
+        private final AtomicBoolean sweeping = new AtomicBoolean();
+    }
+
+    private class Entry {
+        private final K key;
+        private final V value;
+        private final Segment<Entry> segment;
+        private final ReentrantLock lock = new ReentrantLock();
+        private EntryState state;
+        private long lastAccess;
+        private long timeOut;
+
+        // both guarded by the lock
+        private boolean queued;
+        private boolean referenced;
+
+        private Entry(K key, V value, EntryState state) {
+            this.key = key;
+            this.value = value;
+            this.state = state;
+            this.segment = segment(key);
+
+            if (value instanceof Cache.TimeOut) {
+                Duration duration = ((Cache.TimeOut) value).getTimeOut();
+                this.timeOut = (duration != null) ? duration.getTime(TimeUnit.MILLISECONDS) : getTimeOut();
+            } else {
+                this.timeOut = getTimeOut();
+            }
+
+            lastAccess = System.currentTimeMillis();
+        }
+
+        private K getKey() {
+            assertLockHeld();
+            return key;
+        }
+
+        private V getValue() {
+            assertLockHeld();
+            return value;
+        }
+
+        private EntryState getState() {
+            assertLockHeld();
+            return state;
+        }
+
+        private void setState(EntryState state) {
+            assertLockHeld();
+            this.state = state;
+        }
+
+        /**
+         * Counts the entry as idle and puts it in the clock unless it
+         * is still there from a previous check-in
+         */
+        private void makeIdle() {
+            assertLockHeld();
+            segment.idle.incrementAndGet();
+            referenced = true;
+            if (!queued) {
+                queued = true;
+                segment.clock.offer(this);
+            }
+        }
+
+        private void remove() {
+            assertLockHeld();
+            if (state == EntryState.AVAILABLE) {
+                segment.idle.decrementAndGet();
+            }
+            state = EntryState.REMOVED;
+        }
+
+        private boolean isTimedOut() {
+            assertLockHeld();
+
+            if (timeOut < 0) {
+                return false;
+            } else if (timeOut == 0) {
+                return true;
+            } else {
+                long now = System.currentTimeMillis();
+                return (now - lastAccess) > timeOut;
+            }
+        }
+
+        private void resetTimeOut() {
+            assertLockHeld();
+
+            if (timeOut > 0) {
+                lastAccess = System.currentTimeMillis();
+            }
+        }
+
+        private void assertLockHeld() {
+            if (!lock.isHeldByCurrentThread()) {
+                throw new IllegalStateException("Entry must be locked");
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.apache.openejb.ApplicationException;
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.ContainerType;
 import org.apache.openejb.InterfaceType;
+import org.apache.openejb.InvocationPlan;
 import org.apache.openejb.InvalidateReferenceException;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.OpenEJBRuntimeException;
@@ -513,8 +514,10 @@ public class StatefulContainer implements RpcContainer {
                 }
             }
 
+            final InvocationPlan plan = beanContext.getInvocationPlan(callMethod, interfaceType);
+
             // Start transaction
-            final TransactionPolicy txPolicy = createTransactionPolicy(callContext.getBeanContext().getTransactionType(callMethod, interfaceType), callContext);
+            final TransactionPolicy txPolicy = createTransactionPolicy(plan.getTransactionType(), callContext);
 
             Object returnValue = null;
             boolean retain = false;
@@ -522,7 +525,7 @@ public class StatefulContainer implements RpcContainer {
             Method runMethod = null;
             try {
                 // Obtain instance
-                instance = obtainInstance(primKey, callContext, callMethod, beanContext.isPassivatingScope());
+                instance = obtainInstance(primKey, callContext, plan, beanContext.isPassivatingScope());
 
                 // Resume previous Bean transaction if there was one
                 if (txPolicy instanceof BeanTransactionPolicy) {
@@ -546,7 +549,7 @@ public class StatefulContainer implements RpcContainer {
                     callContext.setCurrentOperation(Operation.REMOVE);
                     callContext.setCurrentAllowedStates(null);
                     callContext.setInvokedInterface(callInterface);
-                    runMethod = beanContext.getMatchingBeanMethod(callMethod);
+                    runMethod = plan.getBeanMethod();
                     callContext.set(Method.class, runMethod);
 
                     // Do not pass arguments on home.remove(remote) calls
@@ -556,8 +559,7 @@ public class StatefulContainer implements RpcContainer {
                     }
 
                     // Initialize interceptor stack
-                    final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                    final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.REMOVE, interceptors, instance.interceptors);
+                    final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, plan.getInterceptorChain(Operation.REMOVE), instance.interceptors);
 
                     // Invoke
                     if (args == null) {
@@ -633,14 +635,16 @@ public class StatefulContainer implements RpcContainer {
             // Security check
             checkAuthorization(callMethod, interfaceType);
 
+            final InvocationPlan plan = beanContext.getInvocationPlan(callMethod, interfaceType);
+
             // Start transaction
-            final TransactionPolicy txPolicy = createTransactionPolicy(callContext.getBeanContext().getTransactionType(callMethod, interfaceType), callContext);
+            final TransactionPolicy txPolicy = createTransactionPolicy(plan.getTransactionType(), callContext);
 
             Object returnValue = null;
             Instance instance = null;
             try {
                 // Obtain instance
-                instance = obtainInstance(primKey, callContext, callMethod, true);
+                instance = obtainInstance(primKey, callContext, plan, true);
 
                 // Resume previous Bean transaction if there was one
                 if (txPolicy instanceof BeanTransactionPolicy) {
@@ -662,12 +666,11 @@ public class StatefulContainer implements RpcContainer {
                 callContext.setCurrentOperation(Operation.BUSINESS);
                 callContext.setCurrentAllowedStates(null);
                 callContext.setInvokedInterface(callInterface);
-                final Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
+                final Method runMethod = plan.getBeanMethod();
                 callContext.set(Method.class, runMethod);
 
                 // Initialize interceptor stack
-                final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.BUSINESS, interceptors, instance.interceptors);
+                final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, plan.getInterceptorChain(Operation.BUSINESS), instance.interceptors);
 
                 // Invoke
                 returnValue = interceptorStack.invoke(args);
@@ -687,7 +690,7 @@ public class StatefulContainer implements RpcContainer {
     }
 
     @SuppressWarnings("LockAcquiredButNotSafelyReleased")
-    private Instance obtainInstance(final Object primaryKey, final ThreadContext callContext, final Method callMethod, final boolean checkOutIfNecessary) throws OpenEJBException {
+    private Instance obtainInstance(final Object primaryKey, final ThreadContext callContext, final InvocationPlan plan, final boolean checkOutIfNecessary) throws OpenEJBException {
         if (primaryKey == null) {
             throw new SystemException(new NullPointerException("Cannot obtain an instance of the stateful session bean with a null session id"));
         }
@@ -717,7 +720,7 @@ public class StatefulContainer implements RpcContainer {
             }
         }
 
-        final Duration accessTimeout = getAccessTimeout(instance.beanContext, callMethod);
+        final Duration accessTimeout = getAccessTimeout(plan);
 
         final Lock currLock = instance.getLock();
         final boolean lockAcquired;
@@ -754,15 +757,10 @@ public class StatefulContainer implements RpcContainer {
         return instance;
     }
 
-    private Duration getAccessTimeout(final BeanContext beanContext, Method callMethod) {
-        callMethod = beanContext.getMatchingBeanMethod(callMethod);
-
-        Duration accessTimeout = beanContext.getAccessTimeout(callMethod);
+    private Duration getAccessTimeout(final InvocationPlan plan) {
+        Duration accessTimeout = plan.getAccessTimeout();
         if (accessTimeout == null) {
-            accessTimeout = beanContext.getAccessTimeout();
-            if (accessTimeout == null) {
-                accessTimeout = this.accessTimeout;
-            }
+            accessTimeout = this.accessTimeout;
         }
         return accessTimeout;
     }
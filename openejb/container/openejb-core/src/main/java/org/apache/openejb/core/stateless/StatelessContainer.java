@@ -40,12 +40,14 @@ import org.apache.openejb.ApplicationException;
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.ContainerType;
 import org.apache.openejb.InterfaceType;
+import org.apache.openejb.InvocationPlan;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.ProxyInfo;
 import org.apache.openejb.SystemException;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
@@ -163,7 +165,8 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
         // Use the backup way to determine call type if null was supplied.
         if (type == null) type = beanContext.getInterfaceType(callInterface);
 
-        Method runMethod = beanContext.getMatchingBeanMethod(callMethod);
+        InvocationPlan plan = beanContext.getInvocationPlan(callMethod, type);
+        Method runMethod = plan.getBeanMethod();
 
         ThreadContext callContext = new ThreadContext(beanContext, primKey);
         ThreadContext oldCallContext = ThreadContext.enter(callContext);
@@ -188,7 +191,7 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
             callContext.setCurrentOperation(type == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS);
             callContext.set(Method.class, runMethod);
             callContext.setInvokedInterface(callInterface);
-            Object retValue = _invoke(callMethod, runMethod, args, (Instance) bean, callContext, type);
+            Object retValue = _invoke(plan, args, (Instance) bean, callContext, type);
 
             return retValue;
 
@@ -222,20 +225,24 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
 
     protected Object _invoke(Method callMethod, Method runMethod, Object[] args, Instance instance, ThreadContext callContext, InterfaceType type)
             throws OpenEJBException {
+        return _invoke(callContext.getBeanContext().getInvocationPlan(callMethod, runMethod, type), args, instance, callContext, type);
+    }
+
+    protected Object _invoke(InvocationPlan plan, Object[] args, Instance instance, ThreadContext callContext, InterfaceType type)
+            throws OpenEJBException {
 
         BeanContext beanContext = callContext.getBeanContext();
 
-        TransactionPolicy txPolicy = createTransactionPolicy(beanContext.getTransactionType(callMethod, type), callContext);
+        TransactionPolicy txPolicy = createTransactionPolicy(plan.getTransactionType(), callContext);
 
         Object returnValue = null;
         try {
             if (type == InterfaceType.SERVICE_ENDPOINT){
                 callContext.setCurrentOperation(Operation.BUSINESS_WS);
-                returnValue = invokeWebService(args, beanContext, runMethod, instance, returnValue);
+                returnValue = invokeWebService(args, plan, instance, returnValue);
             } else {
-                List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, type == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS, interceptors,
-                        instance.interceptors);
+                InterceptorChain chain = plan.getInterceptorChain(type == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS);
+                InterceptorStack interceptorStack = new InterceptorStack(instance.bean, chain, instance.interceptors);
                 returnValue = interceptorStack.invoke(args);
             }
         } catch (Throwable re) {// handle reflection exception
@@ -271,7 +278,9 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
         return returnValue;
     }
 
-    private Object invokeWebService(Object[] args, BeanContext beanContext, Method runMethod, Instance instance, Object returnValue) throws Exception {
+    private Object invokeWebService(Object[] args, InvocationPlan plan, Instance instance, Object returnValue) throws Exception {
+        Method runMethod = plan.getBeanMethod();
+
         if (args.length < 2) {
             throw new IllegalArgumentException("WebService calls must follow format {messageContext, interceptor, [arg...]}.");
         }
@@ -314,7 +323,7 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer {
 
             providerData.getAroundInvoke().addAll(aroundInvokes);
             interceptorDatas.add(0, providerData);
-            interceptorDatas.addAll(beanContext.getMethodInterceptors(runMethod));
+            interceptorDatas.addAll(plan.getInterceptors());
         }
 
         InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.BUSINESS_WS, interceptorDatas, interceptors);
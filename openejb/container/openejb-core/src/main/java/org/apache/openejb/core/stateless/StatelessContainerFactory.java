@@ -110,6 +110,10 @@ public class StatelessContainerFactory {
         pool.setGarbageCollection(garbageCollection);
     }
 
+    public void setThreadAffinity(boolean threadAffinity) {
+        pool.setThreadAffinity(threadAffinity);
+    }
+
     public void setMaxAgeOffset(double maxAgeOffset) {
         pool.setMaxAgeOffset(maxAgeOffset);
     }
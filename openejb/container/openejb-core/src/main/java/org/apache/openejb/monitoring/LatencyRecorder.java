@@ -0,0 +1,275 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.monitoring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records invocation latencies without taking any lock.
+ *
+ * Durations, in nanoseconds, are counted in a log-linear histogram:
+ * values under 64ns get a bucket each, above that every power of two
+ * is split in 32 buckets, so any percentile is within ~3% of the
+ * real value.  Durations over 2^40ns (about 18 minutes) are counted
+ * in the last bucket.  The histogram is striped by thread so
+ * concurrent callers rarely hit the same counter, and its size is
+ * fixed whatever the number of invocations.  By default there are as
+ * many stripes as processors, rounded up to a power of two and at most
+ * 64, each about 9KB.  The counters of a stripe are padded on both
+ * sides so two stripes never share a cache line.
+ *
+ * The most recent durations are also kept for the descriptive
+ * statistics, each stripe has its own sample ring whose slots are
+ * handed out by the stripe's write counter, so no sample is lost and
+ * the threads of different stripes never write the same ring.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+    private static final long HIGHEST_VALUE = (1L << 40) - 1;
+
+    static final int BUCKETS = index(HIGHEST_VALUE) + 1;
+
+    private static final int MAX_STRIPES = 64;
+
+    // two cache lines of longs, adjacent lines are often fetched in pairs
+    private static final int PADDING = 16;
+    private static final int ERRORS = PADDING + BUCKETS;
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+    private final long created = System.nanoTime();
+
+    private volatile Ring[] samples;
+
+    public LatencyRecorder(int sampleSize) {
+        this(sampleSize, defaultStripes());
+    }
+
+    public LatencyRecorder(int sampleSize, int stripes) {
+        if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("stripes must be a power of two: " + stripes);
+        }
+        this.stripes = new AtomicLongArray[stripes];
+        for (int i = 0; i < stripes; i++) {
+            // one slot per bucket plus the error count, between the paddings
+            this.stripes[i] = new AtomicLongArray(PADDING + BUCKETS + 1 + PADDING);
+        }
+        this.mask = stripes - 1;
+        this.samples = rings(stripes, sampleSize);
+    }
+
+    private static Ring[] rings(int stripes, int size) {
+        final Ring[] rings = new Ring[stripes];
+        for (int i = 0; i < stripes; i++) {
+            rings[i] = new Ring(Math.max(1, size));
+        }
+        return rings;
+    }
+
+    private static int defaultStripes() {
+        final int cpus = Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES);
+        final int stripes = Integer.highestOneBit(Math.max(1, cpus));
+        return stripes < cpus ? stripes << 1 : stripes;
+    }
+
+    public void record(long nanos, boolean failed) {
+        final int index = (int) Thread.currentThread().getId() & mask;
+        final AtomicLongArray stripe = stripes[index];
+        stripe.incrementAndGet(PADDING + index(nanos));
+        if (failed) stripe.incrementAndGet(ERRORS);
+
+        samples[index].add(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (long c : counts()) {
+            count += c;
+        }
+        return count;
+    }
+
+    public long getErrorCount() {
+        long errors = 0;
+        for (AtomicLongArray stripe : stripes) {
+            errors += stripe.get(ERRORS);
+        }
+        return errors;
+    }
+
+    /**
+     * @return the average number of recorded invocations per second
+     * since this recorder was created
+     */
+    public double getThroughput() {
+        final long elapsed = System.nanoTime() - created;
+        if (elapsed <= 0) return 0;
+        return getCount() * 1000000000d / elapsed;
+    }
+
+    /**
+     * @param percentile in the ]0, 100] range
+     * @return the duration in nanoseconds under which the given percentage
+     * of the recorded durations fall, NaN if nothing was recorded
+     */
+    public double getPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in ]0, 100]: " + percentile);
+        }
+
+        final long[] counts = counts();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) return Double.NaN;
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return value(i);
+        }
+        return value(counts.length - 1);
+    }
+
+    public int getSampleSize() {
+        return samples[0].size();
+    }
+
+    /**
+     * Replaces the sample rings, the most recent samples are kept.
+     */
+    public void setSampleSize(int size) {
+        final Ring[] current = samples;
+        final Ring[] rings = rings(current.length, size);
+        for (int i = 0; i < current.length; i++) {
+            for (long nanos : current[i].values()) {
+                rings[i].add(nanos);
+            }
+        }
+        samples = rings;
+    }
+
+    /**
+     * @return at most the sample size of the most recent durations in
+     * nanoseconds, taken evenly from the stripes and oldest first within
+     * a stripe
+     */
+    public long[] getSamples() {
+        final Ring[] rings = samples;
+        final long[][] recent = new long[rings.length][];
+        int total = 0;
+        for (int i = 0; i < rings.length; i++) {
+            recent[i] = rings[i].values();
+            total += recent[i].length;
+        }
+
+        final int size = Math.min(total, rings[0].size());
+        final int[] taken = new int[rings.length];
+        int count = 0;
+        while (count < size) {
+            for (int i = 0; i < rings.length && count < size; i++) {
+                if (taken[i] < recent[i].length) {
+                    taken[i]++;
+                    count++;
+                }
+            }
+        }
+
+        final long[] values = new long[size];
+        int position = 0;
+        for (int i = 0; i < rings.length; i++) {
+            System.arraycopy(recent[i], recent[i].length - taken[i], values, position, taken[i]);
+            position += taken[i];
+        }
+        return values;
+    }
+
+    private long[] counts() {
+        final long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(PADDING + i);
+            }
+        }
+        return counts;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) Math.max(0, value);
+        if (value > HIGHEST_VALUE) value = HIGHEST_VALUE;
+
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS + 1;
+        return (shift << SUB_BUCKET_HALF_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the highest value counted in the bucket, so a percentile
+     * is never under the durations it covers
+     */
+    static long value(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+
+        final int shift = (index >> SUB_BUCKET_HALF_BITS) - 1;
+        final long lowest = (long) (index - (shift << SUB_BUCKET_HALF_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * The write counter sits right before the samples and both are
+     * padded, as for the histogram stripes.
+     */
+    private static final class Ring {
+        private static final int WRITTEN = PADDING;
+        private static final int FIRST = WRITTEN + 1;
+
+        private final AtomicLongArray slots;
+        private final int size;
+
+        private Ring(int size) {
+            this.slots = new AtomicLongArray(FIRST + size + PADDING);
+            this.size = size;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void add(long nanos) {
+            slots.lazySet(FIRST + (int) (slots.getAndIncrement(WRITTEN) % size), nanos);
+        }
+
+        /**
+         * @return the durations of the ring, oldest first
+         */
+        private long[] values() {
+            final long written = slots.get(WRITTEN);
+            final int count = (int) Math.min(written, size);
+            final long[] recent = new long[count];
+            for (int i = 0; i < count; i++) {
+                recent[i] = slots.get(FIRST + (int) ((written - count + i) % size));
+            }
+            return recent;
+        }
+    }
+}
@@ -17,7 +17,7 @@
 package org.apache.openejb.monitoring;
 
 import org.apache.openejb.loader.SystemInstance;
-import org.apache.openejb.math.stat.descriptive.SynchronizedDescriptiveStatistics;
+import org.apache.openejb.math.stat.descriptive.DescriptiveStatistics;
 import org.apache.xbean.finder.ClassFinder;
 import org.apache.openejb.api.Monitor;
 import org.apache.openejb.core.interceptor.InterceptorData;
@@ -44,6 +44,7 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class StatsInterceptor {
     private static final String DISABLE_STAT_INTERCEPTOR_PROPERTY = "openejb.stats.interceptor.disable";
+    private static final double NANOS_PER_MILLI = 1000000d;
 
     public static final InterceptorData metadata = InterceptorData.scan(StatsInterceptor.class);
 
@@ -171,14 +172,16 @@ public class StatsInterceptor {
         invocations.incrementAndGet();
 
         Stats stats = enabled ? stats(invocationContext, callback): null;
+        boolean failed = true;
         long start = System.nanoTime();
         try{
-            return invocationContext.proceed();
+            Object value = invocationContext.proceed();
+            failed = false;
+            return value;
         } finally {
             long time = System.nanoTime() - start;
-            time = millis(time); // do it in 2 steps since otherwise the measure is false (more false)
-            if (stats != null) stats.record(time);
-            invocationTime.addAndGet(time);
+            if (stats != null) stats.record(time, failed);
+            invocationTime.addAndGet(millis(time));
         }
     }
 
@@ -202,9 +205,14 @@ public class StatsInterceptor {
         return stats;
     }
 
+    /**
+     * Per method statistics.  Durations are reported in milliseconds,
+     * the percentiles cover every invocation since the method was first
+     * monitored while the other statistics are computed from the most
+     * recent samples.
+     */
     public class Stats {
-        private final AtomicLong count = new AtomicLong();
-        private final SynchronizedDescriptiveStatistics samples;
+        private final LatencyRecorder recorder;
 
         // Used as the prefix for the MBeanAttributeInfo
         private final String method;
@@ -214,7 +222,7 @@ public class StatsInterceptor {
 
             int window = (methodAnnotation != null) ? methodAnnotation.sample() : (classAnnotation != null) ? classAnnotation.sample() : 2000;
 
-            this.samples = new SynchronizedDescriptiveStatistics(window);
+            this.recorder = new LatencyRecorder(window);
             String s = ",";
 
             StringBuilder sb = new StringBuilder(method.getName());
@@ -232,119 +240,144 @@ public class StatsInterceptor {
 
         @Managed
         public void setSampleSize(int i) {
-            samples.setWindowSize(i);
+            recorder.setSampleSize(i);
         }
 
         @Managed
         public int getSampleSize() {
-            return samples.getWindowSize();
+            return recorder.getSampleSize();
         }
 
         @Managed
         public long getCount() {
-            return count.get();
+            return recorder.getCount();
+        }
+
+        @Managed
+        public long getErrorCount() {
+            return recorder.getErrorCount();
+        }
+
+        @Managed
+        public double getThroughput() {
+            return recorder.getThroughput();
+        }
+
+        @Managed
+        public double getPercentile999() {
+            return percentile(99.9);
         }
 
         @Managed
         public double getPercentile99() {
-            return samples.getPercentile(99.0);
+            return percentile(99.0);
         }
 
         @Managed
         public double getPercentile90() {
-            return samples.getPercentile(90.0);
+            return percentile(90.0);
         }
 
         @Managed
         public double getPercentile75() {
-            return samples.getPercentile(75.0);
+            return percentile(75.0);
         }
 
         @Managed
         public double getPercentile50() {
-            return samples.getPercentile(50.0);
+            return percentile(50.0);
         }
 
         @Managed
         public double getPercentile25() {
-            return samples.getPercentile(25.0);
+            return percentile(25.0);
         }
 
         @Managed
         public double getPercentile10() {
-            return samples.getPercentile(10.0);
+            return percentile(10.0);
         }
 
         @Managed
         public double getPercentile01() {
-            return samples.getPercentile(1.0);
+            return percentile(1.0);
         }
 
         @Managed
         public double getStandardDeviation() {
-            return samples.getStandardDeviation();
+            return samples().getStandardDeviation();
         }
 
         @Managed
         public double getMean() {
-            return samples.getMean();
+            return samples().getMean();
         }
 
         @Managed
         public double getVariance() {
-            return samples.getVariance();
+            return samples().getVariance();
         }
 
         @Managed
         public double getGeometricMean() {
-            return samples.getGeometricMean();
+            return samples().getGeometricMean();
         }
 
         @Managed
         public double getSkewness() {
-            return samples.getSkewness();
+            return samples().getSkewness();
         }
 
         @Managed
         public double getKurtosis() {
-            return samples.getKurtosis();
+            return samples().getKurtosis();
         }
 
         @Managed
         public double getMax() {
-            return samples.getMax();
+            return samples().getMax();
         }
 
         @Managed
         public double getMin() {
-            return samples.getMin();
+            return samples().getMin();
         }
 
         @Managed
         public double getSum() {
-            return samples.getSum();
+            return samples().getSum();
         }
 
         @Managed
         public double getSumsq() {
-            return samples.getSumsq();
+            return samples().getSumsq();
         }
 
         @Managed
         public double[] sortedValues() {
-            return samples.getSortedValues();
+            return samples().getSortedValues();
         }
 
         @Managed
         public double[] values() {
-            return samples.getValues();
+            return samples().getValues();
+        }
+
+        public void record(long nanos, boolean failed) {
+            recorder.record(nanos, failed);
         }
 
-        public void record(long time) {
-            count.incrementAndGet();
-            samples.addValue(time);
+        private double percentile(double p) {
+            return recorder.getPercentile(p) / NANOS_PER_MILLI;
         }
 
+        private DescriptiveStatistics samples() {
+            DescriptiveStatistics statistics = new DescriptiveStatistics();
+            for (long nanos : recorder.getSamples()) {
+                statistics.addValue(nanos / NANOS_PER_MILLI);
+            }
+            return statistics;
+        }
     }
 
     public static boolean isStatsActivated() {
@@ -16,53 +16,382 @@
  */
 package org.apache.openejb.resource.jdbc.logging;
 
-import org.apache.openejb.util.LogCategory;
-import org.apache.openejb.util.Logger;
+import org.apache.openejb.resource.jdbc.DelegatingPreparedStatement;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
 import java.sql.PreparedStatement;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.TreeMap;
 
-public class LoggingPreparedSqlStatement extends AbstractSQLLogger implements InvocationHandler {
-    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_SQL, LoggingPreparedSqlStatement.class);
-
-    private final PreparedStatement delegate;
+public class LoggingPreparedSqlStatement<T extends PreparedStatement> extends DelegatingPreparedStatement<T> {
     private final String sql;
-    private final List<Parameter> parameters = new ArrayList<Parameter>();
+    private final Map<Integer, Parameter> parameters = new TreeMap<Integer, Parameter>();
+
+    public LoggingPreparedSqlStatement(final T result, final Connection connection, final String query) {
+        super(result, connection);
+        sql = query;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        final long start = System.nanoTime();
+        final ResultSet result = super.executeQuery();
+        log(start);
+        return result;
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        final long start = System.nanoTime();
+        final int result = super.executeUpdate();
+        log(start);
+        return result;
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        final long start = System.nanoTime();
+        final boolean result = super.execute();
+        log(start);
+        return result;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        final long start = System.nanoTime();
+        final int[] result = super.executeBatch();
+        log(start);
+        return result;
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        super.clearParameters();
+        parameters.clear();
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType) throws SQLException {
+        super.setNull(parameterIndex, sqlType);
+        parameter("Null", parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setBoolean(final int parameterIndex, final boolean x) throws SQLException {
+        super.setBoolean(parameterIndex, x);
+        parameter("Boolean", parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(final int parameterIndex, final byte x) throws SQLException {
+        super.setByte(parameterIndex, x);
+        parameter("Byte", parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(final int parameterIndex, final short x) throws SQLException {
+        super.setShort(parameterIndex, x);
+        parameter("Short", parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(final int parameterIndex, final int x) throws SQLException {
+        super.setInt(parameterIndex, x);
+        parameter("Int", parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(final int parameterIndex, final long x) throws SQLException {
+        super.setLong(parameterIndex, x);
+        parameter("Long", parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(final int parameterIndex, final float x) throws SQLException {
+        super.setFloat(parameterIndex, x);
+        parameter("Float", parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(final int parameterIndex, final double x) throws SQLException {
+        super.setDouble(parameterIndex, x);
+        parameter("Double", parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException {
+        super.setBigDecimal(parameterIndex, x);
+        parameter("BigDecimal", parameterIndex, x);
+    }
+
+    @Override
+    public void setString(final int parameterIndex, final String x) throws SQLException {
+        super.setString(parameterIndex, x);
+        parameter("String", parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(final int parameterIndex, final byte[] x) throws SQLException {
+        super.setBytes(parameterIndex, x);
+        parameter("Bytes", parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(final int parameterIndex, final Date x) throws SQLException {
+        super.setDate(parameterIndex, x);
+        parameter("Date", parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(final int parameterIndex, final Time x) throws SQLException {
+        super.setTime(parameterIndex, x);
+        parameter("Time", parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException {
+        super.setTimestamp(parameterIndex, x);
+        parameter("Timestamp", parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        super.setAsciiStream(parameterIndex, x, length);
+        parameter("AsciiStream", parameterIndex, x);
+    }
+
+    @Deprecated
+    @Override
+    public void setUnicodeStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        super.setUnicodeStream(parameterIndex, x, length);
+        parameter("UnicodeStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        super.setBinaryStream(parameterIndex, x, length);
+        parameter("BinaryStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(final int parameterIndex, final Object x, final int targetSqlType) throws SQLException {
+        super.setObject(parameterIndex, x, targetSqlType);
+        parameter("Object", parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(final int parameterIndex, final Object x) throws SQLException {
+        super.setObject(parameterIndex, x);
+        parameter("Object", parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader, final int length) throws SQLException {
+        super.setCharacterStream(parameterIndex, reader, length);
+        parameter("CharacterStream", parameterIndex, reader);
+    }
+
+    @Override
+    public void setRef(final int parameterIndex, final Ref x) throws SQLException {
+        super.setRef(parameterIndex, x);
+        parameter("Ref", parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(final int parameterIndex, final Blob x) throws SQLException {
+        super.setBlob(parameterIndex, x);
+        parameter("Blob", parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Clob x) throws SQLException {
+        super.setClob(parameterIndex, x);
+        parameter("Clob", parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(final int parameterIndex, final Array x) throws SQLException {
+        super.setArray(parameterIndex, x);
+        parameter("Array", parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(final int parameterIndex, final Date x, final Calendar cal) throws SQLException {
+        super.setDate(parameterIndex, x, cal);
+        parameter("Date", parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(final int parameterIndex, final Time x, final Calendar cal) throws SQLException {
+        super.setTime(parameterIndex, x, cal);
+        parameter("Time", parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(final int parameterIndex, final Timestamp x, final Calendar cal) throws SQLException {
+        super.setTimestamp(parameterIndex, x, cal);
+        parameter("Timestamp", parameterIndex, x);
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType, final String typeName) throws SQLException {
+        super.setNull(parameterIndex, sqlType, typeName);
+        parameter("Null", parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setURL(final int parameterIndex, final URL x) throws SQLException {
+        super.setURL(parameterIndex, x);
+        parameter("URL", parameterIndex, x);
+    }
+
+    @Override
+    public void setRowId(final int parameterIndex, final RowId x) throws SQLException {
+        super.setRowId(parameterIndex, x);
+        parameter("RowId", parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(final int parameterIndex, final String value) throws SQLException {
+        super.setNString(parameterIndex, value);
+        parameter("NString", parameterIndex, value);
+    }
+
+    @Override
+    public void setNCharacterStream(final int parameterIndex, final Reader value, final long length) throws SQLException {
+        super.setNCharacterStream(parameterIndex, value, length);
+        parameter("NCharacterStream", parameterIndex, value);
+    }
+
+    @Override
+    public void setNClob(final int parameterIndex, final NClob value) throws SQLException {
+        super.setNClob(parameterIndex, value);
+        parameter("NClob", parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+        super.setClob(parameterIndex, reader, length);
+        parameter("Clob", parameterIndex, reader);
+    }
 
-    public LoggingPreparedSqlStatement(final PreparedStatement result, final String query) {
-        delegate = result;
-        sql= query;
+    @Override
+    public void setBlob(final int parameterIndex, final InputStream inputStream, final long length) throws SQLException {
+        super.setBlob(parameterIndex, inputStream, length);
+        parameter("Blob", parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+        super.setNClob(parameterIndex, reader, length);
+        parameter("NClob", parameterIndex, reader);
+    }
+
+    @Override
+    public void setSQLXML(final int parameterIndex, final SQLXML xmlObject) throws SQLException {
+        super.setSQLXML(parameterIndex, xmlObject);
+        parameter("SQLXML", parameterIndex, xmlObject);
+    }
+
+    @Override
+    public void setObject(final int parameterIndex, final Object x, final int targetSqlType, final int scaleOrLength) throws SQLException {
+        super.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        parameter("Object", parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
+        super.setAsciiStream(parameterIndex, x, length);
+        parameter("AsciiStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
+        super.setBinaryStream(parameterIndex, x, length);
+        parameter("BinaryStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+        super.setCharacterStream(parameterIndex, reader, length);
+        parameter("CharacterStream", parameterIndex, reader);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream x) throws SQLException {
+        super.setAsciiStream(parameterIndex, x);
+        parameter("AsciiStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream x) throws SQLException {
+        super.setBinaryStream(parameterIndex, x);
+        parameter("BinaryStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader) throws SQLException {
+        super.setCharacterStream(parameterIndex, reader);
+        parameter("CharacterStream", parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(final int parameterIndex, final Reader value) throws SQLException {
+        super.setNCharacterStream(parameterIndex, value);
+        parameter("NCharacterStream", parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Reader reader) throws SQLException {
+        super.setClob(parameterIndex, reader);
+        parameter("Clob", parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(final int parameterIndex, final InputStream inputStream) throws SQLException {
+        super.setBlob(parameterIndex, inputStream);
+        parameter("Blob", parameterIndex, inputStream);
     }
 
     @Override
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        final String mtdName = method.getName();
-        final boolean execute = mtdName.startsWith("execute");
+    public void setNClob(final int parameterIndex, final Reader reader) throws SQLException {
+        super.setNClob(parameterIndex, reader);
+        parameter("NClob", parameterIndex, reader);
+    }
 
-        final TimeWatcherExecutor.TimerWatcherResult result = TimeWatcherExecutor.execute(method, delegate, args, execute);
+    private void parameter(final String type, final int index, final Object value) {
+        parameters.put(index, new Parameter(type, index, value));
+    }
 
-        if (mtdName.startsWith("set") && args.length >= 2 && (args[0].getClass().equals(Integer.TYPE) || args[0].getClass().equals(Integer.class))) {
-            parameters.add(new Parameter(mtdName.substring(3), (Integer) args[0], args[1]));
-        } else if (execute) {
-            String str = sql;
-            if (str.contains("?")) {
-                Collections.sort(parameters);
-                for (Parameter param : parameters) {
-                    try {
-                        str = str.replaceFirst("\\?", param.value.toString());
-                    } catch (Exception e) {
-                        str = str.replaceFirst("\\?", param.value.getClass().getName());
-                    }
+    private void log(final long start) {
+        String str = sql;
+        if (str.contains("?")) {
+            for (Parameter param : parameters.values()) {
+                try {
+                    str = str.replaceFirst("\\?", param.value.toString());
+                } catch (Exception e) {
+                    str = str.replaceFirst("\\?", param.value.getClass().getName());
                 }
             }
-            LOGGER.info(format(str, result.getDuration()));
         }
-
-        return result.getResult();
+        LoggingSqlStatement.log(str, start);
     }
 
     protected static class Parameter implements Comparable<Parameter> {
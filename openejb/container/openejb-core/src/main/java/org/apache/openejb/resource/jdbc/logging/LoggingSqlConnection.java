@@ -16,52 +16,76 @@
  */
 package org.apache.openejb.resource.jdbc.logging;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import org.apache.openejb.resource.jdbc.DelegatingConnection;
+
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
 
-public class LoggingSqlConnection implements InvocationHandler {
-    private static final Class<?>[] INTERFACES_STATEMENT = new Class<?>[] { Statement.class };
-    private static final Class<?>[] INTERFACES_PREPARED = new Class<?>[] { PreparedStatement.class };
-    private static final Class<?>[] INTERFACES_CALLABLE = new Class<?>[] { CallableStatement.class };
+public class LoggingSqlConnection extends DelegatingConnection {
+    public LoggingSqlConnection(final Connection connection) {
+        super(connection);
+    }
 
-    private final Connection delegate;
+    @Override
+    public Statement createStatement() throws SQLException {
+        return new LoggingSqlStatement(delegate.createStatement(), this);
+    }
 
-    public LoggingSqlConnection(final Connection connection) {
-        delegate = connection;
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return new LoggingSqlStatement(delegate.createStatement(resultSetType, resultSetConcurrency), this);
     }
 
     @Override
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        final Object result;
-        try {
-            result = method.invoke(delegate, args);
-        } catch (InvocationTargetException ite) {
-            throw ite.getCause();
-        }
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return new LoggingSqlStatement(delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this);
+    }
 
-        final String mtd = method.getName();
+    @Override
+    public PreparedStatement prepareStatement(final String sql) throws SQLException {
+        return new LoggingPreparedSqlStatement<PreparedStatement>(delegate.prepareStatement(sql), this, sql);
+    }
 
-        if ("createStatement".equals(mtd)) {
-            return Proxy.newProxyInstance(delegate.getClass().getClassLoader(), INTERFACES_STATEMENT,
-                    new LoggingSqlStatement((Statement) result));
-        }
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return new LoggingPreparedSqlStatement<PreparedStatement>(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency), this, sql);
+    }
 
-        if ("prepareStatement".equals(mtd)) {
-            return Proxy.newProxyInstance(delegate.getClass().getClassLoader(), INTERFACES_PREPARED,
-                    new LoggingPreparedSqlStatement((PreparedStatement) result, (String) args[0]));
-        }
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return new LoggingPreparedSqlStatement<PreparedStatement>(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this, sql);
+    }
 
-        if ("prepareCall".equals(mtd)) {
-            return Proxy.newProxyInstance(delegate.getClass().getClassLoader(), INTERFACES_CALLABLE,
-                    new LoggingCallableSqlStatement((CallableStatement) result, (String) args[0]));
-        }
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException {
+        return new LoggingPreparedSqlStatement<PreparedStatement>(delegate.prepareStatement(sql, autoGeneratedKeys), this, sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException {
+        return new LoggingPreparedSqlStatement<PreparedStatement>(delegate.prepareStatement(sql, columnIndexes), this, sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException {
+        return new LoggingPreparedSqlStatement<PreparedStatement>(delegate.prepareStatement(sql, columnNames), this, sql);
+    }
 
-        return result;
+    @Override
+    public CallableStatement prepareCall(final String sql) throws SQLException {
+        return new LoggingCallableSqlStatement(delegate.prepareCall(sql), this, sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return new LoggingCallableSqlStatement(delegate.prepareCall(sql, resultSetType, resultSetConcurrency), this, sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return new LoggingCallableSqlStatement(delegate.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this, sql);
     }
 }
@@ -20,12 +20,9 @@ import javax.sql.DataSource;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 
 public class LoggingSqlDataSource implements InvocationHandler {
-    private static final Class<?>[] INTERFACES = new Class<?>[]{ Connection.class };
-
     private DataSource delegate;
 
     public LoggingSqlDataSource(final DataSource ds) {
@@ -42,8 +39,7 @@ public class LoggingSqlDataSource implements InvocationHandler {
         }
 
         if ("getConnection".equals(method.getName())) {
-            return Proxy.newProxyInstance(delegate.getClass().getClassLoader(),
-                    INTERFACES, new LoggingSqlConnection((Connection) result));
+            return new LoggingSqlConnection((Connection) result);
         }
         return result;
     }
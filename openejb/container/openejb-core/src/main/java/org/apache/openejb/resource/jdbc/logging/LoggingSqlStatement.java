@@ -16,32 +16,96 @@
  */
 package org.apache.openejb.resource.jdbc.logging;
 
+import org.apache.openejb.resource.jdbc.DelegatingStatement;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
 
-public class LoggingSqlStatement extends AbstractSQLLogger implements InvocationHandler {
+public class LoggingSqlStatement extends DelegatingStatement<Statement> {
     private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_SQL, LoggingSqlStatement.class);
 
-    private final Statement delegate;
+    public LoggingSqlStatement(final Statement result, final Connection connection) {
+        super(result, connection);
+    }
+
+    @Override
+    public ResultSet executeQuery(final String sql) throws SQLException {
+        final long start = System.nanoTime();
+        final ResultSet result = super.executeQuery(sql);
+        log(sql, start);
+        return result;
+    }
+
+    @Override
+    public int executeUpdate(final String sql) throws SQLException {
+        final long start = System.nanoTime();
+        final int result = super.executeUpdate(sql);
+        log(sql, start);
+        return result;
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+        final long start = System.nanoTime();
+        final int result = super.executeUpdate(sql, autoGeneratedKeys);
+        log(sql, start);
+        return result;
+    }
 
-    public LoggingSqlStatement(final Statement result) {
-        delegate = result;
+    @Override
+    public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+        final long start = System.nanoTime();
+        final int result = super.executeUpdate(sql, columnIndexes);
+        log(sql, start);
+        return result;
     }
 
     @Override
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        final String mtdName = method.getName();
-        final boolean execute = mtdName.startsWith("execute") && args != null && args.length > 0;
+    public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
+        final long start = System.nanoTime();
+        final int result = super.executeUpdate(sql, columnNames);
+        log(sql, start);
+        return result;
+    }
 
-        final TimeWatcherExecutor.TimerWatcherResult result = TimeWatcherExecutor.execute(method, delegate, args, execute);
-        if (execute) {
-            LOGGER.info(format((String) args[0], result.getDuration()));
-        }
+    @Override
+    public boolean execute(final String sql) throws SQLException {
+        final long start = System.nanoTime();
+        final boolean result = super.execute(sql);
+        log(sql, start);
+        return result;
+    }
+
+    @Override
+    public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
+        final long start = System.nanoTime();
+        final boolean result = super.execute(sql, autoGeneratedKeys);
+        log(sql, start);
+        return result;
+    }
+
+    @Override
+    public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
+        final long start = System.nanoTime();
+        final boolean result = super.execute(sql, columnIndexes);
+        log(sql, start);
+        return result;
+    }
+
+    @Override
+    public boolean execute(final String sql, final String[] columnNames) throws SQLException {
+        final long start = System.nanoTime();
+        final boolean result = super.execute(sql, columnNames);
+        log(sql, start);
+        return result;
+    }
 
-        return result.getResult();
+    static void log(final String query, final long start) {
+        LOGGER.info(query + " --> " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
     }
 }
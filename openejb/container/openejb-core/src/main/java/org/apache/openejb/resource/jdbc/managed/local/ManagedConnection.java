@@ -17,6 +17,7 @@
 package org.apache.openejb.resource.jdbc.managed.local;
 
 import org.apache.openejb.OpenEJB;
+import org.apache.openejb.resource.jdbc.DelegatingConnection;
 
 import javax.sql.DataSource;
 import javax.transaction.RollbackException;
@@ -26,27 +27,24 @@ import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-public class ManagedConnection implements InvocationHandler {
+public class ManagedConnection extends DelegatingConnection {
     private static final Map<DataSource, Map<Transaction, Connection>> CONNECTION_BY_TX_BY_DS = new ConcurrentHashMap<DataSource, Map<Transaction, Connection>>();
 
     private final TransactionManager transactionManager;
     private final LocalXAResource xaResource;
-    protected Connection delegate;
     private Transaction currentTransaction;
     private boolean closed;
 
     private final Map<Transaction, Connection> connectionByTx;
 
     public ManagedConnection(final DataSource ds, final Connection connection, final TransactionManager txMgr) {
-        delegate = connection;
+        super(connection);
         transactionManager = txMgr;
         closed = false;
         xaResource = new LocalXAResource(delegate);
@@ -58,25 +56,112 @@ public class ManagedConnection implements InvocationHandler {
     }
 
     @Override
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        // first some Object method management
-        final String mtdName = method.getName();
-        if ("toString".equals(mtdName)) {
-            return "ManagedConnection{" + delegate + "}";
+    public String toString() {
+        return "ManagedConnection{" + delegate + "}";
+    }
+
+    @Override
+    public int hashCode() {
+        return delegate.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return delegate.equals(obj);
+    }
+
+    @Override
+    protected Connection connection() throws SQLException {
+        enlist();
+        return delegate;
+    }
+
+    @Override
+    public void setAutoCommit(final boolean autoCommit) throws SQLException {
+        if (enlist()) {
+            throw forbiddenCall("setAutoCommit");
+        }
+        delegate.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        if (enlist()) {
+            throw forbiddenCall("commit");
+        }
+        delegate.commit();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        if (enlist()) {
+            throw forbiddenCall("rollback");
+        }
+        delegate.rollback();
+    }
+
+    @Override
+    public void rollback(final Savepoint savepoint) throws SQLException {
+        if (enlist()) {
+            throw forbiddenCall("rollback");
+        }
+        delegate.rollback(savepoint);
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        if (enlist()) {
+            throw forbiddenCall("setSavepoint");
         }
-        if ("hashCode".equals(mtdName)) {
-            return delegate.hashCode();
+        return delegate.setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(final String name) throws SQLException {
+        if (enlist()) {
+            throw forbiddenCall("setSavepoint");
+        }
+        return delegate.setSavepoint(name);
+    }
+
+    @Override
+    public void setReadOnly(final boolean readOnly) throws SQLException {
+        if (enlist()) {
+            throw forbiddenCall("setReadOnly");
         }
-        if ("equals".equals(mtdName)) {
-            return delegate.equals(args[0]);
+        delegate.setReadOnly(readOnly);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (enlist()) {
+            // will be done later
+            // we need to delay it in case of rollback
+            closed = true;
+            return;
+        }
+        delegate.close();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        if (enlist() && closed) {
+            return true; // if !closed let's delegate to the underlying connection
         }
+        return delegate.isClosed();
+    }
 
-        // here the real logic starts
+    /**
+     * Binds the connection to the transaction of the caller if there is one.
+     *
+     * @return true if the connection is used under a transaction
+     */
+    private boolean enlist() throws SQLException {
         try {
             final Transaction transaction = transactionManager.getTransaction();
 
             if (transaction == null) { // shouldn't be possible
-                return invoke(method, delegate, args);
+                return false;
             }
 
             // if we have a tx check it is the same this connection is linked to
@@ -85,7 +170,7 @@ public class ManagedConnection implements InvocationHandler {
                     if (currentTransaction != transaction) {
                         throw new SQLException("Connection can not be used while enlisted in another transaction");
                     }
-                    return invokeUnderTransaction(delegate, method, args);
+                    return true;
                 } else {
                     close(delegate);
                 }
@@ -117,46 +202,15 @@ public class ManagedConnection implements InvocationHandler {
                     }
                 }
 
-                return invokeUnderTransaction(delegate, method, args);
+                return true;
             }
 
-            return invoke(method, delegate, args);
-        } catch (InvocationTargetException ite) {
-            throw ite.getTargetException();
-        }
-    }
-
-    private static Object invoke(final Method method, final Connection delegate, final Object[] args) throws Throwable {
-        try {
-            return method.invoke(delegate, args);
-        } catch (InvocationTargetException ite) {
-            throw ite.getCause();
-        }
-    }
-
-    private Object invokeUnderTransaction(final Connection delegate, final Method method, final Object[] args) throws Exception {
-        final String mtdName = method.getName();
-        if ("setAutoCommit".equals(mtdName)
-                || "commit".equals(mtdName)
-                || "rollback".equals(mtdName)
-                || "setSavepoint".equals(mtdName)
-                || "setReadOnly".equals(mtdName)) {
-            throw forbiddenCall(mtdName);
+            return false;
+        } catch (SystemException e) {
+            throw new SQLException("Unable to get the transaction of the connection", e);
+        } catch (RollbackException e) {
+            throw new SQLException("Unable to register the connection in the transaction", e);
         }
-        if ("close".equals(mtdName)) {
-            return close();
-        }
-        if ("isClosed".equals(mtdName) && closed) {
-            return true; // if !closed let's delegate to the underlying connection
-        }
-        return method.invoke(delegate, args);
-    }
-
-    // will be done later
-    // we need to delay it in case of rollback
-    private Object close() {
-        closed = true;
-        return null;
     }
 
     private static boolean isUnderTransaction(int status) {
@@ -21,15 +21,12 @@ import org.apache.openejb.util.reflection.Reflections;
 import javax.sql.DataSource;
 import javax.transaction.TransactionManager;
 import java.io.PrintWriter;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.logging.Logger;
 
 public class ManagedDataSource implements DataSource {
-    private static final Class<?>[] CONNECTION_CLASS = new Class<?>[] { Connection.class };
-
     protected final DataSource delegate;
     protected final TransactionManager transactionManager;
 
@@ -85,7 +82,7 @@ public class ManagedDataSource implements DataSource {
     }
 
     private Connection managed(final Connection connection) {
-        return (Connection) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(), CONNECTION_CLASS, new ManagedConnection(this, connection, transactionManager));
+        return new ManagedConnection(this, connection, transactionManager);
     }
 
     public DataSource getDelegate() {
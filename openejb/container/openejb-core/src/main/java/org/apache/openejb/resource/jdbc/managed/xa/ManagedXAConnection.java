@@ -22,16 +22,18 @@ import javax.sql.DataSource;
 import javax.sql.XAConnection;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
-import java.sql.Connection;
 import java.sql.SQLException;
 
 public class ManagedXAConnection extends ManagedConnection {
-    public ManagedXAConnection(final DataSource ds, final Connection connection, final TransactionManager txMgr) throws SQLException {
-        super(ds, connection, txMgr);
+    private final XAConnection xaConnection;
+
+    public ManagedXAConnection(final DataSource ds, final XAConnection xaConnection, final TransactionManager txMgr) throws SQLException {
+        super(ds, xaConnection.getConnection(), txMgr);
+        this.xaConnection = xaConnection;
     }
 
     @Override
     public XAResource getXAResource() throws SQLException {
-        return ((XAConnection) delegate).getXAResource();
+        return xaConnection.getXAResource();
     }
 }
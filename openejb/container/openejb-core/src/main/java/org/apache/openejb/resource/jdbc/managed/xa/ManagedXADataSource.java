@@ -22,13 +22,10 @@ import javax.sql.DataSource;
 import javax.sql.XAConnection;
 import javax.sql.XADataSource;
 import javax.transaction.TransactionManager;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 
 public class ManagedXADataSource extends ManagedDataSource {
-    private static final Class<?>[] CONNECTION_CLASS = new Class<?>[] { XAConnection.class };
-
     private final XADataSource xaDataSource;
 
     public ManagedXADataSource(final DataSource ds, final TransactionManager txMgr) {
@@ -38,15 +35,15 @@ public class ManagedXADataSource extends ManagedDataSource {
 
     @Override
     public Connection getConnection() throws SQLException {
-        return managedXA(xaDataSource.getXAConnection().getConnection());
+        return managedXA(xaDataSource.getXAConnection());
     }
 
     @Override
     public Connection getConnection(final String username, final String password) throws SQLException {
-        return managedXA(xaDataSource.getXAConnection(username, password).getConnection());
+        return managedXA(xaDataSource.getXAConnection(username, password));
     }
 
-    private Connection managedXA(final Connection connection) throws SQLException {
-        return (Connection) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(), CONNECTION_CLASS, new ManagedXAConnection(delegate, connection, transactionManager));
+    private Connection managedXA(final XAConnection xaConnection) throws SQLException {
+        return new ManagedXAConnection(delegate, xaConnection, transactionManager);
     }
 }
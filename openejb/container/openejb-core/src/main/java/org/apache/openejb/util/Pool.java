@@ -24,6 +24,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -36,6 +37,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -50,12 +52,17 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
  * <p/>
  * To simply fill the pool without a corresponding pop(), the add() method
  * must be used.  This method will attempt to aquire a permit to add to the pool.
+ * <p/>
+ * Idle entries are held in a {@link Store}.  The default store is a LIFO
+ * stack guarded by a single lock.  When thread affinity is enabled a
+ * lock-free, slot based store is used instead which hands a thread back
+ * the instance it last returned whenever that instance is still idle.
  *
  * @version $Rev$ $Date$
  */
 public class Pool<T> {
 
-    private final LinkedList<Entry> pool = new LinkedList<Entry>();
+    private final Store<Entry> pool;
     private final Semaphore instances;
     private final Semaphore available;
     private final Semaphore minimum;
@@ -91,11 +98,18 @@ public class Pool<T> {
     @Managed
     private final boolean garbageCollection;
 
+    @Managed
+    private final boolean threadAffinity;
+
     public Pool(final int max, final int min, final boolean strict) {
         this(max, min, strict, 0, 0, 0, null, null, false, -1, false, false);
     }
 
     public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed) {
+        this(max, min, strict, maxAge, idleTimeout, sweepInterval, executor, supplier, replaceAged, maxAgeOffset, garbageCollection, replaceFlushed, false);
+    }
+
+    public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed, final boolean threadAffinity) {
         if (min > max) greater("max", max, "min", min);
         if (maxAge != 0 && idleTimeout > maxAge) greater("MaxAge", maxAge, "IdleTimeout", idleTimeout);
         this.executor = executor != null ? executor : createExecutor();
@@ -112,6 +126,8 @@ public class Pool<T> {
         this.sweeper = new Sweeper(idleTimeout, max);
         this.stats = new Stats(min, max, idleTimeout);
         this.garbageCollection = garbageCollection;
+        this.threadAffinity = threadAffinity;
+        this.pool = threadAffinity ? new AffinityStore(max) : new LinkedStore();
     }
 
     public Pool start() {
@@ -195,13 +211,9 @@ public class Pool<T> {
         Entry entry = null;
         while (entry == null) {
 
-            synchronized (pool) {
-                try {
-                    entry = pool.removeFirst();
-                } catch (NoSuchElementException e) {
-                    return null;
-                }
-            }
+            entry = pool.poll();
+
+            if (entry == null) return null;
 
             final Pool<T>.Entry.Instance instance = entry.soft.get();
 
@@ -329,9 +341,7 @@ public class Pool<T> {
                 // make this a "min" instance if we can
                 if (!entry.hasHardReference() && minimum.tryAcquire()) entry.hard.set(obj);
 
-                synchronized (pool) {
-                    pool.addFirst(entry);
-                }
+                pool.offer(entry);
                 added = true;
             }
         } finally {
@@ -437,6 +447,114 @@ public class Pool<T> {
         return TimeUnit.MILLISECONDS.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
     }
 
+    /**
+     * Holds the idle entries of the pool.  Permits, min/max enforcement
+     * and expiration are all handled by the pool itself, a store only
+     * has to hand out each offered entry at most once.
+     */
+    private interface Store<E> {
+
+        /**
+         * @return an idle entry or null if the store is empty
+         */
+        E poll();
+
+        void offer(E entry);
+    }
+
+    /**
+     * The classic LIFO stack guarded by a single lock
+     */
+    private final class LinkedStore implements Store<Entry> {
+
+        private final LinkedList<Entry> entries = new LinkedList<Entry>();
+
+        @Override
+        public Entry poll() {
+            synchronized (entries) {
+                try {
+                    return entries.removeFirst();
+                } catch (NoSuchElementException e) {
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public void offer(final Entry entry) {
+            synchronized (entries) {
+                entries.addFirst(entry);
+            }
+        }
+    }
+
+    /**
+     * Lock-free store made of one slot per pooled instance.
+     * <p/>
+     * Each thread remembers the last slot it took an entry from and
+     * returns its entry to that same slot, so under normal load a thread
+     * keeps getting the instance it last used and threads rarely compete
+     * for the same slot.  When the preferred slot is not usable the slots
+     * are scanned starting from it.
+     * <p/>
+     * The instances semaphore guarantees no more than max entries are ever
+     * idle at once, so the slots cannot run out.  The overflow queue exists
+     * purely as a safety net should that invariant ever be violated.
+     */
+    private final class AffinityStore implements Store<Entry> {
+
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger stripes = new AtomicInteger();
+        private final AtomicReferenceArray<Entry> slots;
+        private final ConcurrentLinkedQueue<Entry> overflow = new ConcurrentLinkedQueue<Entry>();
+        private final ThreadLocal<int[]> affinity = new ThreadLocal<int[]>() {
+            @Override
+            protected int[] initialValue() {
+                return new int[]{stripes.getAndIncrement() % slots.length()};
+            }
+        };
+
+        private AffinityStore(final int max) {
+            this.slots = new AtomicReferenceArray<Entry>(Math.max(1, max));
+        }
+
+        @Override
+        public Entry poll() {
+            if (size.get() <= 0) return overflow.poll();
+
+            final int[] preferred = affinity.get();
+            final int length = slots.length();
+
+            for (int i = 0, index = preferred[0]; i < length; i++, index = (index + 1) % length) {
+                final Entry entry = slots.get(index);
+
+                if (entry != null && slots.compareAndSet(index, entry, null)) {
+                    size.decrementAndGet();
+                    preferred[0] = index;
+                    return entry;
+                }
+            }
+
+            return overflow.poll();
+        }
+
+        @Override
+        public void offer(final Entry entry) {
+            final int[] preferred = affinity.get();
+            final int length = slots.length();
+
+            for (int i = 0, index = preferred[0]; i < length; i++, index = (index + 1) % length) {
+                if (slots.get(index) == null && slots.compareAndSet(index, null, entry)) {
+                    size.incrementAndGet();
+                    preferred[0] = index;
+                    return;
+                }
+            }
+
+            overflow.add(entry);
+        }
+    }
+
     public class Entry {
         private final long created;
         private long used;
@@ -963,6 +1081,11 @@ public class Pool<T> {
             this.idleTimeout = idleTimeout;
         }
 
+        @Managed
+        private boolean getThreadAffinity() {
+            return threadAffinity;
+        }
+
         @Managed
         private boolean getStrictPooling() {
             return !(available instanceof Overdraft);
@@ -1013,6 +1136,7 @@ public class Pool<T> {
         private boolean replaceAged;
         private boolean replaceFlushed;
         private boolean garbageCollection = true;
+        private boolean threadAffinity;
 
         public Builder(final Builder<T> that) {
             this.max = that.max;
@@ -1027,6 +1151,7 @@ public class Pool<T> {
             this.replaceAged = that.replaceAged;
             this.replaceFlushed = that.replaceFlushed;
             this.garbageCollection = that.garbageCollection;
+            this.threadAffinity = that.threadAffinity;
         }
 
         public Builder() {
@@ -1044,6 +1169,20 @@ public class Pool<T> {
             this.garbageCollection = garbageCollection;
         }
 
+        public boolean isThreadAffinity() {
+            return threadAffinity;
+        }
+
+        /**
+         * Selects the lock-free pool store which favors handing
+         * a thread back the instance it last returned to the pool
+         *
+         * @param threadAffinity true to use the lock-free store
+         */
+        public void setThreadAffinity(final boolean threadAffinity) {
+            this.threadAffinity = threadAffinity;
+        }
+
         public void setReplaceAged(final boolean replaceAged) {
             this.replaceAged = replaceAged;
         }
@@ -1124,7 +1263,7 @@ public class Pool<T> {
 
         public Pool<T> build() {
             //noinspection unchecked
-            return new Pool(max, min, strict, maxAge.getTime(MILLISECONDS), idleTimeout.getTime(MILLISECONDS), interval.getTime(MILLISECONDS), executor, supplier, replaceAged, maxAgeOffset, this.garbageCollection, replaceFlushed);
+            return new Pool(max, min, strict, maxAge.getTime(MILLISECONDS), idleTimeout.getTime(MILLISECONDS), interval.getTime(MILLISECONDS), executor, supplier, replaceAged, maxAgeOffset, this.garbageCollection, replaceFlushed, threadAffinity);
         }
     }
 
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+import java.lang.reflect.InvocationHandler;
+
+/**
+ * Super class of the proxies generated by the {@link BytecodeProxyFactory},
+ * the counterpart of java.lang.reflect.Proxy.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class BytecodeProxy {
+    protected final InvocationHandler handler;
+
+    protected BytecodeProxy(final InvocationHandler handler) {
+        if (handler == null) {
+            throw new NullPointerException("handler");
+        }
+        this.handler = handler;
+    }
+
+    public static boolean isProxyClass(final Class<?> clazz) {
+        return BytecodeProxy.class.isAssignableFrom(clazz) && clazz != BytecodeProxy.class;
+    }
+
+    public static InvocationHandler getInvocationHandler(final Object proxy) {
+        if (!(proxy instanceof BytecodeProxy)) {
+            throw new IllegalArgumentException("not a proxy instance");
+        }
+        return ((BytecodeProxy) proxy).handler;
+    }
+}
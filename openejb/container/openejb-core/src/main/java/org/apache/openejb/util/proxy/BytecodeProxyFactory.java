@@ -0,0 +1,478 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+import org.apache.openejb.OpenEJBException;
+import org.apache.xbean.asm.ClassWriter;
+import org.apache.xbean.asm.Label;
+import org.apache.xbean.asm.MethodVisitor;
+import org.apache.xbean.asm.Opcodes;
+import org.apache.xbean.asm.Type;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the proxy classes with ASM instead of java.lang.reflect.Proxy.
+ * <p/>
+ * The Method objects passed to the handler are resolved once when the
+ * class is generated and kept in a static array of the proxy class so an
+ * invocation doesn't look anything up.  The generated classes are cached
+ * per set of interfaces, the class loaders of the interfaces being
+ * reconciliated as the {@link Jdk13ProxyFactory} does.
+ * <p/>
+ * The proxies extend {@link BytecodeProxy}, code testing
+ * java.lang.reflect.Proxy directly should go through the ProxyManager.
+ * Proxies with non public interfaces are still created by the JDK.
+ *
+ * @org.apache.xbean.XBean
+ * @version $Rev$ $Date$
+ */
+public class BytecodeProxyFactory implements ProxyFactory, Opcodes {
+    private static final String PROXY_PACKAGE = "org.apache.openejb.proxy.";
+    private static final String METHODS_FIELD = "methods";
+    private static final String HANDLER_DESCRIPTOR = Type.getDescriptor(InvocationHandler.class);
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private final Jdk13ProxyFactory jdk = new Jdk13ProxyFactory();
+    private final ProxyCache<Constructor<?>> constructors = new ProxyCache<Constructor<?>>();
+
+    public void init(final Properties props) throws OpenEJBException {
+        jdk.init(props);
+    }
+
+    public InvocationHandler getInvocationHandler(final Object proxy) throws IllegalArgumentException {
+        if (proxy instanceof BytecodeProxy) {
+            return BytecodeProxy.getInvocationHandler(proxy);
+        }
+        return jdk.getInvocationHandler(proxy);
+    }
+
+    public Class getProxyClass(final Class interfce) throws IllegalArgumentException {
+        return getProxyClass(new Class[]{interfce});
+    }
+
+    public Class getProxyClass(final Class[] interfaces) throws IllegalArgumentException {
+        final Constructor<?> constructor = constructor(interfaces);
+        if (constructor == null) {
+            return jdk.getProxyClass(interfaces);
+        }
+        return constructor.getDeclaringClass();
+    }
+
+    public boolean isProxyClass(final Class cl) {
+        return BytecodeProxy.isProxyClass(cl) || jdk.isProxyClass(cl);
+    }
+
+    public Object newProxyInstance(final Class interfce, final InvocationHandler h) throws IllegalArgumentException {
+        return newProxyInstance(new Class[]{interfce}, h);
+    }
+
+    public Object newProxyInstance(final Class[] interfaces, final InvocationHandler h) throws IllegalArgumentException {
+        final Constructor<?> constructor = constructor(interfaces);
+        if (constructor == null) {
+            return jdk.newProxyInstance(interfaces, h);
+        }
+
+        try {
+            return constructor.newInstance(h);
+        } catch (InstantiationException e) {
+            throw new InternalError(e.toString());
+        } catch (IllegalAccessException e) {
+            throw new InternalError(e.toString());
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new InternalError(e.getCause().toString());
+        }
+    }
+
+    /**
+     * @return the constructor of the proxy class or null if the JDK has to create the proxy
+     */
+    private Constructor<?> constructor(final Class<?>[] interfaces) {
+        if (interfaces.length < 1) {
+            throw new IllegalArgumentException("It's boring to implement 0 interfaces!");
+        }
+
+        final Constructor<?> cached = constructors.get(interfaces);
+        if (cached != null) {
+            return cached;
+        }
+
+        for (Class<?> anInterface : interfaces) {
+            if (!anInterface.isInterface()) {
+                throw new IllegalArgumentException(anInterface.getName() + " is not an interface");
+            }
+            if (!isPublic(anInterface)) {
+                return null;
+            }
+        }
+
+        final Map<String, List<Method>> methods = methods(interfaces);
+        if (methods == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            final Constructor<?> created = constructors.get(interfaces);
+            if (created != null) {
+                return created;
+            }
+
+            final String name = PROXY_PACKAGE + "$Proxy" + ids.incrementAndGet();
+            final Method[] proxied = new Method[methods.size()];
+            final byte[] bytecode;
+            try {
+                bytecode = generateProxy(name, interfaces, methods, proxied);
+            } catch (ProxyGenerationException e) {
+                throw new IllegalArgumentException(e);
+            }
+
+            final ProxyClassLoader loader = new ProxyClassLoader(parent(interfaces));
+            final Class<?> proxyClass = loader.define(name, bytecode);
+            try {
+                final Field field = proxyClass.getDeclaredField(METHODS_FIELD);
+                field.setAccessible(true);
+                field.set(null, proxied);
+
+                final Constructor<?> constructor = proxyClass.getConstructor(InvocationHandler.class);
+                constructors.put(interfaces, constructor);
+                return constructor;
+            } catch (NoSuchFieldException e) {
+                throw new InternalError(e.toString());
+            } catch (NoSuchMethodException e) {
+                throw new InternalError(e.toString());
+            } catch (IllegalAccessException e) {
+                throw new InternalError(e.toString());
+            }
+        }
+    }
+
+    /**
+     * The methods to implement by signature, the first one of a signature
+     * being the one given to the handler as the JDK does.
+     *
+     * @return null if two methods have the same signature but different return types
+     */
+    private static Map<String, List<Method>> methods(final Class<?>[] interfaces) {
+        final Map<String, List<Method>> methods = new LinkedHashMap<String, List<Method>>();
+        try {
+            add(methods, Object.class.getMethod("hashCode"));
+            add(methods, Object.class.getMethod("equals", Object.class));
+            add(methods, Object.class.getMethod("toString"));
+        } catch (NoSuchMethodException e) {
+            throw new InternalError(e.toString());
+        }
+
+        for (Class<?> anInterface : interfaces) {
+            for (Method method : anInterface.getMethods()) {
+                if (!isPublic(method.getReturnType()) || !add(methods, method)) {
+                    return null;
+                }
+                for (Class<?> parameterType : method.getParameterTypes()) {
+                    if (!isPublic(parameterType)) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * The proxy isn't defined in the package of the interfaces, it can only
+     * reference public types.
+     */
+    private static boolean isPublic(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        for (Class<?> clazz = type; clazz != null; clazz = clazz.getDeclaringClass()) {
+            if (!clazz.isPrimitive() && !Modifier.isPublic(clazz.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean add(final Map<String, List<Method>> methods, final Method method) {
+        final String descriptor = Type.getMethodDescriptor(method);
+        final String signature = method.getName() + descriptor.substring(0, descriptor.indexOf(')') + 1);
+
+        List<Method> list = methods.get(signature);
+        if (list == null) {
+            list = new ArrayList<Method>(1);
+            methods.put(signature, list);
+        } else if (list.get(0).getReturnType() != method.getReturnType()) {
+            return false;
+        }
+        list.add(method);
+        return true;
+    }
+
+    private static ClassLoader parent(final Class<?>[] interfaces) {
+        final Set<ClassLoader> loaders = new LinkedHashSet<ClassLoader>();
+        for (Class<?> anInterface : interfaces) {
+            if (anInterface.getClassLoader() != null) {
+                loaders.add(anInterface.getClassLoader());
+            }
+        }
+        loaders.add(BytecodeProxy.class.getClassLoader());
+
+        final ClassLoader first = loaders.iterator().next();
+        if (visible(first, interfaces)) {
+            return first;
+        }
+        return new MultipleClassLoadersClassLoader(loaders.toArray(new ClassLoader[loaders.size()]));
+    }
+
+    private static boolean visible(final ClassLoader loader, final Class<?>[] interfaces) {
+        try {
+            for (Class<?> anInterface : interfaces) {
+                if (loader.loadClass(anInterface.getName()) != anInterface) {
+                    return false;
+                }
+            }
+            return loader.loadClass(BytecodeProxy.class.getName()) == BytecodeProxy.class;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    static byte[] generateProxy(final String proxyName, final Class<?>[] interfaces, final Map<String, List<Method>> methods, final Method[] proxied) throws ProxyGenerationException {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+
+        final String proxyClassFileName = proxyName.replace('.', '/');
+        final String superClassFileName = Type.getInternalName(BytecodeProxy.class);
+
+        final String[] interfaceNames = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceNames[i] = Type.getInternalName(interfaces[i]);
+        }
+
+        cw.visit(V1_5, ACC_PUBLIC + ACC_FINAL + ACC_SUPER, proxyClassFileName, null, superClassFileName, interfaceNames);
+        cw.visitField(ACC_PRIVATE + ACC_STATIC, METHODS_FIELD, "[Ljava/lang/reflect/Method;", null, null).visitEnd();
+
+        // public <init>(InvocationHandler handler) { super(handler); }
+        final MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + HANDLER_DESCRIPTOR + ")V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitVarInsn(ALOAD, 1);
+        init.visitMethodInsn(INVOKESPECIAL, superClassFileName, "<init>", "(" + HANDLER_DESCRIPTOR + ")V");
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        int index = 0;
+        for (List<Method> overloads : methods.values()) {
+            proxied[index] = overloads.get(0);
+            processMethod(cw, proxyClassFileName, index, overloads.get(0), exceptions(overloads));
+            index++;
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * The checked exceptions the handler may throw without them being
+     * wrapped, the ones all the methods of the signature declare.
+     */
+    private static List<Class<?>> exceptions(final List<Method> methods) {
+        final List<Class<?>> exceptions = new ArrayList<Class<?>>();
+        exceptions.add(RuntimeException.class);
+        exceptions.add(Error.class);
+
+        for (Class<?> exception : methods.get(0).getExceptionTypes()) {
+            boolean declared = true;
+            for (Method method : methods) {
+                boolean found = false;
+                for (Class<?> other : method.getExceptionTypes()) {
+                    found |= other.isAssignableFrom(exception);
+                }
+                declared &= found;
+            }
+            if (declared) {
+                exceptions.add(exception);
+            }
+        }
+        return exceptions;
+    }
+
+    /**
+     * return (ReturnType) handler.invoke(this, methods[index], new Object[] { args... });
+     * wrapping undeclared checked exceptions in an UndeclaredThrowableException.
+     */
+    private static void processMethod(final ClassWriter cw, final String proxyName, final int index, final Method method, final List<Class<?>> exceptions) throws ProxyGenerationException {
+        final Class<?> returnType = method.getReturnType();
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+
+        final String[] exceptionNames = new String[method.getExceptionTypes().length];
+        for (int i = 0; i < exceptionNames.length; i++) {
+            exceptionNames[i] = Type.getInternalName(method.getExceptionTypes()[i]);
+        }
+
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC + ACC_FINAL, method.getName(), Type.getMethodDescriptor(method), null, exceptionNames);
+        mv.visitCode();
+
+        final boolean wrap = !exceptions.contains(Throwable.class);
+
+        final Label start = new Label();
+        final Label end = new Label();
+        if (wrap) {
+            final Label rethrow = new Label();
+            final Label undeclared = new Label();
+            for (Class<?> exception : exceptions) {
+                mv.visitTryCatchBlock(start, end, rethrow, Type.getInternalName(exception));
+            }
+            mv.visitTryCatchBlock(start, end, undeclared, "java/lang/Throwable");
+
+            invoke(mv, proxyName, index, returnType, parameterTypes, start, end);
+
+            mv.visitLabel(rethrow);
+            mv.visitInsn(ATHROW);
+
+            mv.visitLabel(undeclared);
+            final int local = locals(parameterTypes);
+            mv.visitVarInsn(ASTORE, local);
+            mv.visitTypeInsn(NEW, "java/lang/reflect/UndeclaredThrowableException");
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ALOAD, local);
+            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/reflect/UndeclaredThrowableException", "<init>", "(Ljava/lang/Throwable;)V");
+            mv.visitInsn(ATHROW);
+        } else {
+            invoke(mv, proxyName, index, returnType, parameterTypes, start, end);
+        }
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void invoke(final MethodVisitor mv, final String proxyName, final int index, final Class<?> returnType, final Class<?>[] parameterTypes, final Label start, final Label end) throws ProxyGenerationException {
+        mv.visitLabel(start);
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, proxyName, "handler", HANDLER_DESCRIPTOR);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETSTATIC, proxyName, METHODS_FIELD, "[Ljava/lang/reflect/Method;");
+        push(mv, index);
+        mv.visitInsn(AALOAD);
+
+        if (parameterTypes.length == 0) {
+            mv.visitInsn(ACONST_NULL);
+        } else {
+            push(mv, parameterTypes.length);
+            mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+
+            int local = 1;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                final Type type = Type.getType(parameterTypes[i]);
+                mv.visitInsn(DUP);
+                push(mv, i);
+                mv.visitVarInsn(type.getOpcode(ILOAD), local);
+                if (parameterTypes[i].isPrimitive()) {
+                    final String wrapper = Type.getInternalName(wrapper(parameterTypes[i]));
+                    mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + type.getDescriptor() + ")L" + wrapper + ";");
+                }
+                mv.visitInsn(AASTORE);
+                local += type.getSize();
+            }
+        }
+
+        mv.visitMethodInsn(INVOKEINTERFACE, "java/lang/reflect/InvocationHandler", "invoke", "(Ljava/lang/Object;Ljava/lang/reflect/Method;[Ljava/lang/Object;)Ljava/lang/Object;");
+
+        final Type type = Type.getType(returnType);
+        if (returnType == Void.TYPE) {
+            mv.visitInsn(POP);
+        } else if (returnType.isPrimitive()) {
+            final String wrapper = Type.getInternalName(wrapper(returnType));
+            mv.visitTypeInsn(CHECKCAST, wrapper);
+            mv.visitMethodInsn(INVOKEVIRTUAL, wrapper, returnType.getName() + "Value", "()" + type.getDescriptor());
+        } else if (returnType != Object.class) {
+            mv.visitTypeInsn(CHECKCAST, type.getInternalName());
+        }
+
+        mv.visitLabel(end);
+        mv.visitInsn(type.getOpcode(IRETURN));
+    }
+
+    private static int locals(final Class<?>[] parameterTypes) {
+        int local = 1;
+        for (Class<?> parameterType : parameterTypes) {
+            local += Type.getType(parameterType).getSize();
+        }
+        return local;
+    }
+
+    private static void push(final MethodVisitor mv, final int i) {
+        if (i <= 5) {
+            mv.visitInsn(ICONST_0 + i);
+        } else if (i <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, i);
+        } else if (i <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, i);
+        } else {
+            mv.visitLdcInsn(i);
+        }
+    }
+
+    private static Class<?> wrapper(final Class<?> primitive) throws ProxyGenerationException {
+        if (primitive == Integer.TYPE) {
+            return Integer.class;
+        } else if (primitive == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (primitive == Character.TYPE) {
+            return Character.class;
+        } else if (primitive == Byte.TYPE) {
+            return Byte.class;
+        } else if (primitive == Short.TYPE) {
+            return Short.class;
+        } else if (primitive == Float.TYPE) {
+            return Float.class;
+        } else if (primitive == Long.TYPE) {
+            return Long.class;
+        } else if (primitive == Double.TYPE) {
+            return Double.class;
+        }
+        throw new ProxyGenerationException(primitive.getName() + " is not a primitive type");
+    }
+
+    private static class ProxyClassLoader extends ClassLoader {
+        private ProxyClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(final String name, final byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
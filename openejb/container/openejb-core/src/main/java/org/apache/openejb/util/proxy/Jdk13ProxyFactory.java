@@ -28,6 +28,8 @@ import java.util.Set;
  */
 public class Jdk13ProxyFactory implements ProxyFactory {
 
+    private final ProxyCache<ClassLoader> loaders = new ProxyCache<ClassLoader>();
+
     public Jdk13ProxyFactory() {
     }
 
@@ -61,13 +63,21 @@ public class Jdk13ProxyFactory implements ProxyFactory {
      * the specified invocation handler.
      */
     public Object newProxyInstance(Class interfce, java.lang.reflect.InvocationHandler h) throws IllegalArgumentException {
+        final Class[] interfaces = new Class[]{interfce};
+        final ClassLoader cached = loaders.get(interfaces);
+        if (cached != null) {
+            return Proxy.newProxyInstance(cached, interfaces, h);
+        }
+
         try {
-            return Proxy.newProxyInstance(interfce.getClassLoader(), new Class[]{interfce}, h);
+            return Proxy.newProxyInstance(interfce.getClassLoader(), interfaces, h);
         } catch (IllegalArgumentException iae) {
             final ClassLoader reconciliatedCl = reconciliate(interfce);
             try {
                 reconciliatedCl.loadClass(interfce.getName());
-                return Proxy.newProxyInstance(reconciliatedCl, new Class[]{interfce}, h);
+                final Object proxy = Proxy.newProxyInstance(reconciliatedCl, interfaces, h);
+                loaders.put(interfaces, reconciliatedCl);
+                return proxy;
             } catch (ClassNotFoundException e2) {
                 throw iae;
             }
@@ -83,6 +93,13 @@ public class Jdk13ProxyFactory implements ProxyFactory {
             throw new IllegalArgumentException("It's boring to implement 0 interfaces!");
         }
 
+        // the JDK caches the proxy class per loader, a new reconciliated loader each time
+        // would define a new proxy class for every instance
+        final ClassLoader cached = loaders.get(interfaces);
+        if (cached != null) {
+            return Proxy.newProxyInstance(cached, interfaces, handler);
+        }
+
         try {
             return Proxy.newProxyInstance(interfaces[0].getClassLoader(), interfaces, handler);
         } catch (IllegalArgumentException e) {
@@ -90,7 +107,9 @@ public class Jdk13ProxyFactory implements ProxyFactory {
             try {
                 Class tcclHomeClass = tccl.loadClass(interfaces[0].getName());
                 if (tcclHomeClass == interfaces[0]) {
-                    return Proxy.newProxyInstance(tccl, interfaces, handler);
+                    final Object proxy = Proxy.newProxyInstance(tccl, interfaces, handler);
+                    loaders.put(interfaces, tccl);
+                    return proxy;
                 }
             } catch (ClassNotFoundException e1) {
                 // maybe all interfaces are not in the same classloader (OSGi)
@@ -100,7 +119,9 @@ public class Jdk13ProxyFactory implements ProxyFactory {
                 try {
                     homeClass = reconciliatedCl.loadClass(interfaces[0].getName());
                     if (homeClass == interfaces[0]) {
-                        return Proxy.newProxyInstance(reconciliatedCl, interfaces, handler);
+                        final Object proxy = Proxy.newProxyInstance(reconciliatedCl, interfaces, handler);
+                        loaders.put(interfaces, reconciliatedCl);
+                        return proxy;
                     }
                 } catch (ClassNotFoundException e2) {
                     throw e;
@@ -110,36 +131,11 @@ public class Jdk13ProxyFactory implements ProxyFactory {
         }
     }
 
-    private static ClassLoader reconciliate(Class<?>... interfaces) {
+    static ClassLoader reconciliate(Class<?>... interfaces) {
         Set<ClassLoader> classloaders = new LinkedHashSet<ClassLoader>();
         for (Class<?> clazz : interfaces) {
             classloaders.add(clazz.getClassLoader());
         }
         return new MultipleClassLoadersClassLoader(classloaders.toArray(new ClassLoader[classloaders.size()]));
     }
-
-    private static class MultipleClassLoadersClassLoader extends ClassLoader {
-        private ClassLoader[] delegatingClassloaders;
-
-        public MultipleClassLoadersClassLoader(final ClassLoader[] classLoaders) {
-            super(classLoaders[0]);
-            delegatingClassloaders = classLoaders;
-        }
-
-        @Override
-        public Class<?> loadClass(String name) throws ClassNotFoundException {
-            ClassNotFoundException ex = null;
-            for (ClassLoader cl : delegatingClassloaders) {
-                try {
-                    return cl.loadClass(name);
-                } catch (ClassNotFoundException cnfe) {
-                    if (ex == null) {
-                        ex = cnfe;
-                    }
-                }
-            }
-            throw ex;
-        }
-    }
 }
-
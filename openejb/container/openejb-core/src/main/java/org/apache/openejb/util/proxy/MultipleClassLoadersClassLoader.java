@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+/**
+ * Loads the classes of a proxy whose interfaces come from several class
+ * loaders, they are looked up in the given loaders in order.
+ *
+ * @version $Rev$ $Date$
+ */
+public class MultipleClassLoadersClassLoader extends ClassLoader {
+    private final ClassLoader[] delegatingClassloaders;
+
+    public MultipleClassLoadersClassLoader(final ClassLoader[] classLoaders) {
+        super(classLoaders[0]);
+        delegatingClassloaders = classLoaders;
+    }
+
+    /**
+     * Called by both loadClass flavours once the first loader, our parent,
+     * does not know the class.  The JVM resolves the references of the proxy
+     * with loadClass(String, boolean) so the other loaders must be asked here.
+     */
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+        for (int i = 1; i < delegatingClassloaders.length; i++) {
+            try {
+                return delegatingClassloaders[i].loadClass(name);
+            } catch (ClassNotFoundException cnfe) {
+                // try the next one
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+}
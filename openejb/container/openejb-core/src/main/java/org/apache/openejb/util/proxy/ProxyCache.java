@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * What the proxy factories computed for a set of interfaces, the class
+ * loader the JDK proxy is defined in or the generated proxy class.
+ * <p/>
+ * Neither the interfaces nor their class loaders are held strongly so an
+ * undeployed application can be collected.  The values are soft as they
+ * reference the interfaces themselves, a weak value would be dropped by
+ * the next collection and the proxy class built again.
+ *
+ * @version $Rev$ $Date$
+ */
+class ProxyCache<V> {
+    private final Map<Class<?>, Map<Key, Reference<V>>> cache = new WeakHashMap<Class<?>, Map<Key, Reference<V>>>();
+
+    public synchronized V get(final Class<?>[] interfaces) {
+        final Map<Key, Reference<V>> values = cache.get(interfaces[0]);
+        if (values == null) {
+            return null;
+        }
+
+        final Key key = new Key(interfaces);
+        final Reference<V> reference = values.get(key);
+        if (reference == null) {
+            return null;
+        }
+
+        final V value = reference.get();
+        if (value == null) {
+            values.remove(key);
+        }
+        return value;
+    }
+
+    public synchronized void put(final Class<?>[] interfaces, final V value) {
+        Map<Key, Reference<V>> values = cache.get(interfaces[0]);
+        if (values == null) {
+            values = new HashMap<Key, Reference<V>>();
+            cache.put(interfaces[0], values);
+        }
+        values.put(new Key(interfaces), new SoftReference<V>(value));
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Map<Key, Reference<V>> values : cache.values()) {
+            size += values.size();
+        }
+        return size;
+    }
+
+    private static class Key {
+        private final Reference<Class<?>>[] interfaces;
+        private final int hash;
+
+        @SuppressWarnings("unchecked")
+        private Key(final Class<?>[] interfaces) {
+            this.interfaces = new Reference[interfaces.length];
+
+            int hash = 0;
+            for (int i = 0; i < interfaces.length; i++) {
+                this.interfaces[i] = new WeakReference<Class<?>>(interfaces[i]);
+                hash = 31 * hash + System.identityHashCode(interfaces[i]);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key key = (Key) o;
+            if (hash != key.hash || interfaces.length != key.interfaces.length) {
+                return false;
+            }
+            for (int i = 0; i < interfaces.length; i++) {
+                final Class<?> clazz = interfaces[i].get();
+                if (clazz == null || clazz != key.interfaces[i].get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
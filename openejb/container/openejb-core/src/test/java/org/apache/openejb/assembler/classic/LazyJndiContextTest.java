@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import junit.framework.TestCase;
+import org.apache.openejb.core.ivm.naming.IvmContext;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LazyJndiContextTest extends TestCase {
+
+    public void testBuiltOnFirstUse() throws Exception {
+        final AtomicInteger builds = new AtomicInteger();
+        final ClassLoader loader = new ClassLoader() {
+        };
+        final LazyJndiContext context = new LazyJndiContext(new Callable<Context>() {
+            @Override
+            public Context call() throws Exception {
+                builds.incrementAndGet();
+                assertSame(loader, Thread.currentThread().getContextClassLoader());
+                final IvmContext context = new IvmContext();
+                context.bind("comp/env/value", "built");
+                return context;
+            }
+        }, loader);
+
+        assertFalse(context.isBuilt());
+        context.close();
+        assertEquals(0, builds.get());
+
+        assertEquals("built", context.lookup("comp/env/value"));
+        assertTrue(context.isBuilt());
+        context.bind("comp/env/other", "bound");
+        assertEquals("bound", context.lookup("comp/env/other"));
+        assertEquals(1, builds.get());
+    }
+
+    public void testFailure() throws Exception {
+        final AtomicInteger builds = new AtomicInteger();
+        final LazyJndiContext context = new LazyJndiContext(new Callable<Context>() {
+            @Override
+            public Context call() throws Exception {
+                builds.incrementAndGet();
+                throw new IllegalStateException("missing resource");
+            }
+        }, getClass().getClassLoader());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                context.lookup("comp/env/value");
+                fail();
+            } catch (NamingException e) {
+                assertTrue(e.getRootCause() instanceof IllegalStateException);
+            }
+        }
+        assertFalse(context.isBuilt());
+        assertEquals(2, builds.get());
+    }
+}
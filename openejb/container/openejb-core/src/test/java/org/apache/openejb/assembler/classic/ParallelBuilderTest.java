@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ParallelBuilderTest extends TestCase {
+
+    public void testOrder() throws Exception {
+        final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        final List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 50; i++) {
+            final int value = i;
+            expected.add(value);
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Thread.sleep((50 - value) % 7);
+                    return value;
+                }
+            });
+        }
+
+        assertEquals(expected, new ParallelBuilder(1).build(tasks));
+        assertEquals(expected, new ParallelBuilder(4).build(tasks));
+    }
+
+    public void testConcurrent() throws Exception {
+        // would never complete if the tasks ran one after the other
+        final CountDownLatch latch = new CountDownLatch(3);
+        final List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    latch.countDown();
+                    return latch.await(10, TimeUnit.SECONDS);
+                }
+            });
+        }
+
+        for (Boolean done : new ParallelBuilder(3).build(tasks)) {
+            assertTrue(done);
+        }
+    }
+
+    public void testFirstFailure() throws Exception {
+        final List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < 5; i++) {
+            final int value = i;
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    if (value >= 2) {
+                        Thread.sleep(10 * (5 - value));
+                        throw new IllegalStateException("unit" + value);
+                    }
+                    return "unit" + value;
+                }
+            });
+        }
+
+        for (int parallelism : new int[]{1, 5}) {
+            try {
+                new ParallelBuilder(parallelism).build(tasks);
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("unit2", e.getMessage());
+            }
+        }
+    }
+
+    public void testDiscardOnFailure() throws Exception {
+        final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 5; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    if (value == 2) {
+                        throw new IllegalStateException("unit" + value);
+                    }
+                    Thread.sleep(10 * value);
+                    return value;
+                }
+            });
+        }
+
+        final List<Integer> discarded = new CopyOnWriteArrayList<Integer>();
+        final ParallelBuilder.Discard<Integer> discard = new ParallelBuilder.Discard<Integer>() {
+            @Override
+            public void discard(final Integer result) {
+                discarded.add(result);
+            }
+        };
+
+        try {
+            new ParallelBuilder(1).build(tasks, discard);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(Arrays.asList(0, 1), discarded);
+        }
+
+        discarded.clear();
+        try {
+            new ParallelBuilder(5).build(tasks, discard);
+            fail();
+        } catch (IllegalStateException e) {
+            // the ones completing after the failure too
+            assertEquals(Arrays.asList(0, 1, 3, 4), discarded);
+        }
+    }
+}
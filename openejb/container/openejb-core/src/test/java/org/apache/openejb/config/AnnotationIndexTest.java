@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.ws.rs.core.Application;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class AnnotationIndexTest extends TestCase {
+
+    private File tmp;
+
+    protected void setUp() throws Exception {
+        tmp = Files.tmpdir();
+        SystemInstance.reset();
+    }
+
+    protected void tearDown() throws Exception {
+        Files.delete(tmp);
+        SystemInstance.reset();
+    }
+
+    public void testBuild() throws Exception {
+        final Class<?>[] classes = {Annotated.class, MethodAnnotated.class, ParameterAnnotated.class, Plain.class, MyApplication.class, SubApplication.class};
+        final File jar = jar("classes.jar", null, classes);
+        final AnnotationIndex index = AnnotationIndex.build(jar);
+
+        // applications are looked up by type
+        assertEquals(names(Annotated.class, MethodAnnotated.class, ParameterAnnotated.class, MyApplication.class, SubApplication.class), index.getClasses().toString());
+
+        // the same classes in a directory have the same stamp
+        final File directory = new File(tmp, "classes");
+        for (Class<?> clazz : classes) {
+            final File file = new File(directory, clazz.getName().replace('.', '/') + ".class");
+            Files.mkdirs(file.getParentFile());
+            IO.copy(bytecode(clazz), file);
+        }
+        assertEquals(index.getStamp(), AnnotationIndex.build(directory).getStamp());
+        assertEquals(index.getClasses(), AnnotationIndex.build(directory).getClasses());
+    }
+
+    public void testReadWrite() throws Exception {
+        final AnnotationIndex index = new AnnotationIndex(42, new TreeSet<String>(Arrays.asList("org.foo.Bar", "org.foo.Baz", "org.foo.bar.Qux", "a")));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnnotationIndex.write(index, out);
+
+        final AnnotationIndex read = AnnotationIndex.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(42, read.getStamp());
+        assertEquals(index.getClasses(), read.getClasses());
+    }
+
+    public void testEmbeddedIndex() throws Exception {
+        final File plain = jar("plain.jar", null, Annotated.class, Plain.class);
+        assertNull(AnnotationIndex.load(plain.toURI().toURL()));
+
+        final AnnotationIndex index = AnnotationIndex.build(plain);
+        final File indexed = jar("indexed.jar", index, Annotated.class, Plain.class);
+        assertEquals(index.getClasses(), AnnotationIndex.load(indexed.toURI().toURL()).getClasses());
+        assertNotNull(AnnotationIndex.load(new java.net.URL("jar:" + indexed.toURI().toURL() + "!/")));
+
+        // a class was added after the index was generated
+        final File stale = jar("stale.jar", index, Annotated.class, Plain.class, MethodAnnotated.class);
+        assertNull(AnnotationIndex.load(stale.toURI().toURL()));
+    }
+
+    public void testIndexDirectory() throws Exception {
+        final File directory = new File(tmp, "index");
+        final Properties properties = new Properties();
+        properties.setProperty(AnnotationIndex.INDEX_DIRECTORY_PROPERTY, directory.getAbsolutePath());
+        SystemInstance.init(properties);
+
+        final File jar = jar("classes.jar", null, Annotated.class, Plain.class);
+        final AnnotationIndex index = AnnotationIndex.load(jar.toURI().toURL());
+        assertEquals(names(Annotated.class), index.getClasses().toString());
+
+        final File cached = new File(directory, AnnotationIndex.name(index.getStamp()));
+        assertTrue(cached.isFile());
+        assertEquals(index.getClasses(), AnnotationIndex.load(jar.toURI().toURL()).getClasses());
+    }
+
+    private static String names(final Class<?>... classes) {
+        final TreeSet<String> names = new TreeSet<String>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        return names.toString();
+    }
+
+    private File jar(final String name, final AnnotationIndex index, final Class<?>... classes) throws Exception {
+        final File file = new File(tmp, name);
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (Class<?> clazz : classes) {
+                out.putNextEntry(new JarEntry(clazz.getName().replace('.', '/') + ".class"));
+                IO.copy(bytecode(clazz), out);
+                out.closeEntry();
+            }
+            if (index != null) {
+                out.putNextEntry(new JarEntry(AnnotationIndex.INDEX_NAME));
+                AnnotationIndex.write(index, out);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static InputStream bytecode(final Class<?> clazz) {
+        return clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public static @interface Marker {
+    }
+
+    @Marker
+    public static class Annotated {
+    }
+
+    public static class MethodAnnotated {
+        @Marker
+        public void method() {
+        }
+    }
+
+    public static class ParameterAnnotated {
+        public void method(@Marker final String parameter) {
+        }
+    }
+
+    public static class Plain {
+        public void method() {
+        }
+    }
+
+    public static class MyApplication extends Application {
+    }
+
+    public static class SubApplication extends MyApplication {
+    }
+}
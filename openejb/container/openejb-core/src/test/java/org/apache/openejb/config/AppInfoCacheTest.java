@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import junit.framework.TestCase;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.ContainerInfo;
+import org.apache.openejb.assembler.classic.EjbJarInfo;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.assembler.classic.StatelessBeanInfo;
+import org.apache.openejb.assembler.classic.StatelessSessionContainerInfo;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class AppInfoCacheTest extends TestCase {
+
+    private File tmp;
+
+    protected void setUp() throws Exception {
+        tmp = Files.tmpdir();
+        SystemInstance.reset();
+    }
+
+    protected void tearDown() throws Exception {
+        Files.delete(tmp);
+        SystemInstance.reset();
+    }
+
+    public void testDisabled() throws Exception {
+        assertNull(AppInfoCache.create());
+    }
+
+    public void testPutGet() throws Exception {
+        final File archive = archive("app.jar", "one");
+        final AppInfoCache cache = cache();
+
+        final String key = cache.key(archive, Arrays.asList("Default Stateless Container"));
+        assertNull(cache.get(archive, key));
+
+        final ContainerInfo container = new StatelessSessionContainerInfo();
+        container.id = "app/Stateless Container";
+        final ResourceInfo resource = new ResourceInfo();
+        resource.id = "app/Default JDBC Database";
+        resource.properties = new Properties();
+        resource.properties.setProperty("JtaManaged", "true");
+        final URL[] urls = {archive.toURI().toURL()};
+
+        cache.put(archive, key, new AppInfoCache.Entry(appInfo(archive), Arrays.asList(container), Arrays.asList(resource), Collections.singletonList(urls)));
+
+        final AppInfoCache.Entry entry = cache.get(archive, key);
+        assertNotNull(entry);
+        assertEquals("app", entry.appInfo.appId);
+        assertEquals("Calculator", entry.appInfo.ejbJars.get(0).enterpriseBeans.get(0).ejbName);
+        assertEquals("app/Stateless Container", entry.containers.get(0).id);
+        assertEquals("true", entry.resources.get(0).properties.getProperty("JtaManaged"));
+        assertEquals(Arrays.asList(urls), Arrays.asList(entry.extensions.get(0)));
+    }
+
+    public void testInvalidation() throws Exception {
+        final File archive = archive("app.jar", "one");
+        final AppInfoCache cache = cache();
+
+        final String key = cache.key(archive, Collections.<String>emptyList());
+        cache.put(archive, key, new AppInfoCache.Entry(appInfo(archive), Collections.<ContainerInfo>emptyList(), Collections.<ResourceInfo>emptyList(), Collections.<URL[]>emptyList()));
+        assertEquals(key, cache.key(archive, Collections.<String>emptyList()));
+
+        // configured after another application
+        assertFalse(key.equals(cache.key(archive, Arrays.asList("other/Default JDBC Database"))));
+
+        // a system property
+        SystemInstance.get().setProperty("app.Calculator.pool", "10");
+        final String property = cache.key(archive, Collections.<String>emptyList());
+        assertFalse(key.equals(property));
+
+        // a file of conf
+        final File conf = new File(SystemInstance.get().getBase().getDirectory(), "conf");
+        Files.mkdirs(conf);
+        IO.writeString(new File(conf, "system.properties"), "app.Calculator.pool = 10");
+        final String configured = cache.key(archive, Collections.<String>emptyList());
+        assertFalse(property.equals(configured));
+
+        // the archive
+        archive("app.jar", "updated");
+        assertFalse(configured.equals(cache.key(archive, Collections.<String>emptyList())));
+
+        // a stale entry is never returned
+        assertNull(cache.get(archive, configured));
+    }
+
+    public void testDeletedArchive() throws Exception {
+        final File archive = archive("app.jar", "one");
+        final AppInfoCache cache = cache();
+
+        final String key = cache.key(archive, Collections.<String>emptyList());
+        final AppInfo appInfo = appInfo(archive);
+        appInfo.libs.add(new File(tmp, "generated-cmp.jar").getAbsolutePath());
+        cache.put(archive, key, new AppInfoCache.Entry(appInfo, Collections.<ContainerInfo>emptyList(), Collections.<ResourceInfo>emptyList(), Collections.<URL[]>emptyList()));
+
+        assertNull(cache.get(archive, key));
+    }
+
+    private AppInfoCache cache() {
+        final Properties properties = new Properties();
+        properties.setProperty("openejb.base", tmp.getAbsolutePath());
+        properties.setProperty(AppInfoCache.DIRECTORY_PROPERTY, "data/app-info");
+        try {
+            SystemInstance.init(properties);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        final AppInfoCache cache = AppInfoCache.create();
+        assertNotNull(cache);
+        assertTrue(new File(tmp, "data/app-info").isDirectory());
+        return cache;
+    }
+
+    private File archive(final String name, final String content) throws Exception {
+        final File file = new File(tmp, name);
+        IO.writeString(file, content);
+        return file;
+    }
+
+    private static AppInfo appInfo(final File archive) {
+        final AppInfo appInfo = new AppInfo();
+        appInfo.appId = "app";
+        appInfo.path = archive.getAbsolutePath();
+        appInfo.paths.add(appInfo.path);
+
+        final EjbJarInfo ejbJar = new EjbJarInfo();
+        final StatelessBeanInfo bean = new StatelessBeanInfo();
+        bean.ejbName = "Calculator";
+        ejbJar.enterpriseBeans.add(bean);
+        appInfo.ejbJars.add(ejbJar);
+        return appInfo;
+    }
+}
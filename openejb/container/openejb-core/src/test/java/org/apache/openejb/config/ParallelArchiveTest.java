@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.CompositeArchive;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ParallelArchiveTest extends TestCase {
+
+    protected void setUp() throws Exception {
+        SystemInstance.reset();
+    }
+
+    protected void tearDown() throws Exception {
+        SystemInstance.reset();
+    }
+
+    public void testSerialByDefault() throws Exception {
+        final List<Archive> archives = archives(3, 10);
+        assertTrue(ParallelArchive.archive(archives) instanceof CompositeArchive);
+
+        parallelism(4);
+        assertTrue(ParallelArchive.archive(archives) instanceof ParallelArchive);
+        assertTrue(ParallelArchive.archive(archives.subList(0, 1)) instanceof CompositeArchive);
+    }
+
+    public void testOrder() throws Exception {
+        final List<Archive> archives = archives(20, 50);
+        final List<String> expected = read(new CompositeArchive(archives));
+        assertEquals(1000, expected.size());
+
+        for (int parallelism : new int[]{2, 3, 8, 64}) {
+            assertEquals(expected, read(new ParallelArchive(archives, parallelism)));
+        }
+
+        // an iteration can be stopped and started again
+        final Iterator<Archive.Entry> iterator = new ParallelArchive(archives, 4).iterator();
+        assertEquals("org.foo.archive0.Foo0", iterator.next().getName());
+        assertEquals(expected, read(new ParallelArchive(archives, 4)));
+    }
+
+    public void testFailures() throws Exception {
+        final List<Archive> archives = archives(4, 5);
+        archives.set(2, new MemoryArchive(new LinkedHashMap<String, byte[]>()) {
+            @Override
+            public Iterator<Entry> iterator() {
+                throw new IllegalStateException("can't list");
+            }
+        });
+
+        final Iterator<Archive.Entry> iterator = new ParallelArchive(archives, 2).iterator();
+        for (int i = 0; i < 10; i++) {
+            iterator.next();
+        }
+        try {
+            iterator.hasNext();
+            fail("the archive can't be listed");
+        } catch (IllegalStateException e) {
+            assertEquals("can't list", e.getMessage());
+        }
+
+        // unreadable classes are reported when read
+        final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        classes.put("org.foo.Unreadable", null);
+        archives.set(2, new MemoryArchive(classes));
+        for (Archive.Entry entry : new ParallelArchive(archives, 2)) {
+            try {
+                entry.getBytecode().close();
+                assertFalse(entry.getName().equals("org.foo.Unreadable"));
+            } catch (IOException e) {
+                assertEquals("org.foo.Unreadable", entry.getName());
+            }
+        }
+    }
+
+    private static void parallelism(final int parallelism) throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(ParallelArchive.PARALLELISM, Integer.toString(parallelism));
+        SystemInstance.init(properties);
+    }
+
+    private static List<String> read(final Archive archive) throws IOException {
+        final List<String> read = new ArrayList<String>();
+        for (Archive.Entry entry : archive) {
+            final InputStream in = entry.getBytecode();
+            read.add(entry.getName() + "=" + IO.slurp(in));
+        }
+        return read;
+    }
+
+    private static List<Archive> archives(final int archives, final int classes) {
+        final List<Archive> list = new ArrayList<Archive>();
+        for (int a = 0; a < archives; a++) {
+            final Map<String, byte[]> bytecode = new LinkedHashMap<String, byte[]>();
+            for (int c = 0; c < classes; c++) {
+                final String name = "org.foo.archive" + a + ".Foo" + c;
+                bytecode.put(name, name.getBytes());
+            }
+            list.add(new MemoryArchive(bytecode));
+        }
+        return list;
+    }
+
+    private static class MemoryArchive implements Archive {
+        private final Map<String, byte[]> classes;
+
+        private MemoryArchive(final Map<String, byte[]> classes) {
+            this.classes = classes;
+        }
+
+        @Override
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            if (!classes.containsKey(className)) {
+                throw new ClassNotFoundException(className);
+            }
+            return new ByteArrayInputStream(classes.get(className));
+        }
+
+        @Override
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            throw new ClassNotFoundException(className);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            final List<Entry> entries = new ArrayList<Entry>();
+            for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                entries.add(new Entry() {
+                    @Override
+                    public String getName() {
+                        return entry.getKey();
+                    }
+
+                    @Override
+                    public InputStream getBytecode() throws IOException {
+                        if (entry.getValue() == null) {
+                            throw new IOException("can't read " + entry.getKey());
+                        }
+                        return new ByteArrayInputStream(entry.getValue());
+                    }
+                });
+            }
+            return entries.iterator();
+        }
+    }
+}
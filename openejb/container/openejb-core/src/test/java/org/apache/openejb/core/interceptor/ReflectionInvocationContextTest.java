@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import junit.framework.TestCase;
+import org.apache.openejb.core.Operation;
+
+import javax.interceptor.InvocationContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ReflectionInvocationContextTest extends TestCase {
+
+    private static final List<String> calls = new ArrayList<String>();
+
+    protected void setUp() throws Exception {
+        calls.clear();
+    }
+
+    public void testChain() throws Exception {
+        final Interceptor[] interceptors = {
+            new Interceptor(new Outer(), Outer.class.getMethod("invoke", InvocationContext.class)),
+            new Interceptor(new Inner(), Inner.class.getMethod("invoke", InvocationContext.class))
+        };
+
+        final Object result = new ReflectionInvocationContext(Operation.BUSINESS, interceptors, new Bean(), Bean.class.getMethod("echo", String.class), "hello").proceed();
+
+        assertEquals("outer(inner(hello))", result);
+        assertEquals("[outer, inner, echo]", calls.toString());
+    }
+
+    public void testCallbacks() throws Exception {
+        final Bean bean = new Bean();
+        final Interceptor[] interceptors = {
+            new Interceptor(bean, Bean.class.getDeclaredMethod("superCallback")),
+            new Interceptor(bean, Bean.class.getDeclaredMethod("callback"))
+        };
+
+        assertFalse(interceptors[0].isAroundInvoke());
+
+        final ReflectionInvocationContext context = new ReflectionInvocationContext(Operation.POST_CONSTRUCT, interceptors, bean, null);
+        assertNull(context.proceed());
+        assertEquals("[superCallback, callback]", calls.toString());
+
+        try {
+            context.getParameters();
+            fail("callbacks cannot access parameters");
+        } catch (IllegalStateException e) {
+            // pass
+        }
+    }
+
+    public void testTimeoutWithoutTimer() throws Exception {
+        final Object timer = new Object();
+        final ReflectionInvocationContext context = new ReflectionInvocationContext(Operation.TIMEOUT, new Interceptor[0], new Bean(), Bean.class.getMethod("timeout"), timer);
+
+        context.proceed();
+
+        assertSame(timer, context.getTimer());
+        assertEquals("[timeout]", calls.toString());
+    }
+
+    public void testContextData() throws Exception {
+        final Interceptor[] interceptors = {
+            new Interceptor(new Outer(), Outer.class.getMethod("invoke", InvocationContext.class)),
+            new Interceptor(new DataReader(), DataReader.class.getMethod("invoke", InvocationContext.class))
+        };
+
+        final Object result = new ReflectionInvocationContext(Operation.BUSINESS, interceptors, new Bean(), Bean.class.getMethod("echo", String.class), "hello").proceed();
+        assertEquals("outer(outer)", result);
+    }
+
+    public void testSetParameters() throws Exception {
+        final ReflectionInvocationContext context = new ReflectionInvocationContext(Operation.BUSINESS, new Interceptor[0], new Bean(), Bean.class.getMethod("echo", String.class), "hello");
+
+        context.setParameters(new Object[]{"changed"});
+        assertEquals("changed", context.proceed());
+
+        try {
+            context.setParameters(new Object[]{1});
+            fail("wrong parameter type");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    public void testExceptionUnwrapped() throws Exception {
+        final ReflectionInvocationContext context = new ReflectionInvocationContext(Operation.BUSINESS, new Interceptor[0], new Bean(), Bean.class.getMethod("fail"));
+
+        try {
+            context.proceed();
+            fail("the bean exception should be thrown");
+        } catch (UnsupportedOperationException e) {
+            // pass
+        }
+    }
+
+    public void testChainBindsInstances() throws Exception {
+        final InterceptorData outer = new InterceptorData(Outer.class);
+        outer.getAroundInvoke().add(Outer.class.getMethod("invoke", InvocationContext.class));
+        final InterceptorData inner = new InterceptorData(Inner.class);
+        inner.getAroundInvoke().add(Inner.class.getMethod("invoke", InvocationContext.class));
+
+        final InterceptorChain chain = new InterceptorChain(Bean.class.getMethod("echo", String.class), Operation.BUSINESS, Arrays.asList(outer, inner));
+
+        final Map<String, Object> instances = new HashMap<String, Object>();
+        instances.put(Outer.class.getName(), new Outer());
+        instances.put(Inner.class.getName(), new Inner());
+
+        final Interceptor[] interceptors = chain.bind(instances);
+        assertEquals(2, interceptors.length);
+        assertSame(instances.get(Outer.class.getName()), interceptors[0].getInstance());
+        assertTrue(interceptors[1].isAroundInvoke());
+
+        final Object result = new ReflectionInvocationContext(chain.getOperation(), interceptors, new Bean(), chain.getTargetMethod(), "hello").proceed();
+        assertEquals("outer(inner(hello))", result);
+
+        // an other bean instance only brings its own interceptor instances
+        instances.put(Inner.class.getName(), new Inner());
+        assertNotSame(interceptors[1].getInstance(), chain.bind(instances)[1].getInstance());
+
+        instances.remove(Inner.class.getName());
+        try {
+            chain.bind(instances);
+            fail("the bean instance has no Inner interceptor");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    public static class Outer {
+        public Object invoke(InvocationContext context) throws Exception {
+            calls.add("outer");
+            context.getContextData().put("caller", "outer");
+            return "outer(" + context.proceed() + ")";
+        }
+    }
+
+    public static class Inner {
+        public Object invoke(InvocationContext context) throws Exception {
+            calls.add("inner");
+            return "inner(" + context.proceed() + ")";
+        }
+    }
+
+    public static class DataReader {
+        public Object invoke(InvocationContext context) throws Exception {
+            return context.getContextData().get("caller");
+        }
+    }
+
+    static class Bean {
+        public String echo(String value) {
+            calls.add("echo");
+            return value;
+        }
+
+        public void timeout() {
+            calls.add("timeout");
+        }
+
+        public void fail() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void callback() {
+            calls.add("callback");
+        }
+
+        private void superCallback() {
+            calls.add("superCallback");
+        }
+    }
+}
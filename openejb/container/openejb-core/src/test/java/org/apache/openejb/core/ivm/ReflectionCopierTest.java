@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.ivm;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ReflectionCopierTest extends TestCase {
+
+    private ReflectionCopier copier;
+
+    protected void setUp() throws Exception {
+        copier = new ReflectionCopier();
+    }
+
+    public void testImmutables() throws Exception {
+        final Object[] values = {"text", 1, 2L, true, 'c', new BigDecimal("1.5"), Color.RED, String.class, new Point(1, 2)};
+        for (Object value : values) {
+            assertSame(value, copier.copy(value));
+        }
+    }
+
+    public void testGraph() throws Exception {
+        final Customer customer = customer();
+
+        final Customer copy = copier.copy(customer);
+
+        assertNotSame(customer, copy);
+        assertEquals(customer.name, copy.name);
+        assertEquals(customer.id, copy.id);
+        assertEquals(customer.color, copy.color);
+
+        assertNotSame(customer.created, copy.created);
+        assertEquals(customer.created, copy.created);
+
+        assertNotSame(customer.orders, copy.orders);
+        assertEquals(customer.orders.size(), copy.orders.size());
+
+        final Order order = copy.orders.get(0);
+        assertNotSame(customer.orders.get(0), order);
+        assertEquals(customer.orders.get(0).total, order.total);
+        assertTrue(Arrays.equals(customer.orders.get(0).quantities, order.quantities));
+        assertNotSame(customer.orders.get(0).quantities, order.quantities);
+
+        // cycles and shared references survive
+        assertSame(copy, order.customer);
+        assertSame(copy.orders.get(0), copy.orders.get(1));
+        assertSame(copy.orders.get(0), copy.lookup.get("first"));
+    }
+
+    public void testTransientReset() throws Exception {
+        final Customer customer = customer();
+        customer.cache = "cached";
+
+        assertNull(copier.copy(customer).cache);
+    }
+
+    public void testNonSerializableSuperclassConstructor() throws Exception {
+        final Child child = new Child();
+        child.base = "changed";
+        child.child = "value";
+
+        final Child copy = copier.copy(child);
+        assertEquals("initial", copy.base);
+        assertEquals("value", copy.child);
+    }
+
+    public void testCustomSerialization() throws Exception {
+        final Custom custom = new Custom();
+        custom.value = "value";
+
+        final Custom copy = copier.copy(custom);
+        assertNotSame(custom, copy);
+        assertEquals("value", copy.value);
+        assertEquals(1, custom.written);
+    }
+
+    public void testNotSerializable() throws Exception {
+        final List<Object> list = new ArrayList<Object>();
+        list.add(new Object());
+        try {
+            copier.copy(list);
+            fail("NotSerializableException expected");
+        } catch (NotSerializableException e) {
+            // pass
+        }
+    }
+
+    private static Customer customer() {
+        final Customer customer = new Customer();
+        customer.name = "Jane";
+        customer.id = 42;
+        customer.color = Color.BLUE;
+        customer.created = new Date();
+        customer.location = new Point(3, 4);
+
+        final Order order = new Order();
+        order.customer = customer;
+        order.total = new BigDecimal("99.95");
+        order.quantities = new int[]{1, 2, 3};
+        order.items = new String[]{"a", "b", "c"};
+
+        customer.orders.add(order);
+        customer.orders.add(order);
+        customer.lookup.put("first", order);
+        return customer;
+    }
+
+    public static enum Color {
+        RED, BLUE
+    }
+
+    public static final class Point implements Serializable {
+        private final int x;
+        private final int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    public static class Customer implements Serializable {
+        private String name;
+        private long id;
+        private Color color;
+        private Date created;
+        private Point location;
+        private final List<Order> orders = new ArrayList<Order>();
+        private final Map<String, Order> lookup = new HashMap<String, Order>();
+        private transient String cache;
+    }
+
+    public static class Order implements Serializable {
+        private Customer customer;
+        private BigDecimal total;
+        private int[] quantities;
+        private String[] items;
+    }
+
+    public static class Base {
+        protected String base = "initial";
+    }
+
+    public static class Child extends Base implements Serializable {
+        private String child;
+    }
+
+    public static class Custom implements Serializable {
+        private String value;
+        private transient int written;
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            written++;
+            out.defaultWriteObject();
+        }
+    }
+}
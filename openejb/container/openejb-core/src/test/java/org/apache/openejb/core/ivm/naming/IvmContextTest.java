@@ -249,6 +249,63 @@ public class IvmContextTest extends TestCase {
         assertFalse("name should not appear in bindings list", map.containsKey("comp/env/rate/work/doc/lot/pop"));
     }
 
+    public void testManyBindings() throws Exception {
+
+        IvmContext context = new IvmContext();
+        for (int i = 0; i < 5000; i++) {
+            context.bind("global/app/bean" + i, i);
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            context.unbind("global/app/bean" + i);
+        }
+        for (int i = 0; i < 5000; i += 4) {
+            context.bind("global/app/bean" + i, -i);
+        }
+
+        Context app = (Context) context.lookup("global/app");
+        for (int i = 0; i < 5000; i++) {
+            final String name = "bean" + i;
+            if (i % 4 == 0) {
+                assertContextEntry(app, name, -i);
+            } else if (i % 2 == 0) {
+                try {
+                    app.lookup(name);
+                    fail("name should be unbound");
+                } catch (javax.naming.NameNotFoundException pass) {
+                }
+            } else {
+                assertContextEntry(context, "global/app/" + name, i);
+            }
+        }
+
+        assertEquals(3750, list(app).size());
+    }
+
+    public void testFederation() throws Exception {
+
+        IvmContext federated = new IvmContext();
+        federated.bind("apple/grannysmith", 22);
+
+        IvmContext context = new IvmContext();
+        context.bind("fruit/orange/mandarin", 44);
+        context.bind("fruit", federated);
+
+        assertContextEntry(context, "fruit/orange/mandarin", 44);
+        assertContextEntry(context, "fruit/apple/grannysmith", 22);
+
+        Context fruit = (Context) context.lookup("fruit");
+        assertContextEntry(fruit, "apple/grannysmith", 22);
+
+        Context apple = (Context) context.lookup("fruit/apple");
+        assertContextEntry(apple, "grannysmith", 22);
+
+        try {
+            context.lookup("fruit/apple/fuji");
+            fail("name should not be found");
+        } catch (javax.naming.NameNotFoundException pass) {
+        }
+    }
+
     private void assertContextEntry(Context context, String s, Object expected) throws javax.naming.NamingException {
         assertLookup(context, s, expected);
     }
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BatchDeliveryTest extends TestCase {
+
+    public void testDisabledByDefault() throws Exception {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("destination", "queue");
+        assertNull(BatchDelivery.create(properties));
+
+        properties.put(BatchDelivery.BATCH_SIZE, "1");
+        assertNull(BatchDelivery.create(properties));
+    }
+
+    public void testCreate() throws Exception {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(BatchDelivery.BATCH_SIZE, "50");
+        properties.put(BatchDelivery.BATCH_TIMEOUT, "200");
+
+        BatchDelivery batchDelivery = BatchDelivery.create(properties);
+        assertNotNull(batchDelivery);
+        assertEquals(50, batchDelivery.getBatchSize());
+        assertEquals(200, batchDelivery.getBatchTimeout());
+    }
+
+    public void testIsComplete() throws Exception {
+        BatchDelivery batchDelivery = new BatchDelivery(3, 100);
+
+        assertFalse(batchDelivery.isComplete(1, 1000, 1000));
+        assertFalse(batchDelivery.isComplete(2, 1000, 1099));
+        assertTrue(batchDelivery.isComplete(3, 1000, 1000));
+        assertTrue(batchDelivery.isComplete(1, 1000, 1100));
+    }
+
+    public void testStatistics() throws Exception {
+        BatchDelivery batchDelivery = new BatchDelivery(10, 1000);
+        assertEquals(0d, batchDelivery.getAverageBatchSize());
+
+        batchDelivery.committed(10);
+        batchDelivery.committed(4);
+        batchDelivery.rolledBack(4);
+        batchDelivery.isolated();
+
+        assertEquals(3, batchDelivery.getBatchCount());
+        assertEquals(1, batchDelivery.getRolledBackBatchCount());
+        assertEquals(18, batchDelivery.getBatchedMessageCount());
+        assertEquals(1, batchDelivery.getIsolatedMessageCount());
+        assertEquals(6d, batchDelivery.getAverageBatchSize());
+    }
+}
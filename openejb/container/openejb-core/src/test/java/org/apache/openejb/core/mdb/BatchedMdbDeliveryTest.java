@@ -0,0 +1,477 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.core.mdb;
+
+import junit.framework.TestCase;
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.SecurityServiceInfo;
+import org.apache.openejb.assembler.classic.TransactionServiceInfo;
+import org.apache.openejb.config.AppModule;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.ConnectorModule;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.ivm.naming.InitContextFactory;
+import org.apache.openejb.jee.Connector;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.InboundResourceadapter;
+import org.apache.openejb.jee.MessageAdapter;
+import org.apache.openejb.jee.MessageDrivenBean;
+import org.apache.openejb.jee.MessageListener;
+import org.apache.openejb.jee.ResourceAdapter;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.annotation.Resource;
+import javax.ejb.ActivationConfigProperty;
+import javax.ejb.MessageDriven;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.naming.InitialContext;
+import javax.resource.ResourceException;
+import javax.resource.spi.ActivationSpec;
+import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.InvalidPropertyException;
+import javax.resource.spi.ResourceAdapterInternalException;
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.transaction.TransactionManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the batched delivery of message driven beans through an adapter
+ * that delivers its messages without calling beforeDelivery/afterDelivery.
+ *
+ * @version $Rev$ $Date$
+ */
+public class BatchedMdbDeliveryTest extends TestCase {
+
+    private Assembler assembler;
+    private BatchResourceAdapter ra;
+
+    protected void setUp() throws Exception {
+        System.setProperty(javax.naming.Context.INITIAL_CONTEXT_FACTORY, InitContextFactory.class.getName());
+
+        ConfigurationFactory config = new ConfigurationFactory();
+        assembler = new Assembler();
+
+        assembler.createTransactionManager(config.configureService(TransactionServiceInfo.class));
+        assembler.createSecurityService(config.configureService(SecurityServiceInfo.class));
+
+        Delivery.deliveries.clear();
+
+        AppModule app = new AppModule(this.getClass().getClassLoader(), "testapp");
+
+        Connector connector = new Connector("batch-ra");
+        ResourceAdapter adapter = new ResourceAdapter(BatchResourceAdapter.class);
+        connector.setResourceAdapter(adapter);
+        InboundResourceadapter inbound = adapter.setInboundResourceAdapter(new InboundResourceadapter());
+        MessageAdapter messageAdapter = inbound.setMessageAdapter(new MessageAdapter());
+        MessageListener listener = messageAdapter.addMessageListener(new MessageListener(Consumer.class, Destination.class));
+        listener.getActivationSpec().addRequiredConfigProperty("name");
+        app.getConnectorModules().add(new ConnectorModule(connector));
+
+        EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new MessageDrivenBean(SizeBean.class));
+        ejbJar.addEnterpriseBean(new MessageDrivenBean(TimeoutBean.class));
+        app.getEjbModules().add(new EjbModule(ejbJar));
+
+        AppInfo appInfo = config.configureApplication(app);
+        assembler.createApplication(appInfo);
+
+        ra = (BatchResourceAdapter) new InitialContext().lookup("java:openejb/Resource/batch-raRA");
+    }
+
+    protected void tearDown() throws Exception {
+        assembler.destroy();
+        SystemInstance.reset();
+    }
+
+    public void testBatchSize() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            ra.deliver("size", "m" + i);
+        }
+
+        // two full batches, the last message waits for more
+        assertEquals(2, ra.xaResource.commits.get());
+        assertTransactions("m0", "m1");
+        assertTransactions("m2", "m3");
+        assertNotSameTransaction("m1", "m2");
+        assertNotSameTransaction("m3", "m4");
+
+        ra.release("size");
+        assertEquals(3, ra.xaResource.commits.get());
+    }
+
+    public void testNothingBoundBetweenDeliveries() throws Exception {
+        final TransactionManager transactionManager = SystemInstance.get().getComponent(TransactionManager.class);
+
+        ra.deliver("size", "m0");
+
+        assertNull(transactionManager.getTransaction());
+        assertNull(ThreadContext.getThreadContext());
+
+        // an other thread of the adapter delivers the next message of the batch
+        final Thread thread = new Thread() {
+            public void run() {
+                try {
+                    ra.deliver("size", "m1");
+                } catch (Exception e) {
+                    // reported by the assertions
+                }
+            }
+        };
+        thread.start();
+        thread.join(10000);
+
+        assertTransactions("m0", "m1");
+        assertEquals(1, ra.xaResource.commits.get());
+    }
+
+    public void testMethodChangeCompletesTheBatch() throws Exception {
+        ra.deliver("size", "m0");
+        ra.deliverOther("size", "o0");
+
+        assertEquals(1, ra.xaResource.commits.get());
+        assertNotSameTransaction("m0", "o0");
+
+        ra.deliverOther("size", "o1");
+        assertEquals(2, ra.xaResource.commits.get());
+        assertTransactions("o0", "o1");
+    }
+
+    public void testRollbackIsolatesTheRedeliveries() throws Exception {
+        ra.deliver("size", "m0");
+        try {
+            ra.deliver("size", "poison");
+            fail("the bean throws a system exception");
+        } catch (Exception e) {
+            // expected
+        }
+
+        assertEquals(0, ra.xaResource.commits.get());
+        assertEquals(1, ra.xaResource.rollbacks.get());
+        assertTransactions("m0", "poison");
+
+        // the adapter redelivers both, one by one
+        Delivery.deliveries.clear();
+        ra.deliver("size", "m0");
+        try {
+            ra.deliver("size", "poison");
+            fail("the bean throws a system exception");
+        } catch (Exception e) {
+            // expected
+        }
+
+        assertEquals(1, ra.xaResource.commits.get());
+        assertEquals(2, ra.xaResource.rollbacks.get());
+        assertNotSameTransaction("m0", "poison");
+
+        // then batches again
+        ra.deliver("size", "m1");
+        ra.deliver("size", "m2");
+        assertEquals(2, ra.xaResource.commits.get());
+        assertTransactions("m1", "m2");
+    }
+
+    public void testRedeliveryIsIsolatedWhateverTheEndpoint() throws Exception {
+        ra.deliver("size", message("m0", false));
+        try {
+            ra.deliver("size", message("poison", false));
+            fail("the bean throws a system exception");
+        } catch (Exception e) {
+            // expected
+        }
+        assertEquals(1, ra.xaResource.rollbacks.get());
+
+        // another session of the destination, with a batch of its own open, gets the redeliveries
+        Delivery.deliveries.clear();
+        ra.deliverToOtherSession("size", message("x0", false));
+        ra.deliverToOtherSession("size", message("m0", true));
+        try {
+            ra.deliverToOtherSession("size", message("poison", true));
+            fail("the bean throws a system exception");
+        } catch (Exception e) {
+            // expected
+        }
+
+        assertEquals(2, ra.xaResource.commits.get());
+        assertEquals(2, ra.xaResource.rollbacks.get());
+        assertNotSameTransaction("x0", "m0");
+        assertNotSameTransaction("m0", "poison");
+
+        // the first session batches its new messages right away
+        ra.deliver("size", message("m1", false));
+        ra.deliver("size", message("m2", false));
+        assertEquals(3, ra.xaResource.commits.get());
+        assertTransactions("m1", "m2");
+    }
+
+    public void testReleaseCompletesTheBatch() throws Exception {
+        ra.deliver("size", "m0");
+        assertEquals(0, ra.xaResource.commits.get());
+
+        final Thread thread = new Thread() {
+            public void run() {
+                ra.release("size");
+            }
+        };
+        thread.start();
+        thread.join(10000);
+
+        assertEquals(1, ra.xaResource.commits.get());
+        assertEquals(0, ra.xaResource.rollbacks.get());
+    }
+
+    public void testTimeoutCompletesTheBatch() throws Exception {
+        ra.deliver("timeout", "m0");
+        ra.deliver("timeout", "m1");
+        assertEquals(0, ra.xaResource.commits.get());
+
+        for (int i = 0; i < 100 && ra.xaResource.commits.get() == 0; i++) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(1, ra.xaResource.commits.get());
+        assertTransactions("m0", "m1");
+    }
+
+    private static Message message(final String name, final boolean redelivered) {
+        return (Message) Proxy.newProxyInstance(BatchedMdbDeliveryTest.class.getClassLoader(), new Class<?>[]{Message.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getJMSRedelivered".equals(method.getName())) {
+                    return redelivered;
+                } else if ("getStringProperty".equals(method.getName())) {
+                    return name;
+                } else if ("toString".equals(method.getName())) {
+                    return name;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static void assertTransactions(String... messages) {
+        Object key = Delivery.get(messages[0]).transaction;
+        assertNotNull(key);
+        for (String message : messages) {
+            assertEquals(message, key, Delivery.get(message).transaction);
+        }
+    }
+
+    private static void assertNotSameTransaction(String a, String b) {
+        assertFalse(Delivery.get(a).transaction.equals(Delivery.get(b).transaction));
+    }
+
+    public static class Delivery {
+        private static final List<Delivery> deliveries = new CopyOnWriteArrayList<Delivery>();
+
+        private final String message;
+        private final Object transaction;
+
+        public Delivery(String message, Object transaction) {
+            this.message = message;
+            this.transaction = transaction;
+        }
+
+        public static Delivery get(String message) {
+            for (Delivery delivery : deliveries) {
+                if (delivery.message.equals(message)) {
+                    return delivery;
+                }
+            }
+            throw new AssertionError("not delivered " + message);
+        }
+    }
+
+    public static class AbstractConsumerBean implements Consumer {
+        @Resource
+        private TransactionSynchronizationRegistry registry;
+
+        public void receive(String message) {
+            Delivery.deliveries.add(new Delivery(message, registry.getTransactionKey()));
+            if ("poison".equals(message)) {
+                throw new IllegalStateException(message);
+            }
+        }
+
+        public void receiveOther(String message) {
+            receive(message);
+        }
+
+        public void receiveMessage(Message message) {
+            try {
+                receive(message.getStringProperty("name"));
+            } catch (JMSException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @MessageDriven(activationConfig = {
+            @ActivationConfigProperty(propertyName = "name", propertyValue = "size"),
+            @ActivationConfigProperty(propertyName = "DeliveryBatchSize", propertyValue = "2"),
+            @ActivationConfigProperty(propertyName = "DeliveryBatchTimeout", propertyValue = "60000")})
+    public static class SizeBean extends AbstractConsumerBean {
+    }
+
+    @MessageDriven(activationConfig = {
+            @ActivationConfigProperty(propertyName = "name", propertyValue = "timeout"),
+            @ActivationConfigProperty(propertyName = "DeliveryBatchSize", propertyValue = "100"),
+            @ActivationConfigProperty(propertyName = "DeliveryBatchTimeout", propertyValue = "200")})
+    public static class TimeoutBean extends AbstractConsumerBean {
+    }
+
+    public static interface Consumer {
+        public void receive(String message);
+
+        public void receiveOther(String message);
+
+        public void receiveMessage(Message message);
+    }
+
+    public static class BatchResourceAdapter implements javax.resource.spi.ResourceAdapter {
+        private final Map<String, Consumer> consumers = new HashMap<String, Consumer>();
+        private final Map<String, Consumer> otherSessions = new HashMap<String, Consumer>();
+        private final RecordingXAResource xaResource = new RecordingXAResource();
+
+        public void start(BootstrapContext bootstrapContext) throws ResourceAdapterInternalException {
+        }
+
+        public void stop() {
+        }
+
+        public void endpointActivation(MessageEndpointFactory messageEndpointFactory, ActivationSpec activationSpec) throws ResourceException {
+            Destination destination = (Destination) activationSpec;
+            consumers.put(destination.getName(), (Consumer) messageEndpointFactory.createEndpoint(xaResource));
+            otherSessions.put(destination.getName(), (Consumer) messageEndpointFactory.createEndpoint(xaResource));
+        }
+
+        public void endpointDeactivation(MessageEndpointFactory messageEndpointFactory, ActivationSpec activationSpec) {
+            release(((Destination) activationSpec).getName());
+        }
+
+        public XAResource[] getXAResources(ActivationSpec[] activationSpecs) throws ResourceException {
+            return new XAResource[0];
+        }
+
+        public void deliver(String destination, String message) {
+            consumers.get(destination).receive(message);
+        }
+
+        public void deliverOther(String destination, String message) {
+            consumers.get(destination).receiveOther(message);
+        }
+
+        public void deliver(String destination, Message message) {
+            consumers.get(destination).receiveMessage(message);
+        }
+
+        public void deliverToOtherSession(String destination, Message message) {
+            otherSessions.get(destination).receiveMessage(message);
+        }
+
+        public void release(String destination) {
+            release(consumers.remove(destination));
+            release(otherSessions.remove(destination));
+        }
+
+        private static void release(Consumer consumer) {
+            if (consumer != null) {
+                ((MessageEndpoint) consumer).release();
+            }
+        }
+    }
+
+    public static class RecordingXAResource implements XAResource {
+        private final AtomicInteger commits = new AtomicInteger();
+        private final AtomicInteger rollbacks = new AtomicInteger();
+
+        public void commit(Xid xid, boolean onePhase) throws XAException {
+            commits.incrementAndGet();
+        }
+
+        public void rollback(Xid xid) throws XAException {
+            rollbacks.incrementAndGet();
+        }
+
+        public void start(Xid xid, int flags) throws XAException {
+        }
+
+        public void end(Xid xid, int flags) throws XAException {
+        }
+
+        public int prepare(Xid xid) throws XAException {
+            return XA_OK;
+        }
+
+        public void forget(Xid xid) throws XAException {
+        }
+
+        public Xid[] recover(int flag) throws XAException {
+            return new Xid[0];
+        }
+
+        public boolean isSameRM(XAResource xaResource) throws XAException {
+            return xaResource == this;
+        }
+
+        public int getTransactionTimeout() throws XAException {
+            return 0;
+        }
+
+        public boolean setTransactionTimeout(int seconds) throws XAException {
+            return false;
+        }
+    }
+
+    public static class Destination implements ActivationSpec {
+        private BatchResourceAdapter resourceAdapter;
+
+        private String name;
+
+        public void validate() throws InvalidPropertyException {
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public BatchResourceAdapter getResourceAdapter() {
+            return resourceAdapter;
+        }
+
+        public void setResourceAdapter(javax.resource.spi.ResourceAdapter resourceAdapter) {
+            this.resourceAdapter = (BatchResourceAdapter) resourceAdapter;
+        }
+    }
+}
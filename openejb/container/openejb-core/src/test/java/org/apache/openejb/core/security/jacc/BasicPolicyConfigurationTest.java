@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.core.security.jacc;
+
+import junit.framework.TestCase;
+import org.apache.openejb.loader.SystemInstance;
+
+import java.security.Principal;
+import java.security.SecurityPermission;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BasicPolicyConfigurationTest extends TestCase {
+
+    private final SecurityPermission red = new SecurityPermission("red");
+    private final SecurityPermission green = new SecurityPermission("green");
+    private final SecurityPermission blue = new SecurityPermission("blue");
+
+    protected void setUp() throws Exception {
+        SystemInstance.reset();
+        SystemInstance.get().setComponent(BasicPolicyConfiguration.RoleResolver.class, new BasicPolicyConfiguration.RoleResolver() {
+            public Set<String> getLogicalRoles(Principal[] principals, Set<String> logicalRoles) {
+                Set<String> roles = new LinkedHashSet<String>();
+                for (Principal principal : principals) {
+                    if (logicalRoles.contains(principal.getName())) roles.add(principal.getName());
+                }
+                return roles;
+            }
+        });
+    }
+
+    protected void tearDown() throws Exception {
+        SystemInstance.reset();
+    }
+
+    public void testDecisions() throws Exception {
+        BasicPolicyConfiguration configuration = new BasicPolicyConfiguration("test");
+        configuration.addToExcludedPolicy(red);
+        configuration.addToUncheckedPolicy(green);
+        configuration.addToRole("admin", blue);
+        configuration.addToRole("user", green);
+        configuration.commit();
+
+        BitSet admin = configuration.getRoles(new Principal[]{new Role("admin")});
+        BitSet nobody = configuration.getRoles(new Principal[0]);
+
+        assertNull(configuration.getDecision("red"));
+
+        BasicPolicyConfiguration.Decision decision = configuration.decide("red", red);
+        assertSame(decision, configuration.getDecision("red"));
+        assertFalse(decision.implies(admin));
+
+        decision = configuration.decide("green", green);
+        assertTrue(decision.implies(admin));
+        assertTrue(decision.implies(nobody));
+
+        decision = configuration.decide("blue", blue);
+        assertTrue(decision.implies(admin));
+        assertFalse(decision.implies(nobody));
+        assertFalse(decision.implies(configuration.getRoles(new Principal[]{new Role("user")})));
+    }
+
+    public void testChangesDropDecisions() throws Exception {
+        BasicPolicyConfiguration configuration = new BasicPolicyConfiguration("test");
+        configuration.addToRole("admin", blue);
+        configuration.commit();
+
+        int version = configuration.getVersion();
+        configuration.decide("blue", blue);
+
+        configuration.open(true);
+        configuration.addToRole("user", blue);
+        configuration.commit();
+
+        assertTrue(version != configuration.getVersion());
+        assertNull(configuration.getDecision("blue"));
+
+        BasicPolicyConfiguration.Decision decision = configuration.decide("blue", blue);
+        assertFalse(decision.implies(configuration.getRoles(new Principal[]{new Role("admin")})));
+        assertTrue(decision.implies(configuration.getRoles(new Principal[]{new Role("user")})));
+    }
+
+    private static class Role implements Principal {
+        private final String name;
+
+        private Role(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
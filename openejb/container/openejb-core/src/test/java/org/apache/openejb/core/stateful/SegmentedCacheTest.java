@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import junit.framework.TestCase;
+import org.apache.openejb.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SegmentedCacheTest extends TestCase {
+
+    private MemoryPassivater passivater;
+    private Listener listener;
+
+    protected void setUp() throws Exception {
+        passivater = new MemoryPassivater();
+        listener = new Listener();
+    }
+
+    public void testCheckOutCheckIn() throws Exception {
+        final SegmentedCache<String, String> cache = cache(100, 10, new Duration(-1, TimeUnit.MILLISECONDS));
+
+        cache.add("a", "A");
+        try {
+            cache.add("a", "A");
+            fail("a is already in the cache");
+        } catch (IllegalStateException e) {
+            // pass
+        }
+        try {
+            cache.checkOut("a", false);
+            fail("a is checked-out when added");
+        } catch (IllegalStateException e) {
+            // pass
+        }
+
+        cache.checkIn("a");
+        assertEquals("A", cache.checkOut("a", false));
+        cache.checkIn("a");
+
+        assertEquals("A", cache.remove("a"));
+        assertNull(cache.checkOut("a", true));
+        assertNull(cache.remove("a"));
+    }
+
+    public void testRemoveAll() throws Exception {
+        final SegmentedCache<String, String> cache = cache(100, 10, new Duration(-1, TimeUnit.MILLISECONDS));
+        for (String key : new String[]{"a", "b", "c"}) {
+            cache.add(key, key.toUpperCase());
+            cache.checkIn(key);
+        }
+
+        cache.removeAll(new Cache.CacheFilter<String>() {
+            public boolean matches(String value) {
+                return !value.equals("B");
+            }
+        });
+
+        assertNull(cache.checkOut("a", false));
+        assertEquals("B", cache.checkOut("b", false));
+        assertNull(cache.checkOut("c", false));
+    }
+
+    public void testPassivation() throws Exception {
+        final SegmentedCache<String, String> cache = cache(64, 8, new Duration(-1, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 200; i++) {
+            cache.add("key" + i, "value" + i);
+            cache.checkIn("key" + i);
+        }
+        assertEquals(4, cache.getSegments());
+        cache.processLRU();
+
+        assertTrue("passivated " + passivater.store.size(), passivater.store.size() > 0);
+        assertEquals(passivater.store.size(), listener.stored.size());
+        assertEquals(200, cache.size() + passivater.store.size());
+
+        // passivated values come back on demand
+        final String key = passivater.store.keySet().iterator().next().toString();
+        assertEquals(key.replace("key", "value"), cache.checkOut(key, true));
+        assertTrue(listener.loaded.contains(key.replace("key", "value")));
+        assertNull(passivater.store.get(key));
+    }
+
+    public void testRecentlyUsedSurvive() throws Exception {
+        final SegmentedCache<String, String> cache = cache(16, 4, new Duration(-1, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 16; i++) {
+            cache.add("key" + i, "value" + i);
+            cache.checkIn("key" + i);
+        }
+        assertEquals(1, cache.getSegments());
+
+        // every entry was just used, the hand clears them all then takes the oldest ones
+        cache.processLRU();
+        assertEquals("[key0, key1, key2, key3]", new TreeSet<Object>(passivater.store.keySet()).toString());
+        passivater.store.clear();
+
+        // key4 is used again, it gets a second chance
+        cache.checkOut("key4", false);
+        cache.checkIn("key4");
+        for (int i = 16; i < 20; i++) {
+            cache.add("key" + i, "value" + i);
+            cache.checkIn("key" + i);
+        }
+
+        cache.processLRU();
+        assertEquals("[key5, key6, key7, key8]", new TreeSet<Object>(passivater.store.keySet()).toString());
+    }
+
+    public void testTimeOut() throws Exception {
+        final SegmentedCache<String, String> cache = cache(100, 10, new Duration(1, TimeUnit.MILLISECONDS));
+
+        cache.add("idle", "idle");
+        cache.checkIn("idle");
+        cache.add("busy", "busy");
+
+        Thread.sleep(20);
+        cache.processLRU();
+
+        assertEquals("[idle]", listener.timedOut.toString());
+        assertNull(cache.checkOut("idle", false));
+        cache.checkIn("busy");
+        assertEquals("busy", cache.checkOut("busy", false));
+    }
+
+    public void testFrequencyZero() throws Exception {
+        final SegmentedCache<String, String> cache = cache(16, 1, new Duration(-1, TimeUnit.MILLISECONDS));
+        cache.setFrequency("0");
+
+        for (int i = 0; i < 17; i++) {
+            cache.add("key" + i, "value" + i);
+            cache.checkIn("key" + i);
+        }
+
+        // as with the SimpleCache the cache is shrunk as soon as capacity is reached
+        assertEquals(15, cache.size());
+        assertEquals(2, passivater.store.size());
+    }
+
+    private <V> SegmentedCache<String, V> cache(int capacity, int bulkPassivate, Duration timeOut) {
+        final SegmentedCache<String, V> cache = new SegmentedCache<String, V>((Cache.CacheListener<V>) listener, passivater, capacity, bulkPassivate, timeOut);
+        cache.setFrequency("-1");
+        return cache;
+    }
+
+    public static class MemoryPassivater implements PassivationStrategy {
+        private final Map<Object, Object> store = new ConcurrentHashMap<Object, Object>();
+
+        public void init(Properties props) {
+        }
+
+        public void passivate(Map stateTable) {
+            store.putAll(stateTable);
+        }
+
+        public Object activate(Object primaryKey) {
+            return store.remove(primaryKey);
+        }
+    }
+
+    public static class Listener implements Cache.CacheListener<Object> {
+        private final List<Object> loaded = new ArrayList<Object>();
+        private final List<Object> stored = new ArrayList<Object>();
+        private final List<Object> timedOut = new ArrayList<Object>();
+
+        public synchronized void afterLoad(Object value) {
+            loaded.add(value);
+        }
+
+        public synchronized void beforeStore(Object value) {
+            stored.add(value);
+        }
+
+        public synchronized void timedOut(Object value) {
+            timedOut.add(value);
+        }
+    }
+}
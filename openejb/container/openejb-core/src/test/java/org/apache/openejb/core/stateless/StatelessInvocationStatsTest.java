@@ -61,6 +61,7 @@ import java.util.logging.Logger;
  * Then for every method there will be these attributes and operations:
  * <p/>
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Count, type=long, read-only, descriptor={}]
+ * javax.management.MBeanAttributeInfo[description=, name=someMethod().ErrorCount, type=long, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().GeometricMean, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Kurtosis, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Max, type=double, read-only, descriptor={}]
@@ -73,11 +74,13 @@ import java.util.logging.Logger;
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Percentile75, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Percentile90, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Percentile99, type=double, read-only, descriptor={}]
+ * javax.management.MBeanAttributeInfo[description=, name=someMethod().Percentile999, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().SampleSize, type=int, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Skewness, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().StandardDeviation, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Sum, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Sumsq, type=double, read-only, descriptor={}]
+ * javax.management.MBeanAttributeInfo[description=, name=someMethod().Throughput, type=double, read-only, descriptor={}]
  * javax.management.MBeanAttributeInfo[description=, name=someMethod().Variance, type=double, read-only, descriptor={}]
  * javax.management.MBeanOperationInfo[description=, name=someMethod().setSampleSize, returnType=void, signature=[javax.management.MBeanParameterInfo[description=, name=p1, type=int, descriptor={}]], impact=unknown, descriptor={}]
  * javax.management.MBeanOperationInfo[description=, name=someMethod().sortedValues, returnType=[D, signature=[], impact=unknown, descriptor={}]
@@ -179,6 +182,7 @@ public class StatelessInvocationStatsTest extends TestCase {
         final String[] methods = {"PostConstruct()", "blue()", "green()", "red()"};
         for (final String s : methods) {
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Count", "long", "", true, false, false));
+            expectedAttributes.add(new MBeanAttributeInfo(s + ".ErrorCount", "long", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".GeometricMean", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Kurtosis", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Max", "double", "", true, false, false));
@@ -191,17 +195,20 @@ public class StatelessInvocationStatsTest extends TestCase {
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Percentile75", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Percentile90", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Percentile99", "double", "", true, false, false));
+            expectedAttributes.add(new MBeanAttributeInfo(s + ".Percentile999", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".SampleSize", "int", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Skewness", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".StandardDeviation", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Sum", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Sumsq", "double", "", true, false, false));
+            expectedAttributes.add(new MBeanAttributeInfo(s + ".Throughput", "double", "", true, false, false));
             expectedAttributes.add(new MBeanAttributeInfo(s + ".Variance", "double", "", true, false, false));
             if (s.equals("PostConstruct()")) {
                 expectedValues.put(s + ".Count", (long) 3);
             } else {
                 expectedValues.put(s + ".Count", (long) 1);
             }
+            expectedValues.put(s + ".ErrorCount", (long) 0);
             expectedValues.put(s + ".GeometricMean", 0.0);
             expectedValues.put(s + ".Kurtosis", Double.NaN);
             expectedValues.put(s + ".Max", 0.0);
@@ -214,6 +221,7 @@ public class StatelessInvocationStatsTest extends TestCase {
             expectedValues.put(s + ".Percentile75", 0.0);
             expectedValues.put(s + ".Percentile90", 0.0);
             expectedValues.put(s + ".Percentile99", 0.0);
+            expectedValues.put(s + ".Percentile999", 0.0);
             expectedValues.put(s + ".SampleSize", 2000);
             expectedValues.put(s + ".Skewness", Double.NaN);
             expectedValues.put(s + ".StandardDeviation", 0.0);
@@ -234,6 +242,11 @@ public class StatelessInvocationStatsTest extends TestCase {
         assertEquals(expectedAttributes, actualAttributes);
         boolean ok = true;
         for (final Map.Entry<String, Object> entry : actualValues.entrySet()) {
+            if (entry.getKey().endsWith(".Throughput")) { // depends on the time elapsed since the first call
+                assertTrue(((Number) entry.getValue()).doubleValue() > 0);
+                continue;
+            }
+
             final Number value = (Number) expectedValues.get(entry.getKey());
             final Number real = (Number) actualValues.get(entry.getKey());
 
@@ -329,6 +342,7 @@ public class StatelessInvocationStatsTest extends TestCase {
                     || info.getName().equals("waitSecs().Percentile75")
                     || info.getName().equals("waitSecs().Percentile90")
                     || info.getName().equals("waitSecs().Percentile99")
+                    || info.getName().equals("waitSecs().Percentile999")
                     || info.getName().equals("waitSecs().Sum")) {
                 final Double actual = (Double) (server.getAttribute(invocationsName, info.getName()));
                 assertTrue("Expected: " + actual + " >= 999", actual >= 999);
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.monitoring;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LatencyRecorderTest extends TestCase {
+
+    public void testBuckets() throws Exception {
+        int previous = -1;
+        for (long value = 0; value < 1000000; value++) {
+            final int index = LatencyRecorder.index(value);
+            assertTrue("buckets are contiguous at " + value, index == previous || index == previous + 1);
+            previous = index;
+
+            final long highest = LatencyRecorder.value(index);
+            assertTrue(highest >= value);
+            assertTrue("precision at " + value, highest - value <= value / 32);
+        }
+
+        assertEquals(LatencyRecorder.BUCKETS - 1, LatencyRecorder.index(Long.MAX_VALUE));
+        assertEquals(0, LatencyRecorder.index(-5));
+    }
+
+    public void testPercentiles() throws Exception {
+        final LatencyRecorder recorder = new LatencyRecorder(100, 2);
+        assertTrue(Double.isNaN(recorder.getPercentile(50)));
+
+        for (long i = 1; i <= 10000; i++) {
+            recorder.record(i * 1000, false);
+        }
+
+        assertEquals(10000, recorder.getCount());
+        assertEquals(5000000, recorder.getPercentile(50), 5000000 * 0.035);
+        assertEquals(9000000, recorder.getPercentile(90), 9000000 * 0.035);
+        assertEquals(9900000, recorder.getPercentile(99), 9900000 * 0.035);
+        assertEquals(9990000, recorder.getPercentile(99.9), 9990000 * 0.035);
+        assertTrue(recorder.getPercentile(100) >= 10000000);
+    }
+
+    public void testErrors() throws Exception {
+        final LatencyRecorder recorder = new LatencyRecorder(10);
+        recorder.record(10, false);
+        recorder.record(20, true);
+        recorder.record(30, true);
+
+        assertEquals(3, recorder.getCount());
+        assertEquals(2, recorder.getErrorCount());
+        assertTrue(recorder.getThroughput() > 0);
+    }
+
+    public void testSamples() throws Exception {
+        final LatencyRecorder recorder = new LatencyRecorder(3);
+        assertEquals(0, recorder.getSamples().length);
+
+        recorder.record(1, false);
+        recorder.record(2, false);
+        assertEquals("[1, 2]", Arrays.toString(recorder.getSamples()));
+
+        recorder.record(3, false);
+        recorder.record(4, false);
+        assertEquals("[2, 3, 4]", Arrays.toString(recorder.getSamples()));
+
+        recorder.setSampleSize(2);
+        assertEquals(2, recorder.getSampleSize());
+        assertEquals("[3, 4]", Arrays.toString(recorder.getSamples()));
+
+        recorder.setSampleSize(4);
+        recorder.record(5, false);
+        assertEquals("[3, 4, 5]", Arrays.toString(recorder.getSamples()));
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final LatencyRecorder recorder = new LatencyRecorder(100, 4);
+        final int threads = 8;
+        final int iterations = 10000;
+
+        final CountDownLatch done = record(recorder, threads, iterations);
+        done.await();
+
+        assertEquals(threads * iterations, recorder.getCount());
+        assertEquals(threads * iterations / 10, recorder.getErrorCount());
+    }
+
+    public void testConcurrentSamples() throws Exception {
+        // a single stripe shared by every thread, none of the samples may be lost
+        final LatencyRecorder recorder = new LatencyRecorder(4000, 1);
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            final long offset = t * 1000;
+            new Thread() {
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        recorder.record(offset + i, false);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+
+        final long[] samples = recorder.getSamples();
+        Arrays.sort(samples);
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(i, samples[i]);
+        }
+        assertEquals(4000, samples.length);
+    }
+
+    private static CountDownLatch record(final LatencyRecorder recorder, int threads, final int iterations) {
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                public void run() {
+                    for (int i = 0; i < iterations; i++) {
+                        recorder.record(i, i % 10 == 0);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        return done;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.jdbc;
+
+import junit.framework.TestCase;
+import org.apache.openejb.resource.jdbc.logging.LoggingSqlConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class DelegatingConnectionTest extends TestCase {
+    private static final String URL = "jdbc:hsqldb:mem:delegating";
+    private static final String USER = "sa";
+    private static final String PASSWORD = "";
+
+    private Connection raw;
+
+    @Override
+    protected void setUp() throws Exception {
+        Class.forName("org.hsqldb.jdbcDriver");
+        raw = DriverManager.getConnection(URL, USER, PASSWORD);
+        final Statement statement = raw.createStatement();
+        statement.execute("CREATE TABLE WRAPPED (ID INTEGER PRIMARY KEY, NAME VARCHAR(20))");
+        statement.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final Statement statement = raw.createStatement();
+        statement.execute("DROP TABLE WRAPPED");
+        statement.close();
+        raw.close();
+    }
+
+    public void testLoggingWrappers() throws Exception {
+        final Connection connection = new LoggingSqlConnection(raw);
+
+        final PreparedStatement insert = connection.prepareStatement("INSERT INTO WRAPPED (ID, NAME) VALUES (?, ?)");
+        assertSame(connection, insert.getConnection());
+        for (int i = 0; i < 3; i++) {
+            insert.setInt(1, i);
+            insert.setString(2, "name" + i);
+            assertEquals(1, insert.executeUpdate());
+        }
+        insert.close();
+
+        final Statement statement = connection.createStatement();
+        assertSame(connection, statement.getConnection());
+        final ResultSet result = statement.executeQuery("SELECT NAME FROM WRAPPED WHERE ID = 2");
+        assertTrue(result.next());
+        assertEquals("name2", result.getString(1));
+        assertFalse(result.next());
+        result.close();
+        statement.close();
+
+        assertTrue(connection.isWrapperFor(raw.getClass()));
+        assertSame(raw, ((DelegatingConnection) connection).getDelegate());
+    }
+
+    public void testDriverExceptionsOfJdbc41Methods() throws Exception {
+        try {
+            Connection.class.getMethod("setSchema", String.class);
+        } catch (NoSuchMethodException e) {
+            return; // JDK 6
+        }
+
+        final SQLException failure = new SQLException("unsupported");
+        final InvocationHandler failing = new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                throw failure;
+            }
+        };
+        final Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, failing);
+        final Statement statement = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Statement.class }, failing);
+
+        try {
+            new DelegatingConnection(connection) {
+            }.setSchema("PUBLIC");
+            fail("the driver exception should be thrown");
+        } catch (SQLException e) {
+            assertSame(failure, e);
+        }
+
+        try {
+            new DelegatingStatement<Statement>(statement, connection).isCloseOnCompletion();
+            fail("the driver exception should be thrown");
+        } catch (SQLException e) {
+            assertSame(failure, e);
+        }
+    }
+}
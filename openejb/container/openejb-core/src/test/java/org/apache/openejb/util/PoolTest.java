@@ -16,7 +16,9 @@
  */
 package org.apache.openejb.util;
 
+import junit.framework.Test;
 import junit.framework.TestCase;
+import junit.framework.TestSuite;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -29,12 +31,45 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Runs against both pool stores, see {@link #suite()}.
+ *
  * @version $Rev$ $Date$
  */
 public class PoolTest extends TestCase {
 
     private Pool pool;
 
+    public static Test suite() {
+        final TestSuite suite = new TestSuite(PoolTest.class.getName());
+        suite.addTest(new TestSuite(PoolTest.class, "LinkedStore"));
+        suite.addTest(new TestSuite(ThreadAffinity.class, "AffinityStore"));
+        return suite;
+    }
+
+    /**
+     * The same tests with the lock-free, thread affine store.
+     */
+    public static class ThreadAffinity extends PoolTest {
+        @Override
+        protected boolean isThreadAffinity() {
+            return true;
+        }
+    }
+
+    protected boolean isThreadAffinity() {
+        return false;
+    }
+
+    private <T> Pool<T> pool(final int max, final int min, final boolean strict) {
+        return new Pool<T>(max, min, strict, 0, 0, 0, null, null, false, -1, false, false, isThreadAffinity());
+    }
+
+    private Pool.Builder builder() {
+        final Pool.Builder builder = new Pool.Builder();
+        builder.setThreadAffinity(isThreadAffinity());
+        return builder;
+    }
+
     @Override
     protected void setUp() throws Exception {
         Bean.instances.set(0);
@@ -57,7 +92,7 @@ public class PoolTest extends TestCase {
         System.out.println("PoolTest.testEmptyPool");
         final int max = 4;
         final int min = 2;
-        final Pool<Bean> pool = new Pool<Bean>(max, min, true);
+        final Pool<Bean> pool = pool(max, min, true);
 
         final List<Pool<Bean>.Entry> entries = drain(pool);
 
@@ -102,7 +137,7 @@ public class PoolTest extends TestCase {
     public void testNonStrictDiscard() throws Exception {
         System.out.println("PoolTest.testNonStrictDiscard");
 
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(0);
         builder.setMaxSize(1);
         builder.setStrictPooling(false);
@@ -164,7 +199,7 @@ public class PoolTest extends TestCase {
     private void exerciseStrictPool(int max, int min) throws InterruptedException {
         Bean.instances.set(0);
         
-        Pool<String> pool = new Pool<String>(max, min, true);
+        Pool<String> pool = pool(max, min, true);
 
         // Fill the pool
         for (int i = 0; i < max; i++) {
@@ -212,7 +247,7 @@ public class PoolTest extends TestCase {
         System.out.println("PoolTest.testStrictMultiThreaded");
         final int threadCount = 200;
 
-        final Pool pool = new Pool(10, 5, true);
+        final Pool pool = pool(10, 5, true);
         final CountDownLatch startPistol = new CountDownLatch(1);
         final CountDownLatch startingLine = new CountDownLatch(10);
         final CountDownLatch finishingLine = new CountDownLatch(threadCount);
@@ -278,7 +313,7 @@ public class PoolTest extends TestCase {
 
         final List<Bean> discarded = new CopyOnWriteArrayList<Bean>();
         final CountDownLatch discard = new CountDownLatch(max);
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(min);
         builder.setMaxSize(max);
         builder.setSweepInterval(new Duration(sweepInterval, TimeUnit.MILLISECONDS));
@@ -346,7 +381,7 @@ public class PoolTest extends TestCase {
         final CountDownLatch discard = new CountDownLatch(max - min);
         final CountDownLatch hold = new CountDownLatch(1);
 
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(min);
         builder.setMaxSize(max);
         builder.setIdleTimeout(new Duration(idleTimeout, TimeUnit.MILLISECONDS));
@@ -433,7 +468,7 @@ public class PoolTest extends TestCase {
         final CountDownLatch created = new CountDownLatch(min);
         final CountDownLatch createInstances = new CountDownLatch(1);
 
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(min);
         builder.setMaxSize(max);
         builder.setSweepInterval(new Duration(sweepInterval, TimeUnit.MILLISECONDS));
@@ -568,7 +603,7 @@ public class PoolTest extends TestCase {
         final CountDownLatch created = new CountDownLatch(min);
         final CountDownLatch createInstances = new CountDownLatch(1);
 
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(min);
         builder.setMaxSize(max);
         builder.setMaxAge(new Duration(maxAge, MILLISECONDS));
@@ -721,7 +756,7 @@ public class PoolTest extends TestCase {
         final CountDownLatch created = new CountDownLatch(min);
         final CountDownLatch createInstances = new CountDownLatch(1);
 
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(min);
         builder.setMaxSize(max);
         builder.setSweepInterval(new Duration(poll, TimeUnit.MILLISECONDS));
@@ -877,7 +912,7 @@ public class PoolTest extends TestCase {
         final CountDownLatch created = new CountDownLatch(min);
         final CountDownLatch createInstances = new CountDownLatch(1);
 
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(min);
         builder.setMaxSize(max);
         builder.setMaxAge(new Duration(maxAge, MILLISECONDS));
@@ -1038,7 +1073,7 @@ public class PoolTest extends TestCase {
         final CountDownLatch created = new CountDownLatch(min);
         final CountDownLatch createInstances = new CountDownLatch(1);
 
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(min);
         builder.setMaxSize(max);
         builder.setSweepInterval(new Duration(sweepInterval, TimeUnit.MILLISECONDS));
@@ -1176,7 +1211,7 @@ public class PoolTest extends TestCase {
         final CountDownLatch created = new CountDownLatch(min);
         final CountDownLatch createInstances = new CountDownLatch(1);
 
-        final Pool.Builder builder = new Pool.Builder();
+        final Pool.Builder builder = builder();
         builder.setMinSize(min);
         builder.setMaxSize(max);
         builder.setMaxAge(new Duration(maxAge, MILLISECONDS));
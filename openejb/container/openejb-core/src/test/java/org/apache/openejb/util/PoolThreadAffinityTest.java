@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import junit.framework.TestCase;
+import org.apache.openejb.util.PoolTest.Bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Exercises the lock-free, thread affine pool store.  The generic
+ * pool semantics are covered by {@link PoolTest}, which runs against
+ * both stores.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PoolThreadAffinityTest extends TestCase {
+
+    private Pool<Bean> pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        Bean.instances.set(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (pool != null) pool.stop();
+    }
+
+    private static Pool.Builder<Bean> builder(final int max, final int min, final boolean strict) {
+        final Pool.Builder<Bean> builder = new Pool.Builder<Bean>();
+        builder.setMaxSize(max);
+        builder.setMinSize(min);
+        builder.setStrictPooling(strict);
+        builder.setThreadAffinity(true);
+        return builder;
+    }
+
+    public void testStrictBasics() throws Exception {
+        final int max = 5;
+        final int min = 2;
+        final Pool<Bean> pool = builder(max, min, true).build();
+
+        for (int i = 0; i < max; i++) {
+            assertTrue(pool.add(new Bean()));
+        }
+
+        final List<Pool<Bean>.Entry> entries = new ArrayList<Pool<Bean>.Entry>();
+        for (int i = 0; i < max; i++) {
+            final Pool<Bean>.Entry entry = pool.pop(0, MILLISECONDS);
+            assertNotNull(entry);
+            entries.add(entry);
+        }
+
+        try {
+            pool.pop(0, MILLISECONDS);
+            fail("strict pool should not hand out more than max");
+        } catch (TimeoutException e) {
+            // pass
+        }
+
+        int hard = 0;
+        for (Pool<Bean>.Entry entry : entries) {
+            if (entry.hasHardReference()) hard++;
+        }
+        assertEquals(min, hard);
+
+        for (Pool<Bean>.Entry entry : entries) {
+            assertTrue(pool.push(entry));
+        }
+
+        assertEquals(max, Bean.instances.get());
+    }
+
+    public void testSameThreadGetsSameInstance() throws Exception {
+        final Pool<Bean> pool = builder(10, 0, true).build();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pool.add(new Bean()));
+        }
+
+        final Pool<Bean>.Entry first = pool.pop(0, MILLISECONDS);
+        final Bean bean = first.get();
+        pool.push(first);
+
+        for (int i = 0; i < 100; i++) {
+            final Pool<Bean>.Entry entry = pool.pop(0, MILLISECONDS);
+            assertSame(bean, entry.get());
+            pool.push(entry);
+        }
+    }
+
+    public void testEmptyPoolGrantsCreation() throws Exception {
+        final Pool<Bean> pool = builder(3, 0, true).build();
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(pool.pop(0, MILLISECONDS));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pool.push(new Bean()));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(pool.pop(0, MILLISECONDS));
+        }
+    }
+
+    public void testNonStrictOverdraft() throws Exception {
+        final List<Pool.Event> events = new CopyOnWriteArrayList<Pool.Event>();
+        final Pool.Builder<Bean> builder = builder(2, 0, false);
+        builder.setSupplier(new Pool.Supplier<Bean>() {
+            public void discard(final Bean bean, final Pool.Event reason) {
+                events.add(reason);
+            }
+
+            public Bean create() {
+                return new Bean();
+            }
+        });
+
+        final Pool<Bean> pool = builder.build();
+
+        final List<Pool<Bean>.Entry> entries = new ArrayList<Pool<Bean>.Entry>();
+        for (int i = 0; i < 4; i++) {
+            entries.add(pool.pop(0, MILLISECONDS));
+        }
+
+        int pooled = 0;
+        for (int i = 0; i < 4; i++) {
+            assertNull(entries.get(i));
+            if (pool.push(new Bean())) pooled++;
+        }
+
+        assertEquals(2, pooled);
+        assertEquals(2, events.size());
+        assertEquals(Pool.Event.FULL, events.get(0));
+    }
+
+    public void testStrictMultiThreaded() throws Exception {
+        final int threadCount = 200;
+
+        final Pool<Bean> pool = builder(10, 5, true).build();
+        final CountDownLatch startPistol = new CountDownLatch(1);
+        final CountDownLatch startingLine = new CountDownLatch(threadCount);
+        final CountDownLatch finishingLine = new CountDownLatch(threadCount);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger highWater = new AtomicInteger();
+
+        final Runnable r = new Runnable() {
+            public void run() {
+                startingLine.countDown();
+                try {
+                    startPistol.await();
+
+                    for (int i = 0; i < 10; i++) {
+                        final Pool<Bean>.Entry entry = pool.pop(5000, MILLISECONDS);
+
+                        final int count = active.incrementAndGet();
+                        if (count > highWater.get()) highWater.set(count);
+
+                        Thread.sleep(1);
+
+                        active.decrementAndGet();
+                        if (entry == null) {
+                            pool.push(new Bean());
+                        } else {
+                            pool.push(entry);
+                        }
+                    }
+                } catch (TimeoutException e) {
+                    // Simple timeout while waiting on pop()
+                } catch (InterruptedException e) {
+                    Thread.interrupted();
+                }
+                finishingLine.countDown();
+            }
+        };
+
+        for (int i = 0; i < threadCount; i++) {
+            new Thread(r).start();
+        }
+
+        startingLine.await(1000, TimeUnit.MILLISECONDS);
+        startPistol.countDown();
+
+        assertTrue(finishingLine.await(30, TimeUnit.SECONDS));
+
+        assertTrue("max exceeded: " + highWater.get(), highWater.get() <= 10);
+        assertEquals(10, Bean.instances.get());
+    }
+
+    public void testFlush() throws Exception {
+        final List<Bean> discarded = new CopyOnWriteArrayList<Bean>();
+        final CountDownLatch discard = new CountDownLatch(4);
+
+        final Pool.Builder<Bean> builder = builder(4, 0, true);
+        builder.setSweepInterval(new Duration(100, MILLISECONDS));
+        builder.setSupplier(new Pool.Supplier<Bean>() {
+            public void discard(final Bean bean, final Pool.Event reason) {
+                assertEquals(Pool.Event.FLUSHED, reason);
+                discarded.add(bean);
+                discard.countDown();
+            }
+
+            public Bean create() {
+                return new Bean();
+            }
+        });
+
+        final Pool<Bean> pool = this.pool = builder.build().start();
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(pool.add(new Bean()));
+        }
+
+        pool.flush();
+
+        assertTrue(discard.await(10, TimeUnit.SECONDS));
+        assertEquals(4, discarded.size());
+        assertNull(pool.pop(0, MILLISECONDS));
+    }
+}
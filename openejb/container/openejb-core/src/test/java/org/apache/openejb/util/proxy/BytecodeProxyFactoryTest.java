@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util.proxy;
+
+import junit.framework.TestCase;
+import org.apache.xbean.asm.ClassWriter;
+import org.apache.xbean.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BytecodeProxyFactoryTest extends TestCase {
+
+    public void testInvoke() throws Exception {
+        final BytecodeProxyFactory factory = new BytecodeProxyFactory();
+        final Recorder recorder = new Recorder();
+
+        final Calculator calculator = (Calculator) factory.newProxyInstance(new Class[]{Calculator.class, Serializable.class}, recorder);
+        assertTrue(factory.isProxyClass(calculator.getClass()));
+        assertSame(recorder, factory.getInvocationHandler(calculator));
+        assertTrue(calculator instanceof Serializable);
+
+        assertEquals(3, calculator.add(1, 2));
+        assertEquals(3L, calculator.add(1L, 2L));
+        assertEquals(1.5, calculator.half(3.0));
+        assertEquals("a,b", calculator.join(new String[]{"a", "b"}, ','));
+        assertTrue(calculator.isPositive(1));
+        calculator.reset();
+        assertEquals(42, calculator.hashCode());
+        assertEquals("calculator", calculator.toString());
+        assertTrue(calculator.equals(calculator));
+
+        assertEquals(Arrays.asList("add", "add", "half", "join", "isPositive", "reset", "hashCode", "toString", "equals"), recorder.calls);
+
+        // the Method given to the handler is the one of the interface, or of Object
+        assertEquals(Calculator.class, recorder.methods.get(0).getDeclaringClass());
+        assertEquals(Object.class, recorder.methods.get(6).getDeclaringClass());
+    }
+
+    public void testExceptions() throws Exception {
+        final BytecodeProxyFactory factory = new BytecodeProxyFactory();
+        final Calculator calculator = (Calculator) factory.newProxyInstance(Calculator.class, new Thrower());
+
+        try {
+            calculator.load("declared");
+            fail();
+        } catch (IOException e) {
+            assertEquals("declared", e.getMessage());
+        }
+
+        try {
+            calculator.load("runtime");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("runtime", e.getMessage());
+        }
+
+        try {
+            calculator.reset();
+            fail();
+        } catch (UndeclaredThrowableException e) {
+            assertEquals("undeclared", e.getUndeclaredThrowable().getMessage());
+        }
+    }
+
+    public void testCache() throws Exception {
+        final BytecodeProxyFactory factory = new BytecodeProxyFactory();
+        final Class<?> proxyClass = factory.newProxyInstance(Calculator.class, new Recorder()).getClass();
+        assertSame(proxyClass, factory.newProxyInstance(Calculator.class, new Recorder()).getClass());
+        assertSame(proxyClass, factory.getProxyClass(Calculator.class));
+        assertNotSame(proxyClass, factory.newProxyInstance(new Class[]{Calculator.class, Serializable.class}, new Recorder()).getClass());
+    }
+
+    public void testJdkFallback() throws Exception {
+        final BytecodeProxyFactory factory = new BytecodeProxyFactory();
+        final Object proxy = factory.newProxyInstance(Hidden.class, new Recorder());
+        assertTrue(java.lang.reflect.Proxy.isProxyClass(proxy.getClass()));
+        assertTrue(factory.isProxyClass(proxy.getClass()));
+    }
+
+    public void testJdkLoaderCache() throws Exception {
+        final Jdk13ProxyFactory factory = new Jdk13ProxyFactory();
+        final Class<?> proxyClass = factory.newProxyInstance(new Class[]{Calculator.class}, new Recorder()).getClass();
+        assertSame(proxyClass, factory.newProxyInstance(new Class[]{Calculator.class}, new Recorder()).getClass());
+
+        final ProxyCache<String> cache = new ProxyCache<String>();
+        cache.put(new Class[]{Calculator.class, Serializable.class}, "value");
+        assertEquals("value", cache.get(new Class[]{Calculator.class, Serializable.class}));
+        assertNull(cache.get(new Class[]{Serializable.class, Calculator.class}));
+        assertNull(cache.get(new Class[]{Calculator.class}));
+    }
+
+    public void testInterfacesOfDistinctLoaders() throws Exception {
+        final Class<?> first = isolatedInterface("org.apache.openejb.util.proxy.First", "first");
+        final Class<?> second = isolatedInterface("org.apache.openejb.util.proxy.Second", "second");
+        assertNotSame(first.getClassLoader(), second.getClassLoader());
+
+        final BytecodeProxyFactory factory = new BytecodeProxyFactory();
+        final Object proxy = factory.newProxyInstance(new Class[]{first, second}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                return method.getName();
+            }
+        });
+
+        assertFalse(java.lang.reflect.Proxy.isProxyClass(proxy.getClass()));
+        assertTrue(first.isInstance(proxy));
+        assertTrue(second.isInstance(proxy));
+        assertEquals("first", first.getMethod("first").invoke(proxy));
+        assertEquals("second", second.getMethod("second").invoke(proxy));
+    }
+
+    public static interface Calculator {
+        int add(int a, int b);
+
+        long add(long a, long b);
+
+        double half(double value);
+
+        String join(String[] values, char separator);
+
+        boolean isPositive(int value);
+
+        void reset();
+
+        Object load(String name) throws IOException;
+    }
+
+    static interface Hidden {
+        void hide();
+    }
+
+    private static class Recorder implements InvocationHandler {
+        private final List<String> calls = new ArrayList<String>();
+        private final List<Method> methods = new ArrayList<Method>();
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            calls.add(method.getName());
+            methods.add(method);
+
+            final String name = method.getName();
+            if (name.equals("add") && method.getReturnType() == Integer.TYPE) {
+                return (Integer) args[0] + (Integer) args[1];
+            } else if (name.equals("add")) {
+                return (Long) args[0] + (Long) args[1];
+            } else if (name.equals("half")) {
+                return (Double) args[0] / 2;
+            } else if (name.equals("join")) {
+                final String[] values = (String[]) args[0];
+                return values[0] + args[1] + values[1];
+            } else if (name.equals("isPositive")) {
+                return (Integer) args[0] > 0;
+            } else if (name.equals("hashCode")) {
+                return 42;
+            } else if (name.equals("toString")) {
+                return "calculator";
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            return null;
+        }
+    }
+
+    private static class Thrower implements InvocationHandler {
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (args == null) {
+                throw new ProxyTestException("undeclared");
+            }
+            if ("declared".equals(args[0])) {
+                throw new IOException("declared");
+            }
+            throw new IllegalStateException("runtime");
+        }
+    }
+
+    /**
+     * Defines an interface only visible from its own class loader
+     */
+    private static Class<?> isolatedInterface(final String name, final String method) {
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC + Opcodes.ACC_ABSTRACT + Opcodes.ACC_INTERFACE, name.replace('.', '/'), null, "java/lang/Object", null);
+        cw.visitMethod(Opcodes.ACC_PUBLIC + Opcodes.ACC_ABSTRACT, method, "()Ljava/lang/String;", null, null).visitEnd();
+        cw.visitEnd();
+        return new DefiningClassLoader().define(name, cw.toByteArray());
+    }
+
+    private static class DefiningClassLoader extends ClassLoader {
+        private DefiningClassLoader() {
+            super(BytecodeProxyFactoryTest.class.getClassLoader());
+        }
+
+        private Class<?> define(final String name, final byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
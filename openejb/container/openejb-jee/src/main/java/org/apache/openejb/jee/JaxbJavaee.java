@@ -24,11 +24,12 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.net.URL;
 import java.util.AbstractMap;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -40,7 +41,6 @@ import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventHandler;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Source;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamSource;
@@ -62,7 +62,7 @@ import org.xml.sax.helpers.XMLFilterImpl;
 public class JaxbJavaee {
     public static final ThreadLocal<Set<String>> currentPublicId = new ThreadLocal<Set<String>>();
 
-    private static Map<Class<?>,JAXBContext> jaxbContexts = new HashMap<Class<?>,JAXBContext>();
+    private static final ConcurrentMap<Class<?>,JAXBContext> jaxbContexts = new ConcurrentHashMap<Class<?>,JAXBContext>();
 
     public static <T>String marshal(Class<T> type, Object object) throws JAXBException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -85,7 +85,10 @@ public class JaxbJavaee {
         JAXBContext jaxbContext = jaxbContexts.get(type);
         if (jaxbContext == null) {
             jaxbContext = JAXBContextFactory.newInstance(type);
-            jaxbContexts.put(type, jaxbContext);
+            final JAXBContext existing = jaxbContexts.putIfAbsent(type, jaxbContext);
+            if (existing != null) {
+                jaxbContext = existing;
+            }
         }
         return jaxbContext;
     }
@@ -102,12 +105,8 @@ public class JaxbJavaee {
      * @throws JAXBException if the xml cannot be marshalled into a T.
      */
     public static <T>Object unmarshalJavaee(Class<T> type, InputStream in) throws ParserConfigurationException, SAXException, JAXBException {
-        
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        
-        SAXParser parser = factory.newSAXParser();
+
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = JaxbJavaee.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -133,6 +132,7 @@ public class JaxbJavaee {
             return element.getValue();
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -151,10 +151,7 @@ public class JaxbJavaee {
     public static <T>Object unmarshal(Class<T> type, InputStream in, boolean validate) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(validate);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(validate);
 
         JAXBContext ctx = JaxbJavaee.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -175,6 +172,7 @@ public class JaxbJavaee {
             return unmarshaller.unmarshal(source);
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -192,10 +190,7 @@ public class JaxbJavaee {
     public static <T>Object unmarshalTaglib(Class<T> type, InputStream in) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = JaxbJavaee.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -217,6 +212,7 @@ public class JaxbJavaee {
             return unmarshaller.unmarshal(source);
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -233,10 +229,7 @@ public class JaxbJavaee {
     public static <T>Object unmarshalHandlerChains(Class<T> type, InputStream in) throws ParserConfigurationException, SAXException, JAXBException {
         InputSource inputSource = new InputSource(in);
 
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(false);
-        SAXParser parser = factory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
 
         JAXBContext ctx = JaxbJavaee.getContext(type);
         Unmarshaller unmarshaller = ctx.createUnmarshaller();
@@ -260,6 +253,7 @@ public class JaxbJavaee {
             return unmarshaller.unmarshal(source);
         } finally {
             currentPublicId.set(null);
+            SAXParserPool.release(parser);
         }
     }
 
@@ -493,10 +487,7 @@ public class JaxbJavaee {
         }
         
         // get the parser
-        SAXParserFactory parserfactory = SAXParserFactory.newInstance();
-        parserfactory.setNamespaceAware(true);
-        parserfactory.setValidating(false);
-        SAXParser parser = parserfactory.newSAXParser();
+        SAXParser parser = SAXParserPool.acquire(false);
         
         // get the xml filter
         Javaee6SchemaFilter xmlFilter = new Javaee6SchemaFilter(parser.getXMLReader());
@@ -517,7 +508,11 @@ public class JaxbJavaee {
                 });
 
         // validate
-        schema.newValidator().validate(sourceForValidate);
+        try {
+            schema.newValidator().validate(sourceForValidate);
+        } finally {
+            SAXParserPool.release(parser);
+        }
     }
     
     private static URL getSchemaURL(String xsdFileName){
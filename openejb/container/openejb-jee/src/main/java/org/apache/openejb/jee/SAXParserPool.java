@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.jee;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Namespace aware SAX parsers kept one per thread, so reading the
+ * descriptors of a large application doesn't look up a factory and build
+ * a new parser for each of them.
+ * <p/>
+ * A parser is taken out of the pool while in use, a nested read on the
+ * same thread simply gets a new one.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SAXParserPool {
+    private static final SAXParserPool NON_VALIDATING = new SAXParserPool(false);
+    private static final SAXParserPool VALIDATING = new SAXParserPool(true);
+
+    private final SAXParserFactory factory;
+    private final ThreadLocal<SAXParser> parsers = new ThreadLocal<SAXParser>();
+
+    private SAXParserPool(final boolean validating) {
+        factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setValidating(validating);
+    }
+
+    public static SAXParser acquire(final boolean validating) throws ParserConfigurationException, SAXException {
+        return pool(validating).acquire();
+    }
+
+    public static void release(final SAXParser parser) {
+        if (parser != null) {
+            pool(parser.isValidating()).release0(parser);
+        }
+    }
+
+    private static SAXParserPool pool(final boolean validating) {
+        return validating ? VALIDATING : NON_VALIDATING;
+    }
+
+    private SAXParser acquire() throws ParserConfigurationException, SAXException {
+        final SAXParser parser = parsers.get();
+        if (parser != null) {
+            parsers.remove();
+            return parser;
+        }
+        // the factory is shared, its configuration methods aren't thread safe
+        synchronized (factory) {
+            return factory.newSAXParser();
+        }
+    }
+
+    private void release0(final SAXParser parser) {
+        try {
+            parser.reset();
+        } catch (UnsupportedOperationException e) {
+            // can't be reused
+            return;
+        }
+        parsers.set(parser);
+    }
+}
@@ -21,13 +21,13 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLFilterImpl;
-import org.apache.openejb.jee.JAXBContextFactory;
+import org.apache.openejb.jee.JaxbJavaee;
+import org.apache.openejb.jee.SAXParserPool;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.UnmarshallerHandler;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.sax.SAXSource;
 import java.io.InputStream;
 import java.io.ByteArrayInputStream;
@@ -41,27 +41,27 @@ public class JaxbPersistenceFactory {
     public static final String PERSISTENCE_SCHEMA = "http://java.sun.com/xml/ns/persistence";
 
     public static <T> T getPersistence(Class<T> clazz, InputStream persistenceDescriptor) throws Exception {
-        JAXBContext jc = JAXBContextFactory.newInstance(clazz);
+        JAXBContext jc = JaxbJavaee.getContext(clazz);
         Unmarshaller u = jc.createUnmarshaller();
         UnmarshallerHandler uh = u.getUnmarshallerHandler();
 
-        // create a new XML parser
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        factory.setValidating(true);
-        SAXParser parser = factory.newSAXParser();
-
-        XMLReader xmlReader = parser.getXMLReader();
+        // reuse a validating XML parser of this thread
+        SAXParser parser = SAXParserPool.acquire(true);
+        try {
+            XMLReader xmlReader = parser.getXMLReader();
 
-        // Create a filter to intercept events
-        PersistenceFilter xmlFilter = new PersistenceFilter(xmlReader);
+            // Create a filter to intercept events
+            PersistenceFilter xmlFilter = new PersistenceFilter(xmlReader);
 
-        // Be sure the filter has the JAXB content handler set (or it wont
-        // work)
-        xmlFilter.setContentHandler(uh);
-        SAXSource source = new SAXSource(xmlFilter, new InputSource(persistenceDescriptor));
+            // Be sure the filter has the JAXB content handler set (or it wont
+            // work)
+            xmlFilter.setContentHandler(uh);
+            SAXSource source = new SAXSource(xmlFilter, new InputSource(persistenceDescriptor));
 
-        return (T) u.unmarshal(source);
+            return (T) u.unmarshal(source);
+        } finally {
+            SAXParserPool.release(parser);
+        }
     }
 
     public static <T> T getPersistence(Class<T> clazz, URL url) throws Exception {
@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.jee;
+
+import junit.framework.TestCase;
+
+import javax.xml.parsers.SAXParser;
+import java.io.ByteArrayInputStream;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class SAXParserPoolTest extends TestCase {
+
+    public void testReuse() throws Exception {
+        final SAXParser parser = SAXParserPool.acquire(false);
+        assertFalse(parser.isValidating());
+        assertTrue(parser.isNamespaceAware());
+
+        // in use, a nested read gets its own parser
+        final SAXParser nested = SAXParserPool.acquire(false);
+        assertNotSame(parser, nested);
+        SAXParserPool.release(nested);
+
+        SAXParserPool.release(parser);
+        assertSame(parser, SAXParserPool.acquire(false));
+
+        final SAXParser validating = SAXParserPool.acquire(true);
+        assertTrue(validating.isValidating());
+        assertNotSame(parser, validating);
+        SAXParserPool.release(validating);
+    }
+
+    public void testUnmarshalTwice() throws Exception {
+        final String xml = "<beans xmlns=\"http://java.sun.com/xml/ns/javaee\"><alternatives><class>org.superbiz.Mock</class></alternatives></beans>";
+        for (int i = 0; i < 2; i++) {
+            final Beans beans = (Beans) JaxbJavaee.unmarshalJavaee(Beans.class, new ByteArrayInputStream(xml.getBytes()));
+            assertEquals("org.superbiz.Mock", beans.getAlternativeClasses().get(0));
+        }
+        assertSame(JaxbJavaee.getContext(Beans.class), JaxbJavaee.getContext(Beans.class));
+    }
+}
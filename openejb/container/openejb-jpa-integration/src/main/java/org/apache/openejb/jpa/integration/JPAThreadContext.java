@@ -16,10 +16,47 @@
  */
 package org.apache.openejb.jpa.integration;
 
+import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 // use to store info while creating the EMF
+// units can be built concurrently so each thread sees its own infos
 public class JPAThreadContext {
-    public static final Map<String, Object> infos = new HashMap<String, Object>();
+    public static final Map<String, Object> infos = new ThreadMap();
+
+    private static class ThreadMap extends AbstractMap<String, Object> {
+        private final ThreadLocal<Map<String, Object>> map = new ThreadLocal<Map<String, Object>>() {
+            @Override
+            protected Map<String, Object> initialValue() {
+                return new HashMap<String, Object>();
+            }
+        };
+
+        @Override
+        public Object put(final String key, final Object value) {
+            return map.get().put(key, value);
+        }
+
+        @Override
+        public Object get(final Object key) {
+            return map.get().get(key);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return map.get().containsKey(key);
+        }
+
+        @Override
+        public void clear() {
+            map.remove();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return map.get().entrySet();
+        }
+    }
 }
@@ -25,6 +25,11 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class aims to be the one and only static in the entire system
@@ -40,6 +45,8 @@ import java.util.Properties;
 public class SystemInstance {
     private static final String PROFILE_PROP = "openejb.profile";
     private static final String DEFAULT_PROFILE = "development";
+    public static final String OBSERVER_SLOW = "openejb.observer.slow";
+    public static final String OBSERVER_ASYNC_THREADS = "openejb.observer.async.threads";
 
     private final long startTime = System.currentTimeMillis();
 
@@ -100,7 +107,22 @@ public class SystemInstance {
         this.internalProperties.setProperty("openejb.base", base.getDirectory().getCanonicalPath());
         System.setProperty("derby.system.home", base.getDirectory().getCanonicalPath());
 
-
+        this.observerManager.setSlowThreshold(options.get(OBSERVER_SLOW, -1L), TimeUnit.MILLISECONDS);
+        final int asyncThreads = options.get(OBSERVER_ASYNC_THREADS, 0);
+        if (asyncThreads > 0) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger ids = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "OpenEJB-observer-" + ids.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            this.observerManager.setExecutor(executor);
+        }
     }
 
     public void fireEvent(Object event) {
@@ -115,6 +137,10 @@ public class SystemInstance {
         return observerManager.removeObserver(observer);
     }
 
+    public ObserverManager getObserverManager() {
+        return observerManager;
+    }
+
     public long getStartTime() {
         return startTime;
     }
@@ -28,11 +28,55 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Dispatches the events to the @Observes methods.
+ * <p/>
+ * The methods observing an event class are resolved the first time it is
+ * fired and kept until an observer is added or removed.  An observer gets
+ * the event in its method for the closest type in the event hierarchy: the
+ * event class, then the interfaces it implements, then its superclass and
+ * the interfaces of the superclass and so on, the method observing Object
+ * being the last resort.
+ * <p/>
+ * Methods observing with @Observes(async = true) are run on the executor
+ * when there is one.  Each invocation is timed, {@link #getStatistics()}
+ * gives the totals and the slow ones are logged.
+ */
 public class ObserverManager {
-    private final List<Observer> observers = new ArrayList<Observer>();
+    private static final Logger logger = Logger.getLogger(ObserverManager.class.getName());
+
+    private final List<Observer> observers = new CopyOnWriteArrayList<Observer>();
+    /**
+     * Replaced, never cleared, when the observers change so an invocation
+     * list resolved from the previous observers can't be published in it
+     */
+    private volatile ConcurrentMap<Class, Invocation[]> dispatch = new ConcurrentHashMap<Class, Invocation[]>();
+    private volatile Executor executor;
+    private volatile long slowThreshold = -1;
+
+    /**
+     * @param executor runs the asynchronous observers, null to run them when the event is fired
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param slowThreshold duration from which an invocation is logged as slow, negative to never log
+     */
+    public void setSlowThreshold(final long slowThreshold, final TimeUnit unit) {
+        this.slowThreshold = slowThreshold < 0 ? -1 : unit.toNanos(slowThreshold);
+    }
 
     public boolean addObserver(Object observer) {
         if (observer == null) throw new IllegalArgumentException("observer cannot be null");
@@ -45,6 +89,7 @@ public class ObserverManager {
         }
 
         final boolean added = observers.add(obs);
+        dispatch = new ConcurrentHashMap<Class, Invocation[]>();
 
         // Observers can observe they have been added and are active
         fireEvent(new ObserverAdded(observer));
@@ -58,38 +103,152 @@ public class ObserverManager {
         // Observers can observe they are to be removed
         fireEvent(new ObserverRemoved(observer));
 
-        return observers.remove(new Observer(observer));
+        final boolean removed = observers.remove(new Observer(observer));
+        dispatch = new ConcurrentHashMap<Class, Invocation[]>();
+        return removed;
     }
 
     public void fireEvent(Object event) {
         if (event == null) throw new IllegalArgumentException("event cannot be null");
 
+        for (final Invocation invocation : invocations(event.getClass())) {
+            final Executor executor = this.executor;
+            if (invocation.async && executor != null) {
+                final Object asyncEvent = event;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        invoke(invocation, asyncEvent);
+                    }
+                });
+            } else {
+                invoke(invocation, event);
+            }
+        }
+    }
+
+    /**
+     * @return the invocations of the observer methods by "ObserverClass.method(EventClass)"
+     */
+    public Map<String, Statistics> getStatistics() {
+        final Map<String, Statistics> statistics = new TreeMap<String, Statistics>();
         for (Observer observer : observers) {
-            try {
-                observer.invoke(event);
-            } catch (Throwable t) {
-                if (!(event instanceof ObserverFailed)) {
-                    fireEvent(new ObserverFailed(observer, event, t));
-                }
-                Logger.getLogger(ObserverManager.class.getName()).log(Level.SEVERE, "error invoking " + observer, t);
+            for (Map.Entry<Method, Statistics> entry : observer.statistics.entrySet()) {
+                final Method method = entry.getKey();
+                statistics.put(observer.observer.getClass().getName() + "." + method.getName() + "(" + method.getParameterTypes()[0].getName() + ")", entry.getValue());
+            }
+        }
+        return statistics;
+    }
+
+    private Invocation[] invocations(final Class eventType) {
+        // read before the observers, see addObserver
+        final ConcurrentMap<Class, Invocation[]> dispatch = this.dispatch;
+
+        final Invocation[] cached = dispatch.get(eventType);
+        if (cached != null) {
+            return cached;
+        }
+
+        final List<Invocation> invocations = new ArrayList<Invocation>();
+        for (Observer observer : observers) {
+            final Method method = observer.resolve(eventType);
+            if (method != null) {
+                invocations.add(new Invocation(observer, method));
+            }
+        }
+
+        final Invocation[] resolved = invocations.toArray(new Invocation[invocations.size()]);
+        dispatch.putIfAbsent(eventType, resolved);
+        return resolved;
+    }
+
+    private void invoke(final Invocation invocation, final Object event) {
+        final long start = System.nanoTime();
+        try {
+            invocation.method.invoke(invocation.observer.observer, event);
+        } catch (Throwable t) {
+            if (!(event instanceof ObserverFailed)) {
+                fireEvent(new ObserverFailed(invocation.observer, event, t));
+            }
+            logger.log(Level.SEVERE, "error invoking " + invocation.observer, t);
+        } finally {
+            final long time = System.nanoTime() - start;
+            invocation.statistics.add(time);
+
+            final long threshold = slowThreshold;
+            if (threshold >= 0 && time >= threshold) {
+                logger.warning("Slow observer " + invocation.method.toString() + " took " + TimeUnit.NANOSECONDS.toMillis(time) + "ms for " + event);
             }
         }
     }
 
+    private static class Invocation {
+        private final Observer observer;
+        private final Method method;
+        private final Statistics statistics;
+        private final boolean async;
+
+        private Invocation(final Observer observer, final Method method) {
+            this.observer = observer;
+            this.method = method;
+            this.statistics = observer.statistics.get(method);
+            this.async = observer.async.get(method);
+        }
+    }
+
+    /**
+     * Invocations of an observer method.
+     */
+    public static class Statistics {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong time = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private void add(final long nanos) {
+            count.incrementAndGet();
+            time.addAndGet(nanos);
+
+            long current = max.get();
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTime(final TimeUnit unit) {
+            return unit.convert(time.get(), TimeUnit.NANOSECONDS);
+        }
+
+        public long getMax(final TimeUnit unit) {
+            return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{count=" + count + ", time=" + TimeUnit.NANOSECONDS.toMillis(time.get()) + "ms, max=" + TimeUnit.NANOSECONDS.toMillis(max.get()) + "ms}";
+        }
+    }
+
     /**
      * @version $Rev$ $Date$
      */
     public static class Observer {
         private final Map<Class, Method> methods = new HashMap<Class, Method>();
+        private final Map<Method, Statistics> statistics = new HashMap<Method, Statistics>();
+        private final Map<Method, Boolean> async = new HashMap<Method, Boolean>();
         private final Object observer;
-        private final Method defaultMethod;
 
         public Observer(Object observer) {
             if (observer == null) throw new IllegalArgumentException("observer cannot be null");
 
             this.observer = observer;
             for (Method method : observer.getClass().getMethods()) {
-                if (!isObserver(method)) continue;
+                final Observes observes = observes(method);
+                if (observes == null) continue;
 
                 if (method.getParameterTypes().length > 1) {
                     throw new IllegalArgumentException("@Observes method must have only 1 parameter: " + method.toString());
@@ -109,12 +268,8 @@ public class ObserverManager {
                     throw new IllegalArgumentException("@Observes method parameter must be a concrete class (not an annotation): " + method.toString());
                 }
 
-                if (Modifier.isAbstract(type.getModifiers())) {
-                    throw new IllegalArgumentException("@Observes method parameter must be a concrete class (not an abstract class): " + method.toString());
-                }
-
-                if (type.isInterface()) {
-                    throw new IllegalArgumentException("@Observes method parameter must be a concrete class (not an interface): " + method.toString());
+                if (!type.isInterface() && Modifier.isAbstract(type.getModifiers())) {
+                    throw new IllegalArgumentException("@Observes method parameter must be a concrete class or an interface (not an abstract class): " + method.toString());
                 }
 
                 if (type.isArray()) {
@@ -126,9 +281,12 @@ public class ObserverManager {
                 }
 
                 methods.put(type, method);
-            }
+                statistics.put(method, new Statistics());
+                async.put(method, observes.async());
 
-            defaultMethod = methods.get(Object.class);
+                // no access check on each invocation
+                method.setAccessible(true);
+            }
 
             if (methods.size() == 0) {
                 throw new NotAnObserverException("Object has no @Observes methods. For example: public void observe(@Observes RetryConditionAdded event){...}");
@@ -138,23 +296,52 @@ public class ObserverManager {
         public void invoke(Object event) throws InvocationTargetException, IllegalAccessException {
             if (event == null) throw new IllegalArgumentException("event cannot be null");
 
-            final Class eventType = event.getClass();
-            final Method method = methods.get(eventType);
+            final Method method = resolve(event.getClass());
 
             if (method != null) {
                 method.invoke(observer, event);
-            } else if (defaultMethod != null) {
-                defaultMethod.invoke(observer, event);
             }
         }
 
-        private boolean isObserver(Method method) {
+        /**
+         * @return the method observing the closest type of the event hierarchy, null if none does
+         */
+        private Method resolve(final Class eventType) {
+            for (Class type = eventType; type != null; type = type.getSuperclass()) {
+                Method method = methods.get(type);
+                if (method == null) {
+                    method = resolveInterfaces(type);
+                }
+                if (method != null) {
+                    return method;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Interfaces in declaration order, each followed by the ones it extends
+         */
+        private Method resolveInterfaces(final Class type) {
+            for (Class anInterface : type.getInterfaces()) {
+                Method method = methods.get(anInterface);
+                if (method == null) {
+                    method = resolveInterfaces(anInterface);
+                }
+                if (method != null) {
+                    return method;
+                }
+            }
+            return null;
+        }
+
+        private Observes observes(Method method) {
             for (Annotation[] annotations : method.getParameterAnnotations()) {
                 for (Annotation annotation : annotations) {
-                    if (annotation.annotationType().equals(Observes.class)) return true;
+                    if (annotation.annotationType().equals(Observes.class)) return (Observes) annotation;
                 }
             }
-            return false;
+            return null;
         }
 
         @Override
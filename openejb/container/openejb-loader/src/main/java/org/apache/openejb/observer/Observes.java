@@ -30,4 +30,10 @@ import static java.lang.annotation.RetentionPolicy.RUNTIME;
 @Retention(RUNTIME)
 @Documented
 public @interface Observes {
+    /**
+     * The observer doesn't need to complete before the event is fired
+     * to the next one, it is run on the executor of the ObserverManager
+     * if there is one.
+     */
+    boolean async() default false;
 }
\ No newline at end of file
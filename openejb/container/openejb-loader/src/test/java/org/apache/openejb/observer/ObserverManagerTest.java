@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.observer;
+
+import junit.framework.TestCase;
+import org.apache.openejb.observer.event.ObserverFailed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ObserverManagerTest extends TestCase {
+
+    public void testHierarchy() {
+        final ObserverManager manager = new ObserverManager();
+        final Specific specific = new Specific();
+        final Everything everything = new Everything();
+        manager.addObserver(specific);
+        manager.addObserver(everything);
+
+        manager.fireEvent(new Child());
+        manager.fireEvent(new Parent());
+        manager.fireEvent("string");
+
+        // the closest type of the hierarchy only
+        assertEquals(list("child", "parent"), specific.calls);
+        // and its own ObserverAdded
+        assertEquals(4, everything.events.size());
+    }
+
+    public void testInterfaces() {
+        final ObserverManager manager = new ObserverManager();
+        final Tagged tagged = new Tagged();
+        manager.addObserver(tagged);
+
+        manager.fireEvent(new TaggedChild());
+        manager.fireEvent(new Child());
+        manager.fireEvent(new SubTagged());
+
+        // the class before its interfaces, the interfaces before the superclass
+        assertEquals(list("taggedChild", "parent", "tag"), tagged.calls);
+    }
+
+    public void testAddedObserversGetEvents() {
+        final ObserverManager manager = new ObserverManager();
+        final Specific first = new Specific();
+        manager.addObserver(first);
+        manager.fireEvent(new Child());
+
+        final Specific second = new Specific();
+        manager.addObserver(second);
+        manager.fireEvent(new Child());
+
+        assertEquals(list("child", "child"), first.calls);
+        assertEquals(list("child"), second.calls);
+
+        manager.removeObserver(first);
+        manager.fireEvent(new Parent());
+        assertEquals(list("child", "child"), first.calls);
+        assertEquals(list("child", "parent"), second.calls);
+    }
+
+    public void testAsync() {
+        final ObserverManager manager = new ObserverManager();
+        final Async async = new Async();
+        manager.addObserver(async);
+
+        // run synchronously without executor
+        manager.fireEvent(new Parent());
+        assertEquals(1, async.count);
+
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        manager.setExecutor(new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                tasks.add(command);
+            }
+        });
+        manager.fireEvent(new Parent());
+        assertEquals(1, async.count);
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertEquals(2, async.count);
+    }
+
+    public void testStatisticsAndFailures() {
+        final ObserverManager manager = new ObserverManager();
+        manager.setSlowThreshold(0, TimeUnit.MILLISECONDS);
+        final Failing failing = new Failing();
+        final Everything everything = new Everything();
+        manager.addObserver(failing);
+        manager.addObserver(everything);
+
+        manager.fireEvent(new Parent());
+        manager.fireEvent(new Parent());
+
+        final Map<String, ObserverManager.Statistics> statistics = manager.getStatistics();
+        assertEquals(2, statistics.get(Failing.class.getName() + ".observe(" + Parent.class.getName() + ")").getCount());
+
+        int failures = 0;
+        for (Object event : everything.events) {
+            if (event instanceof ObserverFailed) {
+                failures++;
+            }
+        }
+        assertEquals(2, failures);
+    }
+
+    private static List<String> list(final String... values) {
+        final List<String> list = new ArrayList<String>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    public static class Parent {
+    }
+
+    public static class Child extends Parent {
+    }
+
+    public static interface Tag {
+    }
+
+    public static interface SubTag extends Tag {
+    }
+
+    public static class TaggedChild extends Child implements Tag {
+    }
+
+    public static class SubTagged extends Parent implements SubTag {
+    }
+
+    public static class Tagged {
+        private final List<String> calls = new ArrayList<String>();
+
+        public void parent(@Observes final Parent event) {
+            calls.add("parent");
+        }
+
+        public void tag(@Observes final Tag event) {
+            calls.add("tag");
+        }
+
+        public void taggedChild(@Observes final TaggedChild event) {
+            calls.add("taggedChild");
+        }
+    }
+
+    public static class Specific {
+        private final List<String> calls = new ArrayList<String>();
+
+        public void parent(@Observes final Parent event) {
+            calls.add("parent");
+        }
+
+        public void child(@Observes final Child event) {
+            calls.add("child");
+        }
+    }
+
+    public static class Everything {
+        private final List<Object> events = new ArrayList<Object>();
+
+        public void observe(@Observes final Object event) {
+            events.add(event);
+        }
+    }
+
+    public static class Async {
+        private int count;
+
+        public void observe(@Observes(async = true) final Parent event) {
+            count++;
+        }
+    }
+
+    public static class Failing {
+        public void observe(@Observes final Parent event) {
+            throw new IllegalStateException("failing");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.maven.plugin.embedded;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.apache.openejb.config.AnnotationIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Write the annotation index of the compiled classes so they don't
+ * need to be scanned when the jar is deployed.
+ * <p/>
+ * With indexDependencies the runtime dependencies are indexed as well in
+ * indexDirectory, point openejb.scan.index.directory to a copy of it to
+ * use them.
+ */
+@Mojo(name = "index", defaultPhase = LifecyclePhase.PROCESS_CLASSES, requiresDependencyResolution = ResolutionScope.RUNTIME)
+public class AnnotationIndexMojo extends AbstractMojo {
+    @Parameter(defaultValue = "${project.build.outputDirectory}")
+    private File classesDirectory;
+
+    @Parameter(property = "index.dependencies", defaultValue = "false")
+    private boolean indexDependencies;
+
+    @Parameter(property = "index.directory", defaultValue = "${project.build.directory}/annotation-index")
+    private File indexDirectory;
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (classesDirectory.isDirectory()) {
+            final File index = new File(classesDirectory, AnnotationIndex.INDEX_NAME);
+            write(classesDirectory, index);
+        } else {
+            getLog().info("No classes to index in " + classesDirectory.getAbsolutePath());
+        }
+
+        if (!indexDependencies) {
+            return;
+        }
+
+        for (Artifact artifact : (Set<Artifact>) project.getArtifacts()) {
+            final File file = artifact.getFile();
+            if (file == null || !file.isFile() || !file.getName().endsWith(".jar")) {
+                continue;
+            }
+
+            try {
+                final AnnotationIndex index = AnnotationIndex.build(file);
+                write(index, new File(indexDirectory, AnnotationIndex.name(index.getStamp())));
+            } catch (IOException e) {
+                getLog().warn("Can't index " + artifact.toString() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(final File classes, final File file) throws MojoExecutionException {
+        try {
+            write(AnnotationIndex.build(classes), file);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't index " + classes.getAbsolutePath(), e);
+        }
+    }
+
+    private void write(final AnnotationIndex index, final File file) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Can't create " + file.getParentFile().getAbsolutePath());
+        }
+        AnnotationIndex.write(index, file);
+        getLog().info("Indexed " + index.getClasses().size() + " classes in " + file.getAbsolutePath());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Base of the strategies choosing the server from the {@link ServerStatistics}
+ * of the cluster members. Each request orders the locations: first a server
+ * due for a probe if there is one, then the servers with a closed circuit as
+ * ordered by the strategy, and last the servers with an open circuit.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class AbstractBalancingConnectionStrategy extends AbstractConnectionStrategy {
+
+    /**
+     * Orders the first {@code length} locations, the first one being the
+     * server the request is sent to.
+     */
+    protected abstract void order(URI[] locations, ServerStatistics[] statistics, int offset, int length);
+
+    @Override
+    protected Iterable<URI> createIterable(final ClusterMetaData cluster) {
+        return new BalancingIterable(cluster.getLocations());
+    }
+
+    protected static void swap(final URI[] locations, final ServerStatistics[] statistics, final int i, final int j) {
+        final URI location = locations[i];
+        locations[i] = locations[j];
+        locations[j] = location;
+
+        final ServerStatistics stats = statistics[i];
+        statistics[i] = statistics[j];
+        statistics[j] = stats;
+    }
+
+    private class BalancingIterable implements Iterable<URI> {
+        private final URI[] locations;
+
+        private BalancingIterable(final URI[] locations) {
+            this.locations = locations;
+        }
+
+        @Override
+        public Iterator<URI> iterator() {
+            final int size = locations.length;
+            final URI[] ordered = new URI[size];
+            final ServerStatistics[] statistics = new ServerStatistics[size];
+
+            int head = 0;
+            int tail = size;
+            for (final URI location : locations) {
+                final ServerStatistics stats = ServerStatistics.get(location);
+                if (!stats.isOpen()) {
+                    ordered[head] = location;
+                    statistics[head++] = stats;
+                } else {
+                    ordered[--tail] = location;
+                    statistics[tail] = stats;
+                }
+            }
+
+            int offset = 0;
+            for (int i = head; i < size; i++) {
+                if (statistics[i].probe()) {
+                    // the probe goes first, the closed servers follow it
+                    final URI location = ordered[i];
+                    final ServerStatistics stats = statistics[i];
+                    System.arraycopy(ordered, 0, ordered, 1, i);
+                    System.arraycopy(statistics, 0, statistics, 1, i);
+                    ordered[0] = location;
+                    statistics[0] = stats;
+                    offset = 1;
+                    head++;
+                    break;
+                }
+            }
+
+            order(ordered, statistics, offset, head - offset);
+
+            return new BalancingIterator(ordered);
+        }
+    }
+
+    private static class BalancingIterator implements Iterator<URI> {
+        private final URI[] locations;
+        private int index;
+
+        private BalancingIterator(final URI[] locations) {
+            this.locations = locations;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < locations.length;
+        }
+
+        @Override
+        public URI next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return locations[index++];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
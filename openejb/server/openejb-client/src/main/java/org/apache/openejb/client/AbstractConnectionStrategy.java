@@ -47,6 +47,7 @@ public abstract class AbstractConnectionStrategy implements ConnectionStrategy {
             try {
                 return connect(cluster, uri);
             } catch (IOException e) {
+                ServerStatistics.get(uri).connectionFailed();
 
                 if (!failover) {
                     Collections.addAll(remaining, cluster.getLocations());
@@ -54,7 +54,7 @@ public class Client {
     private boolean FINER = logger.isLoggable(Level.FINER);
 
     public static final ThreadLocal<Set<URI>> failed = new ThreadLocal<Set<URI>>();
-    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("3.1");
+    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("4.1");
     private static final int maxConditionRetry = Integer.parseInt(System.getProperty("openejb.client.retry.condition.max", "20"));
 
     private List<Class<? extends Throwable>> retryConditions = new CopyOnWriteArrayList<Class<? extends Throwable>>();
@@ -119,6 +119,39 @@ public class Client {
         }
     }
 
+    /**
+     * Sends the request and returns without waiting for the response when
+     * all the servers of the cluster are reached through a pipelined
+     * connection, see {@link #isPipelined(ServerMetaData)}.
+     * The callback is then notified from the thread reading the responses.
+     */
+    public static void request(final Request req, final Response res, final ServerMetaData server, final Callback callback) throws RemoteException {
+        try {
+            client.processRequest(req, res, server, callback);
+        } finally {
+            failed.remove();
+        }
+    }
+
+    /**
+     * @param server ServerMetaData
+     * @return true if every location the request could be sent to is served by a pipelined connection
+     */
+    public static boolean isPipelined(final ServerMetaData server) {
+        final URI[] locations = getClusterMetaData(server).getLocations();
+        if (locations != null) {
+            for (final URI uri : locations) {
+                if (!ConnectionManager.isPipelined(uri)) return false;
+            }
+        }
+
+        for (final URI uri : server.getLocations()) {
+            if (!ConnectionManager.isPipelined(uri)) return false;
+        }
+
+        return true;
+    }
+
     protected Response processRequest(final Request req, final Response res, final ServerMetaData server) throws RemoteException {
         if (server == null) {
             throw new IllegalArgumentException("Server instance cannot be null");
@@ -142,6 +175,13 @@ public class Client {
         OutputStream out = null;
         InputStream in = null;
 
+        final ProtocolSession session = (conn instanceof SocketConnectionFactory.SocketConnection) ? ((SocketConnectionFactory.SocketConnection) conn).getProtocolSession() : new ProtocolSession();
+        ProtocolSession.set(session);
+
+        final ServerStatistics statistics = ServerStatistics.get(conn.getURI());
+        statistics.requestStarted();
+        boolean completed = false;
+
         try {
 
 
@@ -156,81 +196,7 @@ public class Client {
                 throw newIOException("Cannot open output stream to server: ", e);
             }
 
-            /*----------------------------------*/
-            /* Write the protocol magic         */
-            /*----------------------------------*/
-            try {
-
-                PROTOCOL_VERSION.writeExternal(out);
-
-            } catch (IOException e) {
-                throw newIOException("Cannot write the protocol metadata to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Get output streams */
-            /*----------------------------------*/
-            final ObjectOutput objectOut;
-            try {
-
-                objectOut = new ObjectOutputStream(out);
-
-            } catch (IOException e) {
-                throw newIOException("Cannot open object output stream to server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write ServerMetaData */
-            /*----------------------------------*/
-            try {
-
-                server.writeExternal(objectOut);
-
-            } catch (IOException e) {
-                throw newIOException("Cannot write the ServerMetaData to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write ClusterMetaData */
-            /*----------------------------------*/
-            try {
-
-                final ClusterRequest clusterRequest = new ClusterRequest(cluster);
-                objectOut.write(clusterRequest.getRequestType().getCode());
-                clusterRequest.writeExternal(objectOut);
-
-            } catch (Throwable e) {
-                throw newIOException("Cannot write the ClusterMetaData to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write request type */
-            /*----------------------------------*/
-            try {
-
-                objectOut.write(req.getRequestType().getCode());
-
-            } catch (IOException e) {
-                throw newIOException("Cannot write the request type to the server: ", e);
-            }
-
-            /*----------------------------------*/
-            /* Write request */
-            /*----------------------------------*/
-            try {
-
-                req.writeExternal(objectOut);
-                objectOut.flush();
-                out.flush();
-
-            } catch (java.io.NotSerializableException e) {
-
-                throw new IllegalArgumentException("Object is not serializable: " + e.getMessage());
-
-            } catch (IOException e) {
-
-                throw newIOException("Cannot write the request to the server: ", e);
-            }
+            writeRequest(out, req, server, cluster);
 
             /*----------------------------------*/
             /* Get input streams               */
@@ -244,92 +210,12 @@ public class Client {
                 throw newIOException("Cannot open input stream to server: ", e);
             }
 
-            ProtocolMetaData protocolMetaData = null;
-            try {
-
-                protocolMetaData = new ProtocolMetaData();
-                protocolMetaData.readExternal(in);
-
-            } catch (EOFException e) {
-
-                throw newIOException("Prematurely reached the end of the stream.  " + protocolMetaData.getSpec(), e);
-
-            } catch (IOException e) {
-
-                throw newIOException("Cannot deternmine server protocol version: Received " + protocolMetaData.getSpec(), e);
-            }
-
-            final ObjectInput objectIn;
-            try {
-
-                objectIn = new EjbObjectInputStream(in);
-
-            } catch (IOException e) {
-                throw newIOException("Cannot open object input stream to server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
-            }
-
-            /*----------------------------------*/
-            /* Read response */
-            /*----------------------------------*/
-            try {
-                final ClusterResponse clusterResponse = new ClusterResponse();
-                clusterResponse.readExternal(objectIn);
-                switch (clusterResponse.getResponseCode()) {
-                    case UPDATE: {
-                        setClusterMetaData(server, clusterResponse.getUpdatedMetaData());
-                    }
-                    break;
-                    case FAILURE: {
-                        throw clusterResponse.getFailure();
-                    }
-                }
-            } catch (ClassNotFoundException e) {
-                throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
-
-            } catch (IOException e) {
-                throw newIOException("Cannot read the response from the server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
-
-            } catch (Throwable e) {
-                throw new RemoteException("Error reading response from server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
-            }
-
-            /*----------------------------------*/
-            /* Read response */
-            /*----------------------------------*/
-            try {
-
-                res.readExternal(objectIn);
-            } catch (ClassNotFoundException e) {
-                throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
-
-            } catch (IOException e) {
-                throw newIOException("Cannot read the response from the server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
+            readResponse(in, res, server, session);
 
-            } catch (Throwable e) {
-                throw new RemoteException("Error reading response from server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
-            }
-
-            if (retryConditions.size() > 0) {
-                if (res instanceof EJBResponse) {
-                    final EJBResponse ejbResponse = (EJBResponse) res;
-                    if (ejbResponse.getResult() instanceof ThrowableArtifact) {
-                        final ThrowableArtifact artifact = (ThrowableArtifact) ejbResponse.getResult();
-                        //noinspection ThrowableResultOfMethodCallIgnored
-                        if (retryConditions.contains(artifact.getThrowable().getClass())) {
+            statistics.requestSucceeded(System.nanoTime() - start);
+            completed = true;
 
-                            throw new RetryException(res);
-
-//                            if (? < maxConditionRetry) {
-//                                throw new RetryException(res);
-//                            } else {
-//                                if (FINER) {
-//                                    logger.log(Level.FINER, "Giving up on " + artifact.getThrowable().getClass().getName().toString());
-//                                }
-//                            }
-                        }
-                    }
-                }
-            }
+            checkRetryConditions(res);
 
             if (FINEST) {
                 final long time = System.nanoTime() - start;
@@ -340,6 +226,11 @@ public class Client {
         } catch (RemoteException e) {
             throw e;
         } catch (IOException e) {
+            if (!completed) {
+                statistics.requestFailed();
+                completed = true;
+            }
+
             final URI uri = conn.getURI();
             final Set<URI> failed = getFailed();
 
@@ -372,6 +263,13 @@ public class Client {
 
         } finally {
 
+            if (!completed) {
+                statistics.requestAborted();
+            }
+
+            session.rollback();
+            ProtocolSession.set(null);
+
             if (null != out) {
                 try {
                     out.close();
@@ -400,6 +298,345 @@ public class Client {
         return res;
     }
 
+    /**
+     * Sends the request without waiting for the response.  The response is
+     * read by the thread reading the responses of the pipelined connection
+     * the request went through and handed to the callback from there.
+     * <p/>
+     * Only the requests of a pipeline can be left in flight, when the
+     * connection that was handed out is not pipelined it is discarded
+     * and the callback is told to retry.
+     */
+    protected void processRequest(final Request req, final Response res, final ServerMetaData server, final Callback callback) throws RemoteException {
+        if (server == null) {
+            throw new IllegalArgumentException("Server instance cannot be null");
+        }
+
+        final long start = System.nanoTime();
+
+        final ClusterMetaData cluster = getClusterMetaData(server);
+
+        final Connection conn;
+        try {
+            conn = ConnectionManager.getConnection(cluster, server, req);
+        } catch (IOException e) {
+            throw new RemoteException("Unable to connect", e);
+        }
+
+        if (!(conn instanceof SocketConnectionFactory.Pipeline.PipelinedRequest)) {
+            conn.discard();
+            callback.failed(new IOException("Connection to server '" + conn.getURI() + "' is not pipelined"), true);
+            return;
+        }
+
+        final SocketConnectionFactory.Pipeline.PipelinedRequest request = (SocketConnectionFactory.Pipeline.PipelinedRequest) conn;
+        final ProtocolSession session = new ProtocolSession();
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+
+        final ServerStatistics statistics = ServerStatistics.get(conn.getURI());
+        statistics.requestStarted();
+
+        ProtocolSession.set(session);
+        try {
+
+            writeRequest(conn.getOutputStream(), req, server, cluster);
+
+            request.send(new Runnable() {
+                @Override
+                public void run() {
+                    readResponse(conn, req, res, server, session, loader, statistics, start, callback);
+                }
+            });
+
+        } catch (IOException e) {
+            statistics.requestFailed();
+
+            Client.fireEvent(new RequestFailed(conn.getURI(), req, e));
+            conn.discard();
+
+            callback.failed(e, e instanceof RetryException || getRetry());
+
+        } catch (Throwable error) {
+            statistics.requestAborted();
+
+            try {
+                conn.close();
+            } catch (Throwable t) {
+                //Ignore
+            }
+
+            throw new RemoteException("Error while communicating with server: ", error);
+
+        } finally {
+            // once sent the session belongs to the thread reading the response
+            ProtocolSession.set(null);
+        }
+    }
+
+    /**
+     * Called by the thread reading the pipelined connection once the
+     * response of an asynchronous request is in, or by the timer that
+     * expired the request
+     */
+    private void readResponse(final Connection conn, final Request req, final Response res, final ServerMetaData server, final ProtocolSession session, final ClassLoader loader,
+                              final ServerStatistics statistics, final long start, final Callback callback) {
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader oldLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        ProtocolSession.set(session);
+
+        boolean completed = false;
+        try {
+
+            readResponse(conn.getInputStream(), res, server, session);
+
+            statistics.requestSucceeded(System.nanoTime() - start);
+            completed = true;
+
+            checkRetryConditions(res);
+
+            if (FINEST) {
+                final long time = System.nanoTime() - start;
+                final String message = String.format("Asynchronous invocation %sns - %s - Request(%s) - Response(%s)", time, conn.getURI(), req, res);
+                logger.log(Level.FINEST, message);
+            }
+
+            callback.completed(res);
+
+        } catch (RemoteException e) {
+            callback.failed(e, false);
+
+        } catch (IOException e) {
+            if (!completed) {
+                statistics.requestFailed();
+                completed = true;
+            }
+
+            Client.fireEvent(new RequestFailed(conn.getURI(), req, e));
+            conn.discard();
+
+            callback.failed(e, e instanceof RetryException || getRetry());
+
+        } catch (Throwable error) {
+            callback.failed(error, false);
+
+        } finally {
+
+            if (!completed) {
+                statistics.requestAborted();
+            }
+
+            session.rollback();
+            ProtocolSession.set(null);
+            thread.setContextClassLoader(oldLoader);
+
+            try {
+                conn.close();
+            } catch (Throwable e) {
+                //Ignore
+            }
+        }
+    }
+
+    private void writeRequest(final OutputStream out, final Request req, final ServerMetaData server, final ClusterMetaData cluster) throws IOException {
+        /*----------------------------------*/
+        /* Write the protocol magic         */
+        /*----------------------------------*/
+        try {
+
+            PROTOCOL_VERSION.writeExternal(out);
+
+        } catch (IOException e) {
+            throw newIOException("Cannot write the protocol metadata to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Get output streams */
+        /*----------------------------------*/
+        final ObjectOutput objectOut;
+        try {
+
+            objectOut = new ObjectOutputStream(out);
+
+        } catch (IOException e) {
+            throw newIOException("Cannot open object output stream to server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write ServerMetaData */
+        /*----------------------------------*/
+        try {
+
+            server.writeExternal(objectOut);
+
+        } catch (IOException e) {
+            throw newIOException("Cannot write the ServerMetaData to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write ClusterMetaData */
+        /*----------------------------------*/
+        try {
+
+            final ClusterRequest clusterRequest = new ClusterRequest(cluster);
+            objectOut.write(clusterRequest.getRequestType().getCode());
+            clusterRequest.writeExternal(objectOut);
+
+        } catch (Throwable e) {
+            throw newIOException("Cannot write the ClusterMetaData to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write request type */
+        /*----------------------------------*/
+        try {
+
+            objectOut.write(req.getRequestType().getCode());
+
+        } catch (IOException e) {
+            throw newIOException("Cannot write the request type to the server: ", e);
+        }
+
+        /*----------------------------------*/
+        /* Write request */
+        /*----------------------------------*/
+        try {
+
+            req.writeExternal(objectOut);
+            objectOut.flush();
+            out.flush();
+
+        } catch (java.io.NotSerializableException e) {
+
+            throw new IllegalArgumentException("Object is not serializable: " + e.getMessage());
+
+        } catch (IOException e) {
+
+            throw newIOException("Cannot write the request to the server: ", e);
+        }
+    }
+
+    private void readResponse(final InputStream in, final Response res, final ServerMetaData server, final ProtocolSession session) throws IOException {
+        ProtocolMetaData protocolMetaData = null;
+        try {
+
+            protocolMetaData = new ProtocolMetaData();
+            protocolMetaData.readExternal(in);
+            session.setServerProtocol(protocolMetaData);
+
+        } catch (EOFException e) {
+
+            throw newIOException("Prematurely reached the end of the stream.  " + protocolMetaData.getSpec(), e);
+
+        } catch (IOException e) {
+
+            throw newIOException("Cannot deternmine server protocol version: Received " + protocolMetaData.getSpec(), e);
+        }
+
+        final ObjectInput objectIn;
+        try {
+
+            objectIn = new EjbObjectInputStream(in);
+
+        } catch (IOException e) {
+            throw newIOException("Cannot open object input stream to server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
+        }
+
+        /*----------------------------------*/
+        /* Read response */
+        /*----------------------------------*/
+        try {
+            final ClusterResponse clusterResponse = new ClusterResponse();
+            clusterResponse.setProtocol(protocolMetaData);
+            clusterResponse.readExternal(objectIn);
+            if (clusterResponse.getDeploymentVersion() != -1) {
+                getContext(server).setDeploymentVersion(clusterResponse.getDeploymentVersion());
+            }
+            switch (clusterResponse.getResponseCode()) {
+                case UPDATE: {
+                    setClusterMetaData(server, clusterResponse.getUpdatedMetaData());
+                }
+                break;
+                case FAILURE: {
+                    throw clusterResponse.getFailure();
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
+
+        } catch (IOException e) {
+            throw newIOException("Cannot read the response from the server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
+
+        } catch (Throwable e) {
+            throw new RemoteException("Error reading response from server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
+        }
+
+        /*----------------------------------*/
+        /* Read response */
+        /*----------------------------------*/
+        try {
+
+            res.readExternal(objectIn);
+
+            if (res instanceof EJBResponse && ((EJBResponse) res).getResponseCode() == ResponseCodes.EJB_ERROR) {
+                session.rollback();
+            } else {
+                session.commit();
+            }
+        } catch (ClassNotFoundException e) {
+            throw new RemoteException("Cannot read the response from the server.  The class for an object being returned is not located in this system:", e);
+
+        } catch (IOException e) {
+            throw newIOException("Cannot read the response from the server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
+
+        } catch (Throwable e) {
+            throw new RemoteException("Error reading response from server (" + protocolMetaData.getSpec() + ") : " + e.getMessage(), e);
+        }
+    }
+
+    private void checkRetryConditions(final Response res) throws RetryException {
+        if (retryConditions.size() > 0) {
+            if (res instanceof EJBResponse) {
+                final EJBResponse ejbResponse = (EJBResponse) res;
+                if (ejbResponse.getResult() instanceof ThrowableArtifact) {
+                    final ThrowableArtifact artifact = (ThrowableArtifact) ejbResponse.getResult();
+                    //noinspection ThrowableResultOfMethodCallIgnored
+                    if (retryConditions.contains(artifact.getThrowable().getClass())) {
+
+                        throw new RetryException(res);
+
+//                            if (? < maxConditionRetry) {
+//                                throw new RetryException(res);
+//                            } else {
+//                                if (FINER) {
+//                                    logger.log(Level.FINER, "Giving up on " + artifact.getThrowable().getClass().getName().toString());
+//                                }
+//                            }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Notified of the outcome of a request sent with
+     * {@link #request(Request, Response, ServerMetaData, Callback)}
+     */
+    public static interface Callback {
+
+        /**
+         * @param res the response given with the request, read
+         */
+        void completed(Response res);
+
+        /**
+         * @param e     the failure
+         * @param retry true if the request can be sent again, the connection it went through is gone
+         */
+        void failed(Throwable e, boolean retry);
+    }
+
     public static Set<URI> getFailed() {
         Set<URI> set = failed.get();
         if (set == null) {
@@ -440,6 +677,8 @@ public class Client {
         private final ServerMetaData serverMetaData;
         private ClusterMetaData clusterMetaData;
         private Options options;
+        private volatile long deploymentVersion = -1;
+        private LookupCache lookupCache;
 
         private Context(final ServerMetaData serverMetaData) {
             this.serverMetaData = serverMetaData;
@@ -479,8 +718,54 @@ public class Client {
 
             for (final URI uri : diff(found, existing)) {
                 fireEvent(new ServerRemoved(clusterMetaDataUpdated, uri));
+
+                if (!isListed(uri)) ServerStatistics.remove(uri);
+            }
+
+        }
+
+        /**
+         * @return the deployment version last sent by the server
+         * or -1 if the server doesn't send one
+         */
+        public long getDeploymentVersion() {
+            return deploymentVersion;
+        }
+
+        public void setDeploymentVersion(final long version) {
+            if (version == deploymentVersion) return;
+
+            deploymentVersion = version;
+
+            final LookupCache cache = getLookupCache();
+            if (cache != null) cache.clear();
+        }
+
+        public synchronized LookupCache getLookupCache() {
+            return lookupCache;
+        }
+
+        /**
+         * The lookup cache of this server, created with the given
+         * bounds the first time it is asked for.
+         */
+        public synchronized LookupCache getLookupCache(final int size, final long timeToLive) {
+            if (lookupCache == null) {
+                lookupCache = new LookupCache(this, size, timeToLive);
             }
+            return lookupCache;
+        }
 
+        /**
+         * @return true if the cluster of any server still lists the location
+         */
+        private static boolean isListed(final URI uri) {
+            for (final Context context : contexts.values()) {
+                for (final URI location : context.getClusterMetaData().getLocations()) {
+                    if (uri.equals(location)) return true;
+                }
+            }
+            return false;
         }
 
         private HashSet<URI> locations(final ClusterMetaData updated) {
@@ -24,6 +24,13 @@ import java.io.ObjectOutput;
  * @version $Rev$ $Date$
  */
 public class ClusterResponse implements Response {
+    /**
+     * Starting with OEJP/4.1 the response carries the deployment version
+     * of the server, it changes every time an application is deployed or
+     * undeployed so clients know when what they looked up may be stale.
+     */
+    public static final ProtocolMetaData DEPLOYMENT_VERSION_PROTOCOL = new ProtocolMetaData("4.1");
+
     public static enum Code {
         CURRENT, UPDATE, FAILURE;
     }
@@ -31,6 +38,8 @@ public class ClusterResponse implements Response {
     private Code responseCode;
     private ClusterMetaData updatedMetaData;
     private Throwable failure;
+    private long deploymentVersion = -1;
+    private ProtocolMetaData protocol;
 
     public ClusterResponse(Code responseCode) {
         this.responseCode = responseCode;
@@ -66,6 +75,29 @@ public class ClusterResponse implements Response {
     }
 
 
+    /**
+     * @return the deployment version of the server or -1 if it didn't send one
+     */
+    public long getDeploymentVersion() {
+        return deploymentVersion;
+    }
+
+    public void setDeploymentVersion(long deploymentVersion) {
+        this.deploymentVersion = deploymentVersion;
+    }
+
+    /**
+     * @param protocol the version spoken by the other end of the connection,
+     * the deployment version is only exchanged if it knows about it
+     */
+    public void setProtocol(ProtocolMetaData protocol) {
+        this.protocol = protocol;
+    }
+
+    private boolean hasDeploymentVersion() {
+        return protocol != null && protocol.isAtLeast(DEPLOYMENT_VERSION_PROTOCOL);
+    }
+
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         byte i = in.readByte();
         responseCode = Code.values()[i];
@@ -80,6 +112,10 @@ public class ClusterResponse implements Response {
                 failure = (IOException) in.readObject();
             }
         }
+
+        if (hasDeploymentVersion()) {
+            deploymentVersion = in.readLong();
+        }
     }
 
     public void writeExternal(ObjectOutput out) throws IOException {
@@ -94,5 +130,9 @@ public class ClusterResponse implements Response {
                 out.writeObject(failure);
             }
         }
+
+        if (hasDeploymentVersion()) {
+            out.writeLong(deploymentVersion);
+        }
     }
 }
@@ -55,6 +55,9 @@ public class ConnectionManager {
         registerStrategy("random", new RandomConnectionStrategy());
         registerStrategy("roundrobin", new RoundRobinConnectionStrategy());
         registerStrategy("round-robin", strategies.get("roundrobin"));
+        registerStrategy("least-outstanding", new LeastOutstandingConnectionStrategy());
+        registerStrategy("latency", new LatencyConnectionStrategy());
+        registerStrategy("power-of-two", new PowerOfTwoConnectionStrategy());
         registerStrategy("default", strategies.get("sticky"));
     }
 
@@ -112,6 +115,15 @@ public class ConnectionManager {
         }
     }
 
+    /**
+     * @param uri URI
+     * @return true if requests sent to this uri can be left in flight, see {@link SocketConnectionFactory#isPipelined(URI)}
+     */
+    public static boolean isPipelined(final URI uri) {
+        final ConnectionFactory factory = factories.get(uri.getScheme());
+        return factory instanceof SocketConnectionFactory && ((SocketConnectionFactory) factory).isPipelined(uri);
+    }
+
     public static void registerFactory(final String scheme, final ConnectionFactory factory) {
         factories.register(scheme, factory);
         Client.fireEvent(new ConnectionFactoryAdded(scheme, factory));
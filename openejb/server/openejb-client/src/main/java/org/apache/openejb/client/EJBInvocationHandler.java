@@ -154,6 +154,14 @@ public abstract class EJBInvocationHandler implements InvocationHandler, Seriali
         return res;
     }
 
+    protected void request(final EJBRequest req, final EJBResponse res, final Client.Callback callback) throws RemoteException {
+        req.setClientIdentity(getClientIdentity());
+
+        req.setServerHash(server.buildHash());
+
+        Client.request(req, res, server, callback);
+    }
+
     protected Object getClientIdentity() {
         if (client != null) {
             final Object identity = client.getClientIdentity();
@@ -30,6 +30,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
@@ -324,6 +325,12 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
                 final String requestId = UUID.randomUUID().toString();
                 final EJBResponse response = new EJBResponse();
                 final AsynchronousCall asynchronousCall = new AsynchronousCall(method, args, proxy, requestId, response);
+                if (Client.isPipelined(server)) {
+                    // no client thread waits for the response, the pipeline reader completes the future
+                    final PipelinedCall pipelinedCall = new PipelinedCall(asynchronousCall, response);
+                    pipelinedCall.send(method, args, requestId);
+                    return new FutureAdapter(pipelinedCall, response, requestId);
+                }
                 return new FutureAdapter(executorService.submit(asynchronousCall), response, requestId);
             } catch (RejectedExecutionException e) {
                 throw new EJBException("failed to allocate internal resource to execute the target task", e);
@@ -398,6 +405,67 @@ public abstract class EJBObjectHandler extends EJBInvocationHandler {
         }
     }
 
+    /**
+     * An asynchronous invocation sent on a pipelined connection, completed by
+     * the thread reading the responses of that connection.  It falls back on
+     * the blocking call, run by the executor, when the request has to be
+     * sent again.
+     */
+    private class PipelinedCall extends FutureTask<Object> implements Client.Callback {
+
+        private final EJBResponse response;
+
+        public PipelinedCall(final AsynchronousCall call, final EJBResponse response) {
+            super(call);
+            this.response = response;
+        }
+
+        public void send(final Method method, final Object[] args, final String requestId) {
+            final EJBRequest req = new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, args, primaryKey);
+            req.getBody().setRequestId(requestId);
+            try {
+                request(req, response, this);
+            } catch (RemoteException e) {
+                // reported through the future, as the blocking call does
+                setException(e);
+            }
+        }
+
+        @Override
+        public void completed(final Response res) {
+            if (null != response.getServer()) {
+                server.merge(response.getServer());
+            }
+
+            try {
+                set(_handleBusinessMethodResponse(response));
+            } catch (Exception e) {
+                setException(e);
+            } catch (Throwable error) {
+                setException(new SystemException(error));
+            }
+        }
+
+        @Override
+        public void failed(final Throwable e, final boolean retry) {
+            if (retry) {
+                try {
+                    executorService.execute(this);
+                    return;
+                } catch (RejectedExecutionException ree) {
+                    setException(new EJBException("failed to allocate internal resource to execute the target task", ree));
+                    return;
+                }
+            }
+
+            if (e instanceof RemoteException) {
+                setException(e);
+            } else {
+                setException(new RemoteException("Error while communicating with server: ", e));
+            }
+        }
+    }
+
     private class FutureAdapter<T> implements Future<T> {
 
         private Future<T> target;
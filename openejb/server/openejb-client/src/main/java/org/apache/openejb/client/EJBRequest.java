@@ -217,6 +217,11 @@ public class EJBRequest implements ClusterableRequest {
 
             this.version = in.readByte();
 
+            if (this.version >= EJBResponse.COMPACT_VERSION) {
+                readCompact(in);
+                return;
+            }
+
             requestId = null;
             ClassNotFoundException result = null;
             primaryKey = null;
@@ -253,8 +258,16 @@ public class EJBRequest implements ClusterableRequest {
         @Override
         public void writeExternal(final ObjectOutput out) throws IOException {
 
+            final ProtocolSession session = ProtocolSession.get();
+            this.version = (session != null && session.isCompact()) ? EJBResponse.COMPACT_VERSION : EJBResponse.VERSION;
+
             out.writeByte(this.version);
 
+            if (this.version >= EJBResponse.COMPACT_VERSION) {
+                writeCompact(out, session);
+                return;
+            }
+
             out.writeObject(requestId);
 
             out.writeObject(primaryKey);
@@ -320,13 +333,7 @@ public class EJBRequest implements ClusterableRequest {
                     }
                 } else {
                     if (obj instanceof PortableRemoteObject && obj instanceof Remote) {
-                        final Tie tie = javax.rmi.CORBA.Util.getTie((Remote) obj);
-                        if (tie == null) {
-                            throw new IOException("Unable to serialize PortableRemoteObject; object has not been exported: " + obj);
-                        }
-                        final ORB orb = getORB();
-                        tie.orb(orb);
-                        obj = PortableRemoteObject.toStub((Remote) obj);
+                        obj = toStub((Remote) obj);
                     }
                     out.write(L);
                     out.writeObject(type);
@@ -335,6 +342,109 @@ public class EJBRequest implements ClusterableRequest {
             }
         }
 
+        /**
+         * OEJP/4.0 encoding.  The method is a per connection number once
+         * known to the server, the parameter types are implied by the method
+         * and common values are written without serialization.
+         */
+        private void writeCompact(final ObjectOutput out, final ProtocolSession session) throws IOException {
+            final ValueCodec values = new ValueCodec();
+            values.write(out, requestId);
+            values.write(out, primaryKey);
+
+            session.writeMethod(out, interfaceClass, methodInstance);
+
+            for (int i = 0; i < methodParamTypes.length; i++) {
+                final Class type = methodParamTypes[i];
+                Object obj = methodParameters[i];
+
+                if (type.isPrimitive()) {
+                    writePrimitive(out, type, obj);
+                } else {
+                    if (obj instanceof PortableRemoteObject && obj instanceof Remote) {
+                        obj = toStub((Remote) obj);
+                    }
+                    values.write(out, obj);
+                }
+            }
+        }
+
+        private void readCompact(final ObjectInput in) throws IOException, ClassNotFoundException {
+            final ProtocolSession session = ProtocolSession.get();
+            if (session == null) {
+                throw new IOException("No protocol session for an OEJP/4.0 request");
+            }
+
+            final ValueCodec values = new ValueCodec();
+            requestId = (String) values.read(in);
+            primaryKey = values.read(in);
+
+            final ProtocolSession.Definition definition = session.readMethod(in);
+            interfaceClass = definition.getInterfaceClass();
+            methodName = definition.getMethodName();
+            methodParamTypes = definition.getParameterTypes();
+            methodInstance = definition.getMethod();
+
+            final Object[] args = methodParamTypes.length == 0 ? noArgsO : new Object[methodParamTypes.length];
+            for (int i = 0; i < args.length; i++) {
+                final Class type = methodParamTypes[i];
+
+                if (type.isPrimitive()) {
+                    args[i] = readPrimitive(in, type);
+                } else {
+                    final Object obj = values.read(in);
+                    if (obj instanceof Stub) {
+                        ((Stub) obj).connect(getORB());
+                    }
+                    args[i] = obj;
+                }
+            }
+            methodParameters = args;
+        }
+
+        private static void writePrimitive(final ObjectOutput out, final Class type, final Object obj) throws IOException {
+            if (type == Integer.TYPE) {
+                out.writeInt((Integer) obj);
+            } else if (type == Long.TYPE) {
+                out.writeLong((Long) obj);
+            } else if (type == Boolean.TYPE) {
+                out.writeBoolean((Boolean) obj);
+            } else if (type == Double.TYPE) {
+                out.writeDouble((Double) obj);
+            } else if (type == Float.TYPE) {
+                out.writeFloat((Float) obj);
+            } else if (type == Short.TYPE) {
+                out.writeShort((Short) obj);
+            } else if (type == Byte.TYPE) {
+                out.writeByte((Byte) obj);
+            } else if (type == Character.TYPE) {
+                out.writeChar((Character) obj);
+            } else {
+                throw new IOException("Unkown primitive type: " + type);
+            }
+        }
+
+        private static Object readPrimitive(final ObjectInput in, final Class type) throws IOException {
+            if (type == Integer.TYPE) return in.readInt();
+            if (type == Long.TYPE) return in.readLong();
+            if (type == Boolean.TYPE) return in.readBoolean();
+            if (type == Double.TYPE) return in.readDouble();
+            if (type == Float.TYPE) return in.readFloat();
+            if (type == Short.TYPE) return in.readShort();
+            if (type == Byte.TYPE) return in.readByte();
+            if (type == Character.TYPE) return in.readChar();
+            throw new IOException("Unkown primitive type: " + type);
+        }
+
+        private Object toStub(final Remote obj) throws IOException {
+            final Tie tie = javax.rmi.CORBA.Util.getTie(obj);
+            if (tie == null) {
+                throw new IOException("Unable to serialize PortableRemoteObject; object has not been exported: " + obj);
+            }
+            tie.orb(getORB());
+            return PortableRemoteObject.toStub(obj);
+        }
+
         static final Class[] noArgsC = new Class[0];
         static final Object[] noArgsO = new Object[0];
 
@@ -25,8 +25,10 @@ public class EJBResponse implements ClusterableResponse {
     /**
      * 1. Initial
      * 2. Append times.
+     * 3. Compact result encoding, only used once OEJP/4.0 was negotiated
      */
     public static final byte VERSION = 2;
+    public static final byte COMPACT_VERSION = 3;
 
     private transient byte version = VERSION;
     private transient int responseCode = -1;
@@ -125,9 +127,9 @@ public class EJBResponse implements ClusterableResponse {
 
         responseCode = in.readByte();
 
-        result = in.readObject();
+        result = (version >= COMPACT_VERSION) ? new ValueCodec().read(in) : in.readObject();
 
-        if (version == 2) {
+        if (version >= 2) {
 
             final byte size = in.readByte();
 
@@ -163,11 +165,15 @@ public class EJBResponse implements ClusterableResponse {
         }
 
         start(Time.SERIALIZATION);
-        out.writeObject(result);
+        if (this.version >= COMPACT_VERSION) {
+            new ValueCodec().write(out, result);
+        } else {
+            out.writeObject(result);
+        }
         stop(Time.SERIALIZATION);
         stop(Time.TOTAL);
 
-        if (this.version == 2) {
+        if (this.version >= 2) {
 
             out.writeByte(timesLength);
 
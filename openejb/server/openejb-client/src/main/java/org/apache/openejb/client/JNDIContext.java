@@ -42,12 +42,31 @@ public class JNDIContext implements InitialContextFactory, Context {
 
     public static final String DEFAULT_PROVIDER_URL = "ejbd://localhost:4201";
 
+    /**
+     * Set to true to keep the EJB proxies, data sources and contexts looked
+     * up so the next lookup of the same name doesn't go to the server.
+     */
+    public static final String LOOKUP_CACHE = "openejb.client.jndi.cache";
+
+    /**
+     * Maximum number of names cached per server, 1000 by default.
+     */
+    public static final String LOOKUP_CACHE_SIZE = "openejb.client.jndi.cache.size";
+
+    /**
+     * Milliseconds a cached lookup is kept.  By default entries live until
+     * the server reports an application was deployed or undeployed, which
+     * servers older than OEJP/4.1 never do.
+     */
+    public static final String LOOKUP_CACHE_TTL = "openejb.client.jndi.cache.ttl";
+
     private String tail = "/";
     private ServerMetaData server;
     private ClientMetaData client;
     private Hashtable env;
     private String moduleId;
     private ClientInstance clientIdentity;
+    private LookupCache cache;
 
     public JNDIContext() {
     }
@@ -62,6 +81,7 @@ public class JNDIContext implements InitialContextFactory, Context {
         this.moduleId = that.moduleId;
         this.env = (Hashtable) that.env.clone();
         this.clientIdentity = that.clientIdentity;
+        this.cache = that.cache;
     }
 
     private JNDIResponse request(final JNDIRequest req) throws Exception {
@@ -117,6 +137,12 @@ public class JNDIContext implements InitialContextFactory, Context {
             client = new ClientMetaData();
         }
 
+        if (context.getOptions().get(LOOKUP_CACHE, false)) {
+            final int size = context.getOptions().get(LOOKUP_CACHE_SIZE, 1000);
+            final long timeToLive = context.getOptions().get(LOOKUP_CACHE_TTL, 0L);
+            cache = context.getLookupCache(size, timeToLive);
+        }
+
         return this;
     }
 
@@ -219,6 +245,20 @@ public class JNDIContext implements InitialContextFactory, Context {
             return getDefaultOrb();
         }
 
+        final Object identity = (client != null) ? client.getClientIdentity() : null;
+        long version = -1;
+        if (cache != null) {
+            final Object cached = cache.get(moduleId, name, identity);
+            if (cached instanceof SubContext) {
+                final JNDIContext subCtx = new JNDIContext(this);
+                subCtx.tail = ((SubContext) cached).tail;
+                return subCtx;
+            } else if (cached != null) {
+                return cached;
+            }
+            version = cache.getDeploymentVersion();
+        }
+
         final JNDIRequest req = new JNDIRequest();
         req.setRequestMethod(RequestMethodCode.JNDI_LOOKUP);
         req.setRequestString(name);
@@ -237,10 +277,14 @@ public class JNDIContext implements InitialContextFactory, Context {
 
         switch (res.getResponseCode()) {
             case ResponseCodes.JNDI_EJBHOME:
-                return createEJBHomeProxy((EJBMetaDataImpl) res.getResult());
+                return cache(name, identity, createEJBHomeProxy((EJBMetaDataImpl) res.getResult()), version);
 
             case ResponseCodes.JNDI_BUSINESS_OBJECT:
-                return createBusinessObject(res.getResult());
+                // looking up a stateful bean creates a new session each time
+                if (((EJBMetaDataImpl) res.getResult()).isStatefulSession()) {
+                    return createBusinessObject(res.getResult());
+                }
+                return cache(name, identity, createBusinessObject(res.getResult()), version);
 
             case ResponseCodes.JNDI_OK:
                 return res.getResult();
@@ -250,13 +294,12 @@ public class JNDIContext implements InitialContextFactory, Context {
 
             case ResponseCodes.JNDI_CONTEXT:
                 final JNDIContext subCtx = new JNDIContext(this);
-                if (!name.endsWith("/"))
-                    name += '/';
-                subCtx.tail = name;
+                subCtx.tail = name.endsWith("/") ? name : name + '/';
+                cache(name, identity, new SubContext(subCtx.tail), version);
                 return subCtx;
 
             case ResponseCodes.JNDI_DATA_SOURCE:
-                return createDataSource((DataSourceMetaData) res.getResult());
+                return cache(name, identity, createDataSource((DataSourceMetaData) res.getResult()), version);
 
             case ResponseCodes.JNDI_WEBSERVICE:
                 return createWebservice((WsMetaData) res.getResult());
@@ -298,6 +341,21 @@ public class JNDIContext implements InitialContextFactory, Context {
         }
     }
 
+    private Object cache(final String name, final Object identity, final Object value, final long version) {
+        if (cache != null) {
+            cache.put(moduleId, name, identity, value, version);
+        }
+        return value;
+    }
+
+    private static class SubContext {
+        private final String tail;
+
+        private SubContext(final String tail) {
+            this.tail = tail;
+        }
+    }
+
     private Object parseEntry(final String name, String value) throws NamingException {
         try {
             URI uri = new URI(value);
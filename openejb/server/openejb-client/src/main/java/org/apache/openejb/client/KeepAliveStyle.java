@@ -17,8 +17,15 @@
 package org.apache.openejb.client;
 
 /**
+ * The byte a client sends before each request on a kept alive connection.
+ * <p/>
+ * PIPELINE is only understood by the NIO ejbd front end.  Each request is
+ * then framed with a request id and a length so several requests can be in
+ * flight on the same connection, the responses coming back framed the same
+ * way and in any order.
+ *
  * @version $Rev$ $Date$
  */
 public enum KeepAliveStyle {
-    PING, PING_PONG, PING_PING;
+    PING, PING_PONG, PING_PING, PIPELINE;
 }
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.FailoverSelection;
+import org.apache.openejb.client.event.LatencyFailoverSelection;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Picks the server at random, weighted by the inverse of its cost: the
+ * moving average of its latency times the requests in flight plus one.
+ * Servers without a measured latency are tried first. The failover order
+ * is the remaining servers by increasing cost.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LatencyConnectionStrategy extends AbstractBalancingConnectionStrategy {
+    private final Random random;
+
+    public LatencyConnectionStrategy() {
+        this(new Random());
+    }
+
+    LatencyConnectionStrategy(final Random random) {
+        this.random = random;
+    }
+
+    @Override
+    protected FailoverSelection createFailureEvent(Set<URI> remaining, Set<URI> failed, URI uri) {
+        return new LatencyFailoverSelection(remaining, failed, uri);
+    }
+
+    @Override
+    protected void order(final URI[] locations, final ServerStatistics[] statistics, final int offset, final int length) {
+        if (length < 2) return;
+
+        final double[] costs = new double[length];
+        double total = 0;
+        int unmeasured = -1;
+        for (int i = 0; i < length; i++) {
+            final ServerStatistics stats = statistics[offset + i];
+            final double latency = stats.getLatency();
+            if (latency < 0) {
+                if (unmeasured < 0) unmeasured = i;
+                costs[i] = 0;
+            } else {
+                costs[i] = Math.max(latency, 1) * (stats.getOutstanding() + 1);
+                total += 1 / costs[i];
+            }
+        }
+
+        int selected = unmeasured;
+        if (selected < 0) {
+            double point = random.nextDouble() * total;
+            selected = length - 1;
+            for (int i = 0; i < length; i++) {
+                point -= 1 / costs[i];
+                if (point < 0) {
+                    selected = i;
+                    break;
+                }
+            }
+        }
+
+        swapCost(costs, 0, selected);
+        swap(locations, statistics, offset, offset + selected);
+
+        for (int i = 2; i < length; i++) {
+            for (int j = i; j > 1 && costs[j - 1] > costs[j]; j--) {
+                swapCost(costs, j, j - 1);
+                swap(locations, statistics, offset + j, offset + j - 1);
+            }
+        }
+    }
+
+    private static void swapCost(final double[] costs, final int i, final int j) {
+        final double cost = costs[i];
+        costs[i] = costs[j];
+        costs[j] = cost;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.FailoverSelection;
+import org.apache.openejb.client.event.LeastOutstandingFailoverSelection;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the request to the server with the fewest requests in flight from
+ * this client, servers with the same load take turns.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LeastOutstandingConnectionStrategy extends AbstractBalancingConnectionStrategy {
+    private final AtomicInteger turn = new AtomicInteger();
+
+    @Override
+    protected FailoverSelection createFailureEvent(Set<URI> remaining, Set<URI> failed, URI uri) {
+        return new LeastOutstandingFailoverSelection(remaining, failed, uri);
+    }
+
+    @Override
+    protected void order(final URI[] locations, final ServerStatistics[] statistics, final int offset, final int length) {
+        if (length < 2) return;
+
+        // rotate first so that equal loads don't always pick the same server
+        final int rotation = (turn.getAndIncrement() & Integer.MAX_VALUE) % length;
+        if (rotation > 0) {
+            reverse(locations, statistics, offset, offset + rotation - 1);
+            reverse(locations, statistics, offset + rotation, offset + length - 1);
+            reverse(locations, statistics, offset, offset + length - 1);
+        }
+
+        final int[] outstanding = new int[length];
+        for (int i = 0; i < length; i++) {
+            outstanding[i] = statistics[offset + i].getOutstanding();
+        }
+
+        // a stable insertion sort, clusters are small
+        for (int i = 1; i < length; i++) {
+            for (int j = i; j > 0 && outstanding[j - 1] > outstanding[j]; j--) {
+                final int load = outstanding[j];
+                outstanding[j] = outstanding[j - 1];
+                outstanding[j - 1] = load;
+                swap(locations, statistics, offset + j, offset + j - 1);
+            }
+        }
+    }
+
+    private static void reverse(final URI[] locations, final ServerStatistics[] statistics, int from, int to) {
+        while (from < to) {
+            swap(locations, statistics, from++, to--);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of the JNDI lookups made against one server, so looking up the
+ * same name again doesn't need a round trip.
+ * <p/>
+ * An entry is only returned while the deployment version of the server
+ * is the one it was looked up with, servers speaking OEJP/4.1 or later
+ * send a new version whenever an application is deployed or undeployed.
+ * Entries also expire after the configured time to live and the least
+ * recently used ones are dropped once the cache is full.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LookupCache {
+
+    private final Client.Context context;
+    private final long timeToLive;
+    private final Map<Key, Entry> entries;
+
+    /**
+     * @param size the maximum number of entries
+     * @param timeToLive in milliseconds, entries never expire if zero or less
+     */
+    LookupCache(final Client.Context context, final int size, final long timeToLive) {
+        this.context = context;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    public long getDeploymentVersion() {
+        return context.getDeploymentVersion();
+    }
+
+    public Object get(final String moduleId, final String name, final Object identity) {
+        final Key key = new Key(moduleId, name, identity);
+
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if (entry == null) return null;
+
+            if (entry.version != context.getDeploymentVersion() || entry.expires < System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    /**
+     * @param version the deployment version of the server before the lookup
+     * was made, an entry looked up while it changed is never returned
+     */
+    public void put(final String moduleId, final String name, final Object identity, final Object value, final long version) {
+        final long expires = (timeToLive > 0) ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE;
+        final Entry entry = new Entry(value, version, expires);
+
+        synchronized (entries) {
+            entries.put(new Key(moduleId, name, identity), entry);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long version;
+        private final long expires;
+
+        private Entry(final Object value, final long version, final long expires) {
+            this.value = value;
+            this.version = version;
+            this.expires = expires;
+        }
+    }
+
+    private static class Key {
+        private final String moduleId;
+        private final String name;
+        private final Object identity;
+        private final int hash;
+
+        private Key(final String moduleId, final String name, final Object identity) {
+            this.moduleId = moduleId;
+            this.name = name;
+            this.identity = identity;
+
+            int result = name.hashCode();
+            result = 31 * result + (moduleId != null ? moduleId.hashCode() : 0);
+            result = 31 * result + (identity != null ? identity.hashCode() : 0);
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            final Key key = (Key) o;
+
+            return name.equals(key.name)
+                && (moduleId != null ? moduleId.equals(key.moduleId) : key.moduleId == null)
+                && (identity != null ? identity.equals(key.identity) : key.identity == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
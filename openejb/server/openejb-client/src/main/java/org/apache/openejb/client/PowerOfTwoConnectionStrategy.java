@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.FailoverSelection;
+import org.apache.openejb.client.event.PowerOfTwoFailoverSelection;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Draws two servers at random and sends the request to the less loaded
+ * one, by requests in flight then latency. The other servers follow in
+ * random order.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PowerOfTwoConnectionStrategy extends AbstractBalancingConnectionStrategy {
+    private final Random random = new Random();
+
+    @Override
+    protected FailoverSelection createFailureEvent(Set<URI> remaining, Set<URI> failed, URI uri) {
+        return new PowerOfTwoFailoverSelection(remaining, failed, uri);
+    }
+
+    @Override
+    protected void order(final URI[] locations, final ServerStatistics[] statistics, final int offset, final int length) {
+        if (length < 2) return;
+
+        for (int i = length - 1; i > 0; i--) {
+            swap(locations, statistics, offset + i, offset + random.nextInt(i + 1));
+        }
+
+        if (isLessLoaded(statistics[offset + 1], statistics[offset])) {
+            swap(locations, statistics, offset, offset + 1);
+        }
+    }
+
+    private static boolean isLessLoaded(final ServerStatistics a, final ServerStatistics b) {
+        final int outstanding = a.getOutstanding() - b.getOutstanding();
+        if (outstanding != 0) return outstanding < 0;
+
+        return a.getLatency() < b.getLatency();
+    }
+}
@@ -82,6 +82,13 @@ public class ProtocolMetaData {
         return id + "/" + major + "." + minor;
     }
 
+    /**
+     * @return true if this version is the same or a later one than the given version
+     */
+    public boolean isAtLeast(final ProtocolMetaData version) {
+        return major > version.major || (major == version.major && minor >= version.minor);
+    }
+
     public void writeExternal(final OutputStream out) throws IOException {
         out.write(getSpec().getBytes("UTF-8"));
         out.flush();
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * State shared by both ends of one connection for as long as that
+ * connection lives, typically a keep-alive socket.
+ * <p/>
+ * Starting with OEJP/4.0 the interface and method of an EJBRequest are sent
+ * in full only the first time they are used on a connection.  The client
+ * assigns them a number which both sides remember and which is all that is
+ * sent on subsequent requests.  As the numbers live and die with the
+ * connection, failover, redeploys and server restarts cannot leave stale
+ * numbers behind.
+ * <p/>
+ * The client only switches to the compact OEJP/4.0 encoding once the server
+ * advertised it supports it, so older servers keep working.
+ * <p/>
+ * On the server a number only keeps the names of the classes, the classes
+ * themselves are cached per class loader without keeping the loader alive,
+ * and {@link #forget(ClassLoader)} drops them once their application is
+ * undeployed.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ProtocolSession {
+
+    public static final ProtocolMetaData COMPACT_PROTOCOL = new ProtocolMetaData("4.0");
+
+    private static final ThreadLocal<ProtocolSession> current = new ThreadLocal<ProtocolSession>();
+
+    // the server side sessions, guarded by itself
+    private static final Map<ProtocolSession, Boolean> sessions = new WeakHashMap<ProtocolSession, Boolean>();
+
+    private static final byte DEFINE = 0;
+    private static final byte REFERENCE = 1;
+
+    // client side
+    private final Map<Class, Map<Method, Definition>> definitions = new HashMap<Class, Map<Method, Definition>>();
+    private final List<Definition> pending = new ArrayList<Definition>();
+
+    // server side, guarded by itself
+    private final Map<Integer, Resolution> resolved = new HashMap<Integer, Resolution>();
+
+    private boolean compact;
+    private int sequence;
+
+    public static ProtocolSession get() {
+        return current.get();
+    }
+
+    public static void set(final ProtocolSession session) {
+        if (session == null) {
+            current.remove();
+        } else {
+            current.set(session);
+        }
+    }
+
+    /**
+     * Drops the methods resolved with this loader, or any loader below it,
+     * by every connection still open.
+     *
+     * @param loader the loader of an application being undeployed
+     */
+    public static void forget(final ClassLoader loader) {
+        final List<ProtocolSession> copy;
+        synchronized (sessions) {
+            copy = new ArrayList<ProtocolSession>(sessions.keySet());
+        }
+
+        for (final ProtocolSession session : copy) {
+            synchronized (session.resolved) {
+                for (final Resolution resolution : session.resolved.values()) {
+                    resolution.forget(loader);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the requests on this connection
+     * can use the OEJP/4.0 encoding
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Records the protocol version the server speaks.
+     *
+     * @param server the version sent by the server
+     */
+    public void setServerProtocol(final ProtocolMetaData server) {
+        this.compact = server.getMajor() >= COMPACT_PROTOCOL.getMajor();
+    }
+
+    /**
+     * The server successfully read the last request,
+     * the numbers it defined can be used from now on
+     */
+    public void commit() {
+        for (final Definition definition : pending) {
+            definition.committed = true;
+        }
+        pending.clear();
+    }
+
+    /**
+     * The server may not have read the last request,
+     * any number it defined will be defined again
+     */
+    public void rollback() {
+        pending.clear();
+    }
+
+    public void writeMethod(final ObjectOutput out, final Class interfaceClass, final Method method) throws IOException {
+        Map<Method, Definition> methods = definitions.get(interfaceClass);
+        if (methods == null) {
+            methods = new HashMap<Method, Definition>();
+            definitions.put(interfaceClass, methods);
+        }
+
+        Definition definition = methods.get(method);
+        if (definition == null) {
+            definition = new Definition(sequence++, interfaceClass, method);
+            methods.put(method, definition);
+        }
+
+        if (definition.committed) {
+            out.writeByte(REFERENCE);
+            out.writeInt(definition.id);
+            return;
+        }
+
+        pending.add(definition);
+
+        out.writeByte(DEFINE);
+        out.writeInt(definition.id);
+        out.writeObject(interfaceClass);
+        out.writeUTF(method.getName());
+
+        final Class<?>[] types = method.getParameterTypes();
+        out.writeByte(types.length);
+        for (final Class<?> type : types) {
+            if (type.isPrimitive()) {
+                out.writeBoolean(true);
+                out.writeUTF(type.getName());
+            } else {
+                out.writeBoolean(false);
+                out.writeObject(type);
+            }
+        }
+    }
+
+    public Definition readMethod(final ObjectInput in) throws IOException, ClassNotFoundException {
+        final byte kind = in.readByte();
+        final int id = in.readInt();
+
+        if (kind == REFERENCE) {
+            synchronized (resolved) {
+                final Resolution resolution = resolved.get(id);
+                if (resolution == null) {
+                    throw new IOException("Unknown method number " + id);
+                }
+
+                return resolution.in(Thread.currentThread().getContextClassLoader());
+            }
+        }
+
+        if (kind != DEFINE) {
+            throw new IOException("Unknown method encoding " + kind);
+        }
+
+        final Class interfaceClass = (Class) in.readObject();
+        final String name = in.readUTF();
+
+        final Class[] types = new Class[in.readUnsignedByte()];
+        for (int i = 0; i < types.length; i++) {
+            if (in.readBoolean()) {
+                final String type = in.readUTF();
+                types[i] = primitive(type);
+                if (types[i] == null) {
+                    throw new IOException("Unknown primitive type " + type);
+                }
+            } else {
+                types[i] = (Class) in.readObject();
+            }
+        }
+
+        Method method = null;
+        if (interfaceClass != null) {
+            try {
+                method = interfaceClass.getMethod(name, types);
+            } catch (NoSuchMethodException e) {
+                // reported by the request handler
+            }
+        }
+
+        final Definition definition = new Definition(id, interfaceClass, name, types, method);
+        final Resolution resolution = new Resolution(definition);
+        resolution.loaded.put(Thread.currentThread().getContextClassLoader(), new SoftReference<Definition>(definition));
+
+        synchronized (resolved) {
+            if (resolved.isEmpty()) {
+                synchronized (sessions) {
+                    sessions.put(this, Boolean.TRUE);
+                }
+            }
+            resolved.put(id, resolution);
+        }
+        return definition;
+    }
+
+    private static Class primitive(final String name) {
+        if ("boolean".equals(name)) return boolean.class;
+        if ("byte".equals(name)) return byte.class;
+        if ("char".equals(name)) return char.class;
+        if ("short".equals(name)) return short.class;
+        if ("int".equals(name)) return int.class;
+        if ("long".equals(name)) return long.class;
+        if ("float".equals(name)) return float.class;
+        if ("double".equals(name)) return double.class;
+        return null;
+    }
+
+    public static class Definition {
+        private final int id;
+        private final Class interfaceClass;
+        private final String methodName;
+        private final Class[] parameterTypes;
+        private final Method method;
+        private boolean committed;
+
+        private Definition(final int id, final Class interfaceClass, final Method method) {
+            this(id, interfaceClass, method.getName(), method.getParameterTypes(), method);
+        }
+
+        private Definition(final int id, final Class interfaceClass, final String methodName, final Class[] parameterTypes, final Method method) {
+            this.id = id;
+            this.interfaceClass = interfaceClass;
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+            this.method = method;
+        }
+
+        public Class getInterfaceClass() {
+            return interfaceClass;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public Class[] getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+    }
+
+    /**
+     * What the server remembers of a number.  A connection can outlive a
+     * redeployment or be used by several applications, the classes are
+     * looked up once per loader.  The names are all that is held strongly,
+     * the classes go away with their loader.
+     */
+    private static class Resolution {
+        private final int id;
+        private final String interfaceName;
+        private final String methodName;
+        private final String[] parameterTypes;
+        private final Map<ClassLoader, SoftReference<Definition>> loaded = new WeakHashMap<ClassLoader, SoftReference<Definition>>();
+
+        private Resolution(final Definition definition) {
+            this.id = definition.id;
+            this.interfaceName = definition.interfaceClass == null ? null : definition.interfaceClass.getName();
+            this.methodName = definition.methodName;
+            this.parameterTypes = new String[definition.parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterTypes[i] = definition.parameterTypes[i].getName();
+            }
+        }
+
+        private Definition in(final ClassLoader loader) throws ClassNotFoundException {
+            final SoftReference<Definition> reference = loaded.get(loader);
+            Definition definition = reference == null ? null : reference.get();
+            if (definition == null) {
+                definition = load(loader);
+                loaded.put(loader, new SoftReference<Definition>(definition));
+            }
+            return definition;
+        }
+
+        private Definition load(final ClassLoader loader) throws ClassNotFoundException {
+            final Class interfaceClass = interfaceName == null ? null : type(interfaceName, loader);
+
+            final Class[] types = new Class[parameterTypes.length];
+            for (int i = 0; i < types.length; i++) {
+                final Class primitive = primitive(parameterTypes[i]);
+                types[i] = primitive != null ? primitive : type(parameterTypes[i], loader);
+            }
+
+            Method method = null;
+            if (interfaceClass != null) {
+                try {
+                    method = interfaceClass.getMethod(methodName, types);
+                } catch (NoSuchMethodException e) {
+                    // reported by the request handler
+                }
+            }
+
+            return new Definition(id, interfaceClass, methodName, types, method);
+        }
+
+        private static Class type(final String name, final ClassLoader loader) throws ClassNotFoundException {
+            return Class.forName(name, false, loader == null ? ProtocolSession.class.getClassLoader() : loader);
+        }
+
+        private void forget(final ClassLoader undeployed) {
+            for (final Iterator<ClassLoader> iterator = loaded.keySet().iterator(); iterator.hasNext(); ) {
+                for (ClassLoader loader = iterator.next(); loader != null; loader = loader.getParent()) {
+                    if (loader == undeployed) {
+                        iterator.remove();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What this client knows of a server: the requests it has in flight, the
+ * moving average of their latency and whether the server keeps failing.
+ * <p/>
+ * After {@code openejb.client.circuit.failures} failures in a row the
+ * circuit of the server opens, the balancing strategies then only try it
+ * once the others failed, until {@code openejb.client.circuit.open} ms
+ * passed and a single request is let through to probe it again.
+ * <p/>
+ * The statistics of a server are dropped once no cluster known to the
+ * client lists it anymore, see {@link Client.Context#setClusterMetaData}.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ServerStatistics {
+    private static final int maxFailures = Integer.parseInt(System.getProperty("openejb.client.circuit.failures", "5"));
+    private static final long openTime = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(System.getProperty("openejb.client.circuit.open", "10000")));
+    private static final double alpha = Double.parseDouble(System.getProperty("openejb.client.latency.alpha", "0.3"));
+
+    private static final ConcurrentMap<URI, ServerStatistics> statistics = new ConcurrentHashMap<URI, ServerStatistics>();
+
+    private final URI uri;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong latency = new AtomicLong(Double.doubleToRawLongBits(-1));
+    private final AtomicLong openUntil = new AtomicLong();
+    private volatile boolean open;
+
+    private ServerStatistics(final URI uri) {
+        this.uri = uri;
+    }
+
+    public static ServerStatistics get(final URI uri) {
+        ServerStatistics stats = statistics.get(uri);
+        if (stats == null) {
+            stats = new ServerStatistics(uri);
+            final ServerStatistics existing = statistics.putIfAbsent(uri, stats);
+            if (existing != null) stats = existing;
+        }
+        return stats;
+    }
+
+    /**
+     * Forgets the server, requests still running against it keep
+     * updating the instance they started with.
+     */
+    public static void remove(final URI uri) {
+        statistics.remove(uri);
+    }
+
+    public static void clear() {
+        statistics.clear();
+    }
+
+    public URI getURI() {
+        return uri;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the moving average of the request latency in nanoseconds,
+     * or -1 if no request completed yet
+     */
+    public double getLatency() {
+        return Double.longBitsToDouble(latency.get());
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return true for the one caller allowed to probe the server once its
+     * circuit has been open long enough, the next ones wait for the outcome
+     * of that request
+     */
+    public boolean probe() {
+        if (!open) return false;
+
+        final long until = openUntil.get();
+        final long now = System.nanoTime();
+        return now - until >= 0 && openUntil.compareAndSet(until, now + openTime);
+    }
+
+    public void requestStarted() {
+        outstanding.incrementAndGet();
+    }
+
+    public void requestSucceeded(final long nanos) {
+        outstanding.decrementAndGet();
+        failures.set(0);
+        open = false;
+
+        while (true) {
+            final long current = latency.get();
+            final double average = Double.longBitsToDouble(current);
+            final double updated = average < 0 ? nanos : average + alpha * (nanos - average);
+            if (latency.compareAndSet(current, Double.doubleToRawLongBits(updated))) return;
+        }
+    }
+
+    public void requestFailed() {
+        outstanding.decrementAndGet();
+        connectionFailed();
+    }
+
+    /**
+     * The request ended on an error that doesn't tell anything about the server.
+     */
+    public void requestAborted() {
+        outstanding.decrementAndGet();
+    }
+
+    public void connectionFailed() {
+        if (failures.incrementAndGet() >= maxFailures && !open) {
+            openUntil.set(System.nanoTime() + openTime);
+            open = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ServerStatistics{" +
+                "uri=" + uri +
+                ", outstanding=" + outstanding +
+                ", latency=" + getLatency() +
+                ", failures=" + failures +
+                ", open=" + open +
+                '}';
+    }
+}
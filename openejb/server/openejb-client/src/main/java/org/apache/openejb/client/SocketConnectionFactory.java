@@ -24,22 +24,36 @@ import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StreamCorruptedException;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Stack;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 
 public class SocketConnectionFactory implements ConnectionFactory {
@@ -52,13 +66,19 @@ public class SocketConnectionFactory implements ConnectionFactory {
     public static final String PROPERTY_POOL_SIZE = "openejb.client.connection.pool.size";
     private static final String PROPERTY_POOL_SIZE2 = "openejb.client.connectionpool.size";
     public static final String PROPERTY_KEEPALIVE = "openejb.client.keepalive";
+    public static final String PROPERTY_PIPELINE_TIMEOUT = "openejb.client.connection.pipeline.timeout";
+    public static final String PROPERTY_PIPELINE_SIZE = "openejb.client.connection.pipeline.size";
     public static final String ENABLED_CIPHER_SUITES = "openejb.client.enabledCipherSuites";
 
     private static final Map<URI, Pool> connections = new ConcurrentHashMap<URI, Pool>();
+    private static final ConcurrentMap<URI, Pipeline> pipelines = new ConcurrentHashMap<URI, Pipeline>();
+    private static Timer expiries;
     private int size = 5;
     private long timeoutPool = 1000;
     private int timeoutSocket = 500;
     private int timeoutLinger;
+    private int timeoutPipeline;
+    private int sizePipeline = 128;
     private String[] enabledCipherSuites;
 
     public SocketConnectionFactory() {
@@ -67,6 +87,8 @@ public class SocketConnectionFactory implements ConnectionFactory {
         this.timeoutPool = this.getTimeoutPool();
         this.timeoutSocket = this.getTimeoutSocket();
         this.timeoutLinger = this.getTimeoutLinger();
+        this.timeoutPipeline = getInt(System.getProperties(), SocketConnectionFactory.PROPERTY_PIPELINE_TIMEOUT, this.timeoutPipeline);
+        this.sizePipeline = getInt(System.getProperties(), SocketConnectionFactory.PROPERTY_PIPELINE_SIZE, this.sizePipeline);
         this.enabledCipherSuites = this.getEnabledCipherSuites();
         try {
             String property = System.getProperty(PROPERTY_KEEPALIVE);
@@ -140,9 +162,27 @@ public class SocketConnectionFactory implements ConnectionFactory {
         }
     }
 
+    /**
+     * @param uri URI
+     * @return true if the connections to this uri are requests of a pipeline
+     */
+    public boolean isPipelined(final URI uri) {
+        return this.keepAliveStyle == KeepAliveStyle.PIPELINE && "ejbd".equalsIgnoreCase(uri.getScheme());
+    }
+
     @Override
     public Connection getConnection(final URI uri) throws java.io.IOException {
 
+        KeepAliveStyle keepAliveStyle = this.keepAliveStyle;
+        if (keepAliveStyle == KeepAliveStyle.PIPELINE) {
+            if (this.isPipelined(uri)) {
+                return this.getPipeline(uri).newRequest();
+            }
+
+            // framing is not supported over ssl nor gzip
+            keepAliveStyle = KeepAliveStyle.PING;
+        }
+
         final Pool pool = this.getPool(uri);
 
         SocketConnection conn = pool.get();
@@ -176,12 +216,12 @@ public class SocketConnectionFactory implements ConnectionFactory {
         }
 
         try {
-            ouputStream.write(this.keepAliveStyle.ordinal());
+            ouputStream.write(keepAliveStyle.ordinal());
             ouputStream.flush();
 
-            switch (this.keepAliveStyle) {
+            switch (keepAliveStyle) {
                 case PING_PING: {
-                    ouputStream.write(this.keepAliveStyle.ordinal());
+                    ouputStream.write(keepAliveStyle.ordinal());
                     ouputStream.flush();
                     break;
                 }
@@ -199,6 +239,23 @@ public class SocketConnectionFactory implements ConnectionFactory {
         return conn;
     }
 
+    private Pipeline getPipeline(final URI uri) throws IOException {
+        Pipeline pipeline = pipelines.get(uri);
+        if (pipeline != null) {
+            return pipeline;
+        }
+
+        synchronized (pipelines) {
+            pipeline = pipelines.get(uri);
+            if (pipeline == null) {
+                pipeline = new Pipeline(uri, this.getPool(uri));
+                pipelines.put(uri, pipeline);
+                pipeline.start();
+            }
+            return pipeline;
+        }
+    }
+
     private Pool getPool(final URI uri) {
         Pool pool = connections.get(uri);
         if (pool == null) {
@@ -219,6 +276,7 @@ public class SocketConnectionFactory implements ConnectionFactory {
         private OutputStream out;
         private InputStream in;
         private boolean gzip = false;
+        private final ProtocolSession protocolSession = new ProtocolSession();
 
         public SocketConnection(final URI uri, final Pool pool) {
             this.uri = uri;
@@ -329,6 +387,10 @@ public class SocketConnectionFactory implements ConnectionFactory {
             return this.uri;
         }
 
+        public ProtocolSession getProtocolSession() {
+            return this.protocolSession;
+        }
+
         @Override
         public void close() throws IOException {
             if (this.discarded)
@@ -393,6 +455,274 @@ public class SocketConnectionFactory implements ConnectionFactory {
         }
     }
 
+    /**
+     * A single pooled socket shared by all the threads talking to the same
+     * server.  Requests are written as frames tagged with an id as soon as
+     * they are complete, a reader thread hands each response frame to the
+     * request with the same id.
+     * <p/>
+     * Like a plain socket read, a request waits for its response as long as
+     * it takes unless {@link #PROPERTY_PIPELINE_TIMEOUT} is set.  At most
+     * {@link #PROPERTY_PIPELINE_SIZE} requests are in flight at a time, the
+     * others wait for a slot as they would for a pooled connection.
+     */
+    class Pipeline implements Runnable {
+
+        private final URI uri;
+        private final SocketConnection connection;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private final Lock lock = new ReentrantLock();
+        private final AtomicInteger ids = new AtomicInteger();
+        private final Map<Integer, PipelinedRequest> inflight = new ConcurrentHashMap<Integer, PipelinedRequest>();
+        private final Semaphore slots = new Semaphore(Math.max(1, SocketConnectionFactory.this.sizePipeline));
+        private volatile IOException failure;
+
+        private Pipeline(final URI uri, final Pool pool) throws IOException {
+            this.uri = uri;
+
+            SocketConnection conn = pool.get();
+            if (conn == null) {
+                conn = new SocketConnection(uri, pool);
+                conn.open(uri);
+            }
+
+            this.connection = conn;
+            this.out = new DataOutputStream(conn.getOutputStream());
+            this.in = new DataInputStream(conn.getInputStream());
+        }
+
+        private void start() {
+            final Thread thread = new Thread(this, "OpenEJB.Client.Pipeline." + this.uri);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public PipelinedRequest newRequest() {
+            return new PipelinedRequest(this.ids.incrementAndGet());
+        }
+
+        private void send(final PipelinedRequest request, final byte[] bytes) throws IOException {
+            final long timeout = SocketConnectionFactory.this.timeoutPool;
+            try {
+                if (!this.slots.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new ConnectionPoolTimeoutException("No room in the pipeline to server '" + this.uri + "' (size " + SocketConnectionFactory.this.sizePipeline + ").  Waited for " + timeout + " milliseconds.");
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting to send a request to server '" + this.uri + "'");
+            }
+            this.inflight.put(request.id, request);
+
+            final Lock l = this.lock;
+            l.lock();
+            try {
+                if (this.failure != null) {
+                    throw new IOException("Connection to server '" + this.uri + "' was closed", this.failure);
+                }
+
+                this.out.write(KeepAliveStyle.PIPELINE.ordinal());
+                this.out.writeInt(request.id);
+                this.out.writeInt(bytes.length);
+                this.out.write(bytes);
+                this.out.flush();
+            } catch (IOException e) {
+                final boolean owned = this.remove(request.id) != null;
+                this.close(e);
+                if (owned) {
+                    throw e;
+                }
+                // else the request was already completed with the failure, its listener reports it
+            } finally {
+                l.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final int id = this.in.readInt();
+                    final byte[] bytes = new byte[this.in.readInt()];
+                    this.in.readFully(bytes);
+
+                    final PipelinedRequest request = this.remove(id);
+                    if (request != null) {
+                        request.complete(bytes, null);
+                    }
+                }
+            } catch (IOException e) {
+                this.close(e);
+            }
+        }
+
+        private void close(final IOException e) {
+            synchronized (this) {
+                if (this.failure != null) {
+                    return;
+                }
+                this.failure = e;
+            }
+
+            pipelines.remove(this.uri, this);
+            this.connection.discard();
+
+            for (final Integer id : this.inflight.keySet()) {
+                final PipelinedRequest request = this.remove(id);
+                if (request != null) {
+                    request.complete(null, e);
+                }
+            }
+        }
+
+        /**
+         * The slot of a request is given back by whoever takes it out of flight
+         */
+        private PipelinedRequest remove(final int id) {
+            final PipelinedRequest request = this.inflight.remove(id);
+            if (request != null) {
+                this.slots.release();
+            }
+            return request;
+        }
+
+        class PipelinedRequest implements Connection {
+
+            private final int id;
+            private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+            private final CountDownLatch done = new CountDownLatch(1);
+            private volatile byte[] response;
+            private volatile IOException failure;
+            private boolean sent;
+            private final AtomicBoolean completed = new AtomicBoolean();
+            private Runnable listener;
+            private volatile TimerTask expiry;
+
+            private PipelinedRequest(final int id) {
+                this.id = id;
+            }
+
+            private void complete(final byte[] response, final IOException failure) {
+                // the reader and a failing writer can race on the last requests
+                if (!this.completed.compareAndSet(false, true)) {
+                    return;
+                }
+
+                final TimerTask expiry = this.expiry;
+                if (expiry != null) {
+                    expiry.cancel();
+                }
+
+                this.response = response;
+                this.failure = failure;
+                this.done.countDown();
+
+                final Runnable listener = this.listener;
+                if (listener != null) {
+                    try {
+                        listener.run();
+                    } catch (Throwable e) {
+                        // must not take the reader down with it
+                        Logger.getLogger("OpenEJB.client").log(Level.WARNING, "Error handling the response of request " + this.id + " from server '" + Pipeline.this.uri + "'", e);
+                    }
+                }
+            }
+
+            /**
+             * Sends the request written so far without waiting for the response.
+             * The listener is run by the thread reading the responses once this
+             * request is complete, {@link #getInputStream()} does not block then.
+             * The request expires as a blocking one would, the listener then
+             * runs on the timer thread and {@link #getInputStream()} throws the
+             * same SocketTimeoutException.
+             */
+            public void send(final Runnable listener) throws IOException {
+                this.listener = listener;
+                this.sent = true;
+                Pipeline.this.send(this, this.request.toByteArray());
+
+                final int timeout = SocketConnectionFactory.this.timeoutPipeline;
+                if (timeout > 0) {
+                    this.expiry = new TimerTask() {
+                        @Override
+                        public void run() {
+                            PipelinedRequest.this.expire(timeout);
+                        }
+                    };
+                    expiries().schedule(this.expiry, timeout);
+
+                    // the response may have been faster
+                    if (this.completed.get()) {
+                        this.expiry.cancel();
+                    }
+                }
+            }
+
+            private void expire(final int timeout) {
+                if (Pipeline.this.remove(this.id) != null) {
+                    this.complete(null, new SocketTimeoutException("No response from server '" + Pipeline.this.uri + "' after " + timeout + " milliseconds"));
+                }
+            }
+
+            @Override
+            public URI getURI() {
+                return Pipeline.this.uri;
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return this.request;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                if (!this.sent) {
+                    this.sent = true;
+                    Pipeline.this.send(this, this.request.toByteArray());
+                }
+
+                final int timeout = SocketConnectionFactory.this.timeoutPipeline;
+                try {
+                    if (timeout > 0 && !this.done.await(timeout, TimeUnit.MILLISECONDS)) {
+                        this.expire(timeout);
+                    }
+                    this.done.await();
+                } catch (InterruptedException e) {
+                    Pipeline.this.remove(this.id);
+                    throw new InterruptedIOException("Interrupted while waiting for a response from server '" + Pipeline.this.uri + "'");
+                }
+
+                if (this.failure instanceof SocketTimeoutException) {
+                    throw new SocketTimeoutException(this.failure.getMessage());
+                } else if (this.failure != null) {
+                    throw new IOException("Connection to server '" + Pipeline.this.uri + "' was closed", this.failure);
+                }
+
+                return new ByteArrayInputStream(this.response);
+            }
+
+            /**
+             * Frames are independent, a bad response does
+             * not compromise the other requests in flight
+             */
+            @Override
+            public void discard() {
+                Pipeline.this.remove(this.id);
+            }
+
+            @Override
+            public void close() throws IOException {
+                Pipeline.this.remove(this.id);
+            }
+        }
+    }
+
+    private static synchronized Timer expiries() {
+        if (expiries == null) {
+            expiries = new Timer("OpenEJB.Client.Pipeline.Timeout", true);
+        }
+        return expiries;
+    }
+
     public class Input extends java.io.FilterInputStream {
 
         public Input(final InputStream in) {
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand written encoding of the immutable values most commonly passed to
+ * and returned from remote EJB methods.  Anything else, mutable values
+ * included, goes through regular serialization so the stream keeps the
+ * identity of the objects shared between the serialized values.  Used by
+ * the OEJP/4.0 encoding only.
+ * <p/>
+ * One codec is used per message, a value written twice in the message is
+ * sent once and read back as the same instance, as serialization does.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class ValueCodec {
+
+    private static final byte NULL = 0;
+    private static final byte OBJECT = 1;
+    private static final byte STRING = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte BYTE = 4;
+    private static final byte CHAR = 5;
+    private static final byte SHORT = 6;
+    private static final byte INT = 7;
+    private static final byte LONG = 8;
+    private static final byte FLOAT = 9;
+    private static final byte DOUBLE = 10;
+    private static final byte BIG_INTEGER = 11;
+    private static final byte BIG_DECIMAL = 12;
+    private static final byte REFERENCE = 13;
+
+    /**
+     * writeUTF is limited to 65535 bytes, a char takes at most 3 of them
+     */
+    private static final int MAX_UTF_CHARS = 65535 / 3;
+
+    // values already written or read, by position in the message
+    private Map<Object, Integer> written;
+    private List<Object> read;
+
+    public void write(final ObjectOutput out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+            return;
+        }
+
+        if (!isEncoded(value)) {
+            out.writeByte(OBJECT);
+            out.writeObject(value);
+            return;
+        }
+
+        if (written == null) {
+            written = new IdentityHashMap<Object, Integer>();
+        }
+        final Integer reference = written.get(value);
+        if (reference != null) {
+            out.writeByte(REFERENCE);
+            out.writeInt(reference);
+            return;
+        }
+        written.put(value, written.size());
+
+        final Class<?> type = value.getClass();
+        if (type == String.class) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (type == Integer.class) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (type == Long.class) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (type == Boolean.class) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (type == Double.class) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (type == Float.class) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (type == Short.class) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (type == Byte.class) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (type == BigInteger.class) {
+            final byte[] bytes = ((BigInteger) value).toByteArray();
+            out.writeByte(BIG_INTEGER);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            final BigDecimal decimal = (BigDecimal) value;
+            final byte[] bytes = decimal.unscaledValue().toByteArray();
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(decimal.scale());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static boolean isEncoded(final Object value) {
+        final Class<?> type = value.getClass();
+        if (type == String.class) {
+            return ((String) value).length() <= MAX_UTF_CHARS;
+        }
+        return type == Integer.class || type == Long.class || type == Boolean.class
+            || type == Double.class || type == Float.class || type == Short.class
+            || type == Byte.class || type == Character.class
+            || type == BigInteger.class || type == BigDecimal.class;
+    }
+
+    public Object read(final ObjectInput in) throws IOException, ClassNotFoundException {
+        final byte type = in.readByte();
+
+        switch (type) {
+            case NULL:
+                return null;
+            case OBJECT:
+                return in.readObject();
+            case REFERENCE: {
+                final int reference = in.readInt();
+                if (read == null || reference < 0 || reference >= read.size()) {
+                    throw new IOException("Unknown value reference " + reference);
+                }
+                return read.get(reference);
+            }
+            default:
+                final Object value = readValue(in, type);
+                if (read == null) {
+                    read = new ArrayList<Object>();
+                }
+                read.add(value);
+                return value;
+        }
+    }
+
+    private static Object readValue(final ObjectInput in, final byte type) throws IOException {
+        switch (type) {
+            case STRING:
+                return in.readUTF();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHAR:
+                return in.readChar();
+            case BIG_INTEGER:
+                return new BigInteger(readBytes(in));
+            case BIG_DECIMAL: {
+                final int scale = in.readInt();
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            }
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    private static byte[] readBytes(final ObjectInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
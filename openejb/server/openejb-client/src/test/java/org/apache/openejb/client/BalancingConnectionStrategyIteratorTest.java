@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class BalancingConnectionStrategyIteratorTest {
+
+    @Before
+    @After
+    public void clear() {
+        ServerStatistics.clear();
+    }
+
+    @Test
+    public void leastOutstanding() throws Exception {
+        final URI[] uris = uris("one://localhost:1243", "two://localhost:1243", "three://localhost:1243");
+        ServerStatistics.get(uris[0]).requestStarted();
+        ServerStatistics.get(uris[0]).requestStarted();
+        ServerStatistics.get(uris[1]).requestStarted();
+
+        final Iterable<URI> iterable = new LeastOutstandingConnectionStrategy().createIterable(new ClusterMetaData(0, uris));
+
+        for (int i = 0; i < 3; i++) {
+            assertOrder(iterable.iterator(), uris[2], uris[1], uris[0]);
+        }
+    }
+
+    @Test
+    public void leastOutstandingTakesTurns() throws Exception {
+        final URI[] uris = uris("one://localhost:1243", "two://localhost:1243");
+        final Iterable<URI> iterable = new LeastOutstandingConnectionStrategy().createIterable(new ClusterMetaData(0, uris));
+
+        final URI first = iterable.iterator().next();
+        Assert.assertNotSame(first, iterable.iterator().next());
+    }
+
+    @Test
+    public void powerOfTwo() throws Exception {
+        final URI[] uris = uris("one://localhost:1243", "two://localhost:1243");
+        ServerStatistics.get(uris[0]).requestStarted();
+
+        final Iterable<URI> iterable = new PowerOfTwoConnectionStrategy().createIterable(new ClusterMetaData(0, uris));
+
+        for (int i = 0; i < 10; i++) {
+            assertOrder(iterable.iterator(), uris[1], uris[0]);
+        }
+    }
+
+    @Test
+    public void latency() throws Exception {
+        final URI[] uris = uris("one://localhost:1243", "two://localhost:1243", "three://localhost:1243");
+        final FixedRandom random = new FixedRandom();
+        final Iterable<URI> iterable = new LatencyConnectionStrategy(random).createIterable(new ClusterMetaData(0, uris));
+
+        ServerStatistics.get(uris[0]).requestStarted();
+        ServerStatistics.get(uris[0]).requestSucceeded(1000000000L);
+        ServerStatistics.get(uris[2]).requestStarted();
+        ServerStatistics.get(uris[2]).requestSucceeded(1000L);
+
+        // not measured yet
+        Assert.assertEquals(uris[1], iterable.iterator().next());
+
+        ServerStatistics.get(uris[1]).requestStarted();
+        ServerStatistics.get(uris[1]).requestSucceeded(1000000L);
+
+        // the first server is drawn with a weight of 1 / latency, the others follow by latency
+        random.value = 0.5;
+        assertOrder(iterable.iterator(), uris[2], uris[1], uris[0]);
+
+        random.value = 0;
+        assertOrder(iterable.iterator(), uris[0], uris[2], uris[1]);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void remove() throws Exception {
+        final URI[] uris = uris("one://localhost:1243");
+        final Iterator<URI> iterator = new LeastOutstandingConnectionStrategy().createIterable(new ClusterMetaData(0, uris)).iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    @Test
+    public void circuit() throws Exception {
+        final URI[] uris = uris("one://localhost:1243", "two://localhost:1243", "three://localhost:1243");
+        final Iterable<URI> iterable = new LeastOutstandingConnectionStrategy().createIterable(new ClusterMetaData(0, uris));
+
+        final ServerStatistics failing = ServerStatistics.get(uris[0]);
+        while (!failing.isOpen()) {
+            failing.connectionFailed();
+        }
+
+        for (int i = 0; i < 4; i++) {
+            final Iterator<URI> iterator = iterable.iterator();
+            iterator.next();
+            iterator.next();
+            Assert.assertEquals(uris[0], iterator.next());
+        }
+
+        failing.requestStarted();
+        failing.requestSucceeded(1000L);
+        Assert.assertFalse(failing.isOpen());
+    }
+
+    @Test
+    public void removedServersAreForgotten() throws Exception {
+        final URI[] uris = uris("one://removed:1243", "two://removed:1243", "three://removed:1243");
+        final Client.Context first = Client.getContext(new ServerMetaData(uris[0]));
+        final Client.Context second = Client.getContext(new ServerMetaData(uris[1]));
+
+        first.setClusterMetaData(new ClusterMetaData(1, uris));
+        second.setClusterMetaData(new ClusterMetaData(1, uris[1], uris[2]));
+
+        final ServerStatistics kept = ServerStatistics.get(uris[0]);
+        final ServerStatistics two = ServerStatistics.get(uris[1]);
+        final ServerStatistics three = ServerStatistics.get(uris[2]);
+
+        // still listed by the second cluster
+        first.setClusterMetaData(new ClusterMetaData(2, uris[0]));
+        Assert.assertSame(two, ServerStatistics.get(uris[1]));
+        Assert.assertSame(three, ServerStatistics.get(uris[2]));
+
+        second.setClusterMetaData(new ClusterMetaData(2, uris[0]));
+        Assert.assertSame(kept, ServerStatistics.get(uris[0]));
+        Assert.assertNotSame(two, ServerStatistics.get(uris[1]));
+        Assert.assertNotSame(three, ServerStatistics.get(uris[2]));
+    }
+
+    private static class FixedRandom extends Random {
+        private double value;
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+
+    private static void assertOrder(final Iterator<URI> iterator, final URI... expected) {
+        for (final URI uri : expected) {
+            Assert.assertTrue(iterator.hasNext());
+            Assert.assertEquals(uri, iterator.next());
+        }
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    private static URI[] uris(final String... strings) {
+        final URI[] uris = new URI[strings.length];
+
+        for (int i = 0; i < strings.length; i++) {
+            uris[i] = URI.create(strings[i]);
+        }
+
+        return uris;
+    }
+}
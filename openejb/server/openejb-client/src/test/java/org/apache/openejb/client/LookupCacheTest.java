@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class LookupCacheTest extends TestCase {
+
+    private Client.Context context;
+
+    protected void setUp() throws Exception {
+        context = Client.getContext(new ServerMetaData(new URI("ejbd://localhost:" + System.nanoTime())));
+    }
+
+    public void testGetPut() throws Exception {
+        final LookupCache cache = context.getLookupCache(10, 0);
+        assertSame(cache, context.getLookupCache(20, 0));
+
+        final Object value = new Object();
+        cache.put("module", "Foo", null, value, cache.getDeploymentVersion());
+
+        assertSame(value, cache.get("module", "Foo", null));
+        assertNull(cache.get("other", "Foo", null));
+        assertNull(cache.get(null, "Foo", null));
+        assertNull(cache.get("module", "Foo", "identity"));
+    }
+
+    public void testDeploymentVersion() throws Exception {
+        final LookupCache cache = context.getLookupCache(10, 0);
+        context.setDeploymentVersion(1);
+
+        cache.put(null, "Foo", null, "foo", 1);
+        assertEquals("foo", cache.get(null, "Foo", null));
+
+        // something was redeployed while Bar was looked up
+        cache.put(null, "Bar", null, "bar", 0);
+        assertNull(cache.get(null, "Bar", null));
+
+        context.setDeploymentVersion(1);
+        assertEquals("foo", cache.get(null, "Foo", null));
+
+        context.setDeploymentVersion(2);
+        assertNull(cache.get(null, "Foo", null));
+        assertEquals(0, cache.size());
+    }
+
+    public void testSize() throws Exception {
+        final LookupCache cache = context.getLookupCache(2, 0);
+        cache.put(null, "a", null, "a", -1);
+        cache.put(null, "b", null, "b", -1);
+        cache.get(null, "a", null);
+        cache.put(null, "c", null, "c", -1);
+
+        assertEquals(2, cache.size());
+        assertEquals("a", cache.get(null, "a", null));
+        assertNull(cache.get(null, "b", null));
+        assertEquals("c", cache.get(null, "c", null));
+    }
+
+    public void testTimeToLive() throws Exception {
+        final LookupCache cache = context.getLookupCache(10, 1);
+        cache.put(null, "a", null, "a", -1);
+        Thread.sleep(20);
+        assertNull(cache.get(null, "a", null));
+    }
+
+    public void testClusterResponse() throws Exception {
+        final ClusterResponse written = new ClusterResponse(ClusterResponse.Code.CURRENT);
+        written.setDeploymentVersion(42);
+
+        written.setProtocol(new ProtocolMetaData("4.1"));
+        assertEquals(42, read(written, new ProtocolMetaData("4.1")).getDeploymentVersion());
+
+        // older peers don't know about the version
+        written.setProtocol(new ProtocolMetaData("4.0"));
+        assertEquals(-1, read(written, new ProtocolMetaData("4.0")).getDeploymentVersion());
+    }
+
+    private static ClusterResponse read(final ClusterResponse written, final ProtocolMetaData protocol) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        written.writeExternal(out);
+        out.writeByte(-1);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final ClusterResponse read = new ClusterResponse();
+        read.setProtocol(protocol);
+        read.readExternal(in);
+        assertEquals(ClusterResponse.Code.CURRENT, read.getResponseCode());
+        assertEquals(-1, in.readByte());
+        return read;
+    }
+}
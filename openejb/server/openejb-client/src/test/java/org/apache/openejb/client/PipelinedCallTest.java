@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous invocations of an EJBObjectHandler over a pipelined
+ * connection, the transport is replaced by the handler's request methods.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PipelinedCallTest extends TestCase {
+
+    private ConnectionFactory previous;
+    private RecordingHandler handler;
+    private Method method;
+
+    protected void setUp() throws Exception {
+        System.setProperty(SocketConnectionFactory.PROPERTY_KEEPALIVE, KeepAliveStyle.PIPELINE.name());
+        final SocketConnectionFactory factory;
+        try {
+            factory = new SocketConnectionFactory();
+        } finally {
+            System.clearProperty(SocketConnectionFactory.PROPERTY_KEEPALIVE);
+        }
+        previous = ConnectionManager.unregisterFactory("ejbd");
+        ConnectionManager.registerFactory("ejbd", factory);
+
+        method = Async.class.getMethod("call");
+        final EJBMetaDataImpl ejb = new EJBMetaDataImpl(null, null, "STATELESS", InterfaceType.BUSINESS_REMOTE, null, null);
+        ejb.addAsynchronousMethod(method);
+
+        handler = new RecordingHandler(ejb, new ServerMetaData(new URI("ejbd://localhost:4201")));
+        assertTrue(Client.isPipelined(handler.getServer()));
+    }
+
+    protected void tearDown() throws Exception {
+        ConnectionManager.unregisterFactory("ejbd");
+        if (previous != null) {
+            ConnectionManager.registerFactory("ejbd", previous);
+        }
+    }
+
+    public void testCompletedByTheReader() throws Throwable {
+        final Future<?> future = invoke();
+        assertFalse(future.isDone());
+        assertEquals(1, handler.sent.size());
+
+        // the pipeline reader thread hands the response over
+        final Thread reader = new Thread() {
+            public void run() {
+                handler.response.setResponse(EJBResponse.VERSION, ResponseCodes.EJB_OK, "done");
+                handler.callback.completed(handler.response);
+            }
+        };
+        reader.start();
+
+        assertEquals("done", future.get(10, TimeUnit.SECONDS));
+        assertTrue(handler.blocking.isEmpty());
+    }
+
+    public void testApplicationException() throws Throwable {
+        final Future<?> future = invoke();
+
+        handler.response.setResponse(EJBResponse.VERSION, ResponseCodes.EJB_APP_EXCEPTION, new ThrowableArtifact(new IllegalStateException("app")));
+        handler.callback.completed(handler.response);
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ApplicationException);
+        }
+    }
+
+    public void testRetryRunsTheBlockingCallOnTheExecutor() throws Throwable {
+        final Future<?> future = invoke();
+
+        handler.callback.failed(new IOException("connection lost"), true);
+
+        assertEquals("retried", future.get(10, TimeUnit.SECONDS));
+        assertEquals(1, handler.blocking.size());
+        assertNotSame(Thread.currentThread(), handler.blocking.get(0));
+        assertTrue(handler.blocking.get(0).getName().startsWith("OpenEJB.Client."));
+
+        // the retry is the same invocation
+        assertEquals(handler.sent.get(0).getBody().getRequestId(), handler.retried.get(0).getBody().getRequestId());
+    }
+
+    public void testFailureWithoutRetry() throws Throwable {
+        final Future<?> future = invoke();
+
+        handler.callback.failed(new IOException("connection lost"), false);
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RemoteException);
+            assertTrue(e.getCause().getCause() instanceof IOException);
+        }
+        assertTrue(handler.blocking.isEmpty());
+    }
+
+    public void testCancel() throws Throwable {
+        final Future<?> future = invoke();
+
+        // dispatched already, the server is asked to flag the invocation
+        assertFalse(future.cancel(true));
+        assertEquals(1, handler.cancels.size());
+        final EJBRequest cancel = handler.cancels.get(0);
+        assertEquals(RequestMethodCode.FUTURE_CANCEL, cancel.getRequestMethod());
+        assertEquals(handler.sent.get(0).getBody().getRequestId(), cancel.getBody().getRequestId());
+
+        // same flag, nothing is sent again
+        assertFalse(future.cancel(true));
+        assertEquals(1, handler.cancels.size());
+
+        handler.response.setResponse(EJBResponse.VERSION, ResponseCodes.EJB_OK, "done");
+        handler.callback.completed(handler.response);
+        assertEquals("done", future.get(10, TimeUnit.SECONDS));
+
+        // done, there is nothing left to cancel
+        assertFalse(future.cancel(false));
+        assertEquals(1, handler.cancels.size());
+    }
+
+    private Future<?> invoke() throws Throwable {
+        return (Future<?>) handler.businessMethod(method, new Object[0], null);
+    }
+
+    public static interface Async {
+        Future<String> call();
+    }
+
+    private static class RecordingHandler extends StatelessEJBObjectHandler {
+        private final List<EJBRequest> sent = new CopyOnWriteArrayList<EJBRequest>();
+        private final List<EJBRequest> retried = new CopyOnWriteArrayList<EJBRequest>();
+        private final List<EJBRequest> cancels = new CopyOnWriteArrayList<EJBRequest>();
+        private final List<Thread> blocking = new CopyOnWriteArrayList<Thread>();
+
+        private volatile EJBResponse response;
+        private volatile Client.Callback callback;
+
+        private RecordingHandler(final EJBMetaDataImpl ejb, final ServerMetaData server) {
+            super(ejb, server, new ClientMetaData());
+        }
+
+        @Override
+        protected void request(final EJBRequest req, final EJBResponse res, final Client.Callback callback) throws RemoteException {
+            sent.add(req);
+            this.response = res;
+            this.callback = callback;
+        }
+
+        @Override
+        protected EJBResponse request(final EJBRequest req, final EJBResponse res) throws Exception {
+            blocking.add(Thread.currentThread());
+            retried.add(req);
+            res.setResponse(EJBResponse.VERSION, ResponseCodes.EJB_OK, "retried");
+            return res;
+        }
+
+        @Override
+        protected EJBResponse request(final EJBRequest req) throws Exception {
+            cancels.add(req);
+            final EJBResponse res = new EJBResponse();
+            res.setResponse(EJBResponse.VERSION, ResponseCodes.EJB_OK, null);
+            return res;
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class PipelinedConnectionTest extends TestCase {
+
+    private ServerSocket serverSocket;
+    private SocketConnectionFactory factory;
+
+    protected void setUp() throws Exception {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+
+        System.setProperty(SocketConnectionFactory.PROPERTY_KEEPALIVE, KeepAliveStyle.PIPELINE.name());
+        try {
+            factory = new SocketConnectionFactory();
+        } finally {
+            System.clearProperty(SocketConnectionFactory.PROPERTY_KEEPALIVE);
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        serverSocket.close();
+    }
+
+    private URI uri() throws Exception {
+        return new URI("ejbd://localhost:" + serverSocket.getLocalPort());
+    }
+
+    public void testOutOfOrderResponses() throws Exception {
+        final int requests = 5;
+        final CountDownLatch received = new CountDownLatch(requests);
+
+        // answers only once all the requests are in flight, last one first
+        final Thread server = new Thread() {
+            public void run() {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+                    final List<Integer> ids = new ArrayList<Integer>();
+                    final List<byte[]> bodies = new ArrayList<byte[]>();
+                    for (int i = 0; i < requests; i++) {
+                        assertEquals(KeepAliveStyle.PIPELINE.ordinal(), in.read());
+                        ids.add(in.readInt());
+                        final byte[] body = new byte[in.readInt()];
+                        in.readFully(body);
+                        bodies.add(body);
+                        received.countDown();
+                    }
+
+                    for (int i = requests - 1; i >= 0; i--) {
+                        out.writeInt(ids.get(i));
+                        out.writeInt(bodies.get(i).length);
+                        out.write(bodies.get(i));
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    // test ends
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+
+        final List<String> responses = new CopyOnWriteArrayList<String>();
+        final List<Thread> clients = new ArrayList<Thread>();
+        for (int i = 0; i < requests; i++) {
+            final String message = "request-" + i;
+            final Thread client = new Thread() {
+                public void run() {
+                    try {
+                        final Connection connection = factory.getConnection(uri());
+                        try {
+                            connection.getOutputStream().write(message.getBytes("UTF-8"));
+                            final String response = new String(readAll(connection.getInputStream()), "UTF-8");
+                            if (message.equals(response)) {
+                                responses.add(response);
+                            }
+                        } finally {
+                            connection.close();
+                        }
+                    } catch (Exception e) {
+                        // reported by the size check
+                    }
+                }
+            };
+            clients.add(client);
+            client.start();
+        }
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+
+        for (final Thread client : clients) {
+            client.join(10000);
+        }
+
+        assertEquals(requests, responses.size());
+    }
+
+    public void testServerCloseFailsPendingRequests() throws Exception {
+        final Thread server = new Thread() {
+            public void run() {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    in.read();
+                    in.readInt();
+                    in.readFully(new byte[in.readInt()]);
+                    socket.close();
+                } catch (IOException e) {
+                    // test ends
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+
+        final Connection connection = factory.getConnection(uri());
+        connection.getOutputStream().write(1);
+
+        try {
+            connection.getInputStream();
+            fail("the connection was closed");
+        } catch (IOException e) {
+            // pass
+        } finally {
+            connection.close();
+        }
+    }
+
+    public void testResponseWaitIsNotBoundedBySocketTimeout() throws Exception {
+        // answers after the connect timeout has long passed
+        final Thread server = new Thread() {
+            public void run() {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    in.read();
+                    final int id = in.readInt();
+                    final byte[] body = new byte[in.readInt()];
+                    in.readFully(body);
+
+                    Thread.sleep(500);
+                    out.writeInt(id);
+                    out.writeInt(body.length);
+                    out.write(body);
+                    out.flush();
+                } catch (Exception e) {
+                    // test ends
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+
+        factory = factory(SocketConnectionFactory.PROPERTY_SOCKET_TIMEOUT, "100");
+
+        final Connection connection = factory.getConnection(uri());
+        try {
+            connection.getOutputStream().write("slow".getBytes("UTF-8"));
+            assertEquals("slow", new String(readAll(connection.getInputStream()), "UTF-8"));
+        } finally {
+            connection.close();
+        }
+    }
+
+    public void testResponseWaitIsBoundedByPipelineTimeout() throws Exception {
+        final CountDownLatch stop = new CountDownLatch(1);
+
+        // reads the request and never answers it
+        final Thread server = new Thread() {
+            public void run() {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    in.read();
+                    in.readInt();
+                    in.readFully(new byte[in.readInt()]);
+                    stop.await();
+                    socket.close();
+                } catch (Exception e) {
+                    // test ends
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+
+        factory = factory(SocketConnectionFactory.PROPERTY_PIPELINE_TIMEOUT, "200");
+
+        final Connection connection = factory.getConnection(uri());
+        connection.getOutputStream().write(1);
+
+        try {
+            connection.getInputStream();
+            fail("the server never answers");
+        } catch (SocketTimeoutException e) {
+            // pass
+        } finally {
+            connection.close();
+            stop.countDown();
+        }
+    }
+
+    public void testRequestsInFlightAreBounded() throws Exception {
+        final CountDownLatch answer = new CountDownLatch(1);
+
+        // echoes every request, the first one only once told to
+        final Thread server = new Thread() {
+            public void run() {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    while (true) {
+                        in.read();
+                        final int id = in.readInt();
+                        final byte[] body = new byte[in.readInt()];
+                        in.readFully(body);
+
+                        answer.await();
+                        out.writeInt(id);
+                        out.writeInt(body.length);
+                        out.write(body);
+                        out.flush();
+                    }
+                } catch (Exception e) {
+                    // test ends
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_TIMEOUT, "200");
+        try {
+            factory = factory(SocketConnectionFactory.PROPERTY_PIPELINE_SIZE, "1");
+        } finally {
+            System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_TIMEOUT);
+        }
+
+        final SocketConnectionFactory.Pipeline.PipelinedRequest first = (SocketConnectionFactory.Pipeline.PipelinedRequest) factory.getConnection(uri());
+        first.getOutputStream().write(1);
+        first.send(null);
+
+        final Connection second = factory.getConnection(uri());
+        second.getOutputStream().write(2);
+        try {
+            second.getInputStream();
+            fail("the only slot is taken");
+        } catch (ConnectionPoolTimeoutException e) {
+            // pass
+        } finally {
+            second.close();
+        }
+
+        answer.countDown();
+        first.getInputStream();
+        first.close();
+
+        final Connection third = factory.getConnection(uri());
+        try {
+            third.getOutputStream().write(3);
+            assertEquals(3, third.getInputStream().read());
+        } finally {
+            third.close();
+        }
+    }
+
+    public void testSendDoesNotWaitForTheResponse() throws Exception {
+        final CountDownLatch answer = new CountDownLatch(1);
+
+        // echoes the request once told to
+        final Thread server = new Thread() {
+            public void run() {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    in.read();
+                    final int id = in.readInt();
+                    final byte[] body = new byte[in.readInt()];
+                    in.readFully(body);
+
+                    answer.await();
+                    out.writeInt(id);
+                    out.writeInt(body.length);
+                    out.write(body);
+                    out.flush();
+                } catch (Exception e) {
+                    // test ends
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+
+        final SocketConnectionFactory.Pipeline.PipelinedRequest connection = (SocketConnectionFactory.Pipeline.PipelinedRequest) factory.getConnection(uri());
+        connection.getOutputStream().write("async".getBytes("UTF-8"));
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<String> responses = new CopyOnWriteArrayList<String>();
+        final Thread caller = Thread.currentThread();
+        connection.send(new Runnable() {
+            public void run() {
+                try {
+                    if (Thread.currentThread() != caller) {
+                        responses.add(new String(readAll(connection.getInputStream()), "UTF-8"));
+                    }
+                } catch (IOException e) {
+                    // reported by the size check
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        answer.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        connection.close();
+
+        assertEquals(1, responses.size());
+        assertEquals("async", responses.get(0));
+    }
+
+    public void testSendExpiresLikeABlockingRequest() throws Exception {
+        final CountDownLatch stop = new CountDownLatch(1);
+
+        // reads the request and never answers it
+        final Thread server = new Thread() {
+            public void run() {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    in.read();
+                    in.readInt();
+                    in.readFully(new byte[in.readInt()]);
+                    stop.await();
+                    socket.close();
+                } catch (Exception e) {
+                    // test ends
+                }
+            }
+        };
+        server.setDaemon(true);
+        server.start();
+
+        factory = factory(SocketConnectionFactory.PROPERTY_PIPELINE_TIMEOUT, "200");
+
+        final SocketConnectionFactory.Pipeline.PipelinedRequest connection = (SocketConnectionFactory.Pipeline.PipelinedRequest) factory.getConnection(uri());
+        connection.getOutputStream().write(1);
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<IOException> failures = new CopyOnWriteArrayList<IOException>();
+        connection.send(new Runnable() {
+            public void run() {
+                try {
+                    connection.getInputStream();
+                } catch (IOException e) {
+                    failures.add(e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+
+        try {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, failures.size());
+            assertTrue(failures.get(0) instanceof SocketTimeoutException);
+        } finally {
+            connection.close();
+            stop.countDown();
+        }
+    }
+
+    private static SocketConnectionFactory factory(final String property, final String value) {
+        System.setProperty(SocketConnectionFactory.PROPERTY_KEEPALIVE, KeepAliveStyle.PIPELINE.name());
+        System.setProperty(property, value);
+        try {
+            return new SocketConnectionFactory();
+        } finally {
+            System.clearProperty(SocketConnectionFactory.PROPERTY_KEEPALIVE);
+            System.clearProperty(property);
+        }
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int i;
+        while ((i = in.read(buffer)) != -1) {
+            out.write(buffer, 0, i);
+        }
+        return out.toByteArray();
+    }
+}
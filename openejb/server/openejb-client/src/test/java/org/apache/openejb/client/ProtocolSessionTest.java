@@ -0,0 +1,343 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import junit.framework.TestCase;
+
+import javax.ejb.EJBHome;
+import javax.ejb.EJBObject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class ProtocolSessionTest extends TestCase {
+
+    private EJBMetaDataImpl ejb;
+
+    static interface FooHome extends EJBHome {
+        FooObject create();
+    }
+
+    static interface FooObject extends EJBObject {
+        String businessMethod(String param, int count, long id, Object any);
+    }
+
+    private ProtocolSession client;
+    private ProtocolSession server;
+
+    protected void setUp() throws Exception {
+        ejb = new EJBMetaDataImpl(FooHome.class, FooObject.class, Integer.class, "STATELESS", "FooBeanID", InterfaceType.BUSINESS_REMOTE, null, null);
+        client = new ProtocolSession();
+        client.setServerProtocol(ProtocolSession.COMPACT_PROTOCOL);
+        server = new ProtocolSession();
+    }
+
+    protected void tearDown() throws Exception {
+        ProtocolSession.set(null);
+    }
+
+    public void testNegotiation() throws Exception {
+        final ProtocolSession session = new ProtocolSession();
+        assertFalse(session.isCompact());
+
+        session.setServerProtocol(new ProtocolMetaData("3.1"));
+        assertFalse(session.isCompact());
+
+        session.setServerProtocol(new ProtocolMetaData("4.0"));
+        assertTrue(session.isCompact());
+    }
+
+    public void testLegacyEncoding() throws Exception {
+        final EJBRequest request = request("hello", 1, 2L, null);
+
+        final EJBRequest actual = roundTrip(request, new ProtocolSession(), null);
+        assertEquals(EJBResponse.VERSION, actual.getVersion());
+        assertRequest(request, actual);
+    }
+
+    public void testMethodSentOnce() throws Exception {
+        final EJBRequest request = request("hello", 1, 2L, new ArrayList<String>(Arrays.asList("a", "b")));
+
+        final byte[] first = write(request, client);
+        assertRequest(request, read(first, server));
+        client.commit();
+
+        final byte[] second = write(request, client);
+        final EJBRequest actual = read(second, server);
+        assertEquals(EJBResponse.COMPACT_VERSION, actual.getVersion());
+        assertRequest(request, actual);
+
+        assertTrue(first.length + " <= " + second.length, second.length < first.length);
+    }
+
+    public void testRollbackDefinesAgain() throws Exception {
+        final EJBRequest request = request("hello", 1, 2L, null);
+
+        write(request, client);
+        client.rollback();
+
+        // the server never saw the first request
+        assertRequest(request, read(write(request, client), server));
+    }
+
+    public void testUnknownReference() throws Exception {
+        final EJBRequest request = request("hello", 1, 2L, null);
+
+        write(request, client);
+        client.commit();
+
+        try {
+            read(write(request, client), server);
+            fail("server should not know the method");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    public void testValues() throws Exception {
+        final Object[] values = {
+            null, "text", 1, 2L, true, 3.0d, 4.0f, (short) 5, (byte) 6, 'c',
+            new Date(), new BigInteger("123456789012345678901234567890"), new BigDecimal("-12.345"),
+            new char[]{'a', 'b'}, Arrays.asList(1, 2, 3)
+        };
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        final ValueCodec writer = new ValueCodec();
+        for (Object value : values) {
+            writer.write(out, value);
+        }
+        writer.write(out, new byte[]{1, 2, 3});
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        final ValueCodec reader = new ValueCodec();
+        for (Object value : values) {
+            final Object actual = reader.read(in);
+            if (value instanceof char[]) {
+                assertTrue(Arrays.equals((char[]) value, (char[]) actual));
+            } else {
+                assertEquals(value, actual);
+            }
+        }
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, (byte[]) reader.read(in)));
+    }
+
+    public void testSharedReferences() throws Exception {
+        final String text = "shared";
+        final Date date = new Date();
+        final byte[] bytes = {1, 2, 3};
+        final List<Object> graph = new ArrayList<Object>(Arrays.asList(date, bytes, text));
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(baos);
+        final ValueCodec writer = new ValueCodec();
+        for (Object value : new Object[]{text, date, bytes, graph, text, date, bytes}) {
+            writer.write(out, value);
+        }
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        final ValueCodec reader = new ValueCodec();
+        final Object[] actual = new Object[7];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = reader.read(in);
+        }
+
+        assertEquals(text, actual[0]);
+        assertSame(actual[0], actual[4]);
+        assertSame(actual[1], actual[5]);
+        assertSame(actual[2], actual[6]);
+
+        // mutable values are shared with the serialized graphs too
+        final List<?> actualGraph = (List<?>) actual[3];
+        assertSame(actual[1], actualGraph.get(0));
+        assertSame(actual[2], actualGraph.get(1));
+    }
+
+    public void testSharedParameters() throws Exception {
+        final String text = "hello";
+        final EJBRequest request = request(text, 1, 2L, text);
+
+        final EJBRequest actual = read(write(request, client), server);
+        assertEquals(EJBResponse.COMPACT_VERSION, actual.getVersion());
+        assertRequest(request, actual);
+        assertSame(actual.getMethodParameters()[0], actual.getMethodParameters()[3]);
+    }
+
+    public void testMethodResolvedOncePerLoader() throws Exception {
+        final EJBRequest request = request("hello", 1, 2L, null);
+
+        final byte[] define = write(request, client);
+        client.commit();
+        final byte[] reference = write(request, client);
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader loader = thread.getContextClassLoader();
+        final ClassLoader redeployed = new RedeployedClassLoader(FooObject.class);
+
+        read(define, server);
+        thread.setContextClassLoader(redeployed);
+        try {
+            final Method method = read(reference, server).getMethodInstance();
+            assertNotSame(FooObject.class, method.getDeclaringClass());
+            assertSame(redeployed, method.getDeclaringClass().getClassLoader());
+
+            thread.setContextClassLoader(loader);
+            assertSame(FooObject.class, read(reference, server).getMethodInstance().getDeclaringClass());
+
+            // looked up once, switching loaders does not resolve it again
+            thread.setContextClassLoader(redeployed);
+            assertSame(method, read(reference, server).getMethodInstance());
+        } finally {
+            thread.setContextClassLoader(loader);
+        }
+    }
+
+    public void testUndeployedLoaderIsReleased() throws Exception {
+        final EJBRequest request = request("hello", 1, 2L, null);
+
+        final byte[] define = write(request, client);
+        client.commit();
+        final byte[] reference = write(request, client);
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader loader = thread.getContextClassLoader();
+        ClassLoader redeployed = new RedeployedClassLoader(FooObject.class);
+
+        read(define, server);
+        thread.setContextClassLoader(redeployed);
+        try {
+            assertSame(redeployed, read(reference, server).getMethodInstance().getDeclaringClass().getClassLoader());
+        } finally {
+            thread.setContextClassLoader(loader);
+        }
+
+        ProtocolSession.forget(redeployed);
+
+        final WeakReference<ClassLoader> released = new WeakReference<ClassLoader>(redeployed);
+        redeployed = null;
+        for (int i = 0; i < 20 && released.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("the connection keeps the undeployed classes", released.get());
+
+        // the number is still known to the connection
+        assertSame(FooObject.class, read(reference, server).getMethodInstance().getDeclaringClass());
+    }
+
+    private EJBRequest request(final String param, final int count, final long id, final Object any) throws Exception {
+        final Method method = FooObject.class.getMethod("businessMethod", String.class, int.class, long.class, Object.class);
+        return new EJBRequest(RequestMethodCode.EJB_OBJECT_BUSINESS_METHOD, ejb, method, new Object[]{param, count, id, any}, null);
+    }
+
+    private EJBRequest roundTrip(final EJBRequest request, final ProtocolSession client, final ProtocolSession server) throws Exception {
+        return read(write(request, client), server);
+    }
+
+    private static byte[] write(final EJBRequest request, final ProtocolSession session) throws IOException {
+        ProtocolSession.set(session);
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final ObjectOutputStream out = new ObjectOutputStream(baos);
+            request.writeExternal(out);
+            out.close();
+            return baos.toByteArray();
+        } finally {
+            ProtocolSession.set(null);
+        }
+    }
+
+    private static EJBRequest read(final byte[] bytes, final ProtocolSession session) throws Exception {
+        ProtocolSession.set(session);
+        try {
+            final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            final EJBRequest request = new EJBRequest();
+            request.readExternal(in);
+            request.getBody().readExternal(in);
+            return request;
+        } finally {
+            ProtocolSession.set(null);
+        }
+    }
+
+    /**
+     * Defines its own copy of a class, as the loader of a redeployed application would
+     */
+    private static class RedeployedClassLoader extends ClassLoader {
+        private final String name;
+
+        private RedeployedClassLoader(final Class<?> type) {
+            super(type.getClassLoader());
+            this.name = type.getName();
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(final String className, final boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(className)) {
+                return super.loadClass(className, resolve);
+            }
+
+            Class<?> type = findLoadedClass(className);
+            if (type == null) {
+                try {
+                    final InputStream in = getParent().getResourceAsStream(className.replace('.', '/') + ".class");
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try {
+                        final byte[] buffer = new byte[1024];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            bytes.write(buffer, 0, read);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                    type = defineClass(className, bytes.toByteArray(), 0, bytes.size());
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(className, e);
+                }
+            }
+            return type;
+        }
+    }
+
+    private static void assertRequest(final EJBRequest expected, final EJBRequest actual) {
+        assertEquals("RequestMethod", expected.getRequestMethod(), actual.getRequestMethod());
+        assertEquals("DeploymentId", expected.getDeploymentId(), actual.getDeploymentId());
+        assertEquals("InterfaceClass", expected.getInterfaceClass(), actual.getInterfaceClass());
+        assertEquals("MethodInstance", expected.getMethodInstance(), actual.getMethodInstance());
+
+        final List<Object> expectedParams = Arrays.asList(expected.getMethodParameters());
+        final List<Object> actualParams = Arrays.asList(actual.getMethodParameters());
+        assertEquals("MethodParameters", expectedParams, actualParams);
+    }
+}
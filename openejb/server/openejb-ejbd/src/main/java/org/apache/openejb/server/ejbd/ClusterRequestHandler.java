@@ -16,9 +16,13 @@
  */
 package org.apache.openejb.server.ejbd;
 
+import org.apache.openejb.assembler.classic.event.AssemblerAfterApplicationCreated;
+import org.apache.openejb.assembler.classic.event.AssemblerBeforeApplicationDestroyed;
 import org.apache.openejb.client.ClusterRequest;
 import org.apache.openejb.client.ClusterResponse;
 import org.apache.openejb.client.ClusterMetaData;
+import org.apache.openejb.client.ProtocolMetaData;
+import org.apache.openejb.observer.Observes;
 import org.apache.openejb.server.DiscoveryListener;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
@@ -32,6 +36,7 @@ import java.net.URISyntaxException;
 import java.net.URI;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -45,13 +50,29 @@ public class ClusterRequestHandler implements DiscoveryListener {
 
     private final Data data = new Data();
 
+    /**
+     * Sent to the clients so they drop what they looked up when an
+     * application was deployed or undeployed, starting from the time
+     * so a restarted server doesn't reuse a version.
+     */
+    private final AtomicLong deploymentVersion = new AtomicLong(System.currentTimeMillis());
+
     public ClusterRequestHandler(EjbDaemon daemon) {
     }
 
 
     public void processRequest(ObjectInputStream in, ObjectOutputStream out) throws IOException {
+        processRequest(in, out, null);
+    }
+
+    /**
+     * @param protocol the version spoken by the client
+     */
+    public void processRequest(ObjectInputStream in, ObjectOutputStream out, ProtocolMetaData protocol) throws IOException {
         ClusterRequest req = new ClusterRequest();
         ClusterResponse res = new ClusterResponse();
+        res.setProtocol(protocol);
+        res.setDeploymentVersion(deploymentVersion.get());
 
         try {
             req.readExternal(in);
@@ -101,6 +122,18 @@ public class ClusterRequestHandler implements DiscoveryListener {
         }
     }
 
+    public long getDeploymentVersion() {
+        return deploymentVersion.get();
+    }
+
+    public void afterApplicationCreated(@Observes final AssemblerAfterApplicationCreated event) {
+        deploymentVersion.incrementAndGet();
+    }
+
+    public void beforeApplicationDestroyed(@Observes final AssemblerBeforeApplicationDestroyed event) {
+        deploymentVersion.incrementAndGet();
+    }
+
     public void serviceAdded(final URI uri) {
         try {
             URI type = uri;
@@ -16,15 +16,19 @@
  */
 package org.apache.openejb.server.ejbd;
 
+import org.apache.openejb.AppContext;
 import org.apache.openejb.BeanContext;
 import org.apache.openejb.ProxyInfo;
+import org.apache.openejb.assembler.classic.event.AssemblerBeforeApplicationDestroyed;
 import org.apache.openejb.client.EJBRequest;
 import org.apache.openejb.client.EjbObjectInputStream;
 import org.apache.openejb.client.FlushableGZIPOutputStream;
 import org.apache.openejb.client.ProtocolMetaData;
+import org.apache.openejb.client.ProtocolSession;
 import org.apache.openejb.client.RequestType;
 import org.apache.openejb.client.ServerMetaData;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.observer.Observes;
 import org.apache.openejb.server.DiscoveryAgent;
 import org.apache.openejb.spi.ContainerSystem;
 import org.apache.openejb.util.LogCategory;
@@ -44,7 +48,7 @@ import java.util.zip.GZIPInputStream;
 
 public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
-    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("3.1");
+    private static final ProtocolMetaData PROTOCOL_VERSION = new ProtocolMetaData("4.1");
 
     static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER_REMOTE, "org.apache.openejb.server.util.resources");
 
@@ -86,6 +90,20 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         if (discovery != null) {
             discovery.setDiscoveryListener(clusterHandler);
         }
+
+        SystemInstance.get().addObserver(clusterHandler);
+        SystemInstance.get().addObserver(this);
+    }
+
+    /**
+     * Keep-alive connections remember the methods they were used for,
+     * they must not keep the classes of an undeployed application
+     */
+    public void beforeApplicationDestroyed(@Observes final AssemblerBeforeApplicationDestroyed event) {
+        final AppContext appContext = containerSystem.getAppContext(event.getApp().appId);
+        if (appContext != null) {
+            ProtocolSession.forget(appContext.getClassLoader());
+        }
     }
 
     public void service(final Socket socket) throws IOException {
@@ -150,6 +168,9 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         RequestType requestType = null;
         byte requestTypeByte = RequestType.NOP_REQUEST.getCode();
 
+        final ProtocolSession protocolSession = (in instanceof KeepAliveServer.Input) ? ((KeepAliveServer.Input) in).getProtocolSession() : new ProtocolSession();
+        ProtocolSession.set(protocolSession);
+
         try {
 
             // Read Protocol Version
@@ -173,7 +194,7 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
             }
 
             if (requestType == RequestType.CLUSTER_REQUEST) {
-                processClusterRequest(ois, oos);
+                processClusterRequest(ois, oos, protocolMetaData);
             }
 
             requestTypeByte = (byte) ois.read();
@@ -225,6 +246,7 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
 
             try {
                 ClientObjectFactory.serverMetaData.remove();
+                ProtocolSession.set(null);
             } finally {
                 if (null != oos) {
 
@@ -252,8 +274,8 @@ public class EjbDaemon implements org.apache.openejb.spi.ApplicationServer {
         }
     }
 
-    private void processClusterRequest(final ObjectInputStream in, final ObjectOutputStream out) throws IOException {
-        clusterHandler.processRequest(in, out);
+    private void processClusterRequest(final ObjectInputStream in, final ObjectOutputStream out, final ProtocolMetaData protocol) throws IOException {
+        clusterHandler.processRequest(in, out, protocol);
     }
 
     protected BeanContext getDeployment(final EJBRequest req) throws RemoteException {
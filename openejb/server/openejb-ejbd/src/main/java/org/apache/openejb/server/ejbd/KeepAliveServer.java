@@ -18,6 +18,7 @@ package org.apache.openejb.server.ejbd;
 
 import org.apache.openejb.client.FlushableGZIPOutputStream;
 import org.apache.openejb.client.KeepAliveStyle;
+import org.apache.openejb.client.ProtocolSession;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.server.ServerService;
 import org.apache.openejb.server.ServiceException;
@@ -198,6 +199,7 @@ public class KeepAliveServer implements ServerService {
         // only used inside the Lock
         private final AtomicLong lastRequest;
         private final Socket socket;
+        private final ProtocolSession protocolSession = new ProtocolSession();
         private InputStream in = null;
         private OutputStream out = null;
 
@@ -270,7 +272,7 @@ public class KeepAliveServer implements ServerService {
                         }
 
                         try {
-                            KeepAliveServer.this.service.service(new Input(in), new Output(out));
+                            KeepAliveServer.this.service.service(new Input(in, protocolSession), new Output(out));
                             out.flush();
                         } catch (SocketException e) {
                             // Socket closed.
@@ -376,8 +378,22 @@ public class KeepAliveServer implements ServerService {
 
     public class Input extends java.io.FilterInputStream {
 
+        private final ProtocolSession protocolSession;
+
         public Input(final InputStream in) {
+            this(in, new ProtocolSession());
+        }
+
+        public Input(final InputStream in, final ProtocolSession protocolSession) {
             super(in);
+            this.protocolSession = protocolSession;
+        }
+
+        /**
+         * @return the state kept for the whole life of the connection
+         */
+        public ProtocolSession getProtocolSession() {
+            return protocolSession;
         }
 
         @Override
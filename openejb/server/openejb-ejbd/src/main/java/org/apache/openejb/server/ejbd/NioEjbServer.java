@@ -0,0 +1,537 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.client.FlushableGZIPOutputStream;
+import org.apache.openejb.client.KeepAliveStyle;
+import org.apache.openejb.client.ProtocolSession;
+import org.apache.openejb.server.SelfManaging;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceAccessController;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServiceException;
+import org.apache.openejb.server.ServicePool;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * ejbd front end watching all the client connections with a single selector
+ * so an idle kept alive connection does not hold a thread.  Only requests
+ * which are ready to be read are handed to the worker pool.
+ * <p/>
+ * Connections using the {@link KeepAliveStyle#PIPELINE} style are read
+ * entirely by the selector, one framed request at a time, and several
+ * requests of the same connection can be processed concurrently.  The other
+ * styles are handed to a worker as soon as a request starts arriving, the
+ * worker reads and answers it in blocking mode and gives the connection back
+ * to the selector.
+ * <p/>
+ * Enabled by setting <code>server = org.apache.openejb.server.ejbd.NioEjbServer</code>
+ * in conf/ejbd.properties, all the usual ejbd properties apply.  The
+ * <code>maxFrameSize</code> property (64MB by default) bounds the size of a
+ * pipelined request, a connection announcing a bigger one is closed.
+ *
+ * @version $Rev$ $Date$
+ */
+public class NioEjbServer extends EjbServer implements SelfManaging {
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER.createChild("nio"), NioEjbServer.class);
+
+    private static final int PIPELINE = KeepAliveStyle.PIPELINE.ordinal();
+
+    private static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private ServiceDaemon daemon;
+    private ThreadPoolExecutor executor;
+    private Reactor reactor;
+    private boolean gzip;
+    private int maxFrameSize;
+
+    @Override
+    public void init(final Properties props) throws Exception {
+        daemon = new ServiceDaemon(new ServiceAccessController(new Acceptor())) {
+            @Override
+            protected ServerSocket newServerSocket() throws IOException {
+                return ServerSocketChannel.open().socket();
+            }
+        };
+        daemon.init(props);
+    }
+
+    @Override
+    public void start() throws ServiceException {
+        daemon.start();
+    }
+
+    @Override
+    public void stop() throws ServiceException {
+        daemon.stop();
+    }
+
+    @Override
+    public int getPort() {
+        return daemon.getPort();
+    }
+
+    @Override
+    public String getIP() {
+        return daemon.getIP();
+    }
+
+    /**
+     * End of the usual access control chain, receives the accepted sockets
+     */
+    private class Acceptor implements ServerService {
+
+        @Override
+        public void init(final Properties props) throws Exception {
+            NioEjbServer.super.init(props);
+            gzip = server.isGzip();
+            maxFrameSize = Integer.parseInt(props.getProperty("maxFrameSize", Integer.toString(DEFAULT_MAX_FRAME_SIZE)));
+            executor = new ServicePool(this, props).getThreadPool();
+        }
+
+        @Override
+        public void start() throws ServiceException {
+            NioEjbServer.super.start();
+            try {
+                reactor = new Reactor();
+            } catch (IOException e) {
+                throw new ServiceException("Cannot open the selector", e);
+            }
+
+            final Thread thread = new Thread(reactor, "OpenEJB." + getName() + ".Selector");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void stop() throws ServiceException {
+            if (reactor != null) {
+                reactor.stop();
+                reactor = null;
+            }
+            executor.shutdown();
+            NioEjbServer.super.stop();
+        }
+
+        @Override
+        public void service(final Socket socket) throws ServiceException, IOException {
+            final SocketChannel channel = socket.getChannel();
+
+            if (channel != null) {
+                reactor.register(new Connection(channel));
+                return;
+            }
+
+            // ssl sockets have no channel
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        NioEjbServer.super.service(socket);
+                    } catch (Throwable e) {
+                        logger.debug("Unexpected error", e);
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (Throwable e) {
+                            //Ignore
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
+            NioEjbServer.this.service(in, out);
+        }
+
+        @Override
+        public String getIP() {
+            return NioEjbServer.super.getIP();
+        }
+
+        @Override
+        public int getPort() {
+            return NioEjbServer.super.getPort();
+        }
+
+        @Override
+        public String getName() {
+            return NioEjbServer.this.getName();
+        }
+    }
+
+    private class Reactor implements Runnable {
+
+        private final Selector selector;
+        private final AtomicBoolean running = new AtomicBoolean(true);
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final List<Connection> handoffs = new ArrayList<Connection>();
+
+        private Reactor() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        private void stop() {
+            running.set(false);
+            selector.wakeup();
+        }
+
+        /**
+         * Runs the task in the selector thread
+         */
+        private void submit(final Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        private void register(final Connection connection) {
+            if (!running.get()) {
+                connection.close();
+                return;
+            }
+
+            submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        connection.channel.configureBlocking(false);
+                        connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            while (running.get()) {
+                try {
+                    // keys selected when flushing the hand offs are still to process
+                    if (selector.selectedKeys().isEmpty()) {
+                        selector.select();
+                    }
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        final SelectionKey key = keys.next();
+                        keys.remove();
+
+                        final Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                        } catch (Exception e) {
+                            logger.debug("Closing connection " + connection.channel, e);
+                            connection.close();
+                        }
+                    }
+
+                    if (!handoffs.isEmpty()) {
+                        // deregister the cancelled keys so the
+                        // channels can be switched to blocking mode
+                        selector.selectNow();
+
+                        for (final Connection connection : handoffs) {
+                            executor.execute(connection.new Classic());
+                        }
+                        handoffs.clear();
+                    }
+                } catch (Throwable e) {
+                    if (running.get()) {
+                        logger.warning("Unexpected selector error - " + e.getMessage(), e);
+                    }
+                }
+            }
+
+            for (final SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                //Ignore
+            }
+        }
+    }
+
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final ProtocolSession protocolSession = new ProtocolSession();
+        private final ByteBuffer header = ByteBuffer.allocate(9);
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<ByteBuffer>();
+        private volatile SelectionKey key;
+        private boolean pipelined;
+        private int requestId;
+        private ByteBuffer body;
+
+        // blocking mode only
+        private int style;
+        private InputStream in;
+        private OutputStream out;
+
+        private Connection(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Selector thread, reads as many pipelined requests as available
+         */
+        private void read() throws IOException {
+            while (true) {
+                if (body == null) {
+                    if (gzip) {
+                        // the style byte is compressed too
+                        handoff(-1);
+                        return;
+                    }
+
+                    // never read past the style byte of a blocking mode request
+                    if (header.position() == 0) {
+                        header.limit(1);
+                    }
+
+                    if (channel.read(header) < 0) {
+                        close();
+                        return;
+                    }
+
+                    if (header.position() == 0) {
+                        return;
+                    }
+
+                    final int style = header.get(0);
+                    if (style != PIPELINE) {
+                        if (pipelined) {
+                            throw new IOException("Unexpected byte " + style);
+                        }
+
+                        header.clear();
+                        handoff(style);
+                        return;
+                    }
+
+                    pipelined = true;
+                    header.limit(header.capacity());
+
+                    if (channel.read(header) < 0) {
+                        close();
+                        return;
+                    }
+
+                    if (header.hasRemaining()) {
+                        return;
+                    }
+
+                    header.flip();
+                    header.get();
+                    requestId = header.getInt();
+                    final int length = header.getInt();
+                    header.clear();
+
+                    if (length < 0) {
+                        throw new IOException("Invalid request length " + length);
+                    }
+
+                    if (length > maxFrameSize) {
+                        throw new IOException("Request length " + length + " exceeds the maxFrameSize " + maxFrameSize);
+                    }
+
+                    body = ByteBuffer.allocate(length);
+                }
+
+                if (channel.read(body) < 0) {
+                    close();
+                    return;
+                }
+
+                if (body.hasRemaining()) {
+                    return;
+                }
+
+                dispatch(requestId, body.array());
+                body = null;
+            }
+        }
+
+        /**
+         * Selector thread, writes the pending responses
+         */
+        private void write() throws IOException {
+            ByteBuffer response;
+            while ((response = responses.peek()) != null) {
+                channel.write(response);
+                if (response.hasRemaining()) {
+                    return;
+                }
+                responses.poll();
+            }
+
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void handoff(final int style) {
+            this.style = style;
+            key.cancel();
+            reactor.handoffs.add(this);
+        }
+
+        private void dispatch(final int id, final byte[] request) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                    try {
+                        NioEjbServer.this.service(new ByteArrayInputStream(request), response);
+                    } catch (Throwable e) {
+                        logger.debug("Unexpected error", e);
+                    }
+
+                    // always answer, the client is waiting for this id
+                    final byte[] bytes = response.toByteArray();
+                    final ByteBuffer frame = ByteBuffer.allocate(8 + bytes.length);
+                    frame.putInt(id).putInt(bytes.length).put(bytes).flip();
+                    responses.add(frame);
+
+                    reactor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            final SelectionKey key = Connection.this.key;
+                            if (key.isValid()) {
+                                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+
+        private void close() {
+            final SelectionKey key = this.key;
+            if (key != null) {
+                key.cancel();
+            }
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //Ignore
+            }
+        }
+
+        /**
+         * Worker thread, serves one request the same way the
+         * {@link KeepAliveServer} does then goes back to the selector
+         */
+        private class Classic implements Runnable {
+
+            @Override
+            public void run() {
+                try {
+                    channel.configureBlocking(true);
+
+                    if (in == null) {
+                        final Socket socket = channel.socket();
+                        if (!gzip) {
+                            in = new BufferedInputStream(socket.getInputStream());
+                            out = new BufferedOutputStream(socket.getOutputStream());
+                        } else {
+                            in = new GZIPInputStream(new BufferedInputStream(socket.getInputStream()));
+                            out = new BufferedOutputStream(new FlushableGZIPOutputStream(socket.getOutputStream()));
+                        }
+                    }
+
+                    do {
+                        final int i = (style < 0) ? in.read() : style;
+                        style = -1;
+
+                        if (i == -1) {
+                            close();
+                            return;
+                        }
+
+                        if (i >= PIPELINE) {
+                            throw new IOException("Unexpected byte " + i);
+                        }
+
+                        switch (KeepAliveStyle.values()[i]) {
+                            case PING_PING: {
+                                in.read();
+                                break;
+                            }
+                            case PING_PONG: {
+                                out.write(i);
+                                out.flush();
+                                break;
+                            }
+                        }
+
+                        NioEjbServer.this.service(keepAlive.new Input(in, protocolSession), keepAlive.new Output(out));
+                        out.flush();
+
+                        // a request already buffered would never wake the selector up,
+                        // gzip streams always claim to have something available
+                    } while (!gzip && in.available() > 0);
+
+                    reactor.register(Connection.this);
+                } catch (Throwable e) {
+                    logger.debug("Closing connection " + channel, e);
+                    close();
+                }
+            }
+        }
+    }
+}
@@ -18,11 +18,15 @@ package org.apache.openejb.server.httpd;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
+ * Registrations are kept in insertion ordered maps.  Each change rebuilds
+ * an immutable, precompiled snapshot of them so dispatching a request
+ * neither locks, copies the registrations nor compiles any regex.
+ *
  * @version $Revision$ $Date$
  */
 public class HttpListenerRegistry implements HttpListener {
@@ -30,6 +34,9 @@ public class HttpListenerRegistry implements HttpListener {
     private final Map<String, Collection<HttpListener>> filterRegistry = new LinkedHashMap<String, Collection<HttpListener>>();
     private final ThreadLocal<FilterListener> currentFilterListener = new ThreadLocal<FilterListener>();
 
+    private volatile RouteTable<HttpListener> listeners = RouteTable.empty();
+    private volatile Filter[] filters = new Filter[0];
+
     public HttpListenerRegistry() {
     }
 
@@ -37,38 +44,21 @@ public class HttpListenerRegistry implements HttpListener {
         final String path = request.getURI().getPath();
         final FilterListener currentFL = currentFilterListener.get();
 
-        // first look filters
-        Map<String, Collection<HttpListener>> filters;
-        synchronized (filterRegistry) {
-            filters = new HashMap<String, Collection<HttpListener>>(filterRegistry);
-        }
-
         try {
+            // first look filters
             boolean lastWasCurrent = false;
-            for (Map.Entry<String, Collection<HttpListener>> entry : filters.entrySet()) {
-                String pattern = entry.getKey();
-                for (HttpListener listener : entry.getValue()) {
-                    if ((lastWasCurrent || currentFL == null) && path.matches(pattern)) {
-                        listener.onMessage(request, response);
-                        return;
-                    }
-                    lastWasCurrent = listener == currentFL;
+            for (Filter filter : filters) {
+                if ((lastWasCurrent || currentFL == null) && filter.matcher.matches(path)) {
+                    filter.listener.onMessage(request, response);
+                    return;
                 }
+                lastWasCurrent = filter.listener == currentFL;
             }
 
-
             // then others
-            Map<String, HttpListener> listeners;
-            synchronized (registry) {
-                listeners = new HashMap<String, HttpListener>(registry);
-            }
-
-            for (Map.Entry<String, HttpListener> entry : listeners.entrySet()) {
-                String pattern = entry.getKey();
-                if (path.matches(pattern)) {
-                    entry.getValue().onMessage(request, response);
-                    break;
-                }
+            final HttpListener listener = listeners.match(path);
+            if (listener != null) {
+                listener.onMessage(request, response);
             }
         } finally {
             if (currentFL == null) {
@@ -80,6 +70,7 @@ public class HttpListenerRegistry implements HttpListener {
     public void addHttpListener(HttpListener listener, String regex) {
         synchronized (registry) {
             registry.put(regex, listener);
+            listeners = RouteTable.compile(registry);
         }
     }
 
@@ -87,6 +78,7 @@ public class HttpListenerRegistry implements HttpListener {
         HttpListener listener;
         synchronized (registry) {
             listener = registry.remove(regex);
+            listeners = RouteTable.compile(registry);
         }
         return listener;
     }
@@ -97,12 +89,15 @@ public class HttpListenerRegistry implements HttpListener {
                 filterRegistry.put(regex, new ArrayList<HttpListener>());
             }
             filterRegistry.get(regex).add(listener);
+            filters = compileFilters();
         }
     }
 
     public Collection<HttpListener> removeHttpFilter(String regex) {
         synchronized (filterRegistry) {
-            return filterRegistry.remove(regex);
+            final Collection<HttpListener> removed = filterRegistry.remove(regex);
+            filters = compileFilters();
+            return removed;
         }
     }
 
@@ -113,4 +108,29 @@ public class HttpListenerRegistry implements HttpListener {
             currentFilterListener.set(origin);
         }
     }
+
+    /**
+     * Flattens the filter registrations, in registration order, as the
+     * filter chain relies on finding the filter following the current one
+     */
+    private Filter[] compileFilters() {
+        final List<Filter> compiled = new ArrayList<Filter>();
+        for (Map.Entry<String, Collection<HttpListener>> entry : filterRegistry.entrySet()) {
+            final RouteTable.PathMatcher matcher = RouteTable.matcher(entry.getKey());
+            for (HttpListener listener : entry.getValue()) {
+                compiled.add(new Filter(matcher, listener));
+            }
+        }
+        return compiled.toArray(new Filter[compiled.size()]);
+    }
+
+    private static class Filter {
+        private final RouteTable.PathMatcher matcher;
+        private final HttpListener listener;
+
+        private Filter(final RouteTable.PathMatcher matcher, final HttpListener listener) {
+            this.matcher = matcher;
+            this.listener = listener;
+        }
+    }
 }
@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, precompiled view of a set of regex keyed routes.
+ * <p/>
+ * Registered patterns are classified once, when the table is built:
+ * <ul>
+ * <li>patterns without any regex meta character are exact paths</li>
+ * <li>an exact path followed by <code>.*</code>, <code>/?.*</code> or
+ * <code>/*.*</code> is a prefix</li>
+ * <li>anything else is compiled to a {@link Pattern}</li>
+ * </ul>
+ * Exact paths and prefixes live in a character trie so finding them
+ * never allocates nor runs a regex.  A lookup returns the first route, in
+ * registration order, matching the path: the trie gives the earliest
+ * exact or prefix route and only the regexes registered before it are run.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class RouteTable<T> {
+
+    private static final RouteTable EMPTY = new RouteTable(new Node(), new Pattern[0], new int[0], new Object[0]);
+
+    private static final String META = "\\.[]{}()*+?^$|";
+
+    private static final String[] PREFIX_SUFFIXES = {"/?.*", "/*.*", ".*"};
+
+    private final Node root;
+    private final Pattern[] patterns;
+    private final int[] indexes;
+    private final Object[] values;
+
+    private RouteTable(final Node root, final Pattern[] patterns, final int[] indexes, final Object[] values) {
+        this.root = root;
+        this.patterns = patterns;
+        this.indexes = indexes;
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> RouteTable<T> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param routes regex to value, iteration order is the regex precedence
+     * @return the compiled table
+     */
+    public static <T> RouteTable<T> compile(final Map<String, T> routes) {
+        final Node root = new Node();
+        final List<Pattern> patterns = new ArrayList<Pattern>();
+        final List<Integer> indexes = new ArrayList<Integer>();
+        final List<Object> values = new ArrayList<Object>();
+
+        int index = 0;
+        for (Map.Entry<String, T> entry : routes.entrySet()) {
+            final String regex = entry.getKey();
+            final T value = entry.getValue();
+
+            if (isLiteral(regex)) {
+                final Node node = root.add(regex, 0);
+                if (node.exact == null) {
+                    node.exact = value;
+                    node.exactIndex = index;
+                }
+            } else if (prefix(regex) != null) {
+                final Node node = root.add(prefix(regex), 0);
+                if (node.prefix == null) {
+                    node.prefix = value;
+                    node.prefixIndex = index;
+                }
+            } else {
+                patterns.add(Pattern.compile(regex));
+                indexes.add(index);
+                values.add(value);
+            }
+            index++;
+        }
+
+        final int[] patternIndexes = new int[indexes.size()];
+        for (int i = 0; i < patternIndexes.length; i++) {
+            patternIndexes[i] = indexes.get(i);
+        }
+
+        return new RouteTable<T>(root, patterns.toArray(new Pattern[patterns.size()]), patternIndexes, values.toArray());
+    }
+
+    @SuppressWarnings("unchecked")
+    public T match(final String path) {
+        Node node = root;
+        Object first = null;
+        int firstIndex = Integer.MAX_VALUE;
+        if (node.prefix != null) {
+            first = node.prefix;
+            firstIndex = node.prefixIndex;
+        }
+
+        final int length = path.length();
+        for (int i = 0; i < length && node != null; i++) {
+            node = node.child(path.charAt(i));
+            if (node != null && node.prefix != null && node.prefixIndex < firstIndex) {
+                first = node.prefix;
+                firstIndex = node.prefixIndex;
+            }
+        }
+
+        if (node != null && node.exact != null && node.exactIndex < firstIndex) {
+            first = node.exact;
+            firstIndex = node.exactIndex;
+        }
+
+        // only a regex registered before the trie match can take precedence
+        for (int i = 0; i < patterns.length && indexes[i] < firstIndex; i++) {
+            if (patterns[i].matcher(path).matches()) return (T) values[i];
+        }
+
+        return (T) first;
+    }
+
+    public boolean isEmpty() {
+        return root.isLeaf() && root.exact == null && root.prefix == null && patterns.length == 0;
+    }
+
+    /**
+     * Single route matcher for callers which need to walk
+     * their routes in order rather than pick the best one
+     *
+     * @param regex the route
+     * @return a reusable, thread safe, matcher
+     */
+    public static PathMatcher matcher(final String regex) {
+        if (isLiteral(regex)) return new ExactMatcher(regex);
+
+        final String prefix = prefix(regex);
+        if (prefix != null) return new PrefixMatcher(prefix);
+
+        return new RegexMatcher(Pattern.compile(regex));
+    }
+
+    private static boolean isLiteral(final String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (META.indexOf(regex.charAt(i)) >= 0) return false;
+        }
+        return true;
+    }
+
+    private static String prefix(final String regex) {
+        for (String suffix : PREFIX_SUFFIXES) {
+            if (regex.endsWith(suffix)) {
+                final String prefix = regex.substring(0, regex.length() - suffix.length());
+                return isLiteral(prefix) ? prefix : null;
+            }
+        }
+        return null;
+    }
+
+    public static interface PathMatcher {
+        boolean matches(String path);
+    }
+
+    private static final class ExactMatcher implements PathMatcher {
+        private final String path;
+
+        private ExactMatcher(final String path) {
+            this.path = path;
+        }
+
+        @Override
+        public boolean matches(final String path) {
+            return this.path.equals(path);
+        }
+    }
+
+    private static final class PrefixMatcher implements PathMatcher {
+        private final String prefix;
+
+        private PrefixMatcher(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean matches(final String path) {
+            return path.startsWith(prefix);
+        }
+    }
+
+    private static final class RegexMatcher implements PathMatcher {
+        private final Pattern pattern;
+
+        private RegexMatcher(final Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean matches(final String path) {
+            return pattern.matcher(path).matches();
+        }
+    }
+
+    /**
+     * Trie node, children are kept in parallel sorted arrays and
+     * looked up with a binary search so no boxing ever happens
+     */
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Object exact;
+        private int exactIndex;
+        private Object prefix;
+        private int prefixIndex;
+
+        private Node add(final String path, final int index) {
+            if (index == path.length()) return this;
+
+            final char c = path.charAt(index);
+            int position = Arrays.binarySearch(keys, c);
+            if (position < 0) {
+                position = -(position + 1);
+
+                final char[] newKeys = new char[keys.length + 1];
+                final Node[] newChildren = new Node[children.length + 1];
+
+                System.arraycopy(keys, 0, newKeys, 0, position);
+                System.arraycopy(children, 0, newChildren, 0, position);
+                System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+                System.arraycopy(children, position, newChildren, position + 1, children.length - position);
+
+                newKeys[position] = c;
+                newChildren[position] = new Node();
+
+                keys = newKeys;
+                children = newChildren;
+            }
+
+            return children[position].add(path, index + 1);
+        }
+
+        private Node child(final char c) {
+            final int position = Arrays.binarySearch(keys, c);
+            return position < 0 ? null : children[position];
+        }
+
+        private boolean isLeaf() {
+            return keys.length == 0;
+        }
+    }
+}
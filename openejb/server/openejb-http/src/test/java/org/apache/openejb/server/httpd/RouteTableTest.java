@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import junit.framework.TestCase;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @version $Rev$ $Date$
+ */
+public class RouteTableTest extends TestCase {
+
+    public void testEmpty() throws Exception {
+        final RouteTable<String> table = RouteTable.empty();
+        assertTrue(table.isEmpty());
+        assertNull(table.match("/anything"));
+    }
+
+    public void testExact() throws Exception {
+        final Map<String, String> routes = new LinkedHashMap<String, String>();
+        routes.put("/app/Calculator", "calculator");
+        routes.put("/app/CalculatorImpl", "impl");
+
+        final RouteTable<String> table = RouteTable.compile(routes);
+        assertEquals("calculator", table.match("/app/Calculator"));
+        assertEquals("impl", table.match("/app/CalculatorImpl"));
+        assertNull(table.match("/app/Calc"));
+        assertNull(table.match("/app/Calculator/"));
+        assertNull(table.match("/app/CalculatorImplementation"));
+    }
+
+    public void testPrefix() throws Exception {
+        final Map<String, String> routes = new LinkedHashMap<String, String>();
+        routes.put("/ejb/?.*", "ejb");
+        routes.put("/rest/.*", "rest");
+        routes.put("/rest/orders/.*", "orders");
+        routes.put("/servlet/*.*", "servlet");
+
+        final RouteTable<String> table = RouteTable.compile(routes);
+
+        // same results as the regex would give
+        assertEquals("ejb", table.match("/ejb"));
+        assertEquals("ejb", table.match("/ejb/"));
+        assertEquals("ejb", table.match("/ejb/foo"));
+        assertEquals("ejb", table.match("/ejbfoo"));
+        assertEquals("servlet", table.match("/servlet"));
+        assertEquals("servlet", table.match("/servlet/a/b"));
+        assertNull(table.match("/rest"));
+        assertNull(table.match("/ej"));
+
+        // the first registered prefix wins, not the longest
+        assertEquals("rest", table.match("/rest/customers/1"));
+        assertEquals("rest", table.match("/rest/orders/1"));
+    }
+
+    public void testRegistrationOrder() throws Exception {
+        final Map<String, String> prefixFirst = new LinkedHashMap<String, String>();
+        prefixFirst.put("/app/.*", "prefix");
+        prefixFirst.put("/app/ws", "exact");
+        prefixFirst.put("/app/[a-z]+", "regex");
+
+        RouteTable<String> table = RouteTable.compile(prefixFirst);
+        assertEquals("prefix", table.match("/app/ws"));
+        assertEquals("prefix", table.match("/app/abc"));
+
+        final Map<String, String> regexFirst = new LinkedHashMap<String, String>();
+        regexFirst.put("/app/[a-z]+", "regex");
+        regexFirst.put("/app/ws", "exact");
+        regexFirst.put("/app/orders/.*", "orders");
+        regexFirst.put("/app/.*", "prefix");
+
+        table = RouteTable.compile(regexFirst);
+        assertEquals("regex", table.match("/app/ws"));
+        assertEquals("orders", table.match("/app/orders/1"));
+        assertEquals("prefix", table.match("/app/ws2"));
+        assertEquals("prefix", table.match("/app/1"));
+        assertNull(table.match("/other"));
+    }
+
+    public void testRegex() throws Exception {
+        final Map<String, String> routes = new LinkedHashMap<String, String>();
+        routes.put("/app/[a-z]+", "letters");
+        routes.put("/app/.+", "any");
+        routes.put("/dotted.path", "dot");
+
+        final RouteTable<String> table = RouteTable.compile(routes);
+        assertEquals("letters", table.match("/app/abc"));
+        assertEquals("any", table.match("/app/123"));
+        assertEquals("dot", table.match("/dotted.path"));
+        assertEquals("dot", table.match("/dottedXpath"));
+        assertNull(table.match("/app/"));
+    }
+
+    public void testMatcher() throws Exception {
+        assertTrue(RouteTable.matcher("/filter/touch").matches("/filter/touch"));
+        assertFalse(RouteTable.matcher("/filter/touch").matches("/filter/touch/"));
+        assertTrue(RouteTable.matcher("/filter/.*").matches("/filter/touch"));
+        assertFalse(RouteTable.matcher("/filter/.*").matches("/filter"));
+        assertTrue(RouteTable.matcher("/filter/[0-9]+").matches("/filter/42"));
+        assertFalse(RouteTable.matcher("/filter/[0-9]+").matches("/filter/a"));
+    }
+}
@@ -147,7 +147,7 @@ public class ServiceDaemon implements ServerService {
                     serverSocket = factory.createServerSocket(this.port, this.backlog, this.inetAddress);
                     ((SSLServerSocket) serverSocket).setEnabledCipherSuites(this.enabledCipherSuites);
                 } else {
-                    serverSocket = new ServerSocket();
+                    serverSocket = this.newServerSocket();
                     serverSocket.setReuseAddress(true);
                     serverSocket.bind(new InetSocketAddress(this.inetAddress, this.port), this.backlog);
                 }
@@ -201,6 +201,17 @@ public class ServiceDaemon implements ServerService {
         }
     }
 
+    /**
+     * Creates the unbound, non ssl, server socket.  Services selecting
+     * over the accepted sockets need one backed by a channel.
+     *
+     * @return ServerSocket
+     * @throws IOException on error
+     */
+    protected ServerSocket newServerSocket() throws IOException {
+        return new ServerSocket();
+    }
+
     @Override
     public void stop() throws ServiceException {
 
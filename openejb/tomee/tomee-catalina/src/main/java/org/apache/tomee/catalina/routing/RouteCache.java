@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.routing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Uri to route cache holding at most capacity entries.  Eviction uses
+ * the CLOCK algorithm: a hit only sets a flag, the hand skips (and
+ * clears) flagged entries when looking for a slot, so reads never lock.
+ */
+final class RouteCache {
+    private final int capacity;
+    private final ConcurrentMap<String, Entry> entries;
+    private final AtomicReferenceArray<Entry> clock;
+    private final AtomicInteger hand = new AtomicInteger();
+
+    RouteCache(final int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.entries = new ConcurrentHashMap<String, Entry>(Math.max(16, this.capacity));
+        this.clock = new AtomicReferenceArray<Entry>(this.capacity);
+    }
+
+    Route get(final String uri) {
+        final Entry entry = entries.get(uri);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.route;
+    }
+
+    void put(final String uri, final Route route) {
+        if (capacity == 0) {
+            return;
+        }
+
+        final Entry entry = new Entry(uri, route);
+        if (entries.putIfAbsent(uri, entry) != null) {
+            return;
+        }
+
+        while (true) {
+            final int slot = (hand.getAndIncrement() & Integer.MAX_VALUE) % capacity;
+            final Entry current = clock.get(slot);
+            if (current != null && current.referenced) {
+                current.referenced = false;
+                continue;
+            }
+            if (clock.compareAndSet(slot, current, entry)) {
+                if (current != null) {
+                    entries.remove(current.uri, current);
+                }
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private static final class Entry {
+        private final String uri;
+        private final Route route;
+        private volatile boolean referenced;
+
+        private Entry(final String uri, final Route route) {
+            this.uri = uri;
+            this.route = route;
+        }
+    }
+}
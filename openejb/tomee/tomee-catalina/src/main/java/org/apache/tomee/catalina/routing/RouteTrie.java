@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.routing;
+
+import java.util.Arrays;
+
+/**
+ * Immutable index of routes keyed by the literal start of their origin.
+ *
+ * An origin without any regex meta character is only compared to the
+ * whole uri, other origins are indexed by the characters preceding their
+ * first meta character and their regex is only run for uris starting with
+ * them.  Candidates are tried in declaration order so the first declared
+ * matching route still wins.
+ */
+final class RouteTrie {
+    private static final String META = "\\.[]{}()*+?^$|";
+    private static final String QUANTIFIERS = "*+?{";
+    private static final int[] NONE = new int[0];
+
+    private final Route[] routes;
+    private final boolean[] literal;
+    private final Node root = new Node();
+
+    RouteTrie(final Route[] routes) {
+        this.routes = routes;
+        this.literal = new boolean[routes.length];
+        for (int i = 0; i < routes.length; i++) {
+            final String origin = routes[i].getOrigin();
+            literal[i] = isLiteral(origin);
+            if (literal[i]) {
+                final Node node = root.add(origin, 0);
+                node.exact = append(node.exact, i);
+            } else {
+                final Node node = root.add(prefix(origin), 0);
+                node.prefixed = append(node.prefixed, i);
+            }
+        }
+    }
+
+    Route[] getRoutes() {
+        return routes;
+    }
+
+    Route match(final String uri) {
+        final int[] candidates = new int[routes.length];
+        int count = 0;
+
+        Node node = root;
+        final int length = uri.length();
+        for (int i = 0; node != null; i++) {
+            System.arraycopy(node.prefixed, 0, candidates, count, node.prefixed.length);
+            count += node.prefixed.length;
+
+            if (i == length) {
+                System.arraycopy(node.exact, 0, candidates, count, node.exact.length);
+                count += node.exact.length;
+                break;
+            }
+            node = node.child(uri.charAt(i));
+        }
+
+        Arrays.sort(candidates, 0, count);
+        for (int i = 0; i < count; i++) {
+            final int index = candidates[i];
+            if (literal[index] || routes[index].matches(uri)) {
+                return routes[index];
+            }
+        }
+        return null;
+    }
+
+    static boolean isLiteral(final String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (META.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the characters every match starts with, a quantified
+     * character is excluded and an alternation means no prefix at all
+     */
+    static String prefix(final String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return "";
+        }
+
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (META.indexOf(c) >= 0) {
+                if (QUANTIFIERS.indexOf(c) >= 0 && i > 0) {
+                    return regex.substring(0, i - 1);
+                }
+                return regex.substring(0, i);
+            }
+        }
+        return regex;
+    }
+
+    private static int[] append(final int[] indexes, final int index) {
+        final int[] newIndexes = new int[indexes.length + 1];
+        System.arraycopy(indexes, 0, newIndexes, 0, indexes.length);
+        newIndexes[indexes.length] = index;
+        return newIndexes;
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int[] exact = NONE;
+        private int[] prefixed = NONE;
+
+        private Node add(final String path, final int index) {
+            if (index == path.length()) {
+                return this;
+            }
+
+            final char c = path.charAt(index);
+            int position = Arrays.binarySearch(keys, c);
+            if (position < 0) {
+                position = -(position + 1);
+
+                final char[] newKeys = new char[keys.length + 1];
+                final Node[] newChildren = new Node[children.length + 1];
+
+                System.arraycopy(keys, 0, newKeys, 0, position);
+                System.arraycopy(children, 0, newChildren, 0, position);
+                System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+                System.arraycopy(children, position, newChildren, position + 1, children.length - position);
+
+                newKeys[position] = c;
+                newChildren[position] = new Node();
+
+                keys = newKeys;
+                children = newChildren;
+            }
+
+            return children[position].add(path, index + 1);
+        }
+
+        private Node child(final char c) {
+            final int position = Arrays.binarySearch(keys, c);
+            return position < 0 ? null : children[position];
+        }
+    }
+}
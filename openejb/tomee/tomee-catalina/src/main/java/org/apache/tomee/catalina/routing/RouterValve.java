@@ -55,6 +55,10 @@ public class RouterValve extends ValveBase {
         router.readConfiguration(configurationPath);
     }
 
+    public void setCacheSize(final int cacheSize) {
+        router.setCacheSize(cacheSize);
+    }
+
     @Override
     protected synchronized void startInternal() throws LifecycleException {
         super.startInternal();
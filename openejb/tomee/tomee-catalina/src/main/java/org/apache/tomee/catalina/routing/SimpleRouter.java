@@ -39,48 +39,75 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class SimpleRouter {
     private static final Pattern PATTERN = Pattern.compile("(.*)->(.*)");
+    private static final Route NO_ROUTE = new Route();
+
+    public static final int DEFAULT_CACHE_SIZE = 1000;
 
     private String prefix = "";
     private ObjectName objectName = null;
-    private Route[] routes = new Route[0];
-    private final Map<String, Route> cache = new ConcurrentHashMap<String, Route>();
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private final List<URL> configurations = new CopyOnWriteArrayList<URL>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    // routes and their cache are swapped together so requests never wait for a reload
+    private volatile Routes routes = new Routes(new Route[0], cacheSize);
 
     public SimpleRouter readConfiguration(final URL url) {
         if (url == null) {
             return this;
         }
 
+        final List<Route> read = readRoutes(url);
+        configurations.add(url);
+        addRoutes(read);
+        return this;
+    }
+
+    private List<Route> readRoutes(final URL url) {
+        final List<Route> routes = new ArrayList<Route>();
         try {
             final InputStream is = new BufferedInputStream(url.openStream());
             final BufferedReader reader = new BufferedReader(new InputStreamReader(is));
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (!line.isEmpty() && !line.startsWith("#")) {
-                   parseRoute(line);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        final Route route = parseRoute(line);
+                        if (route != null) {
+                            routes.add(route);
+                        }
+                    }
                 }
+            } finally {
+                reader.close();
             }
         } catch (IOException e) {
             throw new RouterException("can't read " + url.toExternalForm());
         }
-        return this;
+        return routes;
     }
 
-    private void parseRoute(final String line) {
+    private Route parseRoute(final String line) {
         final Matcher matcher = PATTERN.matcher(line);
         if (matcher.matches()) {
             final String from = prefix(matcher.group(1).trim());
             final String to = prefix(matcher.group(2).trim());
-            addRoute(new Route().from(from).to(to));
+            return new Route().from(from).to(to);
         }
+        return null;
     }
 
     public String route(final String uri) throws IOException, ServletException {
@@ -88,35 +115,56 @@ public class SimpleRouter {
             return null;
         }
 
-        final Route cachedRoute = cache.get(uri);
-        if (cachedRoute != null) {
-            cachedRoute.matches(uri);
-            return cachedRoute.cleanDestination(prefix);
-        }
+        final Routes current = routes;
 
-        for (Route route : routes) {
-            if (route.matches(uri)) {
-                if (route.getOrigin().equals(uri)) {
-                    cache.put(uri, route);
-                }
-                return route.cleanDestination(prefix);
+        Route route = current.cache.get(uri);
+        if (route != null) {
+            cacheHits.incrementAndGet();
+            if (route == NO_ROUTE) {
+                return null;
             }
+            route.matches(uri);
+            return route.cleanDestination(prefix);
         }
 
-        return null;
+        cacheMisses.incrementAndGet();
+        route = current.trie.match(uri);
+        if (route == null) {
+            current.cache.put(uri, NO_ROUTE);
+            return null;
+        }
+
+        current.cache.put(uri, route);
+        return route.cleanDestination(prefix);
     }
 
     public synchronized void addRoute(final Route route) {
-        final Route[] newRoutes = new Route[routes.length + 1];
-        System.arraycopy(routes, 0, newRoutes, 0, routes.length);
-        newRoutes[routes.length] = route;
-        routes = newRoutes;
+        addRoutes(Collections.singletonList(route));
+    }
+
+    private synchronized void addRoutes(final List<Route> added) {
+        final Route[] current = routes.trie.getRoutes();
+        final Route[] newRoutes = new Route[current.length + added.size()];
+        System.arraycopy(current, 0, newRoutes, 0, current.length);
+        for (int i = 0; i < added.size(); i++) {
+            newRoutes[current.length + i] = added.get(i);
+        }
+        routes = new Routes(newRoutes, cacheSize);
     }
 
     public void cleanUp() {
         JMXOff();
-        routes = null;
-        cache.clear();
+        configurations.clear();
+        routes = new Routes(new Route[0], 0);
+    }
+
+    /**
+     * Number of uris whose route, or lack of route, is remembered.
+     * Changing it empties the cache.
+     */
+    public synchronized void setCacheSize(final int cacheSize) {
+        this.cacheSize = cacheSize;
+        routes = new Routes(routes.trie.getRoutes(), cacheSize);
     }
 
     public void setPrefix(final String prefix) {
@@ -160,6 +208,7 @@ public class SimpleRouter {
 
     @ManagedAttribute
     public TabularData getActiveRoutes() {
+        final Route[] routes = this.routes.trie.getRoutes();
         if (routes.length == 0) {
             return null;
         }
@@ -193,7 +242,8 @@ public class SimpleRouter {
     }
 
     @ManagedOperation
-    public void removeRoute(final String from, final String to) {
+    public synchronized void removeRoute(final String from, final String to) {
+        Route[] routes = this.routes.trie.getRoutes();
         if (routes.length == 0) {
             return;
         }
@@ -204,8 +254,43 @@ public class SimpleRouter {
                 System.arraycopy(routes, 0, newRoutes, 0, i);
                 System.arraycopy(routes, i + 1, newRoutes, i, routes.length - i - 1);
                 routes = newRoutes;
+                i--;
             }
         }
+        this.routes = new Routes(routes, cacheSize);
+    }
+
+    /**
+     * Replaces the routes by the ones currently in the configuration files,
+     * requests in progress keep using the previous routes.
+     */
+    @ManagedOperation
+    public synchronized void reload() {
+        final List<Route> reloaded = new ArrayList<Route>();
+        for (URL url : configurations) {
+            reloaded.addAll(readRoutes(url));
+        }
+        routes = new Routes(reloaded.toArray(new Route[reloaded.size()]), cacheSize);
+    }
+
+    @ManagedAttribute
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @ManagedAttribute
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @ManagedAttribute
+    public int getCachedUris() {
+        return routes.cache.size();
+    }
+
+    @ManagedAttribute
+    public int getCacheSize() {
+        return routes.cache.capacity();
     }
 
     public boolean hasPrefix() {
@@ -215,4 +300,14 @@ public class SimpleRouter {
     public String getPrefix() {
         return prefix;
     }
+
+    private static final class Routes {
+        private final RouteTrie trie;
+        private final RouteCache cache;
+
+        private Routes(final Route[] routes, final int cacheSize) {
+            this.trie = new RouteTrie(routes);
+            this.cache = new RouteCache(cacheSize);
+        }
+    }
 }
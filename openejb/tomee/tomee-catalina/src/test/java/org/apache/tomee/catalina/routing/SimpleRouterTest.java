@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.catalina.routing;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SimpleRouterTest {
+    @Test
+    public void firstDeclaredRouteWins() throws Exception {
+        final SimpleRouter regexFirst = new SimpleRouter();
+        regexFirst.addRoute(new Route().from("/app/.*").to("/regex"));
+        regexFirst.addRoute(new Route().from("/app/page").to("/literal"));
+        regexFirst.addRoute(new Route().from("/app/page/.*").to("/longer"));
+
+        assertEquals("/regex", regexFirst.route("/app/page"));
+        assertEquals("/regex", regexFirst.route("/app/page/sub"));
+
+        final SimpleRouter literalFirst = new SimpleRouter();
+        literalFirst.addRoute(new Route().from("/app/page").to("/literal"));
+        literalFirst.addRoute(new Route().from("/app/page/.*").to("/longer"));
+        literalFirst.addRoute(new Route().from("/app/.*").to("/regex"));
+
+        assertEquals("/literal", literalFirst.route("/app/page"));
+        assertEquals("/longer", literalFirst.route("/app/page/sub"));
+        assertEquals("/regex", literalFirst.route("/app/other"));
+        assertNull(literalFirst.route("/other"));
+    }
+
+    @Test
+    public void unprefixedRegex() throws Exception {
+        final SimpleRouter router = new SimpleRouter();
+        router.addRoute(new Route().from("/a").to("/literal"));
+        router.addRoute(new Route().from("(/a|/b)/x").to("/alternation"));
+        router.addRoute(new Route().from("/c?/y").to("/quantified"));
+
+        assertEquals("/literal", router.route("/a"));
+        assertEquals("/alternation", router.route("/b/x"));
+        assertEquals("/quantified", router.route("//y"));
+        assertEquals("/quantified", router.route("/c/y"));
+    }
+
+    @Test
+    public void parameters() throws Exception {
+        final SimpleRouter router = new SimpleRouter();
+        router.addRoute(new Route().from("/foo/(.*)/bar/(.*)").to("/dest/$2/$1"));
+
+        assertEquals("/dest/2/1", router.route("/foo/1/bar/2"));
+        // the second call is served by the cache and still extracts the parameters
+        assertEquals("/dest/2/1", router.route("/foo/1/bar/2"));
+        assertEquals("/dest/b/a", router.route("/foo/a/bar/b"));
+        assertEquals(1, router.getCacheHits());
+    }
+
+    @Test
+    public void reloadInvalidatesCache() throws Exception {
+        final File conf = File.createTempFile("tomee-router", ".conf");
+        conf.deleteOnExit();
+
+        write(conf, "/page -> /first");
+        final SimpleRouter router = new SimpleRouter().readConfiguration(conf.toURI().toURL());
+
+        assertEquals("/first", router.route("/page"));
+        assertNull(router.route("/other"));
+        assertEquals(2, router.getCachedUris());
+
+        write(conf, "/page -> /second\n/other -> /added");
+        router.reload();
+
+        assertEquals(0, router.getCachedUris());
+        assertEquals("/second", router.route("/page"));
+        assertEquals("/added", router.route("/other"));
+    }
+
+    @Test
+    public void addRouteInvalidatesCache() throws Exception {
+        final SimpleRouter router = new SimpleRouter();
+        assertNull(router.route("/page"));
+
+        router.addRoute("/page", "/dest");
+        assertEquals("/dest", router.route("/page"));
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        final SimpleRouter router = new SimpleRouter();
+        router.setCacheSize(4);
+        router.addRoute(new Route().from("/(.*)").to("/dest/$1"));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("/dest/" + i, router.route("/" + i));
+        }
+        assertEquals(4, router.getCachedUris());
+    }
+
+    @Test
+    public void unreadableConfigurationIsNotKept() throws Exception {
+        final File missing = new File(System.getProperty("java.io.tmpdir"), "missing-" + System.nanoTime() + ".conf");
+        final URL url = missing.toURI().toURL();
+
+        final SimpleRouter router = new SimpleRouter();
+        try {
+            router.readConfiguration(url);
+            fail();
+        } catch (RouterException expected) {
+            // ok
+        }
+
+        router.reload(); // would fail reading the missing file again
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        final FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}